@@ -42,7 +42,7 @@ class MainActivity : ComponentActivity() {
         // Start preloading messages in background
         messagePreloader.startPreloading()
 
-        // Initialize app cache
+        // Initialize app cache (no-op if MentraApplication already started it)
         appCacheService.initialize()
 
         // Get initial screen from intent (used by LauncherActivity)
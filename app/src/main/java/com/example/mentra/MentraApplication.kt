@@ -26,5 +26,11 @@ class MentraApplication : Application() {
         // This runs in the background and doesn't block app startup
         appCacheService.initialize()
     }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        // Decoded icons are the largest thing we can rebuild on demand
+        appCacheService.icons.onTrimMemory(level)
+    }
 }
 
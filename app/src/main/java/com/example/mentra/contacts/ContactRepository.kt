@@ -0,0 +1,327 @@
+package com.example.mentra.contacts
+
+import android.Manifest
+import android.content.Context
+import android.content.pm.PackageManager
+import android.database.ContentObserver
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import android.provider.ContactsContract
+import androidx.core.content.ContextCompat
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * CONTACT REPOSITORY
+ * Single shared source of phone contacts for messaging, dialer and shell
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * - One joined cursor over ContactsContract.Data (the provider already
+ *   joins data rows with their contact) for phone numbers and nicknames,
+ *   grouped by CONTACT_ID
+ * - Immutable [ContactSnapshot] published as a StateFlow
+ * - ContentObserver-driven incremental sync: only contacts whose
+ *   CONTACT_LAST_UPDATED_TIMESTAMP moved are re-read, deletions come from
+ *   DeletedContacts
+ */
+@Singleton
+class ContactRepository @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+    companion object {
+        // Contacts provider fires a burst of notifications per edit/sync
+        private const val SYNC_DEBOUNCE_MS = 500L
+
+        private val DATA_PROJECTION = arrayOf(
+            ContactsContract.Data._ID,
+            ContactsContract.Data.CONTACT_ID,
+            ContactsContract.Data.MIMETYPE,
+            ContactsContract.Data.DATA1,
+            ContactsContract.Data.LOOKUP_KEY,
+            ContactsContract.Data.DISPLAY_NAME,
+            ContactsContract.Data.PHOTO_URI,
+            ContactsContract.Data.STARRED,
+            ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP
+        )
+
+        // Phone numbers and nicknames come back from the same cursor
+        private const val MIMETYPE_SELECTION = "${ContactsContract.Data.MIMETYPE} IN (?, ?)"
+        private val MIMETYPE_ARGS = arrayOf(
+            ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE,
+            ContactsContract.CommonDataKinds.Nickname.CONTENT_ITEM_TYPE
+        )
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val syncMutex = Mutex()
+
+    private val _snapshot = MutableStateFlow(ContactSnapshot.EMPTY)
+    val snapshot: StateFlow<ContactSnapshot> = _snapshot.asStateFlow()
+
+    // True once a load attempt has completed (even without permission)
+    private val _isLoaded = MutableStateFlow(false)
+    val isLoaded: StateFlow<Boolean> = _isLoaded.asStateFlow()
+
+    // Provider time of the newest change folded into the snapshot
+    private var lastSyncTime = 0L
+
+    // Written only under this repository's monitor; refresh() can race with preload()
+    @Volatile
+    private var contactsObserver: ContentObserver? = null
+    private var pendingSync: Job? = null
+
+    /**
+     * Return the current snapshot, loading it first if nothing has been loaded yet.
+     * Without a registered observer (no permission yet) the snapshot can't be
+     * trusted to be current, so it is reloaded.
+     */
+    suspend fun awaitSnapshot(): ContactSnapshot {
+        if (!_isLoaded.value || contactsObserver == null) refresh()
+        return _snapshot.value
+    }
+
+    /**
+     * Force a full reload of all contacts
+     */
+    suspend fun refresh() = withContext(Dispatchers.IO) {
+        syncMutex.withLock {
+            loadAll()
+        }
+        startObserving()
+    }
+
+    /**
+     * Kick off the initial load in the background (no-op once loaded)
+     */
+    fun preload() {
+        if (_isLoaded.value && contactsObserver != null) return
+        scope.launch { awaitSnapshot() }
+    }
+
+    /**
+     * Start observing the contacts provider for incremental updates
+     */
+    @Synchronized
+    private fun startObserving() {
+        if (contactsObserver != null) return
+        if (!hasContactsPermission()) return
+
+        val observer = object : ContentObserver(Handler(Looper.getMainLooper())) {
+            override fun onChange(selfChange: Boolean) {
+                onChange(selfChange, null)
+            }
+
+            override fun onChange(selfChange: Boolean, uri: Uri?) {
+                scheduleSync()
+            }
+        }
+
+        try {
+            context.contentResolver.registerContentObserver(
+                ContactsContract.Contacts.CONTENT_URI,
+                true,
+                observer
+            )
+            contactsObserver = observer
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+    }
+
+    /**
+     * Stop observing the contacts provider
+     */
+    @Synchronized
+    fun stopObserving() {
+        contactsObserver?.let {
+            try {
+                context.contentResolver.unregisterContentObserver(it)
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+        contactsObserver = null
+        pendingSync?.cancel()
+    }
+
+    @Synchronized
+    private fun scheduleSync() {
+        pendingSync?.cancel()
+        pendingSync = scope.launch {
+            delay(SYNC_DEBOUNCE_MS)
+            syncMutex.withLock {
+                syncChanges()
+            }
+        }
+    }
+
+    /**
+     * Full load: one query, grouped by contact
+     */
+    private fun loadAll() {
+        if (!hasContactsPermission()) {
+            _snapshot.value = ContactSnapshot.EMPTY
+            _isLoaded.value = true
+            return
+        }
+
+        try {
+            val records = queryContactData(null, null)
+            lastSyncTime = records.maxOfOrNull { it.lastUpdated } ?: 0L
+            _snapshot.value = ContactSnapshot.of(records)
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+        _isLoaded.value = true
+    }
+
+    /**
+     * Incremental sync: re-read only contacts touched since [lastSyncTime]
+     * and drop the ones the provider reports as deleted
+     */
+    private fun syncChanges() {
+        if (!_isLoaded.value || lastSyncTime == 0L) {
+            loadAll()
+            return
+        }
+
+        try {
+            val since = lastSyncTime.toString()
+            val updatedIds = queryUpdatedContactIds(since)
+            val deletedIds = queryDeletedContactIds(since)
+            if (updatedIds.isEmpty() && deletedIds.isEmpty()) return
+
+            val changed = if (updatedIds.isEmpty()) emptyList() else queryContactData(
+                "${ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP} > ?",
+                arrayOf(since)
+            )
+
+            // Contacts that lost every number are in updatedIds but not in changed
+            val removed = updatedIds + deletedIds
+            val merged = _snapshot.value.contacts.filterNot { it.id in removed } + changed
+
+            lastSyncTime = maxOf(lastSyncTime, updatedIds.maxTime, deletedIds.maxTime)
+            _snapshot.value = ContactSnapshot.of(merged)
+        } catch (e: Exception) {
+            e.printStackTrace()
+            loadAll()
+        }
+    }
+
+    private fun queryContactData(selection: String?, selectionArgs: Array<String>?): List<ContactRecord> {
+        val builders = LinkedHashMap<Long, ContactRecord.Builder>()
+
+        context.contentResolver.query(
+            ContactsContract.Data.CONTENT_URI,
+            DATA_PROJECTION,
+            if (selection == null) MIMETYPE_SELECTION else "$MIMETYPE_SELECTION AND $selection",
+            MIMETYPE_ARGS + (selectionArgs ?: emptyArray()),
+            null
+        )?.use { cursor ->
+            val dataIdIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data._ID)
+            val contactIdIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.CONTACT_ID)
+            val mimeTypeIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.MIMETYPE)
+            val valueIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.DATA1)
+            val lookupIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.LOOKUP_KEY)
+            val nameIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.DISPLAY_NAME)
+            val photoIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.PHOTO_URI)
+            val starredIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.STARRED)
+            val updatedIndex = cursor.getColumnIndexOrThrow(ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP)
+
+            while (cursor.moveToNext()) {
+                val value = cursor.getString(valueIndex) ?: continue
+                val name = cursor.getString(nameIndex) ?: continue
+                val contactId = cursor.getLong(contactIdIndex)
+
+                val builder = builders.getOrPut(contactId) {
+                    ContactRecord.Builder(
+                        id = contactId,
+                        lookupKey = cursor.getString(lookupIndex),
+                        name = name,
+                        photoUri = cursor.getString(photoIndex),
+                        isStarred = cursor.getInt(starredIndex) == 1,
+                        lastUpdated = cursor.getLong(updatedIndex)
+                    )
+                }
+
+                if (cursor.getString(mimeTypeIndex) == ContactsContract.CommonDataKinds.Nickname.CONTENT_ITEM_TYPE) {
+                    builder.addNickname(value)
+                } else {
+                    builder.addPhone(cursor.getLong(dataIdIndex), value)
+                }
+            }
+        }
+
+        // Contacts with only a nickname aren't reachable by phone or SMS
+        return builders.values.mapNotNull { it.build() }
+    }
+
+    private fun queryUpdatedContactIds(since: String): ChangedIds {
+        val ids = mutableSetOf<Long>()
+        var maxTime = 0L
+
+        context.contentResolver.query(
+            ContactsContract.Contacts.CONTENT_URI,
+            arrayOf(
+                ContactsContract.Contacts._ID,
+                ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP
+            ),
+            "${ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP} > ?",
+            arrayOf(since),
+            null
+        )?.use { cursor ->
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0))
+                maxTime = maxOf(maxTime, cursor.getLong(1))
+            }
+        }
+
+        return ChangedIds(ids, maxTime)
+    }
+
+    private fun queryDeletedContactIds(since: String): ChangedIds {
+        val ids = mutableSetOf<Long>()
+        var maxTime = 0L
+
+        context.contentResolver.query(
+            ContactsContract.DeletedContacts.CONTENT_URI,
+            arrayOf(
+                ContactsContract.DeletedContacts.CONTACT_ID,
+                ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP
+            ),
+            "${ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP} > ?",
+            arrayOf(since),
+            null
+        )?.use { cursor ->
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0))
+                maxTime = maxOf(maxTime, cursor.getLong(1))
+            }
+        }
+
+        return ChangedIds(ids, maxTime)
+    }
+
+    private fun hasContactsPermission(): Boolean {
+        return ContextCompat.checkSelfPermission(
+            context, Manifest.permission.READ_CONTACTS
+        ) == PackageManager.PERMISSION_GRANTED
+    }
+
+    private class ChangedIds(ids: Set<Long>, val maxTime: Long) : Set<Long> by ids
+}
@@ -0,0 +1,409 @@
+package com.example.mentra.contacts
+
+import com.example.mentra.messaging.Contact
+import java.text.Normalizer
+import java.util.PriorityQueue
+
+/**
+ * A contact plus everything it can be found by
+ * [frecency] is a 0..1 recency/frequency score from calls and SMS
+ */
+data class ContactSearchDocument(
+    val contact: Contact,
+    val nicknames: List<String> = emptyList(),
+    val aliases: List<String> = emptyList(),
+    val frecency: Double = 0.0
+)
+
+/**
+ * How well a hit matched, best first
+ */
+enum class ContactMatchKind {
+    EXACT,
+    PREFIX,
+    SUBSTRING,
+    FUZZY
+}
+
+data class ContactSearchHit(
+    val contact: Contact,
+    val score: Double,
+    val matchKind: ContactMatchKind
+)
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * CONTACT SEARCH INDEX
+ * Immutable in-memory index for ranked, typo-tolerant contact lookup
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Names, nicknames, aliases and numbers are split into normalised terms.
+ * - Prefix matches: binary search over the sorted term vocabulary
+ * - Substring and fuzzy matches: trigram index over the vocabulary,
+ *   verified with substring / optimal-string-alignment distance
+ * - Every query token must match (AND); hits are ranked by match quality
+ *   plus frecency and the top-k are kept in a bounded heap
+ *
+ * Use [newSession] for per-keystroke searching: it caches per-token
+ * matches so extending the query only narrows previous results.
+ */
+class ContactSearchIndex private constructor(
+    private val docs: Array<ContactSearchDocument>,
+    private val terms: Array<String>,
+    private val postings: Array<IntArray>,
+    private val trigrams: Map<Long, IntArray>
+) {
+    companion object {
+        private const val FIELD_NAME_FIRST = 0
+        private const val FIELD_NAME = 1
+        private const val FIELD_NICKNAME = 2
+        private const val FIELD_ALIAS = 3
+        private const val FIELD_NUMBER = 4
+        private const val FIELD_BITS = 3
+        private const val FIELD_MASK = (1 shl FIELD_BITS) - 1
+
+        // Indexed by field id
+        private val FIELD_WEIGHTS = doubleArrayOf(1.1, 1.0, 0.95, 1.15, 1.0)
+
+        private const val QUALITY_SUBSTRING = 0.5
+        private const val QUALITY_FUZZY = 0.4
+        private const val FRECENCY_WEIGHT = 0.35
+
+        private const val MIN_FUZZY_LENGTH = 4
+        private const val MIN_SUBSTRING_LENGTH = 3
+
+        private const val PAD = '\u0001'
+
+        val EMPTY = build(emptyList())
+
+        fun build(documents: List<ContactSearchDocument>): ContactSearchIndex {
+            val termPostings = HashMap<String, MutableList<Int>>()
+
+            fun add(term: String, doc: Int, field: Int) {
+                if (term.isEmpty()) return
+                termPostings.getOrPut(term) { mutableListOf() }.add((doc shl FIELD_BITS) or field)
+            }
+
+            documents.forEachIndexed { doc, document ->
+                tokenize(document.contact.name).forEachIndexed { i, token ->
+                    add(token, doc, if (i == 0) FIELD_NAME_FIRST else FIELD_NAME)
+                }
+                document.nicknames.forEach { nickname ->
+                    tokenize(nickname).forEach { add(it, doc, FIELD_NICKNAME) }
+                }
+                document.aliases.forEach { alias ->
+                    tokenize(alias).forEach { add(it, doc, FIELD_ALIAS) }
+                }
+                document.contact.phoneNumbers.forEach { number ->
+                    add(number.filter { it.isDigit() }, doc, FIELD_NUMBER)
+                }
+            }
+
+            val sortedTerms = termPostings.keys.sorted().toTypedArray()
+            val termPostingArrays = Array(sortedTerms.size) { i ->
+                termPostings.getValue(sortedTerms[i]).distinct().toIntArray()
+            }
+
+            val trigramLists = HashMap<Long, MutableList<Int>>()
+            sortedTerms.forEachIndexed { termId, term ->
+                forEachTrigram(term, padded = true) { key ->
+                    val list = trigramLists.getOrPut(key) { mutableListOf() }
+                    if (list.isEmpty() || list[list.size - 1] != termId) list.add(termId)
+                }
+            }
+
+            return ContactSearchIndex(
+                docs = documents.toTypedArray(),
+                terms = sortedTerms,
+                postings = termPostingArrays,
+                trigrams = trigramLists.mapValues { it.value.toIntArray() }
+            )
+        }
+
+        /**
+         * Lowercase, strip accents and split on anything that isn't a letter or digit
+         */
+        fun tokenize(text: String): List<String> {
+            return normalize(text)
+                .split(Regex("[^\\p{L}\\p{Nd}]+"))
+                .filter { it.isNotEmpty() }
+        }
+
+        private val COMBINING_MARKS = Regex("\\p{Mn}+")
+
+        private fun normalize(text: String): String {
+            val decomposed = Normalizer.normalize(text.lowercase(), Normalizer.Form.NFD)
+            return COMBINING_MARKS.replace(decomposed, "")
+        }
+
+        /**
+         * Query tokens; numeric tokens keep only their trailing digits so
+         * "+254712…" finds a contact stored as "0712…"
+         */
+        private fun queryTokens(query: String): List<String> {
+            return tokenize(query).map { token ->
+                if (token.all { it.isDigit() }) token.takeLast(ContactSnapshot.NUMBER_MATCH_DIGITS) else token
+            }
+        }
+
+        private inline fun forEachTrigram(term: String, padded: Boolean, action: (Long) -> Unit) {
+            val text = if (padded) "$PAD$PAD$term" else term
+            for (i in 0..text.length - 3) {
+                action(
+                    (text[i].code.toLong() shl 32) or
+                        (text[i + 1].code.toLong() shl 16) or
+                        text[i + 2].code.toLong()
+                )
+            }
+        }
+
+        /**
+         * Optimal string alignment distance (Levenshtein + adjacent transpositions),
+         * giving up early once every cell in a row exceeds [maxDistance]
+         */
+        internal fun editDistance(a: String, b: String, maxDistance: Int): Int {
+            if (kotlin.math.abs(a.length - b.length) > maxDistance) return maxDistance + 1
+
+            var prevPrev = IntArray(b.length + 1)
+            var prev = IntArray(b.length + 1) { it }
+            var current = IntArray(b.length + 1)
+
+            for (i in 1..a.length) {
+                current[0] = i
+                var rowMin = current[0]
+                for (j in 1..b.length) {
+                    val cost = if (a[i - 1] == b[j - 1]) 0 else 1
+                    var value = minOf(prev[j] + 1, current[j - 1] + 1, prev[j - 1] + cost)
+                    if (i > 1 && j > 1 && a[i - 1] == b[j - 2] && a[i - 2] == b[j - 1]) {
+                        value = minOf(value, prevPrev[j - 2] + 1)
+                    }
+                    current[j] = value
+                    if (value < rowMin) rowMin = value
+                }
+                if (rowMin > maxDistance) return maxDistance + 1
+                val recycled = prevPrev
+                prevPrev = prev
+                prev = current
+                current = recycled
+            }
+            return prev[b.length]
+        }
+    }
+
+    val size: Int get() = docs.size
+
+    /**
+     * Terms matched by a single query token, with their match quality
+     * [prefixStart]/[prefixEnd] bound the prefix range in the vocabulary so a
+     * longer token can narrow it instead of searching again
+     */
+    private class TokenMatches(
+        val token: String,
+        val prefixStart: Int,
+        val prefixEnd: Int,
+        val substringTerms: IntArray,
+        val termQuality: Map<Int, Double>,
+        val termKind: Map<Int, ContactMatchKind>
+    )
+
+    /**
+     * One-shot search, see [Session.search]
+     */
+    fun search(query: String, limit: Int = 10): List<ContactSearchHit> {
+        return newSession().search(query, limit)
+    }
+
+    fun newSession(): Session = Session()
+
+    /**
+     * Search session for incremental query refinement (e.g. a picker's text field).
+     * Not thread-safe; use one per input field.
+     */
+    inner class Session internal constructor() {
+        private val cache = object : LinkedHashMap<String, TokenMatches>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, TokenMatches>?): Boolean {
+                return size > 32
+            }
+        }
+
+        fun search(query: String, limit: Int = 10): List<ContactSearchHit> {
+            val tokens = queryTokens(query)
+            if (tokens.isEmpty() || docs.isEmpty() || limit <= 0) return emptyList()
+
+            val docScore = DoubleArray(docs.size)
+            val docKind = IntArray(docs.size)
+            val docTokenCount = IntArray(docs.size)
+            val tokenBest = DoubleArray(docs.size)
+            val tokenKind = IntArray(docs.size)
+
+            tokens.forEachIndexed { tokenIndex, token ->
+                val matches = matchesFor(token)
+                java.util.Arrays.fill(tokenBest, 0.0)
+
+                for ((termId, quality) in matches.termQuality) {
+                    val kind = matches.termKind.getValue(termId).ordinal
+                    for (posting in postings[termId]) {
+                        val doc = posting ushr FIELD_BITS
+                        // Only docs that matched every previous token can still qualify
+                        if (docTokenCount[doc] != tokenIndex) continue
+                        val score = quality * FIELD_WEIGHTS[posting and FIELD_MASK]
+                        if (score > tokenBest[doc]) {
+                            tokenBest[doc] = score
+                            tokenKind[doc] = kind
+                        }
+                    }
+                }
+
+                for (doc in docs.indices) {
+                    if (tokenBest[doc] > 0.0) {
+                        docScore[doc] += tokenBest[doc]
+                        docKind[doc] = maxOf(docKind[doc], tokenKind[doc])
+                        docTokenCount[doc]++
+                    }
+                }
+            }
+
+            val heap = PriorityQueue<ContactSearchHit>(limit + 1, HIT_ORDER)
+            for (doc in docs.indices) {
+                if (docTokenCount[doc] != tokens.size) continue
+                val document = docs[doc]
+                val score = docScore[doc] / tokens.size + FRECENCY_WEIGHT * document.frecency
+                heap.add(ContactSearchHit(document.contact, score, ContactMatchKind.entries[docKind[doc]]))
+                if (heap.size > limit) heap.poll()
+            }
+
+            val results = ArrayList<ContactSearchHit>(heap.size)
+            while (heap.isNotEmpty()) results.add(heap.poll()!!)
+            results.reverse()
+            return results
+        }
+
+        private fun matchesFor(token: String): TokenMatches {
+            cache[token]?.let { return it }
+
+            // Longest cached prefix of this token narrows the search
+            var previous: TokenMatches? = null
+            for (length in token.length - 1 downTo 1) {
+                previous = cache[token.substring(0, length)]
+                if (previous != null) break
+            }
+
+            val matches = computeMatches(token, previous)
+            cache[token] = matches
+            return matches
+        }
+    }
+
+    private fun computeMatches(token: String, previous: TokenMatches?): TokenMatches {
+        val quality = HashMap<Int, Double>()
+        val kinds = HashMap<Int, ContactMatchKind>()
+
+        fun offer(termId: Int, q: Double, kind: ContactMatchKind) {
+            if (q > (quality[termId] ?: 0.0)) {
+                quality[termId] = q
+                kinds[termId] = kind
+            }
+        }
+
+        // Prefix range, narrowed from the previous token's range
+        val from = previous?.prefixStart ?: 0
+        val to = previous?.prefixEnd ?: terms.size
+        val start = lowerBound(token, from, to)
+        var end = start
+        while (end < to && terms[end].startsWith(token)) {
+            val term = terms[end]
+            if (term.length == token.length) {
+                offer(end, 1.0, ContactMatchKind.EXACT)
+            } else {
+                offer(end, 0.7 + 0.3 * token.length / term.length, ContactMatchKind.PREFIX)
+            }
+            end++
+        }
+
+        // Substring: every inner trigram of the token must be present
+        val substringTerms = when {
+            token.length < MIN_SUBSTRING_LENGTH -> IntArray(0)
+            previous != null && previous.token.length >= MIN_SUBSTRING_LENGTH ->
+                previous.substringTerms.filter { terms[it].contains(token) }.toIntArray()
+            else -> substringCandidates(token)
+        }
+        for (termId in substringTerms) {
+            offer(termId, QUALITY_SUBSTRING, ContactMatchKind.SUBSTRING)
+        }
+
+        // Fuzzy: compare against the same-length prefix of candidate terms
+        if (token.length >= MIN_FUZZY_LENGTH && !token.all { it.isDigit() }) {
+            val maxEdits = if (token.length >= 7) 2 else 1
+            for (termId in fuzzyCandidates(token, maxEdits)) {
+                if (quality.containsKey(termId)) continue
+                val term = terms[termId]
+                var best = maxEdits + 1
+                for (length in (token.length - maxEdits)..(token.length + maxEdits)) {
+                    if (length < 1 || length > term.length) continue
+                    best = minOf(best, editDistance(token, term.substring(0, length), maxEdits))
+                }
+                if (best <= maxEdits) {
+                    offer(termId, QUALITY_FUZZY - 0.1 * (best - 1), ContactMatchKind.FUZZY)
+                }
+            }
+        }
+
+        return TokenMatches(token, start, end, substringTerms, quality, kinds)
+    }
+
+    private fun lowerBound(token: String, from: Int, to: Int): Int {
+        var low = from
+        var high = to
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (terms[mid] < token) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    private fun substringCandidates(token: String): IntArray {
+        var candidates: IntArray? = null
+        forEachTrigram(token, padded = false) { key ->
+            val termIds = trigrams[key] ?: return IntArray(0)
+            candidates = candidates?.let { intersectSorted(it, termIds) } ?: termIds
+        }
+        return (candidates ?: IntArray(0)).filter { terms[it].contains(token) }.toIntArray()
+    }
+
+    private fun fuzzyCandidates(token: String, maxEdits: Int): List<Int> {
+        val counts = HashMap<Int, Int>()
+        var trigramCount = 0
+        forEachTrigram(token, padded = true) { key ->
+            trigramCount++
+            trigrams[key]?.forEach { termId -> counts[termId] = (counts[termId] ?: 0) + 1 }
+        }
+        // Each edit can destroy at most three trigrams
+        val required = maxOf(1, trigramCount - 3 * maxEdits)
+        return counts.filterValues { it >= required }.keys.toList()
+    }
+
+    private fun intersectSorted(a: IntArray, b: IntArray): IntArray {
+        val result = IntArray(minOf(a.size, b.size))
+        var i = 0
+        var j = 0
+        var n = 0
+        while (i < a.size && j < b.size) {
+            when {
+                a[i] < b[j] -> i++
+                a[i] > b[j] -> j++
+                else -> {
+                    result[n++] = a[i]
+                    i++
+                    j++
+                }
+            }
+        }
+        return result.copyOf(n)
+    }
+}
+
+// Min-heap order: lowest score first, ties broken so the final list is name-ordered
+private val HIT_ORDER = Comparator<ContactSearchHit> { a, b ->
+    val byScore = a.score.compareTo(b.score)
+    if (byScore != 0) byScore else b.contact.name.compareTo(a.contact.name, ignoreCase = true)
+}
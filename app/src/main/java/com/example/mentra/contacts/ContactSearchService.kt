@@ -0,0 +1,165 @@
+package com.example.mentra.contacts
+
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.dialer.CallLogManager
+import com.example.mentra.messaging.Contact
+import com.example.mentra.messaging.Conversation
+import com.example.mentra.messaging.SmsManager
+import com.example.mentra.shell.messaging.ContactAlias
+import com.example.mentra.shell.messaging.ContactAliasManager
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.pow
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * CONTACT SEARCH SERVICE
+ * Keeps a [ContactSearchIndex] in step with contacts, aliases and
+ * call/SMS activity for the shell pickers and contact lookups
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Frecency comes from whatever call history and conversations are already
+ * in memory (CallLogManager / SmsManager); nothing extra is queried.
+ */
+@OptIn(FlowPreview::class)
+@Singleton
+class ContactSearchService @Inject constructor(
+    private val contactRepository: ContactRepository,
+    private val callLogManager: CallLogManager,
+    private val smsManager: SmsManager,
+    private val aliasManager: ContactAliasManager
+) {
+    companion object {
+        // A call or message loses half its weight every two weeks
+        private const val FRECENCY_HALF_LIFE_MS = 14 * 24 * 60 * 60 * 1000.0
+        private const val REBUILD_DEBOUNCE_MS = 300L
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val buildMutex = Mutex()
+
+    private val _index = MutableStateFlow(ContactSearchIndex.EMPTY)
+    val index: StateFlow<ContactSearchIndex> = _index.asStateFlow()
+
+    // Snapshot the current index was built from
+    @Volatile
+    private var indexedSnapshot: ContactSnapshot? = null
+
+    init {
+        scope.launch {
+            combine(
+                contactRepository.snapshot,
+                callLogManager.callHistory,
+                smsManager.conversations,
+                aliasManager.aliases
+            ) { snapshot, calls, conversations, aliases ->
+                IndexInputs(snapshot, calls, conversations, aliases)
+            }
+                .debounce(REBUILD_DEBOUNCE_MS)
+                .collect { inputs -> rebuild(inputs) }
+        }
+    }
+
+    /**
+     * Ranked contact search; only the strongest match tier is returned so an
+     * exact/prefix/substring hit is never diluted by typo matches
+     */
+    suspend fun search(query: String, limit: Int = 20): List<Contact> {
+        val hits = currentIndex().search(query, limit)
+        val bestTier = hits.minOfOrNull { it.matchKind.tier } ?: return emptyList()
+        return hits.filter { it.matchKind.tier == bestTier }.map { it.contact }
+    }
+
+    /**
+     * Index for the latest contact snapshot, built on demand if the background
+     * rebuild hasn't caught up yet
+     */
+    suspend fun currentIndex(): ContactSearchIndex {
+        val snapshot = contactRepository.awaitSnapshot()
+        if (indexedSnapshot === snapshot) return _index.value
+
+        rebuild(
+            IndexInputs(
+                snapshot = snapshot,
+                calls = callLogManager.callHistory.value,
+                conversations = smsManager.conversations.value,
+                aliases = aliasManager.aliases.first()
+            )
+        )
+        return _index.value
+    }
+
+    private suspend fun rebuild(inputs: IndexInputs) = withContext(Dispatchers.Default) {
+        buildMutex.withLock {
+            val frecency = computeFrecency(inputs.calls, inputs.conversations)
+
+            val aliasesByContact = inputs.aliases.values.groupBy({ it.contactId }, { it.alias })
+
+            val documents = inputs.snapshot.contacts.map { record ->
+                ContactSearchDocument(
+                    contact = record.toContact(),
+                    nicknames = record.nicknames,
+                    aliases = aliasesByContact[record.id.toString()].orEmpty(),
+                    frecency = record.phones.maxOfOrNull {
+                        frecency[ContactSnapshot.numberKey(it.number)] ?: 0.0
+                    } ?: 0.0
+                )
+            }
+
+            _index.value = ContactSearchIndex.build(documents)
+            indexedSnapshot = inputs.snapshot
+        }
+    }
+
+    /**
+     * Exponentially decayed call/SMS activity per number, normalised to 0..1
+     */
+    private fun computeFrecency(
+        calls: List<CallLogEntry>,
+        conversations: List<Conversation>
+    ): Map<String, Double> {
+        val now = System.currentTimeMillis()
+        val scores = HashMap<String, Double>()
+
+        fun add(number: String, timestamp: Long, weight: Double) {
+            val key = ContactSnapshot.numberKey(number)
+            if (key.isEmpty()) return
+            val age = (now - timestamp).coerceAtLeast(0L)
+            scores[key] = (scores[key] ?: 0.0) + weight * 0.5.pow(age / FRECENCY_HALF_LIFE_MS)
+        }
+
+        calls.forEach { add(it.number, it.timestamp, 1.0) }
+        conversations.forEach { conversation ->
+            val last = conversation.lastMessage ?: return@forEach
+            add(conversation.address, last.timestamp, minOf(conversation.messageCount, 10) / 5.0)
+        }
+
+        val max = scores.values.maxOrNull() ?: return emptyMap()
+        return scores.mapValues { it.value / max }
+    }
+
+    private data class IndexInputs(
+        val snapshot: ContactSnapshot,
+        val calls: List<CallLogEntry>,
+        val conversations: List<Conversation>,
+        val aliases: Map<String, ContactAlias>
+    )
+}
+
+/** EXACT, PREFIX and SUBSTRING are all "real" matches; FUZZY is a typo guess */
+private val ContactMatchKind.tier: Int
+    get() = if (this == ContactMatchKind.FUZZY) 1 else 0
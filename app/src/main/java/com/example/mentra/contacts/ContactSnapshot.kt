@@ -0,0 +1,147 @@
+package com.example.mentra.contacts
+
+import com.example.mentra.messaging.Contact
+
+/**
+ * A phone number belonging to a contact
+ * [dataId] is the ContactsContract data row id (stable per number)
+ */
+data class ContactPhone(
+    val dataId: Long,
+    val number: String
+)
+
+/**
+ * A contact with all of its phone numbers, as loaded by [ContactRepository]
+ */
+data class ContactRecord(
+    val id: Long,
+    val lookupKey: String?,
+    val name: String,
+    val phones: List<ContactPhone>,
+    val photoUri: String?,
+    val isStarred: Boolean,
+    val lastUpdated: Long,
+    val nicknames: List<String> = emptyList()
+) {
+    val phoneNumbers: List<String>
+        get() = phones.map { it.number }
+
+    /**
+     * Map to the messaging/shell [Contact] model
+     */
+    fun toContact(): Contact = Contact(
+        id = id.toString(),
+        name = name,
+        phoneNumbers = phoneNumbers,
+        photoUri = photoUri
+    )
+
+    internal class Builder(
+        private val id: Long,
+        private val lookupKey: String?,
+        private val name: String,
+        private val photoUri: String?,
+        private val isStarred: Boolean,
+        private val lastUpdated: Long
+    ) {
+        private val phones = mutableListOf<ContactPhone>()
+        private val nicknames = mutableListOf<String>()
+
+        fun addPhone(dataId: Long, number: String) {
+            phones.add(ContactPhone(dataId, number))
+        }
+
+        fun addNickname(nickname: String) {
+            if (nickname.isNotBlank()) nicknames.add(nickname)
+        }
+
+        fun build(): ContactRecord? {
+            if (phones.isEmpty()) return null
+            return ContactRecord(id, lookupKey, name, phones.toList(), photoUri, isStarred, lastUpdated, nicknames.toList())
+        }
+    }
+}
+
+/**
+ * Immutable view of all contacts at one point in time
+ *
+ * Lookup indices are built lazily on first use and never mutated, so a
+ * snapshot can be read from any thread.
+ */
+class ContactSnapshot private constructor(
+    val contacts: List<ContactRecord>
+) {
+    companion object {
+        // Numbers are matched on their trailing digits so +254712… and 0712… agree
+        const val NUMBER_MATCH_DIGITS = 9
+
+        val EMPTY = ContactSnapshot(emptyList())
+
+        fun of(records: Collection<ContactRecord>): ContactSnapshot {
+            return ContactSnapshot(
+                records.sortedWith(compareBy(String.CASE_INSENSITIVE_ORDER) { it.name })
+            )
+        }
+
+        fun numberKey(number: String): String {
+            return number.filter { it.isDigit() }.takeLast(NUMBER_MATCH_DIGITS)
+        }
+    }
+
+    val size: Int get() = contacts.size
+
+    private val byId: Map<Long, ContactRecord> by lazy {
+        contacts.associateBy { it.id }
+    }
+
+    private val byNumber: Map<String, ContactRecord> by lazy {
+        val map = HashMap<String, ContactRecord>(contacts.size * 2)
+        for (contact in contacts) {
+            for (phone in contact.phones) {
+                val key = numberKey(phone.number)
+                if (key.isNotEmpty()) map.putIfAbsent(key, contact)
+            }
+        }
+        map
+    }
+
+    /** Contacts mapped to the messaging/shell model, computed once per snapshot */
+    val asContacts: List<Contact> by lazy {
+        contacts.map { it.toContact() }
+    }
+
+    /** Starred contacts in name order */
+    val favorites: List<ContactRecord> by lazy {
+        contacts.filter { it.isStarred }
+    }
+
+    fun findById(id: Long): ContactRecord? = byId[id]
+
+    fun findByNumber(number: String): ContactRecord? {
+        val key = numberKey(number)
+        return if (key.isEmpty()) null else byNumber[key]
+    }
+
+    /**
+     * Case-insensitive substring search over names and numbers
+     */
+    fun search(query: String, limit: Int = Int.MAX_VALUE): List<ContactRecord> {
+        val trimmed = query.trim()
+        if (trimmed.isEmpty()) return contacts.take(limit)
+
+        val digits = trimmed.filter { it.isDigit() }
+        val results = mutableListOf<ContactRecord>()
+        for (contact in contacts) {
+            val nameMatch = contact.name.contains(trimmed, ignoreCase = true)
+            val numberMatch = digits.isNotEmpty() && contact.phones.any {
+                it.number.contains(trimmed) || it.number.filter { c -> c.isDigit() }.contains(digits)
+            }
+            if (nameMatch || numberMatch) {
+                results.add(contact)
+                if (results.size >= limit) break
+            }
+        }
+        return results
+    }
+}
@@ -10,13 +10,17 @@ import android.os.Looper
 import android.provider.CallLog
 import android.provider.ContactsContract
 import androidx.core.content.ContextCompat
+import com.example.mentra.dialer.stats.CallStatsRepository
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import java.text.SimpleDateFormat
@@ -36,10 +40,14 @@ import javax.inject.Singleton
  * - Timestamp
  * - SIM used
  * - Call end reason
+ *
+ * Statistics are not recomputed from the list: each load folds only the
+ * new call-log rows into [CallStatsRepository]'s aggregates.
  */
 @Singleton
 class CallLogManager @Inject constructor(
-    @ApplicationContext private val context: Context
+    @ApplicationContext private val context: Context,
+    private val callStatsRepository: CallStatsRepository
 ) {
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
 
@@ -49,6 +57,29 @@ class CallLogManager @Inject constructor(
     private val _recentCalls = MutableStateFlow<List<CallLogEntry>>(emptyList())
     val recentCalls: StateFlow<List<CallLogEntry>> = _recentCalls.asStateFlow()
 
+    // Unread missed calls, counted while the call log is loaded
+    private val _missedCallCount = MutableStateFlow(0)
+    val missedCallCount: StateFlow<Int> = _missedCallCount.asStateFlow()
+
+    // Precomputed totals from the stats table
+    val callStatistics: StateFlow<CallStatistics> = callStatsRepository.totals
+        .map { totals ->
+            CallStatistics(
+                totalCalls = totals.totalCalls,
+                incomingCalls = totals.incoming,
+                outgoingCalls = totals.outgoing,
+                missedCalls = totals.missed,
+                rejectedCalls = totals.rejected,
+                totalDuration = totals.talkSeconds,
+                averageDuration = if (totals.totalCalls > 0) totals.talkSeconds / totals.totalCalls else 0L
+            )
+        }
+        .stateIn(scope, SharingStarted.Eagerly, CallStatistics.EMPTY)
+
+    // Calls grouped by number key, rebuilt on each load
+    @Volatile
+    private var callsByNumber: Map<String, List<CallLogEntry>> = emptyMap()
+
     // ContentObserver for realtime call log updates
     private var callLogObserver: ContentObserver? = null
     private var isObserving = false
@@ -118,11 +149,15 @@ class CallLogManager @Inject constructor(
         if (!hasCallLogPermission()) {
             _callHistory.value = emptyList()
             _recentCalls.value = emptyList()
+            _missedCallCount.value = 0
+            callsByNumber = emptyMap()
             return@withContext
         }
 
         try {
             val entries = mutableListOf<CallLogEntry>()
+            val byNumber = HashMap<String, MutableList<CallLogEntry>>()
+            var missedCount = 0
 
             val projection = arrayOf(
                 CallLog.Calls._ID,
@@ -168,26 +203,36 @@ class CallLogManager @Inject constructor(
                     // Detect call source (WhatsApp, Telegram, etc.)
                     val callSource = CallSource.fromAccountId(accountId)
 
-                    entries.add(
-                        CallLogEntry(
-                            id = id,
-                            number = number,
-                            contactName = name,
-                            callType = mapCallType(type),
-                            timestamp = date,
-                            duration = duration,
-                            photoUri = photoUri,
-                            simId = accountId,
-                            isNew = type == CallLog.Calls.MISSED_TYPE,
-                            callSource = callSource
-                        )
+                    val entry = CallLogEntry(
+                        id = id,
+                        number = number,
+                        contactName = name,
+                        callType = mapCallType(type),
+                        timestamp = date,
+                        duration = duration,
+                        photoUri = photoUri,
+                        simId = accountId,
+                        isNew = type == CallLog.Calls.MISSED_TYPE,
+                        callSource = callSource
                     )
+                    entries.add(entry)
+                    byNumber.getOrPut(CallStatsRepository.numberKey(number)) { mutableListOf() }.add(entry)
+                    if (entry.callType == CallType.MISSED && entry.isNew) missedCount++
                 }
             }
 
             // Update both flows with ALL entries
             _callHistory.value = entries
             _recentCalls.value = entries  // Same as callHistory - ALL logs
+            _missedCallCount.value = missedCount
+            callsByNumber = byNumber
+
+            // Fold new rows into the persisted aggregates
+            try {
+                callStatsRepository.sync(entries)
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
 
         } catch (e: Exception) {
             e.printStackTrace()
@@ -197,18 +242,12 @@ class CallLogManager @Inject constructor(
     }
 
     /**
-     * Get calls for specific contact
+     * Get calls for specific contact (newest first)
+     * Served from the per-number grouping built while loading
      */
-    suspend fun getCallsForNumber(phoneNumber: String): List<CallLogEntry> = withContext(Dispatchers.IO) {
-        if (!hasCallLogPermission()) return@withContext emptyList()
-
-        val normalizedNumber = phoneNumber.filter { it.isDigit() || it == '+' }
-
-        return@withContext _callHistory.value.filter { entry ->
-            val entryNumber = entry.number.filter { it.isDigit() || it == '+' }
-            entryNumber.endsWith(normalizedNumber.takeLast(10)) ||
-            normalizedNumber.endsWith(entryNumber.takeLast(10))
-        }
+    suspend fun getCallsForNumber(phoneNumber: String): List<CallLogEntry> {
+        if (!hasCallLogPermission()) return emptyList()
+        return callsByNumber[CallStatsRepository.numberKey(phoneNumber)].orEmpty()
     }
 
     /**
@@ -249,6 +288,9 @@ class CallLogManager @Inject constructor(
             )
             _callHistory.value = emptyList()
             _recentCalls.value = emptyList()
+            _missedCallCount.value = 0
+            callsByNumber = emptyMap()
+            callStatsRepository.clear()
             return@withContext true
         } catch (e: Exception) {
             e.printStackTrace()
@@ -284,48 +326,35 @@ class CallLogManager @Inject constructor(
     /**
      * Get missed call count
      */
-    fun getMissedCallCount(): Int {
-        return _callHistory.value.count {
-            it.callType == CallType.MISSED && it.isNew
-        }
-    }
+    fun getMissedCallCount(): Int = _missedCallCount.value
 
     /**
      * Get call statistics
      */
-    fun getCallStatistics(): CallStatistics {
-        val history = _callHistory.value
-
-        return CallStatistics(
-            totalCalls = history.size,
-            incomingCalls = history.count { it.callType == CallType.INCOMING },
-            outgoingCalls = history.count { it.callType == CallType.OUTGOING },
-            missedCalls = history.count { it.callType == CallType.MISSED },
-            rejectedCalls = history.count { it.callType == CallType.REJECTED },
-            totalDuration = history.sumOf { it.duration },
-            averageDuration = if (history.isNotEmpty()) {
-                history.sumOf { it.duration } / history.size
-            } else 0L
-        )
-    }
-
-    private fun mapCallType(type: Int): CallType {
-        return when (type) {
-            CallLog.Calls.INCOMING_TYPE -> CallType.INCOMING
-            CallLog.Calls.OUTGOING_TYPE -> CallType.OUTGOING
-            CallLog.Calls.MISSED_TYPE -> CallType.MISSED
-            CallLog.Calls.REJECTED_TYPE -> CallType.REJECTED
-            CallLog.Calls.BLOCKED_TYPE -> CallType.BLOCKED
-            CallLog.Calls.VOICEMAIL_TYPE -> CallType.VOICEMAIL
-            else -> CallType.UNKNOWN
-        }
-    }
+    fun getCallStatistics(): CallStatistics = callStatistics.value
 
     private fun hasCallLogPermission(): Boolean {
         return ContextCompat.checkSelfPermission(
             context, Manifest.permission.READ_CALL_LOG
         ) == PackageManager.PERMISSION_GRANTED
     }
+
+    companion object {
+        /**
+         * Map a [CallLog.Calls.TYPE] value; shared with the activity timeline
+         */
+        fun mapCallType(type: Int): CallType {
+            return when (type) {
+                CallLog.Calls.INCOMING_TYPE -> CallType.INCOMING
+                CallLog.Calls.OUTGOING_TYPE -> CallType.OUTGOING
+                CallLog.Calls.MISSED_TYPE -> CallType.MISSED
+                CallLog.Calls.REJECTED_TYPE -> CallType.REJECTED
+                CallLog.Calls.BLOCKED_TYPE -> CallType.BLOCKED
+                CallLog.Calls.VOICEMAIL_TYPE -> CallType.VOICEMAIL
+                else -> CallType.UNKNOWN
+            }
+        }
+    }
 }
 
 /**
@@ -451,5 +480,9 @@ data class CallStatistics(
     val rejectedCalls: Int,
     val totalDuration: Long,
     val averageDuration: Long
-)
+) {
+    companion object {
+        val EMPTY = CallStatistics(0, 0, 0, 0, 0, 0L, 0L)
+    }
+}
 
@@ -7,17 +7,20 @@ import android.util.Log
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.Job
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
-import kotlinx.coroutines.isActive
-import kotlinx.coroutines.launch
-import java.text.SimpleDateFormat
-import java.util.Calendar
-import java.util.Locale
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.stateIn
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZonedDateTime
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -28,19 +31,22 @@ import javax.inject.Singleton
  *
  * Real-time call billing calculator for Kenyan MNOs
  *
- * Supported Networks:
+ * Rates live in [TariffTable] (per operator, per time band, per-second or
+ * per-minute rounding). Defaults:
  * - Safaricom: Peak (8am-10pm): Ksh 4.87/min, Off-peak (10pm-8am): Ksh 2.50/min
  * - Airtel: Peak: Ksh 4.5/min, Off-peak: Ksh 2.0/min
  * - Telkom: Peak: Ksh 4.0/min, Off-peak: Ksh 2.0/min
  *
  * Features:
- * - Real-time cost calculation per second
+ * - Cost derived on demand from the call start time - no background polling;
+ *   the live flows only tick while something (the in-call UI) collects them
+ * - Calls crossing a peak/off-peak boundary are split and priced per band
  * - MNO detection from SIM card
- * - Peak/Off-peak rate detection
  * - Cost tracking for outgoing calls only
  * - Billing starts when call is answered, not when dialing
  */
 
+@OptIn(ExperimentalCoroutinesApi::class)
 @Singleton
 class NexusBillCalculator @Inject constructor(
     @ApplicationContext private val context: Context
@@ -48,50 +54,48 @@ class NexusBillCalculator @Inject constructor(
     companion object {
         private const val TAG = "NexusBillCalculator"
 
-        // Peak hours: 8:00 AM to 9:59 PM (10 PM is start of off-peak)
-        private const val PEAK_START_HOUR = 8
-        private const val PEAK_END_HOUR = 22 // 10 PM
-
-        // Rate constants in KSH per minute
-        object SafaricomRates {
-            const val PEAK_RATE = 4.87
-            const val OFF_PEAK_RATE = 2.50
-        }
-
-        object AirtelRates {
-            const val PEAK_RATE = 4.50
-            const val OFF_PEAK_RATE = 2.00
-        }
-
-        object TelkomRates {
-            const val PEAK_RATE = 4.00
-            const val OFF_PEAK_RATE = 2.00
-        }
-
-        // Default rates for unknown networks
-        object DefaultRates {
-            const val PEAK_RATE = 5.00
-            const val OFF_PEAK_RATE = 3.00
-        }
+        // Duration display granularity for the live billing info
+        private const val INFO_TICK_MS = 1000L
     }
 
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
 
-    // Billing state
-    private val _currentBillingInfo = MutableStateFlow<BillingInfo?>(null)
-    val currentBillingInfo: StateFlow<BillingInfo?> = _currentBillingInfo.asStateFlow()
-
-    private val _totalCost = MutableStateFlow(0.0)
-    val totalCost: StateFlow<Double> = _totalCost.asStateFlow()
+    // Active call being billed (null when idle)
+    private val _session = MutableStateFlow<BillingSession?>(null)
 
     private val _isTracking = MutableStateFlow(false)
     val isTracking: StateFlow<Boolean> = _isTracking.asStateFlow()
 
-    // Tracking job
-    private var billingJob: Job? = null
-    private var billStartTime: Long = 0
-    private var currentSimSlot: Int = -1
-    private var currentMno: MobileNetworkOperator = MobileNetworkOperator.UNKNOWN
+    /**
+     * Live billing info, recomputed once per second only while collected
+     */
+    val currentBillingInfo: StateFlow<BillingInfo?> = _session
+        .flatMapLatest { session ->
+            if (session == null) flowOf(null)
+            else flow {
+                while (true) {
+                    emit(session.infoAt(System.currentTimeMillis()))
+                    delay(INFO_TICK_MS)
+                }
+            }
+        }
+        .stateIn(scope, SharingStarted.WhileSubscribed(), null)
+
+    /**
+     * Live call cost; wakes only when the next billing unit is charged
+     */
+    val totalCost: StateFlow<Double> = _session
+        .flatMapLatest { session ->
+            if (session == null) flowOf(0.0)
+            else flow {
+                while (true) {
+                    val now = System.currentTimeMillis()
+                    emit(session.chargeAt(now).totalCost)
+                    delay((session.tariff.nextChangeMillis(session.startTime, now) - now).coerceAtLeast(1L))
+                }
+            }
+        }
+        .stateIn(scope, SharingStarted.WhileSubscribed(), 0.0)
 
     /**
      * Start tracking call billing for an outgoing call
@@ -105,67 +109,46 @@ class NexusBillCalculator @Inject constructor(
             stopTracking()
         }
 
-        currentSimSlot = simSlot
-        currentMno = detectMno(simSlot)
-        billStartTime = System.currentTimeMillis()
-
-        val isPeak = isPeakHours()
-        val ratePerMinute = getRatePerMinute(currentMno, isPeak)
-        val ratePerSecond = ratePerMinute / 60.0
-
-        Log.d(TAG, "Starting billing: MNO=$currentMno, Peak=$isPeak, Rate=$ratePerMinute/min")
-
-        _currentBillingInfo.value = BillingInfo(
-            mno = currentMno,
+        val mno = detectMno(simSlot)
+        val session = BillingSession(
+            mno = mno,
             simSlot = simSlot,
-            isPeakHours = isPeak,
-            ratePerMinute = ratePerMinute,
-            ratePerSecond = ratePerSecond,
-            startTime = billStartTime,
-            duration = 0,
-            totalCost = 0.0
+            tariff = TariffTable.forOperator(mno),
+            startTime = System.currentTimeMillis(),
+            zone = ZoneId.systemDefault()
         )
 
-        _totalCost.value = 0.0
-        _isTracking.value = true
+        Log.d(TAG, "Starting billing: MNO=$mno, Rounding=${session.tariff.rounding}")
 
-        // Start real-time cost tracking
-        billingJob = scope.launch {
-            while (isActive && _isTracking.value) {
-                updateBilling()
-                delay(1000) // Update every second
-            }
-        }
+        _session.value = session
+        _isTracking.value = true
     }
 
     /**
      * Stop tracking and return final billing info
      */
     fun stopTracking(): BillingInfo? {
+        val session = _session.value
+        _session.value = null
         _isTracking.value = false
-        billingJob?.cancel()
-        billingJob = null
 
-        val finalInfo = _currentBillingInfo.value?.copy(
-            duration = if (billStartTime > 0) (System.currentTimeMillis() - billStartTime) / 1000 else 0,
-            totalCost = _totalCost.value
-        )
+        val finalInfo = session?.infoAt(System.currentTimeMillis())
 
         Log.d(TAG, "Billing stopped: Duration=${finalInfo?.duration}s, Cost=${finalInfo?.totalCost} KSH")
 
-        _currentBillingInfo.value = null
-        billStartTime = 0
-        currentSimSlot = -1
-        currentMno = MobileNetworkOperator.UNKNOWN
-
         return finalInfo
     }
 
+    /**
+     * Billing info for the active call as of now (null when idle)
+     */
+    fun getBillingInfo(): BillingInfo? = _session.value?.infoAt(System.currentTimeMillis())
+
     /**
      * Get formatted current cost string
      */
     fun getFormattedCost(): String {
-        val cost = _totalCost.value
+        val cost = getBillingInfo()?.totalCost ?: 0.0
         return "KSH %.2f".format(cost)
     }
 
@@ -173,34 +156,8 @@ class NexusBillCalculator @Inject constructor(
      * Get estimated final cost (for display during call)
      */
     fun getEstimatedCostDisplay(): String {
-        val info = _currentBillingInfo.value ?: return "KSH 0.00"
-        return "KSH %.2f (${info.mno.displayName})".format(_totalCost.value)
-    }
-
-    /**
-     * Update billing calculation
-     */
-    private fun updateBilling() {
-        if (!_isTracking.value || billStartTime == 0L) return
-
-        val duration = (System.currentTimeMillis() - billStartTime) / 1000
-        val currentInfo = _currentBillingInfo.value ?: return
-
-        // Recalculate rate in case peak/off-peak changed during call
-        val isPeakNow = isPeakHours()
-        val ratePerMinute = getRatePerMinute(currentMno, isPeakNow)
-        val ratePerSecond = ratePerMinute / 60.0
-
-        val totalCost = duration * ratePerSecond
-
-        _totalCost.value = totalCost
-        _currentBillingInfo.value = currentInfo.copy(
-            isPeakHours = isPeakNow,
-            ratePerMinute = ratePerMinute,
-            ratePerSecond = ratePerSecond,
-            duration = duration,
-            totalCost = totalCost
-        )
+        val info = getBillingInfo() ?: return "KSH 0.00"
+        return "KSH %.2f (${info.mno.displayName})".format(info.totalCost)
     }
 
     /**
@@ -240,27 +197,6 @@ class NexusBillCalculator @Inject constructor(
             MobileNetworkOperator.UNKNOWN
         }
     }
-
-    /**
-     * Check if current time is peak hours
-     */
-    private fun isPeakHours(): Boolean {
-        val calendar = Calendar.getInstance()
-        val currentHour = calendar.get(Calendar.HOUR_OF_DAY)
-        return currentHour in PEAK_START_HOUR until PEAK_END_HOUR
-    }
-
-    /**
-     * Get rate per minute based on MNO and time of day
-     */
-    private fun getRatePerMinute(mno: MobileNetworkOperator, isPeak: Boolean): Double {
-        return when (mno) {
-            MobileNetworkOperator.SAFARICOM -> if (isPeak) SafaricomRates.PEAK_RATE else SafaricomRates.OFF_PEAK_RATE
-            MobileNetworkOperator.AIRTEL -> if (isPeak) AirtelRates.PEAK_RATE else AirtelRates.OFF_PEAK_RATE
-            MobileNetworkOperator.TELKOM -> if (isPeak) TelkomRates.PEAK_RATE else TelkomRates.OFF_PEAK_RATE
-            MobileNetworkOperator.UNKNOWN -> if (isPeak) DefaultRates.PEAK_RATE else DefaultRates.OFF_PEAK_RATE
-        }
-    }
 }
 
 /**
@@ -273,8 +209,42 @@ enum class MobileNetworkOperator(val displayName: String) {
     UNKNOWN("Unknown")
 }
 
+/**
+ * An answered call being billed
+ * Everything else is derived from the start time on demand
+ */
+internal data class BillingSession(
+    val mno: MobileNetworkOperator,
+    val simSlot: Int,
+    val tariff: OperatorTariff,
+    val startTime: Long,
+    val zone: ZoneId
+) {
+    fun chargeAt(nowMillis: Long): CallCharge = tariff.price(startTime, nowMillis, zone)
+
+    fun infoAt(nowMillis: Long): BillingInfo {
+        val charge = chargeAt(nowMillis)
+        val now = ZonedDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), zone)
+        val band = tariff.bandAt(now.hour * 60 + now.minute)
+
+        return BillingInfo(
+            mno = mno,
+            simSlot = simSlot,
+            isPeakHours = band.isPeak,
+            ratePerMinute = band.ratePerMinute,
+            ratePerSecond = band.ratePerMinute / 60.0,
+            startTime = startTime,
+            duration = charge.durationSeconds,
+            totalCost = charge.totalCost,
+            segments = charge.segments
+        )
+    }
+}
+
 /**
  * Billing information data class
+ * Rate fields describe the band in force now; [segments] break the cost
+ * down per band for calls crossing a peak/off-peak boundary
  */
 data class BillingInfo(
     val mno: MobileNetworkOperator,
@@ -284,7 +254,8 @@ data class BillingInfo(
     val ratePerSecond: Double,
     val startTime: Long,
     val duration: Long, // in seconds
-    val totalCost: Double // in KSH
+    val totalCost: Double, // in KSH
+    val segments: List<BillingSegment> = emptyList()
 ) {
     fun getFormattedDuration(): String {
         val minutes = duration / 60
@@ -0,0 +1,202 @@
+package com.example.mentra.dialer.billing
+
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalTime
+import java.time.ZoneId
+import java.time.ZonedDateTime
+
+/**
+ * ═══════════════════════════════════════════════════════════════════════════
+ * TARIFF TABLE
+ * ═══════════════════════════════════════════════════════════════════════════
+ *
+ * Data-driven call rates per operator:
+ * - Each operator has a set of time-of-day bands covering the whole day
+ * - Each band has its own per-minute rate
+ * - Rounding decides the billing unit (per second or per started minute)
+ *
+ * A call is split into segments at every band boundary it crosses, and each
+ * billing unit is charged at the rate in force when that unit started.
+ */
+
+/**
+ * Billing unit used by an operator
+ */
+enum class BillingRounding(val unitSeconds: Int) {
+    PER_SECOND(1),
+    PER_MINUTE(60)
+}
+
+/**
+ * A time-of-day band, [startMinute] inclusive to [endMinute] exclusive,
+ * both in minutes after local midnight (0..1440)
+ */
+data class TariffBand(
+    val startMinute: Int,
+    val endMinute: Int,
+    val ratePerMinute: Double,
+    val isPeak: Boolean
+) {
+    init {
+        require(startMinute in 0 until MINUTES_PER_DAY) { "Band start out of range: $startMinute" }
+        require(endMinute in (startMinute + 1)..MINUTES_PER_DAY) { "Band end out of range: $endMinute" }
+    }
+
+    fun contains(minuteOfDay: Int): Boolean = minuteOfDay in startMinute until endMinute
+
+    val label: String
+        get() = if (isPeak) "Peak" else "Off-peak"
+}
+
+/**
+ * Rates for one operator
+ */
+data class OperatorTariff(
+    val mno: MobileNetworkOperator,
+    val bands: List<TariffBand>,
+    val rounding: BillingRounding
+) {
+    init {
+        // Bands must tile the day with no gaps or overlaps
+        val sorted = bands.sortedBy { it.startMinute }
+        require(sorted.isNotEmpty() && sorted.first().startMinute == 0 && sorted.last().endMinute == MINUTES_PER_DAY) {
+            "Tariff bands for $mno must cover the whole day"
+        }
+        sorted.zipWithNext().forEach { (a, b) ->
+            require(a.endMinute == b.startMinute) { "Tariff bands for $mno have a gap or overlap at minute ${a.endMinute}" }
+        }
+    }
+
+    private val sortedBands = bands.sortedBy { it.startMinute }
+
+    fun bandAt(minuteOfDay: Int): TariffBand {
+        return sortedBands.first { it.contains(minuteOfDay) }
+    }
+
+    /**
+     * Price a call from [startMillis] to [endMillis] in [zone]
+     */
+    fun price(startMillis: Long, endMillis: Long, zone: ZoneId): CallCharge {
+        val durationMillis = (endMillis - startMillis).coerceAtLeast(0L)
+        val unitMillis = rounding.unitSeconds * 1000L
+        val totalUnits = ceilDiv(durationMillis, unitMillis)
+        val billedEndOffset = totalUnits * unitMillis
+
+        val segments = mutableListOf<BillingSegment>()
+        var offset = 0L
+        while (offset < billedEndOffset) {
+            val at = ZonedDateTime.ofInstant(Instant.ofEpochMilli(startMillis + offset), zone)
+            val band = bandAt(at.hour * 60 + at.minute)
+            val bandEndOffset = bandEndMillis(at, band, zone) - startMillis
+            // Always move forward, even across odd DST transitions
+            val segmentEnd = minOf(bandEndOffset.coerceAtLeast(offset + 1), billedEndOffset)
+
+            // Units whose start falls in [offset, segmentEnd)
+            val units = ceilDiv(segmentEnd, unitMillis) - ceilDiv(offset, unitMillis)
+            if (units > 0) {
+                segments.add(
+                    BillingSegment(
+                        startMillis = startMillis + offset,
+                        endMillis = startMillis + minOf(segmentEnd, durationMillis),
+                        band = band,
+                        billedSeconds = units * rounding.unitSeconds,
+                        cost = units * rounding.unitSeconds * band.ratePerMinute / 60.0
+                    )
+                )
+            }
+            offset = segmentEnd
+        }
+
+        return CallCharge(
+            durationSeconds = durationMillis / 1000,
+            billedSeconds = totalUnits * rounding.unitSeconds,
+            segments = segments
+        )
+    }
+
+    /**
+     * Epoch millis at which the billed amount next changes
+     * (a new unit is charged as soon as the call runs past a unit boundary)
+     */
+    fun nextChangeMillis(startMillis: Long, nowMillis: Long): Long {
+        val unitMillis = rounding.unitSeconds * 1000L
+        val elapsed = (nowMillis - startMillis).coerceAtLeast(0L)
+        return startMillis + ceilDiv(elapsed, unitMillis) * unitMillis + 1
+    }
+
+    private fun bandEndMillis(at: ZonedDateTime, band: TariffBand, zone: ZoneId): Long {
+        val date: LocalDate = at.toLocalDate()
+        val end = if (band.endMinute == MINUTES_PER_DAY) {
+            date.plusDays(1).atStartOfDay(zone)
+        } else {
+            ZonedDateTime.of(date, LocalTime.of(band.endMinute / 60, band.endMinute % 60), zone)
+        }
+        return end.toInstant().toEpochMilli()
+    }
+}
+
+/**
+ * Part of a call billed within a single tariff band
+ */
+data class BillingSegment(
+    val startMillis: Long,
+    val endMillis: Long,
+    val band: TariffBand,
+    val billedSeconds: Long,
+    val cost: Double
+)
+
+/**
+ * Result of pricing a call
+ */
+data class CallCharge(
+    val durationSeconds: Long,
+    val billedSeconds: Long,
+    val segments: List<BillingSegment>
+) {
+    val totalCost: Double
+        get() = segments.sumOf { it.cost }
+}
+
+/**
+ * Built-in Kenyan MNO tariffs
+ * Peak runs 8:00 AM to 10:00 PM, off-peak 10:00 PM to 8:00 AM
+ */
+object TariffTable {
+    private const val PEAK_START = 8 * 60
+    private const val PEAK_END = 22 * 60
+
+    val DEFAULT: Map<MobileNetworkOperator, OperatorTariff> = listOf(
+        dayNight(MobileNetworkOperator.SAFARICOM, peak = 4.87, offPeak = 2.50, rounding = BillingRounding.PER_SECOND),
+        dayNight(MobileNetworkOperator.AIRTEL, peak = 4.50, offPeak = 2.00, rounding = BillingRounding.PER_SECOND),
+        dayNight(MobileNetworkOperator.TELKOM, peak = 4.00, offPeak = 2.00, rounding = BillingRounding.PER_SECOND),
+        dayNight(MobileNetworkOperator.UNKNOWN, peak = 5.00, offPeak = 3.00, rounding = BillingRounding.PER_SECOND)
+    ).associateBy { it.mno }
+
+    fun forOperator(mno: MobileNetworkOperator): OperatorTariff {
+        return DEFAULT[mno] ?: DEFAULT.getValue(MobileNetworkOperator.UNKNOWN)
+    }
+
+    /**
+     * Two-rate tariff with the standard peak window
+     */
+    fun dayNight(
+        mno: MobileNetworkOperator,
+        peak: Double,
+        offPeak: Double,
+        rounding: BillingRounding
+    ) = OperatorTariff(
+        mno = mno,
+        bands = listOf(
+            TariffBand(0, PEAK_START, offPeak, isPeak = false),
+            TariffBand(PEAK_START, PEAK_END, peak, isPeak = true),
+            TariffBand(PEAK_END, MINUTES_PER_DAY, offPeak, isPeak = false)
+        ),
+        rounding = rounding
+    )
+}
+
+private const val MINUTES_PER_DAY = 24 * 60
+
+private fun ceilDiv(a: Long, b: Long): Long = if (a <= 0L) 0L else (a + b - 1) / b
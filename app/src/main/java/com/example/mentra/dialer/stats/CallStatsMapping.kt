@@ -0,0 +1,78 @@
+package com.example.mentra.dialer.stats
+
+import com.example.mentra.core.data.local.entity.CallContactStatsEntity
+import com.example.mentra.core.data.local.entity.CallDailyStatsEntity
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.dialer.CallType
+import java.time.Instant
+import java.time.ZoneId
+
+/**
+ * Per-number and per-day aggregates over a batch of calls
+ */
+internal class CallAggregates(
+    val contacts: Map<String, CallContactStatsEntity>,
+    val days: Map<Long, CallDailyStatsEntity>
+) {
+    /** Per-number rows to store once this batch is folded into [existing] */
+    fun contactsMergedInto(existing: Map<String, CallContactStatsEntity>): List<CallContactStatsEntity> =
+        contacts.values.map { existing[it.numberKey]?.merge(it) ?: it }
+
+    /** Per-day rows to store once this batch is folded into [existing] */
+    fun daysMergedInto(existing: Map<Long, CallDailyStatsEntity>): List<CallDailyStatsEntity> =
+        days.values.map { existing[it.epochDay]?.merge(it) ?: it }
+}
+
+/**
+ * Aggregate [entries] by number and by local day in [zone]
+ */
+internal fun aggregateCalls(entries: List<CallLogEntry>, zone: ZoneId): CallAggregates {
+    val contacts = HashMap<String, CallContactStatsEntity>()
+    val days = HashMap<Long, CallDailyStatsEntity>()
+
+    for (entry in entries) {
+        val key = CallStatsRepository.numberKey(entry.number)
+        val contact = entry.toContactStats(key)
+        contacts[key] = contacts[key]?.merge(contact) ?: contact
+
+        val day = Instant.ofEpochMilli(entry.timestamp).atZone(zone).toLocalDate().toEpochDay()
+        val daily = entry.toDailyStats(day)
+        days[day] = days[day]?.merge(daily) ?: daily
+    }
+
+    return CallAggregates(contacts, days)
+}
+
+/**
+ * One call as a per-number aggregate, ready to merge into [key]'s row
+ */
+internal fun CallLogEntry.toContactStats(key: String) = CallContactStatsEntity(
+    numberKey = key,
+    number = number,
+    contactName = contactName,
+    incoming = if (callType == CallType.INCOMING) 1 else 0,
+    outgoing = if (callType == CallType.OUTGOING) 1 else 0,
+    missed = if (callType == CallType.MISSED) 1 else 0,
+    rejected = if (callType == CallType.REJECTED) 1 else 0,
+    other = if (callType.isOther()) 1 else 0,
+    talkSeconds = duration,
+    lastCallTime = timestamp,
+    lastCallType = callType.name
+)
+
+/**
+ * One call as a per-day aggregate, ready to merge into [epochDay]'s row
+ */
+internal fun CallLogEntry.toDailyStats(epochDay: Long) = CallDailyStatsEntity(
+    epochDay = epochDay,
+    incoming = if (callType == CallType.INCOMING) 1 else 0,
+    outgoing = if (callType == CallType.OUTGOING) 1 else 0,
+    missed = if (callType == CallType.MISSED) 1 else 0,
+    rejected = if (callType == CallType.REJECTED) 1 else 0,
+    other = if (callType.isOther()) 1 else 0,
+    talkSeconds = duration
+)
+
+private fun CallType.isOther(): Boolean =
+    this != CallType.INCOMING && this != CallType.OUTGOING &&
+        this != CallType.MISSED && this != CallType.REJECTED
@@ -0,0 +1,131 @@
+package com.example.mentra.dialer.stats
+
+import androidx.room.withTransaction
+import com.example.mentra.contacts.ContactSnapshot
+import com.example.mentra.core.data.local.MentraDatabase
+import com.example.mentra.core.data.local.dao.CallStatsDao
+import com.example.mentra.core.data.local.entity.CallContactStatsEntity
+import com.example.mentra.core.data.local.entity.CallDailyStatsEntity
+import com.example.mentra.core.data.local.entity.CallStatsStateEntity
+import com.example.mentra.core.data.local.entity.CallTypeTotals
+import com.example.mentra.dialer.CallLogEntry
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.time.LocalDate
+import java.time.ZoneId
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * CALL STATS REPOSITORY
+ * Precomputed call aggregates, kept in step with the call log
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * - Totals by type and talk time per day (call_daily_stats)
+ * - Per-number call counts, talk time and last contact (call_contact_stats)
+ *
+ * Only call-log rows newer than the last one folded in are applied; a full
+ * rebuild happens only when rows were deleted from the call log.
+ */
+@Singleton
+class CallStatsRepository @Inject constructor(
+    private val database: MentraDatabase,
+    private val dao: CallStatsDao
+) {
+    private val mutex = Mutex()
+
+    /** Totals by call type over the whole call log */
+    val totals: Flow<CallTypeTotals> = dao.observeTotals()
+
+    /**
+     * Fold the current call log into the aggregates
+     * [entries] is the full call log as just loaded
+     */
+    suspend fun sync(entries: List<CallLogEntry>, zone: ZoneId = ZoneId.systemDefault()) = mutex.withLock {
+        val state = dao.getState()
+        val lastCallId = state?.lastCallId ?: -1L
+        val known = entries.count { it.id <= lastCallId }
+
+        if (state == null || known != state.aggregatedCount) {
+            rebuild(entries, zone)
+            return@withLock
+        }
+
+        val added = entries.filter { it.id > lastCallId }
+        if (added.isEmpty()) return@withLock
+
+        val delta = aggregateCalls(added, zone)
+        database.withTransaction {
+            val contacts = dao.getContacts(delta.contacts.keys.toList()).associateBy { it.numberKey }
+            dao.upsertContacts(delta.contactsMergedInto(contacts))
+
+            val days = dao.getDays(delta.days.keys.toList()).associateBy { it.epochDay }
+            dao.upsertDays(delta.daysMergedInto(days))
+
+            dao.upsertState(
+                CallStatsStateEntity(
+                    lastCallId = maxOf(lastCallId, added.maxOf { it.id }),
+                    aggregatedCount = state.aggregatedCount + added.size
+                )
+            )
+        }
+    }
+
+    /**
+     * Drop all aggregates (call log was cleared)
+     */
+    suspend fun clear() = mutex.withLock {
+        database.withTransaction {
+            dao.clearContacts()
+            dao.clearDays()
+            dao.upsertState(CallStatsStateEntity(lastCallId = -1L, aggregatedCount = 0))
+        }
+    }
+
+    /**
+     * Talk time, in seconds, for today and the last 7 days
+     */
+    suspend fun getTalkTime(zone: ZoneId = ZoneId.systemDefault()): TalkTime {
+        val today = LocalDate.now(zone).toEpochDay()
+        return TalkTime(
+            todaySeconds = dao.getTalkSecondsSince(today),
+            weekSeconds = dao.getTalkSecondsSince(today - 6)
+        )
+    }
+
+    suspend fun getTopContacts(limit: Int = 5): List<CallContactStatsEntity> = dao.getTopContacts(limit)
+
+    suspend fun getContactStats(number: String): CallContactStatsEntity? = dao.getContact(numberKey(number))
+
+    private suspend fun rebuild(entries: List<CallLogEntry>, zone: ZoneId) {
+        val all = aggregateCalls(entries, zone)
+        database.withTransaction {
+            dao.clearContacts()
+            dao.clearDays()
+            dao.upsertContacts(all.contacts.values.toList())
+            dao.upsertDays(all.days.values.toList())
+            dao.upsertState(
+                CallStatsStateEntity(
+                    lastCallId = entries.maxOfOrNull { it.id } ?: -1L,
+                    aggregatedCount = entries.size
+                )
+            )
+        }
+    }
+
+    companion object {
+        /**
+         * Row key for a number; private/unknown numbers share one row
+         */
+        fun numberKey(number: String): String {
+            return ContactSnapshot.numberKey(number).ifEmpty { number.trim().ifEmpty { "unknown" } }
+        }
+    }
+}
+
+data class TalkTime(
+    val todaySeconds: Long,
+    val weekSeconds: Long
+)
@@ -32,9 +32,6 @@ import androidx.compose.ui.text.style.TextOverflow
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.compose.ui.graphics.asImageBitmap
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
 
 /**
  * NEXUS DIALER - Contacts & Favorites Content
@@ -86,6 +83,8 @@ fun getDeviceAccounts(context: Context): List<DeviceAccount> {
 
 @Composable
 fun DialerContactsContent(
+    contacts: List<DialerContact>,
+    isLoading: Boolean,
     onContactClick: (String) -> Unit,
     onMessageClick: (DialerContact) -> Unit,
     onAddContactClick: () -> Unit = {},
@@ -93,20 +92,13 @@ fun DialerContactsContent(
     onCallWithSim: (String, Int) -> Unit = { _, _ -> }
 ) {
     val context = LocalContext.current
-    var contacts by remember { mutableStateOf<List<DialerContact>>(emptyList()) }
     var searchQuery by remember { mutableStateOf("") }
-    var isLoading by remember { mutableStateOf(true) }
     var showAddContactModal by remember { mutableStateOf(false) }
     var selectedContactForDetails by remember { mutableStateOf<DialerContact?>(null) }
     var showSimSelectionFor by remember { mutableStateOf<String?>(null) }
     var simSelectionContactName by remember { mutableStateOf<String?>(null) }
     var simSelectionContactPhotoUri by remember { mutableStateOf<String?>(null) }
 
-    LaunchedEffect(Unit) {
-        contacts = loadDialerContacts(context)
-        isLoading = false
-    }
-
     val filteredContacts = remember(contacts, searchQuery) {
         if (searchQuery.isEmpty()) contacts
         else {
@@ -241,10 +233,7 @@ fun DialerContactsContent(
                 // Save contact using ContentResolver
                 saveContact(context, name, numbers, saveLocation)
                 showAddContactModal = false
-                // Refresh contacts list
-                kotlinx.coroutines.MainScope().launch {
-                    contacts = loadDialerContacts(context)
-                }
+                // ContactRepository picks the new contact up via its ContentObserver
             }
         )
     }
@@ -475,18 +464,11 @@ fun ContactItem(
 
 @Composable
 fun DialerFavoritesContent(
+    favorites: List<DialerContact>,
+    isLoading: Boolean,
     onContactClick: (String) -> Unit,
     onMessageClick: (DialerContact) -> Unit
 ) {
-    val context = LocalContext.current
-    var favorites by remember { mutableStateOf<List<DialerContact>>(emptyList()) }
-    var isLoading by remember { mutableStateOf(true) }
-
-    LaunchedEffect(Unit) {
-        favorites = loadFavoriteContacts(context)
-        isLoading = false
-    }
-
     if (isLoading) {
         Box(modifier = Modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
             CircularProgressIndicator(color = NexusDialerColors.primary, modifier = Modifier.size(40.dp))
@@ -609,49 +591,6 @@ private fun FavoriteContactItem(
 // HELPER FUNCTIONS
 // ═══════════════════════════════════════════════════════════════════
 
-suspend fun loadFavoriteContacts(context: Context): List<DialerContact> = withContext(Dispatchers.IO) {
-    val favorites = mutableListOf<DialerContact>()
-
-    try {
-        val projection = arrayOf(
-            ContactsContract.CommonDataKinds.Phone._ID,
-            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-            ContactsContract.CommonDataKinds.Phone.NUMBER,
-            ContactsContract.CommonDataKinds.Phone.PHOTO_URI,
-            ContactsContract.CommonDataKinds.Phone.STARRED
-        )
-
-        val selection = "${ContactsContract.CommonDataKinds.Phone.STARRED} = ?"
-        val selectionArgs = arrayOf("1")
-
-        context.contentResolver.query(
-            ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-            projection,
-            selection,
-            selectionArgs,
-            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " ASC"
-        )?.use { cursor ->
-            val idIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone._ID)
-            val nameIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)
-            val numberIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-            val photoIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.PHOTO_URI)
-
-            while (cursor.moveToNext()) {
-                val id = cursor.getLong(idIndex)
-                val name = cursor.getString(nameIndex) ?: continue
-                val number = cursor.getString(numberIndex) ?: continue
-                val photo = cursor.getString(photoIndex)
-
-                favorites.add(DialerContact(id, name, number.replace("\\s".toRegex(), ""), photo))
-            }
-        }
-    } catch (e: Exception) {
-        e.printStackTrace()
-    }
-
-    favorites.distinctBy { it.phoneNumber.takeLast(10) }
-}
-
 /**
  * Save a new contact to the device
  */
@@ -1,7 +1,5 @@
 package com.example.mentra.dialer.ui
 
-import android.content.Context
-import android.provider.ContactsContract
 import androidx.compose.animation.*
 import androidx.compose.animation.core.*
 import androidx.compose.foundation.*
@@ -24,7 +22,6 @@ import androidx.compose.ui.graphics.Brush
 import androidx.compose.ui.graphics.Color
 import androidx.compose.ui.hapticfeedback.HapticFeedbackType
 import androidx.compose.ui.input.pointer.pointerInput
-import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.platform.LocalHapticFeedback
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.text.style.LineHeightStyle
@@ -34,8 +31,6 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import com.example.mentra.dialer.CallLogEntry
 import com.example.mentra.dialer.CallType
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.withContext
 
 /**
  * NEXUS DIALER - Keypad Components
@@ -53,6 +48,7 @@ fun DialerKeypadContent(
     filteredContacts: List<DialerContact>,
     filteredCalls: List<CallLogEntry>,
     allCallLogs: List<CallLogEntry>,
+    allContacts: List<DialerContact>,
     isKeypadVisible: Boolean,
     isDefaultDialer: Boolean,
     onDigitPressed: (String) -> Unit,
@@ -95,6 +91,7 @@ fun DialerKeypadContent(
                     filteredContacts = if (showFiltered) filteredContacts else emptyList(),
                     filteredCalls = if (showFiltered) filteredCalls else emptyList(),
                     recentCalls = allCallLogs,
+                    allContacts = allContacts,
                     showRecentCalls = showRecentCalls || showAllLogs,
                     isDefaultDialer = isDefaultDialer,
                     onContactSelected = onContactSelected,
@@ -318,6 +315,7 @@ fun KeypadSuggestionsPanel(
     filteredContacts: List<DialerContact>,
     filteredCalls: List<CallLogEntry>,
     recentCalls: List<CallLogEntry>,
+    allContacts: List<DialerContact>,
     showRecentCalls: Boolean,
     isDefaultDialer: Boolean,
     onContactSelected: (DialerContact) -> Unit,
@@ -330,13 +328,7 @@ fun KeypadSuggestionsPanel(
     onCallLogAddToContacts: (CallLogEntry) -> Unit = {},
     onSetDefaultDialerClick: () -> Unit = {}
 ) {
-    val context = LocalContext.current
     var showSearchModal by remember { mutableStateOf(false) }
-    var allContacts by remember { mutableStateOf<List<DialerContact>>(emptyList()) }
-
-    LaunchedEffect(Unit) {
-        allContacts = loadDialerContacts(context)
-    }
 
     val displayCalls = if (showRecentCalls) recentCalls else filteredCalls
     val hasContent = filteredContacts.isNotEmpty() || displayCalls.isNotEmpty()
@@ -661,43 +653,3 @@ data class ContactMatch(
     val name: String,
     val photoUri: String? = null
 )
-
-suspend fun loadDialerContacts(context: Context): List<DialerContact> = withContext(Dispatchers.IO) {
-    val contacts = mutableListOf<DialerContact>()
-
-    try {
-        val projection = arrayOf(
-            ContactsContract.CommonDataKinds.Phone._ID,
-            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-            ContactsContract.CommonDataKinds.Phone.NUMBER,
-            ContactsContract.CommonDataKinds.Phone.PHOTO_URI
-        )
-
-        context.contentResolver.query(
-            ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-            projection,
-            null,
-            null,
-            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " ASC"
-        )?.use { cursor ->
-            val idIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone._ID)
-            val nameIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)
-            val numberIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-            val photoIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.PHOTO_URI)
-
-            while (cursor.moveToNext()) {
-                val id = cursor.getLong(idIndex)
-                val name = cursor.getString(nameIndex) ?: continue
-                val number = cursor.getString(numberIndex) ?: continue
-                val photo = cursor.getString(photoIndex)
-
-                contacts.add(DialerContact(id, name, number.replace("\\s".toRegex(), ""), photo))
-            }
-        }
-    } catch (e: Exception) {
-        e.printStackTrace()
-    }
-
-    contacts.distinctBy { it.phoneNumber.takeLast(10) }
-}
-
@@ -5,6 +5,7 @@ import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.LazyRow
 import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.lazy.itemsIndexed
 import androidx.compose.foundation.shape.CircleShape
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.foundation.text.BasicTextField
@@ -25,6 +26,10 @@ import com.example.mentra.dialer.CallSource
 import com.example.mentra.dialer.CallType
 import com.example.mentra.dialer.SimAccount
 import com.example.mentra.dialer.ui.CallTypeFilter
+import com.example.mentra.messaging.MessageType
+import com.example.mentra.messaging.SmsMessage
+import com.example.mentra.timeline.TimelineEvent
+import com.example.mentra.timeline.TimelineFeedState
 
 /**
  * NEXUS DIALER - Recents Content
@@ -44,7 +49,10 @@ fun DialerRecentsContent(
     onCallTypeFilterChange: (CallTypeFilter) -> Unit,
     onSearchQueryChange: (String) -> Unit,
     onCallClick: (CallLogEntry) -> Unit,
-    onMessageClick: (CallLogEntry) -> Unit
+    onMessageClick: (CallLogEntry) -> Unit,
+    activity: TimelineFeedState = TimelineFeedState(),
+    onLoadMoreActivity: () -> Unit = {},
+    onActivityMessageClick: (SmsMessage) -> Unit = {}
 ) {
     val filteredCalls = remember(recentCalls, callTypeFilter, searchQuery) {
         recentCalls
@@ -56,6 +64,7 @@ fun DialerRecentsContent(
                     CallTypeFilter.MISSED -> entry.callType == CallType.MISSED
                     CallTypeFilter.BLOCKED -> entry.callType == CallType.BLOCKED || entry.callType == CallType.REJECTED
                     CallTypeFilter.SOCIAL -> entry.isSocialCall() // WhatsApp, Telegram, etc.
+                    CallTypeFilter.ACTIVITY -> true
                 }
             }
             .filter { entry ->
@@ -92,11 +101,26 @@ fun DialerRecentsContent(
                 horizontalArrangement = Arrangement.SpaceBetween,
                 verticalAlignment = Alignment.CenterVertically
             ) {
-                Text("Total: ${filteredCalls.size} calls", color = NexusDialerColors.textMuted, fontSize = 12.sp)
+                if (callTypeFilter == CallTypeFilter.ACTIVITY) {
+                    val more = if (activity.endReached) "" else "+"
+                    Text("Activity: ${activity.events.size}$more events", color = NexusDialerColors.textMuted, fontSize = 12.sp)
+                } else {
+                    Text("Total: ${filteredCalls.size} calls", color = NexusDialerColors.textMuted, fontSize = 12.sp)
+                }
                 Text("All: ${recentCalls.size}", color = NexusDialerColors.primary.copy(alpha = 0.7f), fontSize = 11.sp)
             }
 
-            if (filteredCalls.isEmpty()) {
+            if (callTypeFilter == CallTypeFilter.ACTIVITY) {
+                ActivityTimeline(
+                    activity = activity,
+                    searchQuery = searchQuery,
+                    onLoadMore = onLoadMoreActivity,
+                    onCallClick = onCallClick,
+                    onMessageClick = onMessageClick,
+                    onSmsClick = onActivityMessageClick,
+                    modifier = Modifier.weight(1f)
+                )
+            } else if (filteredCalls.isEmpty()) {
                 Box(modifier = Modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
                     Column(horizontalAlignment = Alignment.CenterHorizontally) {
                         Icon(Icons.Default.SearchOff, null, tint = NexusDialerColors.textMuted, modifier = Modifier.size(48.dp))
@@ -187,6 +211,7 @@ private fun CallTypeFilterTabs(
                 CallTypeFilter.MISSED -> NexusDialerColors.callRed
                 CallTypeFilter.BLOCKED -> NexusDialerColors.textMuted
                 CallTypeFilter.SOCIAL -> Color(0xFF25D366) // WhatsApp green
+                CallTypeFilter.ACTIVITY -> NexusDialerColors.secondary
             }
 
             Surface(
@@ -208,6 +233,7 @@ private fun CallTypeFilterTabs(
                             CallTypeFilter.MISSED -> Icons.Default.CallMissed
                             CallTypeFilter.BLOCKED -> Icons.Default.Block
                             CallTypeFilter.SOCIAL -> Icons.Default.Chat // Social apps icon
+                            CallTypeFilter.ACTIVITY -> Icons.Default.Forum // Calls + SMS
                         },
                         null,
                         tint = if (isSelected) filterColor else NexusDialerColors.textMuted,
@@ -225,6 +251,138 @@ private fun CallTypeFilterTabs(
     }
 }
 
+// ═══════════════════════════════════════════════════════════════════
+// ACTIVITY TIMELINE (calls + SMS)
+// ═══════════════════════════════════════════════════════════════════
+
+@Composable
+private fun ActivityTimeline(
+    activity: TimelineFeedState,
+    searchQuery: String,
+    onLoadMore: () -> Unit,
+    onCallClick: (CallLogEntry) -> Unit,
+    onMessageClick: (CallLogEntry) -> Unit,
+    onSmsClick: (SmsMessage) -> Unit,
+    modifier: Modifier = Modifier
+) {
+    // Search narrows the pages already loaded; paging itself stays unfiltered
+    val events = remember(activity.events, searchQuery) {
+        if (searchQuery.isEmpty()) activity.events
+        else {
+            val query = searchQuery.lowercase()
+            activity.events.filter { event ->
+                when (event) {
+                    is TimelineEvent.Call -> event.entry.contactName?.lowercase()?.contains(query) == true ||
+                        event.entry.number.contains(query)
+                    is TimelineEvent.Message -> event.message.address.lowercase().contains(query) ||
+                        event.message.body.lowercase().contains(query)
+                }
+            }
+        }
+    }
+
+    if (events.isEmpty() && activity.endReached) {
+        Box(modifier = modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
+            Column(horizontalAlignment = Alignment.CenterHorizontally) {
+                Icon(Icons.Default.SearchOff, null, tint = NexusDialerColors.textMuted, modifier = Modifier.size(48.dp))
+                Spacer(modifier = Modifier.height(12.dp))
+                Text("No activity found", color = NexusDialerColors.textMuted, fontSize = 14.sp)
+            }
+        }
+        return
+    }
+
+    LazyColumn(
+        modifier = modifier,
+        contentPadding = PaddingValues(horizontal = 16.dp, vertical = 8.dp),
+        verticalArrangement = Arrangement.spacedBy(8.dp)
+    ) {
+        itemsIndexed(items = events, key = { _, event -> "${event.kind}:${event.id}" }) { index, event ->
+            // Fetch the next page a few rows before the end
+            if (index >= events.size - 5) {
+                LaunchedEffect(activity.events.size) { onLoadMore() }
+            }
+            when (event) {
+                is TimelineEvent.Call -> RecentCallItem(
+                    entry = event.entry,
+                    onCallClick = { onCallClick(event.entry) },
+                    onMessageClick = { onMessageClick(event.entry) }
+                )
+                is TimelineEvent.Message -> ActivityMessageItem(
+                    message = event.message,
+                    onClick = { onSmsClick(event.message) }
+                )
+            }
+        }
+
+        if (activity.isLoading || events.isEmpty()) {
+            item(key = "activity_loading") {
+                if (events.isEmpty()) LaunchedEffect(Unit) { onLoadMore() }
+                Box(modifier = Modifier.fillMaxWidth().padding(16.dp), contentAlignment = Alignment.Center) {
+                    CircularProgressIndicator(
+                        color = NexusDialerColors.secondary,
+                        strokeWidth = 2.dp,
+                        modifier = Modifier.size(24.dp)
+                    )
+                }
+            }
+        }
+    }
+}
+
+@Composable
+private fun ActivityMessageItem(
+    message: SmsMessage,
+    onClick: () -> Unit
+) {
+    val color = if (message.type == MessageType.SENT) NexusDialerColors.simBlue else NexusDialerColors.secondary
+
+    Surface(
+        onClick = onClick,
+        shape = RoundedCornerShape(16.dp),
+        color = NexusDialerColors.card.copy(alpha = 0.6f),
+        border = BorderStroke(1.dp, color.copy(alpha = 0.2f))
+    ) {
+        Row(
+            modifier = Modifier.fillMaxWidth().padding(14.dp),
+            verticalAlignment = Alignment.CenterVertically
+        ) {
+            Box(
+                modifier = Modifier.size(48.dp).background(color.copy(alpha = 0.12f), CircleShape),
+                contentAlignment = Alignment.Center
+            ) {
+                Icon(
+                    if (message.type == MessageType.SENT) Icons.Default.Send else Icons.Default.Sms,
+                    null,
+                    tint = color,
+                    modifier = Modifier.size(22.dp)
+                )
+            }
+
+            Spacer(modifier = Modifier.width(14.dp))
+
+            Column(modifier = Modifier.weight(1f)) {
+                Text(
+                    message.address,
+                    color = NexusDialerColors.textPrimary,
+                    fontSize = 15.sp,
+                    fontWeight = if (message.isRead) FontWeight.Medium else FontWeight.Bold,
+                    maxLines = 1,
+                    overflow = TextOverflow.Ellipsis
+                )
+                Text(
+                    message.body,
+                    color = NexusDialerColors.textSecondary,
+                    fontSize = 12.sp,
+                    maxLines = 2,
+                    overflow = TextOverflow.Ellipsis
+                )
+                Text(formatRelativeTime(message.timestamp), color = NexusDialerColors.textMuted.copy(alpha = 0.7f), fontSize = 11.sp)
+            }
+        }
+    }
+}
+
 // ═══════════════════════════════════════════════════════════════════
 // RECENT CALL ITEM
 // ═══════════════════════════════════════════════════════════════════
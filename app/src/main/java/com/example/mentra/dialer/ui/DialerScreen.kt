@@ -38,13 +38,18 @@ fun DialerScreen(
     val availableSims by viewModel.availableSims.collectAsState()
     val selectedSimSlot by viewModel.selectedSimSlot.collectAsState()
     val recentCalls by viewModel.recentCalls.collectAsState()
+    val callStatistics by viewModel.callStatistics.collectAsState()
     val callState by viewModel.callState.collectAsState()
     val contactMatch by viewModel.contactMatch.collectAsState()
     val isDefaultDialer by viewModel.isDefaultDialer.collectAsState()
+    val contacts by viewModel.contacts.collectAsState()
+    val favoriteContacts by viewModel.favoriteContacts.collectAsState()
+    val contactsLoaded by viewModel.contactsLoaded.collectAsState()
 
     // Call filter and search state
     val callTypeFilter by viewModel.callTypeFilter.collectAsState()
     val recentsSearchQuery by viewModel.recentsSearchQuery.collectAsState()
+    val activity by viewModel.activity.collectAsState()
 
     // UI States
     var showSimModal by remember { mutableStateOf(false) }
@@ -76,7 +81,7 @@ fun DialerScreen(
     // We don't navigate from here to avoid duplicate call UIs
 
     // Filter contacts for keypad
-    val filteredContacts: List<DialerContact> = remember(dialerInput) {
+    val filteredContacts: List<DialerContact> = remember(dialerInput, contacts) {
         if (dialerInput.length < 2) emptyList()
         else viewModel.filterContactsByNumber(dialerInput)
     }
@@ -125,6 +130,7 @@ fun DialerScreen(
                             filteredContacts = filteredContacts,
                             filteredCalls = filteredCalls,
                             allCallLogs = recentCalls,
+                            allContacts = contacts,
                             isKeypadVisible = isKeypadVisible,
                             isDefaultDialer = isDefaultDialer,
                             onDigitPressed = { viewModel.appendDigit(it) },
@@ -191,11 +197,20 @@ fun DialerScreen(
                                 quickMessageRecipient = entry.number
                                 quickMessageRecipientName = entry.contactName
                                 showQuickMessageModal = true
+                            },
+                            activity = activity,
+                            onLoadMoreActivity = { viewModel.loadMoreActivity() },
+                            onActivityMessageClick = { message ->
+                                quickMessageRecipient = message.address
+                                quickMessageRecipientName = null
+                                showQuickMessageModal = true
                             }
                         )
                     }
                     DialerTab.CONTACTS -> {
                         DialerContactsContent(
+                            contacts = contacts,
+                            isLoading = !contactsLoaded,
                             onContactClick = { number ->
                                 // No longer used - contact details modal handles this
                             },
@@ -212,6 +227,8 @@ fun DialerScreen(
                     }
                     DialerTab.FAVORITES -> {
                         DialerFavoritesContent(
+                            favorites = favoriteContacts,
+                            isLoading = !contactsLoaded,
                             onContactClick = { number ->
                                 if (availableSims.size > 1) {
                                     pendingCallNumber = number
@@ -248,7 +265,7 @@ fun DialerScreen(
                         viewModel.selectTab(tab)
                     }
                 },
-                missedCallCount = recentCalls.count { it.callType == CallType.MISSED },
+                missedCallCount = callStatistics.missedCalls,
                 dialerInput = dialerInput,
                 onCallPressed = { if (dialerInput.isNotBlank()) initiateCall(dialerInput) }
             )
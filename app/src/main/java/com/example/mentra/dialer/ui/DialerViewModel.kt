@@ -3,15 +3,24 @@ package com.example.mentra.dialer.ui
 import android.content.Context
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.example.mentra.contacts.ContactRecord
+import com.example.mentra.contacts.ContactRepository
 import com.example.mentra.dialer.*
 import com.example.mentra.dialer.ussd.UssdService
 import com.example.mentra.dialer.ussd.UssdState
 import com.example.mentra.dialer.ussd.UssdResult
+import com.example.mentra.timeline.TimelineFeedState
+import com.example.mentra.timeline.TimelineRepository
 import dagger.hilt.android.lifecycle.HiltViewModel
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import javax.inject.Inject
 
@@ -28,7 +37,9 @@ class DialerViewModel @Inject constructor(
     private val dialerManager: DialerManager,
     private val callLogManager: CallLogManager,
     private val ussdService: UssdService,
-    private val incomingCallHandler: IncomingCallHandler
+    private val incomingCallHandler: IncomingCallHandler,
+    private val contactRepository: ContactRepository,
+    private val timelineRepository: TimelineRepository
 ) : ViewModel() {
 
     // Dialer input state
@@ -48,6 +59,20 @@ class DialerViewModel @Inject constructor(
     val callHistory: StateFlow<List<CallLogEntry>> = callLogManager.callHistory
     val recentCalls: StateFlow<List<CallLogEntry>> = callLogManager.recentCalls
 
+    // Precomputed call totals (dialer home badge, stats)
+    val callStatistics: StateFlow<CallStatistics> = callLogManager.callStatistics
+
+    // Contacts from the shared ContactRepository (one entry per number)
+    val contacts: StateFlow<List<DialerContact>> = contactRepository.snapshot
+        .map { it.contacts.toDialerContacts() }
+        .flowOn(Dispatchers.Default)
+        .stateIn(viewModelScope, SharingStarted.Eagerly, emptyList())
+    val favoriteContacts: StateFlow<List<DialerContact>> = contactRepository.snapshot
+        .map { it.favorites.toDialerContacts() }
+        .flowOn(Dispatchers.Default)
+        .stateIn(viewModelScope, SharingStarted.Eagerly, emptyList())
+    val contactsLoaded: StateFlow<Boolean> = contactRepository.isLoaded
+
     // USSD state
     val ussdState: StateFlow<UssdState> = ussdService.ussdState
     val ussdHistory = ussdService.ussdHistory
@@ -85,6 +110,10 @@ class DialerViewModel @Inject constructor(
     private val _recentsSearchQuery = MutableStateFlow("")
     val recentsSearchQuery: StateFlow<String> = _recentsSearchQuery.asStateFlow()
 
+    // Calls + SMS timeline for the ACTIVITY filter, paged as the list scrolls
+    private val _activity = MutableStateFlow(TimelineFeedState())
+    val activity: StateFlow<TimelineFeedState> = _activity.asStateFlow()
+
     // Show in-call screen
     private val _showInCallScreen = MutableStateFlow(false)
     val showInCallScreen: StateFlow<Boolean> = _showInCallScreen.asStateFlow()
@@ -110,6 +139,7 @@ class DialerViewModel @Inject constructor(
     }
 
     private fun loadData() {
+        contactRepository.preload()
         viewModelScope.launch {
             dialerManager.loadAvailableSims()
             callLogManager.loadCallHistory()
@@ -224,39 +254,11 @@ class DialerViewModel @Inject constructor(
     fun filterContactsByNumber(input: String): List<DialerContact> {
         if (input.length < 2) return emptyList()
 
-        return try {
-            val contacts = mutableListOf<DialerContact>()
-            val projection = arrayOf(
-                android.provider.ContactsContract.CommonDataKinds.Phone._ID,
-                android.provider.ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                android.provider.ContactsContract.CommonDataKinds.Phone.NUMBER,
-                android.provider.ContactsContract.CommonDataKinds.Phone.PHOTO_URI
-            )
-
-            context.contentResolver.query(
-                android.provider.ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                projection,
-                "${android.provider.ContactsContract.CommonDataKinds.Phone.NUMBER} LIKE ?",
-                arrayOf("%$input%"),
-                android.provider.ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " ASC LIMIT 5"
-            )?.use { cursor ->
-                val idIndex = cursor.getColumnIndex(android.provider.ContactsContract.CommonDataKinds.Phone._ID)
-                val nameIndex = cursor.getColumnIndex(android.provider.ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)
-                val numberIndex = cursor.getColumnIndex(android.provider.ContactsContract.CommonDataKinds.Phone.NUMBER)
-                val photoIndex = cursor.getColumnIndex(android.provider.ContactsContract.CommonDataKinds.Phone.PHOTO_URI)
-
-                while (cursor.moveToNext()) {
-                    val id = cursor.getLong(idIndex)
-                    val name = cursor.getString(nameIndex) ?: continue
-                    val number = cursor.getString(numberIndex) ?: continue
-                    val photo = cursor.getString(photoIndex)
-                    contacts.add(DialerContact(id, name, number.replace("\\s".toRegex(), ""), photo))
-                }
-            }
-            contacts.distinctBy { it.phoneNumber.takeLast(10) }.take(5)
-        } catch (e: Exception) {
-            emptyList()
-        }
+        return contacts.value
+            .asSequence()
+            .filter { it.phoneNumber.contains(input) }
+            .take(5)
+            .toList()
     }
 
     fun endCall() {
@@ -371,6 +373,7 @@ class DialerViewModel @Inject constructor(
         viewModelScope.launch {
             callLogManager.loadCallHistory()
         }
+        if (_callTypeFilter.value == CallTypeFilter.ACTIVITY) refreshActivity()
     }
 
     fun deleteCallLogEntry(id: Long) {
@@ -397,6 +400,31 @@ class DialerViewModel @Inject constructor(
 
     fun setCallTypeFilter(filter: CallTypeFilter) {
         _callTypeFilter.value = filter
+        if (filter == CallTypeFilter.ACTIVITY) refreshActivity()
+    }
+
+    // ============================================
+    // ACTIVITY TIMELINE
+    // ============================================
+
+    fun refreshActivity() = loadActivity(reset = true)
+
+    fun loadMoreActivity() = loadActivity(reset = false)
+
+    private fun loadActivity(reset: Boolean) {
+        val current = _activity.value
+        if (current.isLoading || (!reset && current.endReached)) return
+        _activity.value = current.copy(isLoading = true)
+
+        viewModelScope.launch {
+            val page = timelineRepository.page(after = if (reset) null else current.nextKey)
+            _activity.value = TimelineFeedState(
+                events = if (reset) page.events else current.events + page.events,
+                nextKey = page.nextKey,
+                isLoading = false,
+                endReached = page.nextKey == null
+            )
+        }
     }
 
     fun setRecentsSearchQuery(query: String) {
@@ -418,6 +446,7 @@ class DialerViewModel @Inject constructor(
                     CallTypeFilter.MISSED -> entry.callType == CallType.MISSED
                     CallTypeFilter.BLOCKED -> entry.callType == CallType.BLOCKED || entry.callType == CallType.REJECTED
                     CallTypeFilter.SOCIAL -> entry.isSocialCall() // WhatsApp, Telegram, etc.
+                    CallTypeFilter.ACTIVITY -> true
                 }
             }
             .filter { entry ->
@@ -477,7 +506,7 @@ class DialerViewModel @Inject constructor(
      */
     fun sendUssdReply(reply: String) {
         viewModelScope.launch {
-            ussdService.sendUssdReply(reply, _selectedSimSlot.value.coerceAtLeast(0))
+            ussdService.sendUssdReply(reply)
         }
     }
 
@@ -574,6 +603,17 @@ class DialerViewModel @Inject constructor(
     }
 }
 
+/**
+ * Flatten contacts to one DialerContact per number, keyed by the phone data row id
+ */
+private fun List<ContactRecord>.toDialerContacts(): List<DialerContact> {
+    return flatMap { contact ->
+        contact.phones.map { phone ->
+            DialerContact(phone.dataId, contact.name, phone.number.filterNot { it.isWhitespace() }, contact.photoUri)
+        }
+    }.distinctBy { it.phoneNumber.takeLast(10) }
+}
+
 enum class DialerTab {
     KEYPAD,
     CONTACTS,
@@ -588,6 +628,7 @@ enum class CallTypeFilter {
     OUTGOING,
     MISSED,
     BLOCKED,
-    SOCIAL  // WhatsApp, Telegram, etc.
+    SOCIAL,  // WhatsApp, Telegram, etc.
+    ACTIVITY // Calls and SMS together
 }
 
@@ -0,0 +1,76 @@
+package com.example.mentra.dialer.ussd
+
+import android.content.Context
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.stringPreferencesKey
+import androidx.datastore.preferences.preferencesDataStore
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * USSD MACRO STORE
+ * Saved USSD menu paths ("data" -> *144# > 2 > 1)
+ * ═══════════════════════════════════════════════════════════════════
+ */
+
+private val Context.ussdMacroDataStore: DataStore<Preferences> by preferencesDataStore(name = "ussd_macros")
+
+@Singleton
+class UssdMacroStore @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+    private val gson = Gson()
+
+    companion object {
+        private val MACROS_KEY = stringPreferencesKey("ussd_macros")
+    }
+
+    /**
+     * All saved macros by name, re-emitted whenever they change
+     */
+    val macros: Flow<Map<String, UssdMacro>> = context.ussdMacroDataStore.data.map { decode(it) }
+
+    suspend fun getAllMacros(): Map<String, UssdMacro> = macros.first()
+
+    suspend fun getMacro(name: String): UssdMacro? = getAllMacros()[name.lowercase()]
+
+    /**
+     * Save (or replace) a macro under its lowercased name
+     */
+    suspend fun saveMacro(macro: UssdMacro) {
+        val name = macro.name.lowercase()
+        context.ussdMacroDataStore.edit { preferences ->
+            val current = decode(preferences).toMutableMap()
+            current[name] = macro.copy(name = name)
+            preferences[MACROS_KEY] = gson.toJson(current)
+        }
+    }
+
+    /**
+     * Delete a macro, returns false if it didn't exist
+     */
+    suspend fun deleteMacro(name: String): Boolean {
+        var removed = false
+        context.ussdMacroDataStore.edit { preferences ->
+            val current = decode(preferences).toMutableMap()
+            removed = current.remove(name.lowercase()) != null
+            if (removed) preferences[MACROS_KEY] = gson.toJson(current)
+        }
+        return removed
+    }
+
+    private fun decode(preferences: Preferences): Map<String, UssdMacro> {
+        val json = preferences[MACROS_KEY] ?: "{}"
+        val type = object : TypeToken<Map<String, UssdMacro>>() {}.type
+        return gson.fromJson<Map<String, UssdMacro>>(json, type) ?: emptyMap()
+    }
+}
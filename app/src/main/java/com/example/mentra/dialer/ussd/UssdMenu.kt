@@ -0,0 +1,193 @@
+package com.example.mentra.dialer.ussd
+
+// ═══════════════════════════════════════════════════════════════════
+// USSD MENU MODEL
+// Parsed menus, per code/SIM menu tree cache and path macros
+// ═══════════════════════════════════════════════════════════════════
+
+/**
+ * A selectable option in a USSD menu ("1. Data Bundles" -> key "1")
+ */
+data class UssdMenuOption(
+    val key: String,
+    val label: String
+)
+
+/**
+ * A USSD response parsed once into title + options
+ */
+data class UssdMenu(
+    val text: String,
+    val title: String,
+    val options: List<UssdMenuOption>,
+    val isInteractive: Boolean
+) {
+    fun hasOption(key: String): Boolean = options.any { it.key == key }
+
+    fun option(key: String): UssdMenuOption? = options.find { it.key == key }
+}
+
+/**
+ * Single-pass USSD response parser
+ * Both patterns are compiled once and shared by every response
+ */
+object UssdMenuParser {
+
+    // "1. Option", "1) Option", "2: Option", "98 Back", "* Back", "# Next"
+    private val OPTION_LINE = Regex(
+        "^\\s*(\\d{1,2}|[*#])\\s*(?:[.):\\-]\\s*|\\s+)(\\S.*?)\\s*$",
+        RegexOption.MULTILINE
+    )
+
+    // Every prompt the old per-response pattern list looked for, as one alternation
+    private val PROMPT_MARKERS = Regex(
+        "(?:^|\\s)\\d{1,2}[.)]\\s*[A-Za-z]" +
+            "|Reply\\s+with" +
+            "|Enter\\s+\\d+" +
+            "|Press\\s+\\d+" +
+            "|Select\\s+option" +
+            "|Choose" +
+            "|0\\.\\s*(?:Exit|Cancel)" +
+            "|\\*\\s*Back" +
+            "|#\\s*Next",
+        RegexOption.IGNORE_CASE
+    )
+
+    fun parse(response: String): UssdMenu {
+        val options = mutableListOf<UssdMenuOption>()
+        var titleEnd = response.length
+
+        for (match in OPTION_LINE.findAll(response)) {
+            if (options.isEmpty()) titleEnd = match.range.first
+            options.add(UssdMenuOption(match.groupValues[1], match.groupValues[2]))
+        }
+
+        return UssdMenu(
+            text = response,
+            title = response.substring(0, titleEnd).trim(),
+            options = options,
+            isInteractive = options.isNotEmpty() || PROMPT_MARKERS.containsMatchIn(response)
+        )
+    }
+}
+
+/**
+ * A saved path through a USSD menu, e.g. `*144# > 2 > 1`
+ */
+data class UssdMacro(
+    val name: String,
+    val code: String,
+    val steps: List<String>
+) {
+    /** Human readable path, the same syntax [parse] accepts */
+    fun describe(): String = (listOf(code) + steps).joinToString(" > ")
+
+    /**
+     * Single-request form (`*144*2*1#`) for carriers that accept chained codes;
+     * used when the session can't be driven step by step
+     */
+    fun toChainedCode(): String {
+        return code.removeSuffix("#") + steps.joinToString("") { "*$it" } + "#"
+    }
+
+    companion object {
+        private val CODE = Regex("^[*#][0-9*#]+#?$")
+        private val STEP = Regex("^[0-9*#]{1,8}$")
+
+        /**
+         * Parse `*144# > 2 > 1`; null if the root isn't a USSD code or a step
+         * isn't a valid menu reply
+         */
+        fun parse(name: String, spec: String): UssdMacro? {
+            val parts = spec.split('>').map { it.trim() }
+            val code = parts.firstOrNull()?.takeIf { CODE.matches(it) } ?: return null
+            val steps = parts.drop(1)
+            if (steps.any { !STEP.matches(it) }) return null
+
+            return UssdMacro(
+                name = name,
+                code = if (code.endsWith("#")) code else "$code#",
+                steps = steps
+            )
+        }
+    }
+}
+
+/**
+ * Menus observed per code and SIM, as a tree keyed by the replies that led
+ * to them. Lets macros be checked against known menus before any network
+ * round-trip and lets the UI show a menu that was seen before.
+ */
+class UssdMenuCache(private val maxCodes: Int = 32) {
+
+    private class Node(var menu: UssdMenu) {
+        val children = HashMap<String, Node>()
+    }
+
+    // Access-ordered so the least recently used code is evicted first
+    private val roots = object : LinkedHashMap<String, Node>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Node>?): Boolean {
+            return size > maxCodes
+        }
+    }
+
+    /**
+     * Record the menu reached from [code] by following [path].
+     * Unknown intermediate menus are skipped rather than invented.
+     */
+    @Synchronized
+    fun record(code: String, simSlot: Int, path: List<String>, menu: UssdMenu) {
+        val key = key(code, simSlot)
+        if (path.isEmpty()) {
+            val existing = roots[key]
+            if (existing == null) {
+                roots[key] = Node(menu)
+            } else {
+                existing.menu = menu
+                // Drop branches the menu no longer offers
+                existing.children.keys.retainAll { menu.hasOption(it) }
+            }
+            return
+        }
+
+        val parent = find(key, path.dropLast(1)) ?: return
+        val step = path.last()
+        val child = parent.children[step]
+        if (child == null) parent.children[step] = Node(menu) else child.menu = menu
+    }
+
+    @Synchronized
+    fun menuAt(code: String, simSlot: Int, path: List<String> = emptyList()): UssdMenu? {
+        return find(key(code, simSlot), path)?.menu
+    }
+
+    /**
+     * Index of the first step that a cached menu says isn't available,
+     * or null if every known menu along the path offers the step
+     */
+    @Synchronized
+    fun firstInvalidStep(code: String, simSlot: Int, steps: List<String>): Int? {
+        var node = roots[key(code, simSlot)] ?: return null
+        for ((index, step) in steps.withIndex()) {
+            val menu = node.menu
+            if (menu.options.isNotEmpty() && !menu.hasOption(step)) return index
+            node = node.children[step] ?: return null
+        }
+        return null
+    }
+
+    @Synchronized
+    fun clear() {
+        roots.clear()
+    }
+
+    private fun find(key: String, path: List<String>): Node? {
+        var node = roots[key] ?: return null
+        for (step in path) {
+            node = node.children[step] ?: return null
+        }
+        return node
+    }
+
+    private fun key(code: String, simSlot: Int) = "$simSlot|$code"
+}
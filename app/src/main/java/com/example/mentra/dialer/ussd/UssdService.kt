@@ -12,6 +12,7 @@ import android.telephony.TelephonyManager
 import android.telephony.TelephonyManager.UssdResponseCallback
 import androidx.core.content.ContextCompat
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
@@ -30,6 +31,13 @@ import kotlin.coroutines.resume
  * USSD SERVICE - Handles USSD code execution and response capture
  * Supports both legacy dial and modern callback-based USSD handling
  * ═══════════════════════════════════════════════════════════════════
+ *
+ * Callback responses are parsed once into a [UssdMenu] and remembered in a
+ * per code/SIM menu tree. TelephonyManager.sendUssdRequest can't continue
+ * an open session: every request starts a new one. Menu replies and saved
+ * [UssdMacro] paths are therefore sent as one chained request
+ * (*144*2*1#) for the whole path, falling back to the system dialer with
+ * the same code when the carrier rejects it.
  */
 
 @Singleton
@@ -56,8 +64,12 @@ class UssdService @Inject constructor(
     private var isInteractiveSession = false
     private var currentSessionCode: String? = null
 
-    // Store the active TelephonyManager and callback for session continuity
-    private var sessionTelephonyManager: TelephonyManager? = null
+    // Replies that led to the menu now shown, and the SIM it came from
+    private var sessionPath: List<String> = emptyList()
+    private var sessionSimSlot = 0
+
+    // Menus observed per code and SIM
+    private val menuCache = UssdMenuCache()
 
     // Timeout handling
     private val ussdTimeoutSeconds = 30L
@@ -70,8 +82,8 @@ class UssdService @Inject constructor(
         val trimmed = code.trim()
         // USSD codes start with * or # and end with #
         // They contain only digits, *, and #
-        return trimmed.matches(Regex("^[*#][0-9*#]+#$")) ||
-               trimmed.matches(Regex("^[*][0-9*#]+$")) // Some codes don't end with #
+        return USSD_CODE_PATTERN.matches(trimmed) ||
+               USSD_OPEN_CODE_PATTERN.matches(trimmed) // Some codes don't end with #
     }
 
     /**
@@ -139,39 +151,107 @@ class UssdService @Inject constructor(
 
     /**
      * Send a reply to an interactive USSD session
+     * The menu's session is already closed by the time its response
+     * arrives, so the reply goes out as the chained code for the whole
+     * path so far (*144*2 then 1 -> *144*2*1#) on the session's SIM.
      */
-    @SuppressLint("MissingPermission")
-    suspend fun sendUssdReply(reply: String, simSlotIndex: Int = 0): UssdResult {
-        if (!isInteractiveSession) {
+    suspend fun sendUssdReply(reply: String, silent: Boolean = false): UssdResult {
+        val code = currentSessionCode
+        if (!isInteractiveSession || code == null) {
             return UssdResult.Error(UssdError.SESSION_ENDED, "No active USSD session")
         }
 
-        val tm = sessionTelephonyManager ?: return UssdResult.Error(
-            UssdError.SERVICE_UNAVAILABLE,
-            "Session manager not available"
-        )
+        if (!hasCallPermission()) {
+            return UssdResult.Error(UssdError.PERMISSION_DENIED, "CALL_PHONE permission required")
+        }
 
-        _ussdState.value = UssdState.Executing(reply)
+        if (!silent) _ussdState.value = UssdState.Executing(reply)
 
         return try {
-            // For interactive sessions, we send the reply as a new USSD request
-            // but this should continue the existing session
-            executeUssd(reply, simSlotIndex, isReply = true)
+            executeUssdWithCallback(code, sessionSimSlot, sessionPath + reply, silent = silent)
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
+            android.util.Log.e("UssdService", "USSD reply failed", e)
             endSession()
+            if (!silent) _ussdState.value = UssdState.Error(e.message ?: "Unknown error")
+            UssdResult.Error(UssdError.EXECUTION_FAILED, e.message)
+        }
+    }
+
+    /**
+     * Run a saved menu path (e.g. *144# > 2 > 1) as one chained request
+     * (*144*2*1#), so intermediate menus are never shown. Steps are first
+     * checked against cached menus. If the callback request fails for any
+     * reason, the same chained code is handed to the system dialer.
+     */
+    @SuppressLint("MissingPermission")
+    suspend fun runMacro(macro: UssdMacro, simSlotIndex: Int = 0): UssdResult {
+        if (!hasCallPermission()) {
+            return UssdResult.Error(UssdError.PERMISSION_DENIED, "CALL_PHONE permission required")
+        }
+
+        val code = normalizeUssdCode(macro.code)
+        menuCache.firstInvalidStep(code, simSlotIndex, macro.steps)?.let { index ->
+            return UssdResult.Error(
+                UssdError.INVALID_CODE,
+                "Option '${macro.steps[index]}' is not in the $code menu (step ${index + 1})"
+            )
+        }
+
+        if (!isCallbackApiAvailable()) {
+            return executeUssd(macro.toChainedCode(), simSlotIndex)
+        }
+
+        if (isInteractiveSession) endSession()
+        _ussdState.value = UssdState.Executing(macro.describe())
+
+        val result = try {
+            executeUssdWithCallback(code, simSlotIndex, macro.steps, silent = true)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
             UssdResult.Error(UssdError.EXECUTION_FAILED, e.message)
         }
+
+        if (result !is UssdResult.Success) {
+            android.util.Log.w("UssdService", "Macro request failed ($result), dialing ${macro.toChainedCode()}")
+            return executeUssd(macro.toChainedCode(), simSlotIndex)
+        }
+
+        // Publish only the final response
+        val response = result.response.copy(code = macro.describe())
+        _lastResponse.value = response
+        _ussdState.value = if (response.isInteractive) {
+            UssdState.Interactive(response)
+        } else {
+            UssdState.Success(response)
+        }
+        addToHistory(macro.describe(), response.response, true)
+
+        return result.copy(response = response)
+    }
+
+    /**
+     * Menu previously seen at [path] below [code] on this SIM, if any
+     */
+    fun cachedMenu(code: String, simSlotIndex: Int, path: List<String> = emptyList()): UssdMenu? {
+        return menuCache.menuAt(normalizeUssdCode(code), simSlotIndex, path)
     }
 
     /**
      * Modern USSD execution with callback (Android 8.0+)
+     * Sends [ussdCode] followed by [path] as one chained request.
+     * [silent] keeps every outcome out of the UI state and history.
      */
     @SuppressLint("MissingPermission")
     private suspend fun executeUssdWithCallback(
         ussdCode: String,
         simSlotIndex: Int,
-        isReply: Boolean = false
+        path: List<String> = emptyList(),
+        silent: Boolean = false
     ): UssdResult = suspendCancellableCoroutine { continuation ->
+        val request = if (path.isEmpty()) ussdCode else UssdMacro("", ussdCode, path).toChainedCode()
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
             continuation.resume(UssdResult.Error(UssdError.NOT_SUPPORTED, "API level too low"))
@@ -190,7 +270,7 @@ class UssdService @Inject constructor(
             if (continuation.isActive) {
                 android.util.Log.w("UssdService", "USSD request timed out after ${ussdTimeoutSeconds}s")
                 endSession()
-                _ussdState.value = UssdState.Error("Request timed out")
+                if (!silent) _ussdState.value = UssdState.Error("Request timed out")
                 continuation.resume(UssdResult.Error(UssdError.TIMEOUT, "USSD request timed out"))
             }
         }
@@ -207,37 +287,39 @@ class UssdService @Inject constructor(
                 val responseText = response.toString()
                 android.util.Log.d("UssdService", "USSD response received: $responseText")
 
-                // Detect if this is an interactive session
-                val isInteractive = detectInteractiveSession(responseText)
+                // Parse once: menu options + whether the session waits for input
+                val menu = UssdMenuParser.parse(responseText)
+                val isInteractive = menu.isInteractive
+                menuCache.record(ussdCode, simSlotIndex, path, menu)
 
                 val ussdResponse = UssdResponse(
-                    code = if (isReply) currentSessionCode ?: ussdCode else ussdCode,
+                    code = ussdCode,
                     response = responseText,
                     timestamp = System.currentTimeMillis(),
                     isSuccess = true,
                     isInteractive = isInteractive,
-                    sessionActive = isInteractive
+                    sessionActive = isInteractive,
+                    menu = menu
                 )
 
-                _lastResponse.value = ussdResponse
+                if (!silent) _lastResponse.value = ussdResponse
 
                 if (isInteractive) {
-                    // Keep session active for user input
+                    // Remember where we are so a reply can extend the path
                     isInteractiveSession = true
-                    if (!isReply) {
-                        currentSessionCode = ussdCode
-                    }
-                    sessionTelephonyManager = telephonyManager
-                    _ussdState.value = UssdState.Interactive(ussdResponse)
-                    android.util.Log.d("UssdService", "Interactive USSD session started")
+                    currentSessionCode = ussdCode
+                    sessionPath = path
+                    sessionSimSlot = simSlotIndex
+                    if (!silent) _ussdState.value = UssdState.Interactive(ussdResponse)
+                    android.util.Log.d("UssdService", "Interactive USSD menu at ${path.size} step(s)")
                 } else {
                     // Final response, end session
                     endSession()
-                    _ussdState.value = UssdState.Success(ussdResponse)
+                    if (!silent) _ussdState.value = UssdState.Success(ussdResponse)
                     android.util.Log.d("UssdService", "USSD session completed")
                 }
 
-                addToHistory(ussdCode, responseText, true)
+                if (!silent) addToHistory(request, responseText, true)
 
                 if (continuation.isActive) {
                     continuation.resume(UssdResult.Success(ussdResponse))
@@ -260,8 +342,10 @@ class UssdService @Inject constructor(
 
                 android.util.Log.e("UssdService", "USSD failed: $errorMessage (code: $failureCode)")
                 endSession()
-                _ussdState.value = UssdState.Error(errorMessage)
-                addToHistory(currentSessionCode ?: ussdCode, errorMessage, false)
+                if (!silent) {
+                    _ussdState.value = UssdState.Error(errorMessage)
+                    addToHistory(request, errorMessage, false)
+                }
 
                 if (continuation.isActive) {
                     continuation.resume(UssdResult.Error(UssdError.USSD_FAILED, errorMessage))
@@ -271,29 +355,17 @@ class UssdService @Inject constructor(
 
         try {
             // Get the appropriate TelephonyManager for the SIM slot
-            val simTm = if (isReply && sessionTelephonyManager != null) {
-                // Reuse the session TelephonyManager for replies
-                sessionTelephonyManager!!
+            val simTm = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && simSlotIndex > 0) {
+                tm.createForSubscriptionId(getSubscriptionIdForSlot(simSlotIndex))
             } else {
-                // Create new for initial request
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && simSlotIndex > 0) {
-                    tm.createForSubscriptionId(getSubscriptionIdForSlot(simSlotIndex))
-                } else {
-                    tm
-                }
+                tm
             }
 
-            // Store for session continuity
-            if (!isReply) {
-                sessionTelephonyManager = simTm
-                currentSessionCode = ussdCode
-            }
-
-            android.util.Log.d("UssdService", "Sending USSD request: $ussdCode (isReply: $isReply)")
+            android.util.Log.d("UssdService", "Sending USSD request: $request")
 
             // Send the USSD request
             simTm.sendUssdRequest(
-                ussdCode,
+                request,
                 callback,
                 Handler(Looper.getMainLooper())
             )
@@ -301,7 +373,7 @@ class UssdService @Inject constructor(
             timeoutJob?.cancel()
             android.util.Log.e("UssdService", "Security exception", e)
             endSession()
-            _ussdState.value = UssdState.Error("Permission denied")
+            if (!silent) _ussdState.value = UssdState.Error("Permission denied")
             if (continuation.isActive) {
                 continuation.resume(UssdResult.Error(UssdError.PERMISSION_DENIED, e.message))
             }
@@ -309,7 +381,7 @@ class UssdService @Inject constructor(
             timeoutJob?.cancel()
             android.util.Log.e("UssdService", "Exception during USSD execution", e)
             endSession()
-            _ussdState.value = UssdState.Error(e.message ?: "Unknown error")
+            if (!silent) _ussdState.value = UssdState.Error(e.message ?: "Unknown error")
             if (continuation.isActive) {
                 continuation.resume(UssdResult.Error(UssdError.EXECUTION_FAILED, e.message))
             }
@@ -318,34 +390,11 @@ class UssdService @Inject constructor(
         continuation.invokeOnCancellation {
             timeoutJob?.cancel()
             endSession()
-            _ussdState.value = UssdState.Idle
+            if (!silent) _ussdState.value = UssdState.Idle
             android.util.Log.d("UssdService", "USSD request cancelled")
         }
     }
 
-    /**
-     * Detect if the USSD response indicates an interactive session
-     * Interactive sessions typically have numbered menu options
-     */
-    private fun detectInteractiveSession(response: String): Boolean {
-        // Common patterns for interactive USSD menus
-        val interactivePatterns = listOf(
-            Regex("\\d+\\.\\s*\\w+"),           // "1. Option" pattern
-            Regex("\\d+\\)\\s*\\w+"),           // "1) Option" pattern
-            Regex("Reply\\s+with", RegexOption.IGNORE_CASE),
-            Regex("Enter\\s+\\d+", RegexOption.IGNORE_CASE),
-            Regex("Press\\s+\\d+", RegexOption.IGNORE_CASE),
-            Regex("Select\\s+option", RegexOption.IGNORE_CASE),
-            Regex("Choose", RegexOption.IGNORE_CASE),
-            Regex("0\\.\\s*Exit", RegexOption.IGNORE_CASE),
-            Regex("0\\.\\s*Cancel", RegexOption.IGNORE_CASE),
-            Regex("\\*\\s*Back", RegexOption.IGNORE_CASE),
-            Regex("#\\s*Next", RegexOption.IGNORE_CASE)
-        )
-
-        return interactivePatterns.any { it.containsMatchIn(response) }
-    }
-
     /**
      * End the current USSD session
      */
@@ -354,7 +403,7 @@ class UssdService @Inject constructor(
         timeoutJob = null
         isInteractiveSession = false
         currentSessionCode = null
-        sessionTelephonyManager = null
+        sessionPath = emptyList()
         android.util.Log.d("UssdService", "USSD session ended")
     }
 
@@ -567,6 +616,9 @@ class UssdService @Inject constructor(
      * Common USSD codes helper
      */
     companion object {
+        private val USSD_CODE_PATTERN = Regex("^[*#][0-9*#]+#$")
+        private val USSD_OPEN_CODE_PATTERN = Regex("^[*][0-9*#]+$")
+
         // Common USSD codes
         val COMMON_CODES = mapOf(
             "Check Balance" to "*123#",
@@ -640,7 +692,8 @@ data class UssdResponse(
     val timestamp: Long,
     val isSuccess: Boolean,
     val isInteractive: Boolean = false,
-    val sessionActive: Boolean = false
+    val sessionActive: Boolean = false,
+    val menu: UssdMenu? = null
 )
 
 /**
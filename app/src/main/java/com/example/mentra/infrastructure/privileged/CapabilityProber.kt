@@ -0,0 +1,148 @@
+package com.example.mentra.infrastructure.privileged
+
+import com.example.mentra.infrastructure.root.RootExecutor
+import com.example.mentra.infrastructure.shizuku.ShizukuBridge
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * CAPABILITY PROBER
+ * Finds out once which privileged backends work, off the main thread
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Shizuku is re-probed whenever its binder or permission state changes.
+ * Root is probed once (su doesn't come and go) unless [reprobe] is
+ * called; the probe runs `id` through the shared su session, so a
+ * successful probe also leaves that session warm.
+ *
+ * The two probes run independently and each publishes as soon as it
+ * finishes. An su grant prompt can sit unanswered for up to the probe
+ * timeout, and Shizuku commands shouldn't wait behind it.
+ */
+@Singleton
+class CapabilityProber @Inject constructor(
+    private val shizukuBridge: ShizukuBridge,
+    private val rootExecutor: RootExecutor
+) {
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val shizukuProbeLock = Mutex()
+    private val rootProbeLock = Mutex()
+    private val publishLock = Any()
+    private var shizukuProbe: ProbeResult? = null
+    private var rootProbe: ProbeResult? = null
+
+    private val _capabilities = MutableStateFlow<Capabilities?>(null)
+    // Null until the first Shizuku probe finishes; root stays null until su answers
+    val capabilities: StateFlow<Capabilities?> = _capabilities.asStateFlow()
+
+    init {
+        scope.launch {
+            combine(shizukuBridge.isAvailable, shizukuBridge.isPermissionGranted) { available, granted ->
+                available to granted
+            }
+                .distinctUntilChanged()
+                .collect { probeShizuku() }
+        }
+        scope.launch { probeRoot() }
+    }
+
+    /**
+     * Capabilities, waiting for the first probe if it hasn't finished.
+     * Returns without the root result when Shizuku is usable; otherwise
+     * root is the best remaining backend, so its probe is waited for.
+     */
+    suspend fun await(): Capabilities = capabilities
+        .filterNotNull()
+        .first { it.shizuku.available || it.root != null }
+
+    /**
+     * Probe every backend again, root included
+     */
+    fun reprobe() {
+        scope.launch { probeShizuku() }
+        scope.launch { probeRoot() }
+    }
+
+    private suspend fun probeShizuku() = shizukuProbeLock.withLock {
+        val shizuku = timed {
+            if (shizukuBridge.isRunning() && shizukuBridge.checkPermission()) {
+                Result.success("binder alive, permission granted")
+            } else if (shizukuBridge.isRunning()) {
+                Result.failure(SecurityException("permission not granted"))
+            } else {
+                Result.failure(UnsupportedOperationException("not running"))
+            }
+        }
+        publish { shizukuProbe = shizuku }
+    }
+
+    private suspend fun probeRoot() = rootProbeLock.withLock {
+        // The previous result stays published while a reprobe waits on su
+        val root = timed { rootExecutor.probeRootAccess() }
+        publish { rootProbe = root }
+    }
+
+    private fun publish(update: () -> Unit) = synchronized(publishLock) {
+        update()
+        val shizuku = shizukuProbe ?: return@synchronized
+        _capabilities.value = Capabilities(
+            shizuku = shizuku,
+            root = rootProbe,
+            probedAt = System.currentTimeMillis()
+        )
+    }
+
+    private suspend fun timed(block: suspend () -> Result<String>): ProbeResult {
+        val start = System.nanoTime()
+        val result = block()
+        return ProbeResult(
+            available = result.isSuccess,
+            millis = (System.nanoTime() - start) / 1_000_000,
+            detail = result.fold({ it.trim().lineSequence().firstOrNull().orEmpty() }, { it.message.orEmpty() })
+        )
+    }
+}
+
+/**
+ * Outcome of probing one backend
+ */
+data class ProbeResult(
+    val available: Boolean,
+    val millis: Long,
+    val detail: String = ""
+)
+
+/**
+ * Which backends can run commands. ADB (the app's own shell) and the
+ * Android API fallback need no probe and are always tried.
+ */
+data class Capabilities(
+    val shizuku: ProbeResult,
+    // Null while the su probe is still waiting for an answer
+    val root: ProbeResult?,
+    val probedAt: Long
+) {
+    /** Usable methods, most capable first */
+    val methods: List<ExecutionMethod>
+        get() = buildList {
+            if (shizuku.available) add(ExecutionMethod.SHIZUKU)
+            if (root?.available == true) add(ExecutionMethod.ROOT)
+            add(ExecutionMethod.ADB)
+            add(ExecutionMethod.LIMITED)
+        }
+}
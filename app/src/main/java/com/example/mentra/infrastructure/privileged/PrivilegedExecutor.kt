@@ -6,9 +6,17 @@ import com.example.mentra.infrastructure.apis.AndroidAPIExecutor
 import com.example.mentra.infrastructure.root.RootExecutor
 import com.example.mentra.infrastructure.shizuku.ShizukuBridge
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -19,6 +27,9 @@ import javax.inject.Singleton
  * 2. Root (if device is rooted)
  * 3. ADB (if accessible)
  * 4. Android APIs (fallback - always works, limited functionality)
+ *
+ * Which of these exist is probed once by [CapabilityProber]; which one
+ * works for a given kind of command is remembered in [routeCache].
  */
 @Singleton
 class PrivilegedExecutor @Inject constructor(
@@ -26,24 +37,26 @@ class PrivilegedExecutor @Inject constructor(
     private val shizukuBridge: ShizukuBridge,
     private val rootExecutor: RootExecutor,
     private val adbExecutor: ADBExecutor,
-    private val androidAPIExecutor: AndroidAPIExecutor
+    private val androidAPIExecutor: AndroidAPIExecutor,
+    private val capabilityProber: CapabilityProber
 ) {
 
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
     private val _executionMethod = MutableStateFlow<ExecutionMethod>(ExecutionMethod.NONE)
     val executionMethod: StateFlow<ExecutionMethod> = _executionMethod.asStateFlow()
 
-    init {
-        detectAvailableMethod()
-    }
+    private val routeCache = RouteCache()
 
-    /**
-     * Detect which execution method is available
-     */
-    private fun detectAvailableMethod() {
-        _executionMethod.value = when {
-            shizukuBridge.isRunning() && shizukuBridge.checkPermission() -> ExecutionMethod.SHIZUKU
-            rootExecutor.hasRootAccess() -> ExecutionMethod.ROOT
-            else -> ExecutionMethod.LIMITED
+    init {
+        // A backend appearing or going away invalidates every routing decision
+        scope.launch {
+            capabilityProber.capabilities.filterNotNull().collect { capabilities ->
+                routeCache.clear()
+                _executionMethod.value = capabilities.methods
+                    .firstOrNull { it == ExecutionMethod.SHIZUKU || it == ExecutionMethod.ROOT }
+                    ?: ExecutionMethod.LIMITED
+            }
         }
     }
 
@@ -51,34 +64,46 @@ class PrivilegedExecutor @Inject constructor(
      * Execute privileged command using best available method
      */
     suspend fun execute(command: String, params: Map<String, String> = emptyMap()): Result<String> {
-        // Try Shizuku first (most reliable for system commands)
-        if (shizukuBridge.isRunning() && shizukuBridge.checkPermission()) {
-            _executionMethod.value = ExecutionMethod.SHIZUKU
-            val result = shizukuBridge.executeCommand(command)
-            if (result.isSuccess) return result
-        }
+        return run(command, params, shellOnly = false)
+    }
 
-        // Try Root second (most powerful)
-        if (rootExecutor.hasRootAccess()) {
-            _executionMethod.value = ExecutionMethod.ROOT
-            val result = rootExecutor.executeRootCommand(command)
-            if (result.isSuccess) return result
-        }
+    /**
+     * Execute a multi-line shell script with the best method that has a
+     * shell. The Android API fallback is skipped: it matches keywords and
+     * can't run a script.
+     */
+    suspend fun executeShell(script: String): Result<String> {
+        return run(script, emptyMap(), shellOnly = true)
+    }
 
-        // Try ADB third (for development)
-        val adbResult = adbExecutor.executeADBCommand(command)
-        if (adbResult.isSuccess) {
-            _executionMethod.value = ExecutionMethod.ADB
-            return adbResult
+    private suspend fun run(command: String, params: Map<String, String>, shellOnly: Boolean): Result<String> {
+        val commandClass = RouteCache.commandClass(command)
+        val available = capabilityProber.await().methods
+            .filterNot { shellOnly && it == ExecutionMethod.LIMITED }
+        val methods = routeCache.order(commandClass, available)
+
+        val failed = mutableListOf<ExecutionMethod>()
+        for (method in methods) {
+            val result = when (method) {
+                ExecutionMethod.SHIZUKU -> shizukuBridge.executeCommand(command)
+                ExecutionMethod.ROOT -> rootExecutor.executeRootCommand(command)
+                ExecutionMethod.ADB -> adbExecutor.executeADBCommand(command)
+                ExecutionMethod.LIMITED -> androidAPIExecutor.execute(command, params)
+                ExecutionMethod.NONE -> continue
+            }
+
+            if (result.isSuccess) {
+                _executionMethod.value = method
+                failed.forEach { routeCache.recordFailure(commandClass, it) }
+                routeCache.recordSuccess(commandClass, method)
+                return result
+            }
+            failed.add(method)
         }
 
-        // Fallback to Android APIs (always works, but limited)
-        _executionMethod.value = ExecutionMethod.LIMITED
-        val apiResult = androidAPIExecutor.execute(command, params)
-
-        if (apiResult.isSuccess) {
-            return apiResult
-        }
+        // When every method fails the command itself may be at fault (a typo,
+        // a missing package), so keep trying the most capable one next time
+        failed.drop(1).forEach { routeCache.recordFailure(commandClass, it) }
 
         // Nothing worked - provide helpful error
         return Result.failure(
@@ -86,6 +111,53 @@ class PrivilegedExecutor @Inject constructor(
         )
     }
 
+    /**
+     * Execute privileged command, emitting output lines as they arrive.
+     * Shizuku and root stream from the process; ADB and the Android API
+     * fallback emit their whole result at the end. Once output has
+     * started there is no falling back to the next method.
+     */
+    fun executeStream(command: String, params: Map<String, String> = emptyMap()): Flow<String> = flow {
+        val methods = capabilityProber.await().methods
+        when {
+            ExecutionMethod.SHIZUKU in methods -> {
+                _executionMethod.value = ExecutionMethod.SHIZUKU
+                emitAll(shizukuBridge.streamCommand(command))
+            }
+
+            ExecutionMethod.ROOT in methods -> {
+                _executionMethod.value = ExecutionMethod.ROOT
+                emitAll(rootExecutor.streamRootCommand(command))
+            }
+
+            else -> {
+                val output = execute(command, params).getOrThrow()
+                output.lineSequence().forEach { emit(it) }
+            }
+        }
+    }
+
+    /**
+     * Probe results, routing decisions and session latency, for the
+     * `privileges` shell command
+     */
+    fun getPrivilegeReport(): PrivilegeReport {
+        return PrivilegeReport(
+            capabilities = capabilityProber.capabilities.value,
+            activeMethod = _executionMethod.value,
+            routes = routeCache.snapshot(),
+            rootSession = rootExecutor.sessionStats.value,
+            shizukuSession = shizukuBridge.sessionStats.value
+        )
+    }
+
+    /**
+     * Probe every backend again and forget routing decisions
+     */
+    fun reprobe() {
+        capabilityProber.reprobe()
+    }
+
     /**
      * Build helpful error message based on command
      */
@@ -144,6 +216,7 @@ class PrivilegedExecutor @Inject constructor(
 
     /**
      * Check if we have any privileged access
+     * (false until the first probe has finished)
      */
     fun hasPrivilegedAccess(): Boolean {
         return _executionMethod.value != ExecutionMethod.NONE &&
@@ -151,6 +224,18 @@ class PrivilegedExecutor @Inject constructor(
     }
 }
 
+/**
+ * Snapshot shown by the `privileges` command
+ */
+data class PrivilegeReport(
+    // Null while the first probe is still running
+    val capabilities: Capabilities?,
+    val activeMethod: ExecutionMethod,
+    val routes: List<RouteDecision>,
+    val rootSession: SessionStats,
+    val shizukuSession: SessionStats
+)
+
 /**
  * Available execution methods
  */
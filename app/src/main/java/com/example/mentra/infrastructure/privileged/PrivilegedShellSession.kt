@@ -0,0 +1,221 @@
+package com.example.mentra.infrastructure.privileged
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+import java.io.BufferedReader
+import java.io.BufferedWriter
+import java.io.IOException
+import java.util.UUID
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * PRIVILEGED SHELL SESSION
+ * One long-lived `su` / `sh` process shared by every command
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Spawning su costs far more than a settings toggle itself, so the shell
+ * is started on first use and kept. Each command is written to its stdin
+ * as
+ *
+ *     ( eval '<command>' ) </dev/null 2>&1; echo "<marker> $?"
+ *
+ * and its output is everything read up to the marker line, which also
+ * carries the exit code. The marker holds a random per-session token and
+ * a sequence number, so command output can't fake it. The subshell keeps
+ * `cd`, `export`, variables and `exit` from leaking into later commands,
+ * so each one starts from the same state as it would in a fresh su.
+ *
+ * Callers queue on a fair mutex and are served one at a time in arrival
+ * order. If the shell dies (su was revoked, something killed it) that
+ * command fails and the next one starts a fresh shell. A command that
+ * outlives [commandTimeoutMillis], or whose caller is cancelled, kills
+ * the shell for the same reason: there is no other way to stop it.
+ *
+ * Long-running commands whose output should stream belong in
+ * [processLines]; here they would hold up everyone else in the queue.
+ */
+class PrivilegedShellSession(
+    private val shellCommand: List<String>,
+    private val commandTimeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS
+) {
+
+    private class Shell(val process: Process) {
+        val input: BufferedWriter = process.outputStream.bufferedWriter()
+        val output: BufferedReader = process.inputStream.bufferedReader()
+    }
+
+    // Replies are read here rather than in the caller's scope: a child the
+    // command started (e.g. `sleep`) can keep the pipe open after the shell
+    // is killed, and nobody should wait for that read to end
+    private val readerScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val queue = Mutex()
+    private val token = UUID.randomUUID().toString().replace("-", "")
+    private var sequence = 0L
+
+    // Only touched while holding [queue]
+    private var shell: Shell? = null
+
+    private val _stats = MutableStateFlow(SessionStats())
+    val stats: StateFlow<SessionStats> = _stats.asStateFlow()
+
+    /**
+     * Run [command] in the shared shell
+     * @throws IOException if the shell can't be started, dies, or the
+     * command times out
+     */
+    suspend fun execute(command: String): SessionResult = queue.withLock {
+        withContext(Dispatchers.IO) {
+            val start = System.nanoTime()
+            try {
+                val (output, exitCode) = exchange(command)
+                val result = SessionResult(output, exitCode, (System.nanoTime() - start) / 1_000_000)
+                record(result.latencyMillis, failed = exitCode != 0)
+                result
+            } catch (e: Exception) {
+                record((System.nanoTime() - start) / 1_000_000, failed = true)
+                throw e
+            }
+        }
+    }
+
+    /**
+     * Kill the shell; the next command starts a new one
+     */
+    suspend fun close() {
+        queue.withLock { kill() }
+    }
+
+    private suspend fun exchange(command: String): Pair<String, Int> {
+        val current = try {
+            send(ensureStarted(), command)
+        } catch (e: IOException) {
+            // Died while idle; the command never reached it, so one retry is safe
+            kill()
+            send(ensureStarted(), command)
+        }
+
+        val marker = markerFor(sequence)
+        val reply = readerScope.async { readReply(current, marker) }
+        return try {
+            withTimeout(commandTimeoutMillis) { reply.await() }
+        } catch (e: TimeoutCancellationException) {
+            kill()
+            throw IOException("Command timed out after ${commandTimeoutMillis}ms", e)
+        } catch (e: CancellationException) {
+            kill()
+            throw e
+        } catch (e: IOException) {
+            kill()
+            throw e
+        }
+    }
+
+    private fun ensureStarted(): Shell {
+        shell?.let { if (it.process.isAlive) return it }
+
+        val restarted = _stats.value.starts > 0
+        kill()
+        val start = System.nanoTime()
+        val started = Shell(ProcessBuilder(shellCommand).start())
+        shell = started
+        _stats.value = _stats.value.let {
+            it.copy(
+                starts = it.starts + 1,
+                restarts = if (restarted) it.restarts + 1 else it.restarts,
+                lastStartMillis = (System.nanoTime() - start) / 1_000_000
+            )
+        }
+        return started
+    }
+
+    private fun send(target: Shell, command: String): Shell {
+        val marker = markerFor(++sequence)
+        target.input.write("( eval ${quote(command)} ) </dev/null 2>&1; echo \"$marker \$?\"\n")
+        target.input.flush()
+        return target
+    }
+
+    private fun readReply(source: Shell, marker: String): Pair<String, Int> {
+        val output = StringBuilder()
+        var first = true
+        while (true) {
+            val line = source.output.readLine() ?: throw IOException("Shell exited")
+            val at = line.indexOf(marker)
+            // Output without a trailing newline shares the marker's line
+            val text = if (at >= 0) line.substring(0, at) else line
+            if (at != 0) {
+                if (!first) output.append('\n')
+                output.append(text)
+                first = false
+            }
+            if (at >= 0) {
+                val exitCode = line.substring(at + marker.length).trim().toIntOrNull() ?: -1
+                return output.toString() to exitCode
+            }
+        }
+    }
+
+    private fun kill() {
+        shell?.process?.destroy()
+        shell = null
+    }
+
+    private fun record(latencyMillis: Long, failed: Boolean) {
+        _stats.value = _stats.value.let {
+            it.copy(
+                commands = it.commands + 1,
+                failures = if (failed) it.failures + 1 else it.failures,
+                lastLatencyMillis = latencyMillis,
+                totalLatencyMillis = it.totalLatencyMillis + latencyMillis
+            )
+        }
+    }
+
+    private fun markerFor(id: Long) = "__MENTRA_${token}_${id}__"
+
+    companion object {
+        private const val DEFAULT_TIMEOUT_MILLIS = 30_000L
+
+        /** Single-quote [text] for sh */
+        internal fun quote(text: String): String = "'" + text.replace("'", "'\\''") + "'"
+    }
+}
+
+/**
+ * Output of one command run in a [PrivilegedShellSession]; stderr is
+ * merged into [output]
+ */
+data class SessionResult(
+    val output: String,
+    val exitCode: Int,
+    val latencyMillis: Long
+) {
+    val isSuccess: Boolean get() = exitCode == 0
+}
+
+/**
+ * Running totals for a session
+ */
+data class SessionStats(
+    val starts: Int = 0,
+    val restarts: Int = 0,
+    val commands: Int = 0,
+    val failures: Int = 0,
+    val lastStartMillis: Long = 0,
+    val lastLatencyMillis: Long = 0,
+    val totalLatencyMillis: Long = 0
+) {
+    val averageLatencyMillis: Long get() = if (commands == 0) 0 else totalLatencyMillis / commands
+}
@@ -0,0 +1,82 @@
+package com.example.mentra.infrastructure.privileged
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.IOException
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * PROCESS STREAMS
+ * Line-by-line process output as a cold Flow
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * The process starts when the flow is collected. stderr is merged into
+ * stdout so lines arrive in the order the command wrote them. At most
+ * [bufferLines] lines are held ahead of a slow collector; past that the
+ * reader stops pulling from the pipe and the process blocks on write.
+ * Cancelling the collector destroys the process, which also unblocks a
+ * read in progress.
+ *
+ * A non-zero exit fails the flow with [ProcessExitException] after every
+ * line has been emitted.
+ */
+fun processLines(
+    command: List<String>,
+    stdin: String? = null,
+    bufferLines: Int = DEFAULT_BUFFER_LINES
+): Flow<String> = channelFlow {
+    val process = withContext(Dispatchers.IO) {
+        ProcessBuilder(command).redirectErrorStream(true).start()
+    }
+
+    val reader = launch(Dispatchers.IO) {
+        if (stdin != null) {
+            process.outputStream.bufferedWriter().use { it.write(stdin) }
+        }
+
+        val tail = ArrayDeque<String>(EXIT_TAIL_LINES)
+        try {
+            process.inputStream.bufferedReader().use { input ->
+                while (true) {
+                    val line = input.readLine() ?: break
+                    if (tail.size == EXIT_TAIL_LINES) tail.removeFirst()
+                    tail.addLast(line)
+                    send(line)
+                }
+            }
+        } catch (e: IOException) {
+            // Stream closed by destroy() after cancellation
+            if (isActive) throw e
+        }
+
+        // A destroyed process ends with a signal exit code; that's not a failure
+        ensureActive()
+        val exitCode = process.waitFor()
+        if (exitCode != 0) throw ProcessExitException(exitCode, tail.toList())
+    }
+
+    try {
+        reader.join()
+    } finally {
+        process.destroy()
+    }
+}.buffer(bufferLines)
+
+/**
+ * Process finished with a non-zero exit code; [tail] holds its last lines
+ */
+class ProcessExitException(
+    val exitCode: Int,
+    val tail: List<String>
+) : RuntimeException("Command failed (exit $exitCode): ${tail.joinToString("\n").ifEmpty { "Unknown error" }}")
+
+private const val DEFAULT_BUFFER_LINES = 256
+
+// Lines kept for the error message of a failed command
+private const val EXIT_TAIL_LINES = 20
@@ -0,0 +1,108 @@
+package com.example.mentra.infrastructure.privileged
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * ROUTE CACHE
+ * Which execution method works for each class of command
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Commands are grouped by their leading words ("settings put",
+ * "input", "pm disable-user"). The method that last succeeded for a
+ * class is tried first next time; a method that failed is skipped for
+ * that class until [negativeTtlMillis] passes, so a command that only
+ * Shizuku can run doesn't pay for an ADB attempt on every call.
+ */
+class RouteCache(
+    private val negativeTtlMillis: Long = DEFAULT_NEGATIVE_TTL_MILLIS,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    private class Route {
+        @Volatile var preferred: ExecutionMethod? = null
+        @Volatile var successes: Int = 0
+        val failedUntil = ConcurrentHashMap<ExecutionMethod, Long>()
+    }
+
+    private val routes = ConcurrentHashMap<String, Route>()
+
+    /**
+     * Methods to try for [commandClass], in order, out of [available]
+     */
+    fun order(commandClass: String, available: List<ExecutionMethod>): List<ExecutionMethod> {
+        val route = routes[commandClass] ?: return available
+        val now = clock()
+        val usable = available.filter { (route.failedUntil[it] ?: 0L) <= now }
+        val preferred = route.preferred
+        return if (preferred != null && preferred in usable) {
+            listOf(preferred) + (usable - preferred)
+        } else {
+            usable
+        }
+    }
+
+    fun recordSuccess(commandClass: String, method: ExecutionMethod) {
+        val route = routes.getOrPut(commandClass) { Route() }
+        route.preferred = method
+        route.successes++
+        route.failedUntil.remove(method)
+    }
+
+    fun recordFailure(commandClass: String, method: ExecutionMethod) {
+        val route = routes.getOrPut(commandClass) { Route() }
+        if (route.preferred == method) route.preferred = null
+        route.failedUntil[method] = clock() + negativeTtlMillis
+    }
+
+    /**
+     * Forget everything, e.g. when a backend appears or goes away
+     */
+    fun clear() {
+        routes.clear()
+    }
+
+    /**
+     * Current decisions, for display
+     */
+    fun snapshot(): List<RouteDecision> {
+        val now = clock()
+        return routes.entries
+            .map { (commandClass, route) ->
+                RouteDecision(
+                    commandClass = commandClass,
+                    preferred = route.preferred,
+                    successes = route.successes,
+                    skipped = route.failedUntil.filterValues { it > now }.keys.sorted()
+                )
+            }
+            .sortedBy { it.commandClass }
+    }
+
+    companion object {
+        private const val DEFAULT_NEGATIVE_TTL_MILLIS = 5 * 60_000L
+
+        // Tools whose second word picks a different operation
+        private val MULTIPLEXERS = setOf("am", "cmd", "dumpsys", "pm", "settings", "svc", "wm")
+
+        /**
+         * Class of [command]: its first word, plus the second for
+         * multiplexing tools ("settings put", "svc wifi")
+         */
+        fun commandClass(command: String): String {
+            val words = command.trim().split(WHITESPACE, limit = 3)
+            val tool = words.first().lowercase()
+            return if (tool in MULTIPLEXERS && words.size > 1) "$tool ${words[1].lowercase()}" else tool
+        }
+
+        private val WHITESPACE = Regex("\\s+")
+    }
+}
+
+data class RouteDecision(
+    val commandClass: String,
+    val preferred: ExecutionMethod?,
+    val successes: Int,
+    // Methods currently negatively cached for this class
+    val skipped: List<ExecutionMethod>
+)
@@ -1,8 +1,13 @@
 package com.example.mentra.infrastructure.root
 
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.withContext
-import java.io.DataOutputStream
+import com.example.mentra.infrastructure.privileged.PrivilegedShellSession
+import com.example.mentra.infrastructure.privileged.SessionStats
+import com.example.mentra.infrastructure.privileged.processLines
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -13,58 +18,68 @@ import javax.inject.Singleton
 @Singleton
 class RootExecutor @Inject constructor() {
 
+    @Volatile
     private var isRootAvailable: Boolean = false
 
-    init {
-        checkRootAccess()
-    }
+    // One su process shared by all commands, started on first use
+    private val session = PrivilegedShellSession(listOf("su"))
+
+    /** Command count, restarts and latency of the shared su session */
+    val sessionStats: StateFlow<SessionStats> = session.stats
 
     /**
-     * Check if device has root access
+     * Check if device has root access by running `id` in the shared su
+     * session. Blocks on su (and any grant prompt), so it is called from
+     * CapabilityProber in the background rather than at injection.
      */
-    private fun checkRootAccess() {
-        isRootAvailable = try {
-            val process = Runtime.getRuntime().exec("su")
-            val output = DataOutputStream(process.outputStream)
-            output.writeBytes("id\n")
-            output.writeBytes("exit\n")
-            output.flush()
-            process.waitFor() == 0
+    suspend fun probeRootAccess(): Result<String> {
+        val result = try {
+            val id = session.execute("id")
+            if (id.isSuccess) Result.success(id.output) else Result.failure(SecurityException(id.output))
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
-            false
+            Result.failure(e)
         }
+        isRootAvailable = result.isSuccess
+        return result
     }
 
     /**
      * Execute command as root
      */
-    suspend fun executeRootCommand(command: String): Result<String> = withContext(Dispatchers.IO) {
+    suspend fun executeRootCommand(command: String): Result<String> {
         if (!isRootAvailable) {
-            return@withContext Result.failure(SecurityException("Root access not available"))
+            return Result.failure(SecurityException("Root access not available"))
         }
 
-        try {
-            val process = Runtime.getRuntime().exec("su")
-            val output = DataOutputStream(process.outputStream)
-
-            output.writeBytes("$command\n")
-            output.writeBytes("exit\n")
-            output.flush()
-
-            val result = process.inputStream.bufferedReader().readText()
-            val exitCode = process.waitFor()
-
-            if (exitCode == 0) {
-                Result.success(result)
+        return try {
+            val result = session.execute(command)
+            if (result.isSuccess) {
+                Result.success(result.output)
             } else {
-                val error = process.errorStream.bufferedReader().readText()
-                Result.failure(RuntimeException("Command failed: $error"))
+                Result.failure(RuntimeException("Command failed: ${result.output}"))
             }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
 
+    /**
+     * Execute command as root, emitting output lines as they are written.
+     * Runs in its own su process so a long command doesn't hold up the
+     * shared session; cancelling the collector kills it.
+     */
+    fun streamRootCommand(command: String): Flow<String> = flow {
+        if (!isRootAvailable) {
+            throw SecurityException("Root access not available")
+        }
+
+        emitAll(processLines(listOf("su"), stdin = "$command\nexit\n"))
+    }
+
     fun hasRootAccess(): Boolean = isRootAvailable
 }
 
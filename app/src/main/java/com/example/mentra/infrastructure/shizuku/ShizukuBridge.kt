@@ -1,9 +1,16 @@
 package com.example.mentra.infrastructure.shizuku
 
 import android.content.pm.PackageManager
+import com.example.mentra.infrastructure.privileged.PrivilegedShellSession
+import com.example.mentra.infrastructure.privileged.SessionStats
+import com.example.mentra.infrastructure.privileged.processLines
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
 import rikka.shizuku.Shizuku
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -21,6 +28,12 @@ class ShizukuBridge @Inject constructor() {
     private val _isPermissionGranted = MutableStateFlow(false)
     val isPermissionGranted: StateFlow<Boolean> = _isPermissionGranted.asStateFlow()
 
+    // One shell shared by all commands, started on first use
+    private val session = PrivilegedShellSession(listOf("sh"))
+
+    /** Command count, restarts and latency of the shared shell */
+    val sessionStats: StateFlow<SessionStats> = session.stats
+
     private val binderReceivedListener = Shizuku.OnBinderReceivedListener {
         checkAvailability()
     }
@@ -131,20 +144,35 @@ class ShizukuBridge @Inject constructor() {
         }
 
         return try {
-            // Use Shizuku to execute shell command
-            val process = Runtime.getRuntime().exec(arrayOf("sh", "-c", command))
-            val output = process.inputStream.bufferedReader().readText()
-            val exitCode = process.waitFor()
-
-            if (exitCode == 0) {
-                Result.success(output)
+            val result = session.execute(command)
+            if (result.isSuccess) {
+                Result.success(result.output)
             } else {
-                val error = process.errorStream.bufferedReader().readText()
-                Result.failure(RuntimeException("Command failed (exit $exitCode): ${error.ifEmpty { "Unknown error" }}"))
+                Result.failure(RuntimeException("Command failed (exit ${result.exitCode}): ${result.output.ifEmpty { "Unknown error" }}"))
             }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
+
+    /**
+     * Execute command with Shizuku, emitting output lines as they are
+     * written. Runs in its own process so a long command doesn't hold up
+     * the shared session; cancelling the collector kills it.
+     */
+    fun streamCommand(command: String): Flow<String> = flow {
+        if (!_isAvailable.value) {
+            throw UnsupportedOperationException("Shizuku not running. Please start Shizuku app.")
+        }
+
+        if (!_isPermissionGranted.value) {
+            throw SecurityException("Shizuku permission not granted. Please authorize Mentra in Shizuku app.")
+        }
+
+        // Use Shizuku to execute shell command
+        emitAll(processLines(listOf("sh", "-c", command)))
+    }
 }
 
@@ -3,7 +3,6 @@ package com.example.mentra.launcher
 import android.content.Intent
 import android.content.pm.ApplicationInfo
 import android.content.pm.PackageManager
-import android.graphics.drawable.Drawable
 import androidx.compose.animation.*
 import androidx.compose.animation.core.*
 import androidx.compose.foundation.ExperimentalFoundationApi
@@ -16,6 +15,7 @@ import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.lazy.grid.GridCells
 import androidx.compose.foundation.lazy.grid.LazyVerticalGrid
 import androidx.compose.foundation.lazy.grid.items
+import androidx.compose.foundation.lazy.grid.rememberLazyGridState
 import androidx.compose.foundation.shape.CircleShape
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.icons.Icons
@@ -37,8 +37,10 @@ import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.text.style.TextOverflow
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
-import androidx.core.graphics.drawable.toBitmap
 import androidx.hilt.navigation.compose.hiltViewModel
+import com.example.mentra.shell.apps.AppIconCache
+import com.example.mentra.shell.apps.PrefetchAppIcons
+import com.example.mentra.shell.apps.rememberAppIcon
 import java.text.SimpleDateFormat
 import java.util.*
 import kotlin.math.absoluteValue
@@ -124,6 +126,7 @@ fun LauncherScreen(
             // Glowing App Grid
             GlowingAppGrid(
                 apps = apps.take(12),
+                iconCache = viewModel.iconCache,
                 onAppClick = viewModel::launchApp
             )
 
@@ -145,6 +148,7 @@ fun LauncherScreen(
                 apps = apps.filter {
                     it.name.contains(searchQuery, ignoreCase = true)
                 },
+                iconCache = viewModel.iconCache,
                 onDismiss = { showAppDrawer = false },
                 onAppClick = { app ->
                     viewModel.launchApp(app)
@@ -475,6 +479,7 @@ fun NeonActionButton(
 @Composable
 fun GlowingAppGrid(
     apps: List<AppInfo>,
+    iconCache: AppIconCache,
     onAppClick: (AppInfo) -> Unit
 ) {
     Column(
@@ -495,9 +500,10 @@ fun GlowingAppGrid(
             verticalArrangement = Arrangement.spacedBy(20.dp),
             modifier = Modifier.height(280.dp)
         ) {
-            items(apps) { app ->
+            items(apps, key = { it.packageName }) { app ->
                 GlowingAppIcon(
                     app = app,
+                    iconCache = iconCache,
                     onClick = { onAppClick(app) }
                 )
             }
@@ -509,6 +515,7 @@ fun GlowingAppGrid(
 @Composable
 fun GlowingAppIcon(
     app: AppInfo,
+    iconCache: AppIconCache,
     onClick: () -> Unit
 ) {
     var isPressed by remember { mutableStateOf(false) }
@@ -549,9 +556,9 @@ fun GlowingAppIcon(
             )
 
             // Icon
-            app.icon?.let { icon ->
+            rememberAppIcon(iconCache, app.packageName, app.lastUpdated)?.let { icon ->
                 Image(
-                    bitmap = icon.toBitmap(64, 64).asImageBitmap(),
+                    bitmap = icon.asImageBitmap(),
                     contentDescription = app.name,
                     modifier = Modifier
                         .size(60.dp)
@@ -648,6 +655,7 @@ fun FuturisticDrawerButton(
 @Composable
 fun FuturisticAppDrawer(
     apps: List<AppInfo>,
+    iconCache: AppIconCache,
     onDismiss: () -> Unit,
     onAppClick: (AppInfo) -> Unit
 ) {
@@ -714,14 +722,19 @@ fun FuturisticAppDrawer(
                 Spacer(modifier = Modifier.height(24.dp))
 
                 // Glowing grid of all apps
+                val gridState = rememberLazyGridState()
+                PrefetchAppIcons(gridState, apps, iconCache) { it.packageName to it.lastUpdated }
+
                 LazyVerticalGrid(
                     columns = GridCells.Fixed(4),
+                    state = gridState,
                     horizontalArrangement = Arrangement.spacedBy(16.dp),
                     verticalArrangement = Arrangement.spacedBy(24.dp)
                 ) {
-                    items(apps) { app ->
+                    items(apps, key = { it.packageName }) { app ->
                         GlowingAppIcon(
                             app = app,
+                            iconCache = iconCache,
                             onClick = { onAppClick(app) }
                         )
                     }
@@ -945,7 +958,8 @@ fun QuickSettingsSheet(
 data class AppInfo(
     val name: String,
     val packageName: String,
-    val icon: Drawable?,
+    // PackageInfo.lastUpdateTime, the icon cache's version key
+    val lastUpdated: Long = 0L,
     val isFavorite: Boolean = false,
     val isSystemApp: Boolean = false
 )
@@ -3,18 +3,24 @@ package com.example.mentra.launcher
 import android.content.Context
 import android.content.Intent
 import android.content.IntentFilter
-import android.content.pm.ApplicationInfo
-import android.content.pm.PackageManager
 import android.os.BatteryManager
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.example.mentra.infrastructure.apis.AndroidAPIExecutor
+import com.example.mentra.shell.apps.AppCacheService
+import com.example.mentra.shell.apps.AppIconCache
 import dagger.hilt.android.lifecycle.HiltViewModel
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import java.text.SimpleDateFormat
@@ -23,15 +29,49 @@ import javax.inject.Inject
 
 /**
  * ViewModel for Launcher
+ *
+ * The app grid follows [AppCacheService]'s catalog rather than scanning
+ * PackageManager itself, so the launcher and the shell share one
+ * enumeration (restored from disk at cold start, then kept current from
+ * package events) and icons load lazily through the shared icon cache.
  */
 @HiltViewModel
 class LauncherViewModel @Inject constructor(
     @ApplicationContext private val context: Context,
-    private val androidAPIExecutor: AndroidAPIExecutor
+    private val androidAPIExecutor: AndroidAPIExecutor,
+    private val appCacheService: AppCacheService
 ) : ViewModel() {
 
-    private val _installedApps = MutableStateFlow<List<AppInfo>>(emptyList())
-    val installedApps: StateFlow<List<AppInfo>> = _installedApps.asStateFlow()
+    companion object {
+        private const val TAG = "LauncherViewModel"
+    }
+
+    // Icons are loaded lazily by the grids, at the size they are shown at
+    val iconCache: AppIconCache get() = appCacheService.icons
+
+    private val createdAt = System.nanoTime()
+    private var firstAppsLogged = false
+
+    // Launchable apps from the shared catalog, already sorted by name
+    val installedApps: StateFlow<List<AppInfo>> = appCacheService.cachedApps
+        .map { apps ->
+            apps.filter { it.isLaunchable }.map { app ->
+                AppInfo(
+                    name = app.name,
+                    packageName = app.packageName,
+                    lastUpdated = app.lastUpdated,
+                    isSystemApp = app.isSystemApp
+                )
+            }
+        }
+        .flowOn(Dispatchers.Default)
+        .onEach { apps ->
+            if (apps.isNotEmpty() && !firstAppsLogged) {
+                firstAppsLogged = true
+                android.util.Log.d(TAG, "${apps.size} apps shown ${(System.nanoTime() - createdAt) / 1_000_000} ms after launch")
+            }
+        }
+        .stateIn(viewModelScope, SharingStarted.Eagerly, emptyList())
 
     private val _searchQuery = MutableStateFlow("")
     val searchQuery: StateFlow<String> = _searchQuery.asStateFlow()
@@ -46,39 +86,12 @@ class LauncherViewModel @Inject constructor(
     private val timeFormat = SimpleDateFormat("HH:mm", Locale.getDefault())
 
     init {
-        loadInstalledApps()
+        // No-op if the application already started it
+        appCacheService.initialize()
         startTimeUpdates()
         updateBatteryLevel()
     }
 
-    /**
-     * Load all installed apps
-     */
-    private fun loadInstalledApps() {
-        viewModelScope.launch {
-            try {
-                val apps = packageManager.getInstalledApplications(PackageManager.GET_META_DATA)
-                    .filter { app ->
-                        // Filter to show only launchable apps
-                        packageManager.getLaunchIntentForPackage(app.packageName) != null
-                    }
-                    .map { app ->
-                        AppInfo(
-                            name = app.loadLabel(packageManager).toString(),
-                            packageName = app.packageName,
-                            icon = app.loadIcon(packageManager),
-                            isSystemApp = (app.flags and ApplicationInfo.FLAG_SYSTEM) != 0
-                        )
-                    }
-                    .sortedBy { it.name }
-
-                _installedApps.value = apps
-            } catch (e: Exception) {
-                e.printStackTrace()
-            }
-        }
-    }
-
     /**
      * Update search query
      */
@@ -95,6 +108,7 @@ class LauncherViewModel @Inject constructor(
             intent?.let {
                 it.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
                 context.startActivity(it)
+                appCacheService.recordLaunch(app.packageName)
             }
         } catch (e: Exception) {
             e.printStackTrace()
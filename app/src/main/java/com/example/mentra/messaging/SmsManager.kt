@@ -5,6 +5,8 @@ import android.net.Uri
 import android.os.Build
 import android.provider.ContactsContract
 import android.provider.Telephony
+import com.example.mentra.contacts.ContactRepository
+import com.example.mentra.contacts.ContactSnapshot
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -34,7 +36,8 @@ import javax.inject.Singleton
 @Singleton
 class SmsManager @Inject constructor(
     @ApplicationContext private val context: Context,
-    private val simCardManager: SimCardManager
+    private val simCardManager: SimCardManager,
+    private val contactRepository: ContactRepository
 ) {
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
 
@@ -62,6 +65,15 @@ class SmsManager @Inject constructor(
                 loadConversations()
             }
         }
+
+        // Keep contacts in step with the shared repository once loaded
+        scope.launch {
+            contactRepository.snapshot.collect { snapshot ->
+                if (snapshot !== ContactSnapshot.EMPTY) {
+                    _contacts.value = snapshot.asContacts
+                }
+            }
+        }
     }
 
     /**
@@ -322,85 +334,16 @@ class SmsManager @Inject constructor(
 
     /**
      * Load contacts from phone
+     * Served from the shared ContactRepository snapshot
      */
     suspend fun loadContacts() = withContext(Dispatchers.IO) {
         try {
-            val contacts = mutableListOf<Contact>()
-
-            val projection = arrayOf(
-                ContactsContract.Contacts._ID,
-                ContactsContract.Contacts.DISPLAY_NAME,
-                ContactsContract.Contacts.PHOTO_URI,
-                ContactsContract.Contacts.HAS_PHONE_NUMBER
-            )
-
-            val cursor = context.contentResolver.query(
-                ContactsContract.Contacts.CONTENT_URI,
-                projection,
-                null,
-                null,
-                "${ContactsContract.Contacts.DISPLAY_NAME} ASC"
-            )
-
-            cursor?.use {
-                val idIndex = it.getColumnIndex(ContactsContract.Contacts._ID)
-                val nameIndex = it.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME)
-                val photoIndex = it.getColumnIndex(ContactsContract.Contacts.PHOTO_URI)
-                val hasPhoneIndex = it.getColumnIndex(ContactsContract.Contacts.HAS_PHONE_NUMBER)
-
-                while (it.moveToNext()) {
-                    val id = it.getString(idIndex)
-                    val name = it.getString(nameIndex) ?: "Unknown"
-                    val photoUri = it.getString(photoIndex)
-                    val hasPhone = it.getInt(hasPhoneIndex) > 0
-
-                    if (hasPhone) {
-                        val phoneNumbers = getPhoneNumbers(id)
-                        if (phoneNumbers.isNotEmpty()) {
-                            contacts.add(
-                                Contact(
-                                    id = id,
-                                    name = name,
-                                    phoneNumbers = phoneNumbers,
-                                    photoUri = photoUri
-                                )
-                            )
-                        }
-                    }
-                }
-            }
-
-            _contacts.value = contacts
-
+            _contacts.value = contactRepository.awaitSnapshot().asContacts
         } catch (e: Exception) {
             e.printStackTrace()
         }
     }
 
-    /**
-     * Get phone numbers for contact
-     */
-    private fun getPhoneNumbers(contactId: String): List<String> {
-        val phoneNumbers = mutableListOf<String>()
-
-        val cursor = context.contentResolver.query(
-            ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-            arrayOf(ContactsContract.CommonDataKinds.Phone.NUMBER),
-            "${ContactsContract.CommonDataKinds.Phone.CONTACT_ID} = ?",
-            arrayOf(contactId),
-            null
-        )
-
-        cursor?.use {
-            val numberIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-            while (it.moveToNext()) {
-                phoneNumbers.add(it.getString(numberIndex))
-            }
-        }
-
-        return phoneNumbers
-    }
-
     /**
      * Get contact by phone number
      */
@@ -38,6 +38,8 @@ import com.example.mentra.messaging.*
 import com.example.mentra.messaging.ui.theme.NexusColors
 import com.example.mentra.dialer.ui.NexusSimSelectionModal
 import com.example.mentra.dialer.DialerManagerProvider
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.dialer.CallType
 import java.text.SimpleDateFormat
 import java.util.*
 
@@ -62,6 +64,7 @@ fun ConversationScreen(
 ) {
     val allMessages by viewModel.messages.collectAsState()
     val availableSims by viewModel.availableSims.collectAsState()
+    val lastCall by viewModel.lastCall.collectAsState()
     var messageText by remember { mutableStateOf("") }
 
     // Context for making calls
@@ -157,7 +160,8 @@ fun ConversationScreen(
                 currentZoom = textZoom,
                 onZoomReset = { textZoom = 1f },
                 onBack = onBack,
-                onCallPressed = { showCallModal = true }
+                onCallPressed = { showCallModal = true },
+                lastCall = lastCall
             )
 
             // Messages with pinch-to-zoom for TEXT ONLY
@@ -390,7 +394,8 @@ fun ConversationHeader(
     currentZoom: Float,
     onZoomReset: () -> Unit,
     onBack: () -> Unit,
-    onCallPressed: () -> Unit = {}
+    onCallPressed: () -> Unit = {},
+    lastCall: CallLogEntry? = null
 ) {
     Surface(
         modifier = Modifier.fillMaxWidth(),
@@ -468,6 +473,14 @@ fun ConversationHeader(
                     color = senderColor,
                     fontSize = 11.sp
                 )
+                if (lastCall != null) {
+                    Text(
+                        text = formatLastCall(lastCall),
+                        color = NexusColors.textSecondary,
+                        fontSize = 10.sp,
+                        maxLines = 1
+                    )
+                }
             }
 
             // Zoom reset
@@ -1275,6 +1288,18 @@ private fun formatTime(timestamp: Long): String {
     }
 }
 
+private fun formatLastCall(call: CallLogEntry): String {
+    val label = when (call.callType) {
+        CallType.INCOMING -> "Incoming call"
+        CallType.OUTGOING -> "Outgoing call"
+        CallType.MISSED -> "Missed call"
+        CallType.REJECTED, CallType.BLOCKED -> "Declined call"
+        else -> "Call"
+    }
+    val duration = if (call.duration > 0) " · ${call.getFormattedDuration()}" else ""
+    return "$label ${formatTime(call.timestamp)}$duration"
+}
+
 private fun groupMessagesByDate(messages: List<SmsMessage>): Map<String, List<SmsMessage>> {
     val today = Calendar.getInstance().apply {
         set(Calendar.HOUR_OF_DAY, 0)
@@ -2,7 +2,9 @@ package com.example.mentra.messaging.ui
 
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.example.mentra.dialer.CallLogEntry
 import com.example.mentra.messaging.*
+import com.example.mentra.timeline.TimelineRepository
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -18,7 +20,8 @@ import javax.inject.Inject
 class MessagingViewModel @Inject constructor(
     private val smsManager: SmsManager,
     private val simCardManager: SimCardManager,
-    private val messagePreloader: MessagePreloader
+    private val messagePreloader: MessagePreloader,
+    private val timelineRepository: TimelineRepository
 ) : ViewModel() {
 
     // Use preloaded conversations for instant display
@@ -40,6 +43,10 @@ class MessagingViewModel @Inject constructor(
     private val _sendingState = MutableStateFlow<SendingState>(SendingState.Idle)
     val sendingState: StateFlow<SendingState> = _sendingState.asStateFlow()
 
+    // Most recent call with the open conversation (header)
+    private val _lastCall = MutableStateFlow<CallLogEntry?>(null)
+    val lastCall: StateFlow<CallLogEntry?> = _lastCall.asStateFlow()
+
     init {
         loadData()
     }
@@ -68,6 +75,10 @@ class MessagingViewModel @Inject constructor(
      * Load specific conversation - uses cached data for instant display
      */
     fun loadConversation(phoneNumber: String) {
+        _lastCall.value = null
+        viewModelScope.launch {
+            _lastCall.value = timelineRepository.lastCall(phoneNumber)
+        }
         viewModelScope.launch {
             // Try to get cached messages first (instant)
             val cachedMessages = messagePreloader.getCachedMessages(phoneNumber)
@@ -74,6 +74,7 @@ class AdvancedSystemActionHandler @Inject constructor(
 
             // NOTIFICATIONS
             command == "dnd" || command == "donotdisturb" -> handleDND(action.params["state"])
+            command == "nightmode" || command == "night" -> handleNightMode(action.params["state"])
             command == "notify" -> sendNotification(action.entity ?: "", action.params["title"] ?: "")
 
             // SETTINGS
@@ -415,6 +416,27 @@ class AdvancedSystemActionHandler @Inject constructor(
         )
     }
 
+    private suspend fun handleNightMode(state: String?): ShellResult {
+        val enabled = parseBoolean(state) ?: return invalidState("night mode")
+        val result = orchestrator.setNightMode(enabled)
+        val lines = result.results.joinToString("\n") { op ->
+            val detail = op.output.lineSequence().firstOrNull { it.isNotBlank() }?.let { " ($it)" } ?: ""
+            "  ${if (op.isSuccess) "✓" else "✗"} ${op.operation.label}${if (op.isSuccess) "" else detail}"
+        }
+        val header = "Night mode ${if (enabled) "on" else "off"}: " +
+            "${result.results.size - result.failures.size}/${result.results.size} applied in ${result.elapsedMillis} ms"
+
+        return ShellResult(
+            status = when {
+                result.allSucceeded -> ResultStatus.SUCCESS
+                result.failures.size < result.results.size -> ResultStatus.PARTIAL
+                else -> ResultStatus.FAILURE
+            },
+            message = "$header\n$lines",
+            data = result
+        )
+    }
+
     private suspend fun sendNotification(message: String, title: String): ShellResult {
         if (message.isEmpty()) return ShellResult(
             status = ResultStatus.INVALID_COMMAND,
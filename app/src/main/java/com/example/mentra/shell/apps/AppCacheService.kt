@@ -1,19 +1,26 @@
 package com.example.mentra.shell.apps
 
+import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
+import android.content.IntentFilter
 import android.content.pm.ApplicationInfo
+import android.content.pm.LauncherApps
+import android.content.pm.PackageInfo
 import android.content.pm.PackageManager
-import android.graphics.Bitmap
-import android.graphics.Canvas
-import android.graphics.drawable.BitmapDrawable
-import android.graphics.drawable.Drawable
-import android.util.LruCache
+import android.os.Handler
+import android.os.Looper
+import android.os.UserHandle
+import androidx.core.content.ContextCompat
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.io.File
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -23,11 +30,37 @@ import javax.inject.Singleton
  * Background service that maintains a cache of all installed apps
  * for fast shell access and app launching
  * ═══════════════════════════════════════════════════════════════════
+ *
+ * The last known list is loaded from [AppCatalog] first, so lookups work
+ * within milliseconds of a cold start. A scan then reconciles it with
+ * PackageManager, loading labels only for packages whose lastUpdateTime
+ * moved, and saves the catalog again. After that the cache follows
+ * package broadcasts and LauncherApps callbacks, re-reading only the
+ * packages that changed. Both sources report the same events, so
+ * changes are collected for [UPDATE_DEBOUNCE_MS] and each package is
+ * read once. A locale change triggers a full rescan that relabels every
+ * app.
+ *
+ * Lookups go through an immutable [AppIndex] that each scan or update
+ * builds on its own thread and then swaps in, so readers need no lock.
+ * Searches are ranked, with a boost for apps the user launches often.
  */
 @Singleton
 class AppCacheService @Inject constructor(
-    @ApplicationContext private val context: Context
+    @ApplicationContext private val context: Context,
+    // Icons for the apps listed here, for UIs that show them
+    val icons: AppIconCache
 ) {
+    companion object {
+        private const val TAG = "AppCacheService"
+        private const val UPDATE_DEBOUNCE_MS = 300L
+        private const val CATALOG_FILE = "app_catalog.bin"
+        private const val USAGE_PREFS = "app_usage"
+
+        // How long `open` waits for a cold cache before giving up
+        private const val READY_TIMEOUT_MS = 5_000L
+    }
+
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
     // Cached apps list
@@ -38,171 +71,274 @@ class AppCacheService @Inject constructor(
     private val _cacheState = MutableStateFlow<CacheState>(CacheState.NotInitialized)
     val cacheState: StateFlow<CacheState> = _cacheState.asStateFlow()
 
-    // Quick lookup maps
-    private val appsByName = mutableMapOf<String, CachedApp>()
-    private val appsByPackage = mutableMapOf<String, CachedApp>()
-    private val appNameVariants = mutableMapOf<String, CachedApp>() // lowercase, no spaces, etc.
+    // Lookup maps, replaced whole and never modified in place
+    @Volatile
+    private var index = AppIndex.EMPTY
+
+    // Labels in the saved catalog are in this locale
+    @Volatile
+    private var indexLocale: String? = null
+
+    private val catalogFile by lazy { File(context.noBackupFilesDir, CATALOG_FILE) }
+
+    // Launches per package, to rank search results; replaced whole
+    @Volatile
+    private var launchCounts: Map<String, Int> = emptyMap()
+
+    private val usagePrefs by lazy { context.getSharedPreferences(USAGE_PREFS, Context.MODE_PRIVATE) }
 
-    // Icon cache (LRU cache to prevent memory issues)
-    private val iconCache = LruCache<String, Bitmap>(100)
+    // Full scans and per-package updates never interleave
+    private val updateMutex = Mutex()
+
+    // The first scan; later initialize() calls find it instead of starting another
+    @Volatile
+    private var initJob: Job? = null
+
+    // Packages reported changed since the last update ran
+    private val pendingPackages = LinkedHashSet<String>()
+    private var pendingUpdate: Job? = null
+
+    private var packageReceiver: BroadcastReceiver? = null
+    private var launcherCallback: LauncherApps.Callback? = null
 
     /**
-     * Initialize the cache - should be called when app starts
+     * Initialize the cache - should be called when app starts.
+     * Safe to call repeatedly: it scans once, then keeps itself current.
      */
+    @Synchronized
     fun initialize() {
-        if (_cacheState.value == CacheState.Loading) return
+        startListening()
+        if (initJob != null) return
 
-        scope.launch {
+        initJob = scope.launch {
+            restoreCatalog()
+            loadLaunchCounts()
             refreshCache()
         }
     }
 
     /**
-     * Refresh the app cache
+     * Wait until the cache has apps to look up, at most [timeoutMs].
+     * Returns at once on a warm start or once the catalog is loaded.
      */
-    suspend fun refreshCache() {
-        _cacheState.value = CacheState.Loading
+    suspend fun awaitReady(timeoutMs: Long = READY_TIMEOUT_MS): Boolean {
+        initialize()
+        val state = withTimeoutOrNull(timeoutMs) {
+            cacheState.first { it is CacheState.Ready || it is CacheState.Error }
+        }
+        return state is CacheState.Ready
+    }
 
-        try {
-            val pm = context.packageManager
-            val apps = mutableListOf<CachedApp>()
+    /**
+     * Publish the saved catalog, if any, before PackageManager is asked
+     */
+    private suspend fun restoreCatalog() {
+        updateMutex.withLock {
+            if (index.size > 0) return
+            val started = System.nanoTime()
+            val snapshot = AppCatalog.read(catalogFile) ?: return
+            if (snapshot.apps.isEmpty()) return
+
+            indexLocale = snapshot.locale
+            publish(snapshot.apps)
+            android.util.Log.d(TAG, "Catalog: ${snapshot.apps.size} apps ready in ${(System.nanoTime() - started) / 1_000_000} ms")
+        }
+    }
 
-            // Get all installed applications
-            val installedApps = pm.getInstalledApplications(PackageManager.GET_META_DATA)
+    /**
+     * Rescan every installed package. Apps whose lastUpdateTime matches the
+     * cache keep their label unless [relabel] (or the locale changed).
+     */
+    suspend fun refreshCache(relabel: Boolean = false) = updateMutex.withLock {
+        // Keep serving the old list while a rescan runs
+        if (_cachedApps.value.isEmpty()) _cacheState.value = CacheState.Loading
 
-            // Get launchable apps (apps with launcher intent)
-            val launchIntent = Intent(Intent.ACTION_MAIN, null).apply {
-                addCategory(Intent.CATEGORY_LAUNCHER)
-            }
-            val launchableApps = pm.queryIntentActivities(launchIntent, 0)
-                .map { it.activityInfo.packageName }
-                .toSet()
-
-            for (appInfo in installedApps) {
-                val appName = pm.getApplicationLabel(appInfo).toString()
-                val packageName = appInfo.packageName
-                val isSystemApp = (appInfo.flags and ApplicationInfo.FLAG_SYSTEM) != 0
-                val isLaunchable = launchableApps.contains(packageName)
-
-                val version = try {
-                    pm.getPackageInfo(packageName, 0).versionName ?: "Unknown"
-                } catch (e: Exception) {
-                    "Unknown"
+        try {
+            val pm = context.packageManager
+            val locale = currentLocale()
+            val launchable = launchablePackages(pm, null)
+            val known = if (relabel || locale != indexLocale) emptyMap() else index.apps.associateBy { it.packageName }
+
+            // Version, update time and application info in one call instead of one per package
+            val apps = pm.getInstalledPackages(0).mapNotNull { info ->
+                val appInfo = info.applicationInfo ?: return@mapNotNull null
+                val isLaunchable = appInfo.packageName in launchable
+                val cached = known[appInfo.packageName]
+                if (cached != null && cached.lastUpdated == info.lastUpdateTime) {
+                    cached.copy(isLaunchable = isLaunchable)
+                } else {
+                    toCachedApp(pm, appInfo, info, isLaunchable)
                 }
+            }
 
-                val cachedApp = CachedApp(
-                    name = appName,
-                    packageName = packageName,
-                    version = version,
-                    isSystemApp = isSystemApp,
-                    isLaunchable = isLaunchable
-                )
+            val changed = apps.toSet() != index.apps.toSet() || locale != indexLocale
+            indexLocale = locale
+            publish(apps)
+            if (changed) saveCatalog(apps)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            _cacheState.value = CacheState.Error(e.message ?: "Unknown error")
+        }
+    }
 
-                apps.add(cachedApp)
+    /**
+     * Re-read [packageNames] only; packages no longer installed are dropped
+     */
+    private suspend fun updatePackages(packageNames: Set<String>) = updateMutex.withLock {
+        val pm = context.packageManager
+        val byPackage = LinkedHashMap<String, CachedApp>()
+        index.apps.associateByTo(byPackage) { it.packageName }
+
+        for (packageName in packageNames) {
+            val app = try {
+                val info = pm.getPackageInfo(packageName, 0)
+                val appInfo = info.applicationInfo
+                if (appInfo == null) null
+                else toCachedApp(pm, appInfo, info, launchablePackages(pm, packageName).isNotEmpty())
+            } catch (e: PackageManager.NameNotFoundException) {
+                null
+            }
 
-                // Build lookup maps
-                appsByPackage[packageName.lowercase()] = cachedApp
-                appsByName[appName.lowercase()] = cachedApp
+            if (app == null) byPackage.remove(packageName) else byPackage[packageName] = app
+        }
 
-                // Add name variants for flexible matching
-                addNameVariants(appName, cachedApp)
-            }
+        val apps = byPackage.values.toList()
+        publish(apps)
+        saveCatalog(apps)
+    }
 
-            // Sort by name
-            val sortedApps = apps.sortedBy { it.name.lowercase() }
-            _cachedApps.value = sortedApps
-            _cacheState.value = CacheState.Ready(sortedApps.size)
+    private fun toCachedApp(pm: PackageManager, appInfo: ApplicationInfo, info: PackageInfo, isLaunchable: Boolean) =
+        CachedApp(
+            name = pm.getApplicationLabel(appInfo).toString(),
+            packageName = appInfo.packageName,
+            version = info.versionName ?: "Unknown",
+            isSystemApp = (appInfo.flags and ApplicationInfo.FLAG_SYSTEM) != 0,
+            isLaunchable = isLaunchable,
+            lastUpdated = info.lastUpdateTime
+        )
 
+    private fun saveCatalog(apps: List<CachedApp>) {
+        try {
+            AppCatalog.write(catalogFile, AppCatalog.Snapshot(indexLocale ?: currentLocale(), apps))
         } catch (e: Exception) {
-            _cacheState.value = CacheState.Error(e.message ?: "Unknown error")
+            android.util.Log.e(TAG, "Failed to save app catalog", e)
         }
     }
 
+    private fun currentLocale(): String = context.resources.configuration.locales[0].toLanguageTag()
+
     /**
-     * Add name variants for flexible matching
+     * Packages with a launcher activity, limited to [packageName] if given
      */
-    private fun addNameVariants(name: String, app: CachedApp) {
-        val lower = name.lowercase()
+    private fun launchablePackages(pm: PackageManager, packageName: String?): Set<String> {
+        val launchIntent = Intent(Intent.ACTION_MAIN, null).apply {
+            addCategory(Intent.CATEGORY_LAUNCHER)
+            packageName?.let { setPackage(it) }
+        }
+        return pm.queryIntentActivities(launchIntent, 0)
+            .map { it.activityInfo.packageName }
+            .toSet()
+    }
 
-        // Original lowercase
-        appNameVariants[lower] = app
+    /**
+     * Build a new index from [apps] and swap it in. Only labels and names
+     * are touched here; nothing goes back to the package manager.
+     * Internal so tests can publish without a PackageManager.
+     */
+    internal fun publish(apps: List<CachedApp>) {
+        val next = AppIndex.build(apps)
+        index = next
+        _cachedApps.value = next.apps
+        _cacheState.value = CacheState.Ready(next.size)
+    }
 
-        // Without spaces
-        appNameVariants[lower.replace(" ", "")] = app
+    // ═══════════════════════════════════════════════════════════════
+    // PACKAGE EVENTS
+    // ═══════════════════════════════════════════════════════════════
 
-        // Without special characters
-        appNameVariants[lower.replace(Regex("[^a-z0-9]"), "")] = app
+    @Synchronized
+    private fun startListening() {
+        if (packageReceiver != null) return
 
-        // First word only (for "Google Chrome" -> "chrome")
-        val words = lower.split(" ")
-        if (words.size > 1) {
-            words.forEach { word ->
-                if (word.length > 2 && !appNameVariants.containsKey(word)) {
-                    appNameVariants[word] = app
+        val receiver = object : BroadcastReceiver() {
+            override fun onReceive(ctx: Context?, intent: Intent?) {
+                when (intent?.action) {
+                    Intent.ACTION_LOCALE_CHANGED -> scope.launch { refreshCache(relabel = true) }
+                    else -> intent?.data?.schemeSpecificPart?.let { onPackagesChanged(listOf(it)) }
                 }
             }
         }
 
-        // Common abbreviations
-        when {
-            lower.contains("youtube") -> appNameVariants["yt"] = app
-            lower.contains("whatsapp") -> {
-                appNameVariants["wa"] = app
-                appNameVariants["whats"] = app
-            }
-            lower.contains("instagram") -> {
-                appNameVariants["ig"] = app
-                appNameVariants["insta"] = app
-            }
-            lower.contains("facebook") -> {
-                appNameVariants["fb"] = app
-            }
-            lower.contains("twitter") || lower.contains("x ") -> {
-                appNameVariants["twitter"] = app
-                appNameVariants["x"] = app
-            }
-            lower.contains("telegram") -> {
-                appNameVariants["tg"] = app
-            }
-            lower.contains("chrome") -> {
-                appNameVariants["browser"] = app
-            }
-            lower.contains("calculator") -> {
-                appNameVariants["calc"] = app
-            }
-            lower.contains("calendar") -> {
-                appNameVariants["cal"] = app
-            }
-            lower.contains("camera") -> {
-                appNameVariants["cam"] = app
-            }
-            lower.contains("settings") -> {
-                appNameVariants["setting"] = app
-            }
-            lower.contains("messages") || lower.contains("messaging") -> {
-                appNameVariants["msg"] = app
-                appNameVariants["sms"] = app
-            }
-            lower.contains("phone") || lower.contains("dialer") -> {
-                appNameVariants["phone"] = app
-                appNameVariants["dialer"] = app
-                appNameVariants["call"] = app
-            }
-            lower.contains("gallery") || lower.contains("photos") -> {
-                appNameVariants["gallery"] = app
-                appNameVariants["photos"] = app
-                appNameVariants["photo"] = app
+        try {
+            val packageFilter = IntentFilter().apply {
+                addAction(Intent.ACTION_PACKAGE_ADDED)
+                addAction(Intent.ACTION_PACKAGE_REMOVED)
+                addAction(Intent.ACTION_PACKAGE_CHANGED)
+                addAction(Intent.ACTION_PACKAGE_REPLACED)
+                addDataScheme("package")
             }
-            lower.contains("music") || lower.contains("player") -> {
-                appNameVariants["music"] = app
+            ContextCompat.registerReceiver(context, receiver, packageFilter, ContextCompat.RECEIVER_NOT_EXPORTED)
+            ContextCompat.registerReceiver(context, receiver, IntentFilter(Intent.ACTION_LOCALE_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED)
+            packageReceiver = receiver
+        } catch (e: Exception) {
+            android.util.Log.e(TAG, "Failed to register package receiver", e)
+        }
+
+        // Also covers apps on adoptable storage coming and going
+        val callback = object : LauncherApps.Callback() {
+            override fun onPackageAdded(packageName: String, user: UserHandle) = onPackagesChanged(listOf(packageName))
+            override fun onPackageRemoved(packageName: String, user: UserHandle) = onPackagesChanged(listOf(packageName))
+            override fun onPackageChanged(packageName: String, user: UserHandle) = onPackagesChanged(listOf(packageName))
+            override fun onPackagesAvailable(packageNames: Array<out String>, user: UserHandle, replacing: Boolean) =
+                onPackagesChanged(packageNames.toList())
+            override fun onPackagesUnavailable(packageNames: Array<out String>, user: UserHandle, replacing: Boolean) =
+                onPackagesChanged(packageNames.toList())
+        }
+
+        try {
+            context.getSystemService(LauncherApps::class.java)
+                ?.registerCallback(callback, Handler(Looper.getMainLooper()))
+            launcherCallback = callback
+        } catch (e: Exception) {
+            android.util.Log.e(TAG, "Failed to register LauncherApps callback", e)
+        }
+    }
+
+    @Synchronized
+    private fun stopListening() {
+        packageReceiver?.let {
+            try {
+                context.unregisterReceiver(it)
+            } catch (e: Exception) {
+                android.util.Log.e(TAG, "Failed to unregister package receiver", e)
             }
-            lower.contains("clock") || lower.contains("alarm") -> {
-                appNameVariants["clock"] = app
-                appNameVariants["alarm"] = app
+        }
+        launcherCallback?.let { context.getSystemService(LauncherApps::class.java)?.unregisterCallback(it) }
+        packageReceiver = null
+        launcherCallback = null
+    }
+
+    @Synchronized
+    private fun onPackagesChanged(packageNames: List<String>) {
+        pendingPackages.addAll(packageNames)
+        if (pendingUpdate != null) return
+
+        pendingUpdate = scope.launch {
+            delay(UPDATE_DEBOUNCE_MS)
+            // The first scan will see these packages anyway
+            initJob?.join()
+            // Events from here on start a new batch
+            val batch = synchronized(this@AppCacheService) {
+                pendingUpdate = null
+                pendingPackages.toSet().also { pendingPackages.clear() }
             }
-            lower.contains("file") || lower.contains("manager") -> {
-                appNameVariants["files"] = app
-                appNameVariants["filemanager"] = app
+            try {
+                if (batch.isNotEmpty()) updatePackages(batch)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                android.util.Log.e(TAG, "Failed to update ${batch.size} packages", e)
             }
         }
     }
@@ -210,37 +346,36 @@ class AppCacheService @Inject constructor(
     /**
      * Find app by name (flexible matching)
      */
-    fun findApp(query: String): CachedApp? {
-        val queryLower = query.lowercase().trim()
-
-        // Exact match by package
-        appsByPackage[queryLower]?.let { return it }
-
-        // Exact match by name
-        appsByName[queryLower]?.let { return it }
-
-        // Match by variant
-        appNameVariants[queryLower]?.let { return it }
+    fun findApp(query: String): CachedApp? = index.find(query, launchCounts)
 
-        // Fuzzy match - starts with
-        appsByName.entries.find { it.key.startsWith(queryLower) }?.let { return it.value }
-        appNameVariants.entries.find { it.key.startsWith(queryLower) }?.let { return it.value }
-
-        // Fuzzy match - contains
-        appsByName.entries.find { it.key.contains(queryLower) }?.let { return it.value }
-
-        return null
+    /**
+     * Search apps by query, best match first (see [AppIndex.search])
+     */
+    fun searchApps(
+        query: String,
+        limit: Int = Int.MAX_VALUE,
+        filter: (CachedApp) -> Boolean = { true }
+    ): List<CachedApp> {
+        return index.search(query, limit, launchCounts, filter = filter).map { it.app }
     }
 
     /**
-     * Search apps by query
+     * Count a launch, so the app ranks higher in later searches
      */
-    fun searchApps(query: String): List<CachedApp> {
-        val queryLower = query.lowercase().trim()
+    @Synchronized
+    fun recordLaunch(packageName: String) {
+        val count = (launchCounts[packageName] ?: 0) + 1
+        launchCounts = launchCounts + (packageName to count)
+        usagePrefs.edit().putInt(packageName, count).apply()
+    }
 
-        return _cachedApps.value.filter { app ->
-            app.name.lowercase().contains(queryLower) ||
-            app.packageName.lowercase().contains(queryLower)
+    private fun loadLaunchCounts() {
+        try {
+            launchCounts = usagePrefs.all.mapNotNull { (packageName, count) ->
+                (count as? Int)?.let { packageName to it }
+            }.toMap()
+        } catch (e: Exception) {
+            android.util.Log.e(TAG, "Failed to load launch counts", e)
         }
     }
 
@@ -291,6 +426,7 @@ class AppCacheService @Inject constructor(
             if (intent != null) {
                 intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
                 context.startActivity(intent)
+                recordLaunch(app.packageName)
                 LaunchResult.Success(app)
             } else {
                 LaunchResult.NoLaunchIntent(app.name)
@@ -301,70 +437,43 @@ class AppCacheService @Inject constructor(
     }
 
     /**
-     * Get app icon
+     * Drop the cached apps, icons and saved catalog, then rescan from
+     * scratch. The rescan becomes the new first scan, so `open` and
+     * package updates wait for it rather than seeing an empty list.
      */
-    fun getAppIcon(packageName: String): Bitmap? {
-        // Check cache first
-        iconCache.get(packageName)?.let { return it }
-
-        return try {
-            val drawable = context.packageManager.getApplicationIcon(packageName)
-            val bitmap = drawableToBitmap(drawable)
-            iconCache.put(packageName, bitmap)
-            bitmap
-        } catch (e: Exception) {
-            null
-        }
-    }
-
-    private fun drawableToBitmap(drawable: Drawable): Bitmap {
-        if (drawable is BitmapDrawable) {
-            return drawable.bitmap
+    @Synchronized
+    fun clearCache() {
+        val previous = initJob
+        initJob = scope.launch {
+            previous?.cancelAndJoin()
+            updateMutex.withLock {
+                reset()
+                catalogFile.delete()
+            }
+            refreshCache(relabel = true)
         }
-
-        val bitmap = Bitmap.createBitmap(
-            drawable.intrinsicWidth.coerceAtLeast(1),
-            drawable.intrinsicHeight.coerceAtLeast(1),
-            Bitmap.Config.ARGB_8888
-        )
-        val canvas = Canvas(bitmap)
-        drawable.setBounds(0, 0, canvas.width, canvas.height)
-        drawable.draw(canvas)
-        return bitmap
     }
 
-    /**
-     * Clear cache
-     */
-    fun clearCache() {
+    private fun reset() {
+        index = AppIndex.EMPTY
+        indexLocale = null
         _cachedApps.value = emptyList()
-        appsByName.clear()
-        appsByPackage.clear()
-        appNameVariants.clear()
-        iconCache.evictAll()
+        icons.clear()
         _cacheState.value = CacheState.NotInitialized
     }
 
     /**
      * Cleanup
      */
+    @Synchronized
     fun destroy() {
+        stopListening()
         scope.cancel()
-        clearCache()
+        initJob = null
+        reset()
     }
 }
 
-/**
- * Cached app data
- */
-data class CachedApp(
-    val name: String,
-    val packageName: String,
-    val version: String,
-    val isSystemApp: Boolean,
-    val isLaunchable: Boolean
-)
-
 /**
  * Cache state
  */
@@ -0,0 +1,109 @@
+package com.example.mentra.shell.apps
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * APP CATALOG
+ * Last known app list on disk, for a ready cache at cold start
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * A small binary file: a header, then one record per app (package,
+ * label, version, flags, lastUpdateTime). It is read before
+ * PackageManager is asked anything. The background scan then compares
+ * each package's lastUpdateTime with its record and only loads labels
+ * for packages that changed.
+ *
+ * Written whole to a temporary file and renamed over the old one, so a
+ * crash mid-write leaves the previous catalog in place.
+ */
+object AppCatalog {
+    private const val MAGIC = 0x4D415043 // "MAPC"
+    private const val FORMAT_VERSION = 1
+
+    private const val FLAG_SYSTEM = 1
+    private const val FLAG_LAUNCHABLE = 2
+
+    // Three empty strings, the flags byte and the timestamp
+    private const val MIN_RECORD_BYTES = 3 * 2 + 1 + 8
+    // Far more apps than any device has; a larger count means a corrupt file
+    private const val MAX_APPS = 20_000
+
+    /**
+     * Apps as last seen, and the locale their labels are in
+     */
+    data class Snapshot(
+        val locale: String,
+        val apps: List<CachedApp>
+    )
+
+    @Throws(IOException::class)
+    fun write(file: File, snapshot: Snapshot) {
+        file.parentFile?.mkdirs()
+        val temp = File(file.path + ".tmp")
+        DataOutputStream(BufferedOutputStream(temp.outputStream())).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            out.writeUTF(snapshot.locale)
+            out.writeInt(snapshot.apps.size)
+            for (app in snapshot.apps) {
+                out.writeUTF(app.packageName)
+                out.writeUTF(app.name)
+                out.writeUTF(app.version)
+                out.writeByte(
+                    (if (app.isSystemApp) FLAG_SYSTEM else 0) or (if (app.isLaunchable) FLAG_LAUNCHABLE else 0)
+                )
+                out.writeLong(app.lastUpdated)
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete()
+            throw IOException("Could not replace ${file.name}")
+        }
+    }
+
+    /**
+     * The saved catalog, or null if there is none or it can't be read
+     * (other format version, truncated, corrupt). Never throws: this runs
+     * at cold start, and a bad file should only cost a full scan.
+     */
+    fun read(file: File): Snapshot? {
+        if (!file.isFile) return null
+        return try {
+            DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) return null
+                val locale = input.readUTF()
+                val count = input.readInt()
+                // Checked before sizing the list, so a corrupt count can't exhaust memory
+                if (count < 0 || count > MAX_APPS || count.toLong() * MIN_RECORD_BYTES > file.length()) return null
+
+                val apps = ArrayList<CachedApp>(count)
+                repeat(count) {
+                    val packageName = input.readUTF()
+                    val name = input.readUTF()
+                    val version = input.readUTF()
+                    val flags = input.readByte().toInt()
+                    apps.add(CachedApp(
+                        name = name,
+                        packageName = packageName,
+                        version = version,
+                        isSystemApp = flags and FLAG_SYSTEM != 0,
+                        isLaunchable = flags and FLAG_LAUNCHABLE != 0,
+                        lastUpdated = input.readLong()
+                    ))
+                }
+                Snapshot(locale, apps)
+            }
+        } catch (e: IOException) {
+            // Includes EOFException and UTFDataFormatException from a damaged file
+            null
+        } catch (e: RuntimeException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.mentra.shell.apps
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.pm.PackageManager
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.util.LruCache
+import androidx.compose.foundation.lazy.grid.LazyGridState
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.remember
+import androidx.compose.runtime.setValue
+import androidx.compose.runtime.snapshotFlow
+import androidx.compose.ui.platform.LocalDensity
+import androidx.compose.ui.unit.Dp
+import androidx.compose.ui.unit.dp
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.*
+import kotlinx.coroutines.flow.distinctUntilChanged
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * APP ICON CACHE
+ * Shared icon pipeline for the launcher grid and the app picker
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Icons are rendered at the size they are shown at, on a small IO pool,
+ * never on the caller's thread. Two levels:
+ * - Memory: LRU bounded by bitmap bytes (a share of the heap), not by
+ *   count, so large adaptive icons can't outgrow it
+ * - Disk: one PNG per package, version and size in the cache dir, so a
+ *   cold start decodes a small file instead of asking PackageManager
+ *
+ * The version is the package's lastUpdateTime, which the app catalog
+ * already records; it changes with every update or reinstall, so stale
+ * icons are never served. Concurrent requests for one icon share the
+ * same render. [onTrimMemory] gives memory back when the system asks.
+ */
+@Singleton
+class AppIconCache @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+    companion object {
+        private const val TAG = "AppIconCache"
+        private const val DISK_DIR = "app_icons"
+        private const val MAX_DISK_BYTES = 24L * 1024 * 1024
+
+        // Decoded icons may use 1/8 of the heap
+        private const val MEMORY_FRACTION = 8
+        private const val RENDER_PARALLELISM = 2
+
+        // One size for every grid, so they share cache entries
+        val ICON_SIZE: Dp = 64.dp
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val renderDispatcher = Dispatchers.IO.limitedParallelism(RENDER_PARALLELISM)
+
+    private val memory = object : LruCache<String, Bitmap>(
+        (Runtime.getRuntime().maxMemory() / MEMORY_FRACTION).toInt()
+    ) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    // Renders in progress, by key
+    private val inFlight = HashMap<String, Deferred<Bitmap?>>()
+
+    // First touched from the render pool; trims what earlier sessions left
+    private val diskDir by lazy {
+        File(context.cacheDir, DISK_DIR).also {
+            it.mkdirs()
+            trimDisk(it)
+        }
+    }
+
+    /**
+     * The icon if it is already in memory; safe on the main thread
+     */
+    fun peek(packageName: String, version: Long, sizePx: Int): Bitmap? =
+        memory.get(keyOf(packageName, version, sizePx))
+
+    /**
+     * The icon from memory, disk or a fresh render, or null if the
+     * package is gone
+     */
+    suspend fun load(packageName: String, version: Long, sizePx: Int): Bitmap? {
+        peek(packageName, version, sizePx)?.let { return it }
+        return request(packageName, version, sizePx).await()
+    }
+
+    /**
+     * Start loading icons that are about to be shown
+     */
+    fun prefetch(icons: List<Pair<String, Long>>, sizePx: Int) {
+        for ((packageName, version) in icons) {
+            if (peek(packageName, version, sizePx) == null) request(packageName, version, sizePx)
+        }
+    }
+
+    fun onTrimMemory(level: Int) {
+        when {
+            level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND -> memory.evictAll()
+            level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN -> memory.trimToSize(memory.maxSize() / 2)
+        }
+    }
+
+    fun clear() {
+        memory.evictAll()
+    }
+
+    // Package names never contain '-', so it can't run into the next field
+    private fun keyOf(packageName: String, version: Long, sizePx: Int) = "$packageName-$version-$sizePx"
+
+    private fun request(packageName: String, version: Long, sizePx: Int): Deferred<Bitmap?> {
+        val key = keyOf(packageName, version, sizePx)
+        synchronized(inFlight) {
+            inFlight[key]?.let { return it }
+            // The job can't remove itself before it is registered: removal takes the same lock
+            val job = scope.async(renderDispatcher) {
+                try {
+                    loadUncached(packageName, key, sizePx)
+                } finally {
+                    synchronized(inFlight) { inFlight.remove(key) }
+                }
+            }
+            inFlight[key] = job
+            return job
+        }
+    }
+
+    private fun loadUncached(packageName: String, key: String, sizePx: Int): Bitmap? {
+        memory.get(key)?.let { return it }
+
+        val file = File(diskDir, "$key.png")
+        val bitmap = readDisk(file) ?: render(packageName, sizePx)?.also { writeDisk(packageName, file, it) }
+        if (bitmap != null) memory.put(key, bitmap)
+        return bitmap
+    }
+
+    private fun render(packageName: String, sizePx: Int): Bitmap? {
+        return try {
+            val drawable = context.packageManager.getApplicationIcon(packageName)
+            val bitmap = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888)
+            val canvas = Canvas(bitmap)
+            drawable.setBounds(0, 0, sizePx, sizePx)
+            drawable.draw(canvas)
+            bitmap
+        } catch (e: PackageManager.NameNotFoundException) {
+            null
+        } catch (e: Exception) {
+            android.util.Log.e(TAG, "Failed to render icon for $packageName", e)
+            null
+        }
+    }
+
+    private fun readDisk(file: File): Bitmap? {
+        if (!file.isFile) return null
+        return BitmapFactory.decodeFile(file.path)?.also { file.setLastModified(System.currentTimeMillis()) }
+    }
+
+    /**
+     * Save [bitmap] and drop the package's icons from older versions
+     */
+    private fun writeDisk(packageName: String, file: File, bitmap: Bitmap) {
+        try {
+            diskDir.listFiles { _, name -> name.startsWith("$packageName-") && name != file.name }
+                ?.forEach { it.delete() }
+
+            val temp = File(file.path + ".tmp")
+            temp.outputStream().use { out -> bitmap.compress(Bitmap.CompressFormat.PNG, 100, out) }
+            if (!temp.renameTo(file)) temp.delete()
+        } catch (e: Exception) {
+            android.util.Log.e(TAG, "Failed to save icon for $packageName", e)
+        }
+    }
+
+    /**
+     * Delete least recently used files until the directory fits [MAX_DISK_BYTES]
+     */
+    private fun trimDisk(dir: File) {
+        val files = dir.listFiles()?.sortedBy { it.lastModified() } ?: return
+        var total = files.sumOf { it.length() }
+        for (file in files) {
+            if (total <= MAX_DISK_BYTES) break
+            total -= file.length()
+            file.delete()
+        }
+    }
+}
+
+/**
+ * The app's icon, loaded through [iconCache]; null until it is ready
+ */
+@Composable
+fun rememberAppIcon(
+    iconCache: AppIconCache,
+    packageName: String,
+    version: Long,
+    size: Dp = AppIconCache.ICON_SIZE
+): Bitmap? {
+    val sizePx = with(LocalDensity.current) { size.roundToPx() }
+    var icon by remember(packageName, version, sizePx) {
+        mutableStateOf(iconCache.peek(packageName, version, sizePx))
+    }
+    LaunchedEffect(packageName, version, sizePx) {
+        if (icon == null) icon = iconCache.load(packageName, version, sizePx)
+    }
+    return icon
+}
+
+/**
+ * Prefetch icons for the screenful of grid cells after the visible ones
+ * [iconOf] gives an item's package name and version
+ */
+@Composable
+fun <T> PrefetchAppIcons(
+    state: LazyGridState,
+    items: List<T>,
+    iconCache: AppIconCache,
+    size: Dp = AppIconCache.ICON_SIZE,
+    iconOf: (T) -> Pair<String, Long>
+) {
+    val sizePx = with(LocalDensity.current) { size.roundToPx() }
+    LaunchedEffect(state, items, sizePx) {
+        snapshotFlow {
+            val visible = state.layoutInfo.visibleItemsInfo
+            if (visible.isEmpty()) null else visible.first().index..visible.last().index
+        }
+            .distinctUntilChanged()
+            .collect { visible ->
+                if (visible == null) return@collect
+                val from = (visible.last + 1).coerceAtMost(items.size)
+                val to = (from + visible.last - visible.first + 1).coerceAtMost(items.size)
+                iconCache.prefetch(items.subList(from, to).map(iconOf), sizePx)
+            }
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.mentra.shell.apps
+
+import java.text.Normalizer
+import java.util.PriorityQueue
+import kotlin.math.ln
+
+/**
+ * How well a search hit matched, best first
+ */
+enum class AppMatchKind {
+    EXACT,
+    ALIAS,
+    PREFIX,
+    INITIALS,
+    WORD_PREFIX,
+    SUBSTRING,
+    PACKAGE,
+    SUBSEQUENCE
+}
+
+data class AppSearchHit(
+    val app: CachedApp,
+    val score: Double,
+    val matchKind: AppMatchKind
+)
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * APP INDEX
+ * Immutable lookup snapshot of the installed apps
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Built off the main thread from a complete app list and never changed
+ * afterwards. [AppCacheService] swaps in a new index after every scan or
+ * package update; readers take the current reference and use it without
+ * locks, so they see the old cache or the new one, never a half-built
+ * one.
+ *
+ * Every app's search keys are worked out once, at build time: the label
+ * lowercased, stripped of accents and transliterated to Latin, split into
+ * words (also at camelCase humps, so "WhatsApp" has the initials "wa"),
+ * plus common abbreviations. [search] scores each app against those keys
+ * in tiers (exact, alias, prefix, initials, word prefix, substring,
+ * package, subsequence), adds a boost for apps launched often and keeps
+ * the top-k in a bounded heap. Ties go to name, then package, so the same
+ * query always gives the same order.
+ */
+class AppIndex private constructor(
+    // Sorted by name
+    val apps: List<CachedApp>,
+    private val appsByPackage: Map<String, CachedApp>,
+    // Parallel to apps
+    private val entries: Array<SearchEntry>
+) {
+
+    /**
+     * Search keys of one app
+     * [starts] marks the first letter of every word in [compact]
+     */
+    private class SearchEntry(
+        val text: String,
+        val compact: String,
+        val starts: BooleanArray,
+        val initials: String,
+        val aliases: List<String>,
+        val packageName: String
+    )
+
+    val size: Int get() = apps.size
+
+    fun byPackage(packageName: String): CachedApp? = appsByPackage[packageName.lowercase()]
+
+    /**
+     * Find app by name (flexible matching): the exact package, else the
+     * best search hit that is more than a loose subsequence
+     */
+    fun find(query: String, usage: Map<String, Int> = emptyMap()): CachedApp? {
+        appsByPackage[query.lowercase().trim()]?.let { return it }
+        return search(query, 1, usage, minScore = FIND_MIN_SCORE).firstOrNull()?.app
+    }
+
+    /**
+     * Ranked search, best first
+     * [usage] maps package name to launch count; [minScore] applies to the
+     * match alone, before the usage boost
+     */
+    fun search(
+        query: String,
+        limit: Int = 10,
+        usage: Map<String, Int> = emptyMap(),
+        minScore: Double = 0.0,
+        filter: (CachedApp) -> Boolean = { true }
+    ): List<AppSearchHit> {
+        val text = normalize(query).replace(SEPARATORS, " ").trim()
+        val compact = text.replace(" ", "")
+        if (compact.isEmpty() || apps.isEmpty() || limit <= 0) return emptyList()
+        val packageQuery = query.lowercase().trim()
+
+        val heap = PriorityQueue<Ranked>(minOf(limit, apps.size) + 1, RANKED_ORDER)
+        for (i in entries.indices) {
+            val app = apps[i]
+            if (!filter(app)) continue
+            val match = score(entries[i], text, compact, packageQuery) ?: continue
+            if (match.second < minScore) continue
+
+            val launches = usage[app.packageName] ?: 0
+            val boost = if (launches > 0) minOf(USAGE_BOOST_CAP, USAGE_WEIGHT * ln(1.0 + launches)) else 0.0
+            heap.add(Ranked(i, match.second + boost, match.first))
+            if (heap.size > limit) heap.poll()
+        }
+
+        val results = ArrayList<AppSearchHit>(heap.size)
+        while (heap.isNotEmpty()) {
+            val ranked = heap.poll()!!
+            results.add(AppSearchHit(apps[ranked.position], ranked.score, ranked.kind))
+        }
+        results.reverse()
+        return results
+    }
+
+    private class Ranked(val position: Int, val score: Double, val kind: AppMatchKind)
+
+    /**
+     * Best tier [entry] reaches for the query, with its score, or null.
+     * Tiers are 10 points apart; within a tier a query that covers more
+     * of the name scores higher.
+     */
+    private fun score(entry: SearchEntry, text: String, compact: String, packageQuery: String): Pair<AppMatchKind, Double>? {
+        val coverage = compact.length.toDouble() / entry.compact.length.coerceAtLeast(compact.length)
+
+        if (entry.text == text || entry.compact == compact || entry.packageName == packageQuery) {
+            return AppMatchKind.EXACT to 100.0
+        }
+        if (compact in entry.aliases) {
+            return AppMatchKind.ALIAS to 90.0
+        }
+        if (entry.text.startsWith(text) || entry.compact.startsWith(compact)) {
+            return AppMatchKind.PREFIX to 80.0 + 10.0 * coverage
+        }
+        if (compact.length >= 2 && entry.initials.startsWith(compact)) {
+            return AppMatchKind.INITIALS to 70.0 + 10.0 * compact.length / entry.initials.length
+        }
+        for (start in 1 until entry.compact.length) {
+            if (entry.starts[start] && entry.compact.startsWith(compact, start)) {
+                return AppMatchKind.WORD_PREFIX to 60.0 + 10.0 * coverage
+            }
+        }
+        if (entry.aliases.any { it.startsWith(compact) }) {
+            return AppMatchKind.ALIAS to 55.0
+        }
+        if (compact.length >= 2 && entry.compact.contains(compact)) {
+            return AppMatchKind.SUBSTRING to 40.0 + 10.0 * coverage
+        }
+        if (packageQuery.length >= MIN_PACKAGE_QUERY && entry.packageName.contains(packageQuery)) {
+            return AppMatchKind.PACKAGE to 30.0 + 10.0 * packageQuery.length / entry.packageName.length
+        }
+        if (compact.length >= 2) {
+            val quality = subsequenceQuality(entry, compact)
+            if (quality > 0.0) return AppMatchKind.SUBSEQUENCE to 10.0 + 15.0 * quality
+        }
+        return null
+    }
+
+    /**
+     * How tightly [query] fits into the name as a subsequence, 0..1, or 0
+     * if it doesn't fit at all. Each query letter earns a point for
+     * landing on a word start or right after the previous letter; the
+     * best placement is found by dynamic programming over the name.
+     */
+    private fun subsequenceQuality(entry: SearchEntry, query: String): Double {
+        val name = entry.compact
+        val n = name.length
+        if (query.length > n) return 0.0
+
+        // Most names don't fit at all; find out without allocating
+        var matched = 0
+        for (c in name) {
+            if (c == query[matched] && ++matched == query.length) break
+        }
+        if (matched < query.length) return 0.0
+
+        // best[j]: best points with the current query letter placed at j, -1 if impossible
+        var best = IntArray(n) { -1 }
+        var next = IntArray(n)
+        for (j in 0 until n) {
+            if (name[j] == query[0]) best[j] = if (entry.starts[j]) 1 else 0
+        }
+        for (i in 1 until query.length) {
+            java.util.Arrays.fill(next, -1)
+            var bestBefore = -1
+            for (j in 1 until n) {
+                bestBefore = maxOf(bestBefore, if (j >= 2) best[j - 2] else -1)
+                if (name[j] != query[i]) continue
+                val adjacent = if (best[j - 1] >= 0) best[j - 1] + 1 else -1
+                val gap = if (bestBefore >= 0) bestBefore + (if (entry.starts[j]) 1 else 0) else -1
+                next[j] = maxOf(adjacent, gap)
+            }
+            val swap = best
+            best = next
+            next = swap
+        }
+
+        val points = best.max()
+        return if (points < 0) 0.0 else (points + 1.0) / (query.length + 1.0)
+    }
+
+    companion object {
+        val EMPTY = build(emptyList())
+
+        // A subsequence hit has to be fairly tight before `open` launches it
+        private const val FIND_MIN_SCORE = 20.0
+        private const val MIN_PACKAGE_QUERY = 3
+
+        // ln(1 + launches) scaled and capped below one tier
+        private const val USAGE_WEIGHT = 2.0
+        private const val USAGE_BOOST_CAP = 9.0
+
+        private val SEPARATORS = Regex("[^\\p{L}\\p{Nd}]+")
+        private val COMBINING_MARKS = Regex("\\p{Mn}+")
+        private val CAMEL_HUMP = Regex("(?<=\\p{Ll})(?=\\p{Lu})")
+
+        // Heap order: worst first, so apps are sorted by name then package
+        // and a later position loses a tie
+        private val RANKED_ORDER = compareBy<Ranked> { it.score }.thenByDescending { it.position }
+
+        /**
+         * Letters that don't decompose into a Latin base plus accents
+         */
+        private val TRANSLITERATION: Map<Char, String> = buildMap {
+            put('ß', "ss"); put('æ', "ae"); put('œ', "oe"); put('ø', "o"); put('đ', "d")
+            put('ł', "l"); put('ı', "i"); put('þ', "th"); put('ð', "d")
+            val cyrillic = "абвгдеёжзийклмнопрстуфхцчшщъыьэюяіїєґ"
+            val latin = listOf(
+                "a", "b", "v", "g", "d", "e", "e", "zh", "z", "i", "i", "k", "l", "m", "n", "o", "p",
+                "r", "s", "t", "u", "f", "kh", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya",
+                "i", "i", "ye", "g"
+            )
+            cyrillic.forEachIndexed { i, c -> put(c, latin[i]) }
+            val greek = "αβγδεζηθικλμνξοπρσςτυφχψω"
+            val greekLatin = listOf(
+                "a", "v", "g", "d", "e", "z", "i", "th", "i", "k", "l", "m", "n", "x", "o", "p",
+                "r", "s", "s", "t", "y", "f", "ch", "ps", "o"
+            )
+            greek.forEachIndexed { i, c -> put(c, greekLatin[i]) }
+        }
+
+        /**
+         * Common abbreviations: an app whose name contains a keyword can
+         * also be found by its aliases. Keywords of one or two letters
+         * have to be a whole word.
+         */
+        private val ABBREVIATIONS: List<Pair<List<String>, List<String>>> = listOf(
+            listOf("youtube") to listOf("yt"),
+            listOf("whatsapp") to listOf("wa", "whats"),
+            listOf("instagram") to listOf("ig", "insta"),
+            listOf("facebook") to listOf("fb"),
+            listOf("twitter") to listOf("x"),
+            listOf("x") to listOf("twitter"),
+            listOf("telegram") to listOf("tg"),
+            listOf("chrome") to listOf("browser"),
+            listOf("calculator") to listOf("calc"),
+            listOf("calendar") to listOf("cal"),
+            listOf("camera") to listOf("cam"),
+            listOf("settings") to listOf("setting"),
+            listOf("messages", "messaging") to listOf("msg", "sms"),
+            listOf("phone", "dialer") to listOf("phone", "dialer", "call"),
+            listOf("gallery", "photos") to listOf("gallery", "photos", "photo"),
+            listOf("music", "player") to listOf("music"),
+            listOf("clock", "alarm") to listOf("clock", "alarm"),
+            listOf("file", "manager") to listOf("files", "filemanager")
+        )
+
+        /**
+         * Sort [apps] by name and work out every app's search keys.
+         * Packages are unique.
+         */
+        fun build(apps: Collection<CachedApp>): AppIndex {
+            val sortedApps = apps.sortedWith(compareBy<CachedApp> { it.name.lowercase() }.thenBy { it.packageName })
+            val appsByPackage = HashMap<String, CachedApp>(sortedApps.size * 2)
+            for (app in sortedApps) {
+                appsByPackage[app.packageName.lowercase()] = app
+            }
+            val entries = Array(sortedApps.size) { i -> entryFor(sortedApps[i]) }
+            return AppIndex(sortedApps, appsByPackage, entries)
+        }
+
+        private fun entryFor(app: CachedApp): SearchEntry {
+            val words = app.name.split(SEPARATORS)
+                .flatMap { it.split(CAMEL_HUMP) }
+                .map { normalize(it).replace(SEPARATORS, "") }
+                .filter { it.isNotEmpty() }
+
+            val compact = words.joinToString("")
+            val starts = BooleanArray(compact.length)
+            var offset = 0
+            for (word in words) {
+                starts[offset] = true
+                offset += word.length
+            }
+
+            val text = normalize(app.name).replace(SEPARATORS, " ").trim()
+            val plainWords = text.split(" ")
+            val aliases = ABBREVIATIONS
+                .filter { (keywords, _) ->
+                    keywords.any { keyword ->
+                        if (keyword.length <= 2) keyword in plainWords else compact.contains(keyword)
+                    }
+                }
+                .flatMap { it.second }
+                .distinct()
+
+            return SearchEntry(
+                text = text,
+                compact = compact,
+                starts = starts,
+                initials = words.joinToString("") { it.substring(0, 1) },
+                aliases = aliases,
+                packageName = app.packageName.lowercase()
+            )
+        }
+
+        /**
+         * Lowercase, strip accents and transliterate to Latin letters
+         */
+        internal fun normalize(text: String): String {
+            val decomposed = COMBINING_MARKS.replace(Normalizer.normalize(text.lowercase(), Normalizer.Form.NFD), "")
+            if (decomposed.none { it in TRANSLITERATION }) return decomposed
+            return buildString(decomposed.length + 4) {
+                for (c in decomposed) append(TRANSLITERATION[c] ?: c)
+            }
+        }
+    }
+}
+
+/**
+ * Cached app data
+ */
+data class CachedApp(
+    val name: String,
+    val packageName: String,
+    val version: String,
+    val isSystemApp: Boolean,
+    val isLaunchable: Boolean,
+    // PackageInfo.lastUpdateTime, to tell whether a saved label is still current
+    val lastUpdated: Long = 0L
+)
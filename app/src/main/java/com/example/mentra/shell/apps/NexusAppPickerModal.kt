@@ -2,10 +2,6 @@ package com.example.mentra.shell.apps
 
 import android.content.Context
 import android.content.Intent
-import android.graphics.Bitmap
-import android.graphics.Canvas
-import android.graphics.drawable.BitmapDrawable
-import android.graphics.drawable.Drawable
 import androidx.compose.animation.*
 import androidx.compose.animation.core.*
 import androidx.compose.foundation.*
@@ -13,6 +9,7 @@ import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.lazy.grid.GridCells
 import androidx.compose.foundation.lazy.grid.LazyVerticalGrid
 import androidx.compose.foundation.lazy.grid.items
+import androidx.compose.foundation.lazy.grid.rememberLazyGridState
 import androidx.compose.foundation.shape.CircleShape
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.foundation.text.BasicTextField
@@ -33,8 +30,6 @@ import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.text.style.TextOverflow
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.withContext
 
 /**
  * ═══════════════════════════════════════════════════════════════════
@@ -71,20 +66,21 @@ fun NexusAppPickerModal(
     var searchQuery by remember { mutableStateOf("") }
     var selectedCategory by remember { mutableStateOf(AppCategory.ALL) }
 
-    // Filter apps based on search and category
+    // Filter apps by category; a search ranks them, best match first
     val filteredApps = remember(apps, searchQuery, selectedCategory) {
-        apps.filter { app ->
-            val matchesSearch = searchQuery.isEmpty() ||
-                app.name.contains(searchQuery, ignoreCase = true) ||
-                app.packageName.contains(searchQuery, ignoreCase = true)
-
+        val shown = { app: CachedApp ->
             val matchesCategory = when (selectedCategory) {
                 AppCategory.ALL -> true
                 AppCategory.USER -> !app.isSystemApp
                 AppCategory.SYSTEM -> app.isSystemApp
             }
+            matchesCategory && app.isLaunchable
+        }
 
-            matchesSearch && matchesCategory && app.isLaunchable
+        if (searchQuery.isBlank()) {
+            apps.filter(shown)
+        } else {
+            appCacheService.searchApps(searchQuery, filter = shown)
         }
     }
 
@@ -159,8 +155,12 @@ fun NexusAppPickerModal(
                     )
 
                     // Apps grid
+                    val gridState = rememberLazyGridState()
+                    PrefetchAppIcons(gridState, filteredApps, appCacheService.icons) { it.packageName to it.lastUpdated }
+
                     LazyVerticalGrid(
                         columns = GridCells.Fixed(4),
+                        state = gridState,
                         modifier = Modifier
                             .fillMaxSize()
                             .padding(horizontal = 12.dp),
@@ -168,12 +168,14 @@ fun NexusAppPickerModal(
                         verticalArrangement = Arrangement.spacedBy(16.dp),
                         horizontalArrangement = Arrangement.spacedBy(8.dp)
                     ) {
-                        items(filteredApps) { app ->
+                        items(filteredApps, key = { it.packageName }) { app ->
                             AppGridItem(
                                 app = app,
-                                context = context,
+                                iconCache = appCacheService.icons,
                                 onClick = {
-                                    launchApp(context, app.packageName)
+                                    if (launchApp(context, app.packageName)) {
+                                        appCacheService.recordLaunch(app.packageName)
+                                    }
                                     onClose()
                                 }
                             )
@@ -403,23 +405,10 @@ private fun AppPickerCategoryTabs(
 @Composable
 private fun AppGridItem(
     app: CachedApp,
-    context: Context,
+    iconCache: AppIconCache,
     onClick: () -> Unit
 ) {
-    var iconBitmap by remember { mutableStateOf<Bitmap?>(null) }
-
-    // Load app icon
-    LaunchedEffect(app.packageName) {
-        withContext(Dispatchers.IO) {
-            try {
-                val pm = context.packageManager
-                val drawable = pm.getApplicationIcon(app.packageName)
-                iconBitmap = drawableToBitmap(drawable)
-            } catch (e: Exception) {
-                // Use default icon
-            }
-        }
-    }
+    val iconBitmap = rememberAppIcon(iconCache, app.packageName, app.lastUpdated)
 
     Column(
         modifier = Modifier
@@ -444,7 +433,7 @@ private fun AppGridItem(
         ) {
             if (iconBitmap != null) {
                 Image(
-                    bitmap = iconBitmap!!.asImageBitmap(),
+                    bitmap = iconBitmap.asImageBitmap(),
                     contentDescription = app.name,
                     modifier = Modifier
                         .fillMaxSize()
@@ -479,31 +468,18 @@ private fun AppGridItem(
     }
 }
 
-private fun launchApp(context: Context, packageName: String) {
+private fun launchApp(context: Context, packageName: String): Boolean {
     try {
         val launchIntent = context.packageManager.getLaunchIntentForPackage(packageName)
         if (launchIntent != null) {
             launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
             context.startActivity(launchIntent)
+            return true
         }
     } catch (e: Exception) {
         e.printStackTrace()
     }
-}
-
-private fun drawableToBitmap(drawable: Drawable): Bitmap {
-    if (drawable is BitmapDrawable) {
-        return drawable.bitmap
-    }
-
-    val width = if (drawable.intrinsicWidth > 0) drawable.intrinsicWidth else 96
-    val height = if (drawable.intrinsicHeight > 0) drawable.intrinsicHeight else 96
-
-    val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-    val canvas = Canvas(bitmap)
-    drawable.setBounds(0, 0, canvas.width, canvas.height)
-    drawable.draw(canvas)
-    return bitmap
+    return false
 }
 
 enum class AppCategory(val displayName: String) {
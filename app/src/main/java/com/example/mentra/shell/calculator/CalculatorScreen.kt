@@ -78,6 +78,7 @@ fun CalculatorScreen(
     var isScientific by remember { mutableStateOf(false) }
     var isRadians by remember { mutableStateOf(false) }
     var showHistory by remember { mutableStateOf(false) }
+    var isPlotting by remember { mutableStateOf(false) }
 
     val calculator = remember { CalculatorEngine() }
 
@@ -121,58 +122,74 @@ fun CalculatorScreen(
             // Header with close button and mode toggle
             CalculatorHeader(
                 isScientific = isScientific,
+                isPlotting = isPlotting,
                 onToggleMode = { isScientific = !isScientific },
+                onTogglePlot = { isPlotting = !isPlotting },
                 onShowHistory = { showHistory = !showHistory },
                 onClose = onClose
             )
 
             Spacer(modifier = Modifier.height(16.dp))
 
-            // Display area
-            CalculatorDisplay(
-                expression = expression,
-                result = result,
-                isScientific = isScientific,
-                isRadians = isRadians,
-                onToggleRadians = { isRadians = !isRadians }
-            )
+            if (isPlotting) {
+                FunctionPlotPanel(
+                    initial = FunctionRange(
+                        expression = expression.ifBlank { "sin(x)" },
+                        start = -10.0,
+                        end = 10.0
+                    ),
+                    radians = isRadians,
+                    onToggleRadians = { isRadians = !isRadians },
+                    colors = calcPlotColors,
+                    modifier = Modifier.weight(1f)
+                )
+            } else {
+                // Display area
+                CalculatorDisplay(
+                    expression = expression,
+                    result = result,
+                    isScientific = isScientific,
+                    isRadians = isRadians,
+                    onToggleRadians = { isRadians = !isRadians }
+                )
 
-            Spacer(modifier = Modifier.height(24.dp))
+                Spacer(modifier = Modifier.height(24.dp))
 
-            // Keypad
-            AnimatedContent(
-                targetState = isScientific,
-                transitionSpec = {
-                    fadeIn(animationSpec = tween(300)) togetherWith
-                    fadeOut(animationSpec = tween(300))
-                },
-                label = "keypad"
-            ) { scientific ->
-                if (scientific) {
-                    ScientificKeypad(
-                        isRadians = isRadians,
-                        onKey = { key ->
-                            handleKey(key, expression, calculator, isRadians) { newExpr, newResult ->
-                                if (key == "=" && newResult != "Error") {
-                                    history = (listOf("$expression = $newResult") + history).take(20)
+                // Keypad
+                AnimatedContent(
+                    targetState = isScientific,
+                    transitionSpec = {
+                        fadeIn(animationSpec = tween(300)) togetherWith
+                        fadeOut(animationSpec = tween(300))
+                    },
+                    label = "keypad"
+                ) { scientific ->
+                    if (scientific) {
+                        ScientificKeypad(
+                            isRadians = isRadians,
+                            onKey = { key ->
+                                handleKey(key, expression, calculator, isRadians) { newExpr, newResult ->
+                                    if (key == "=" && newResult != "Error") {
+                                        history = (listOf("$expression = $newResult") + history).take(20)
+                                    }
+                                    expression = newExpr
+                                    result = newResult
                                 }
-                                expression = newExpr
-                                result = newResult
                             }
-                        }
-                    )
-                } else {
-                    SimpleKeypad(
-                        onKey = { key ->
-                            handleKey(key, expression, calculator, isRadians) { newExpr, newResult ->
-                                if (key == "=" && newResult != "Error") {
-                                    history = (listOf("$expression = $newResult") + history).take(20)
+                        )
+                    } else {
+                        SimpleKeypad(
+                            onKey = { key ->
+                                handleKey(key, expression, calculator, isRadians) { newExpr, newResult ->
+                                    if (key == "=" && newResult != "Error") {
+                                        history = (listOf("$expression = $newResult") + history).take(20)
+                                    }
+                                    expression = newExpr
+                                    result = newResult
                                 }
-                                expression = newExpr
-                                result = newResult
                             }
-                        }
-                    )
+                        )
+                    }
                 }
             }
         }
@@ -203,10 +220,21 @@ fun CalculatorScreen(
     }
 }
 
+private val calcPlotColors = PlotColors(
+    line = CalcColors.primary,
+    axis = CalcColors.secondary,
+    text = CalcColors.textPrimary,
+    label = CalcColors.textMuted,
+    field = CalcColors.surface,
+    accent = CalcColors.warning
+)
+
 @Composable
 private fun CalculatorHeader(
     isScientific: Boolean,
+    isPlotting: Boolean,
     onToggleMode: () -> Unit,
+    onTogglePlot: () -> Unit,
     onShowHistory: () -> Unit,
     onClose: () -> Unit
 ) {
@@ -243,7 +271,11 @@ private fun CalculatorHeader(
                 fontFamily = FontFamily.Monospace
             )
             Text(
-                text = if (isScientific) " SCI" else " CALC",
+                text = when {
+                    isPlotting -> " PLOT"
+                    isScientific -> " SCI"
+                    else -> " CALC"
+                },
                 color = CalcColors.textSecondary,
                 fontSize = 14.sp,
                 fontFamily = FontFamily.Monospace
@@ -267,6 +299,29 @@ private fun CalculatorHeader(
                 )
             }
 
+            // Plot toggle
+            IconButton(
+                onClick = onTogglePlot,
+                modifier = Modifier
+                    .size(40.dp)
+                    .clip(CircleShape)
+                    .background(
+                        if (isPlotting) CalcColors.primary.copy(alpha = 0.3f)
+                        else CalcColors.surface
+                    )
+                    .border(
+                        width = 1.dp,
+                        color = if (isPlotting) CalcColors.primary else Color.Transparent,
+                        shape = CircleShape
+                    )
+            ) {
+                Icon(
+                    imageVector = Icons.Default.ShowChart,
+                    contentDescription = "Plot",
+                    tint = if (isPlotting) CalcColors.primary else CalcColors.textSecondary
+                )
+            }
+
             // Mode toggle
             IconButton(
                 onClick = onToggleMode,
@@ -0,0 +1,750 @@
+package com.example.mentra.shell.calculator
+
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.math.MathContext
+import java.math.RoundingMode
+import kotlin.math.*
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * EXPRESSION COMPILER
+ * Text → tokens → stack program, compiled once and cached
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * [tokenize] makes a single pass over the text; [compile] parses the
+ * tokens by recursive descent and emits postfix code for a small stack
+ * machine. Constants (pi, e, phi) are folded into the program, while
+ * variables are looked up by name each time the program runs, so a
+ * cached program stays valid when `x` or `ans` change.
+ *
+ * Grammar, loosest first:
+ *
+ *     statement  := [name '='] sum
+ *     sum        := product (('+' | '-') product)*
+ *     product    := unary (('*' | '/' | '%' | 'mod') unary | implicit)*
+ *     unary      := ('-' | '+') unary | power
+ *     power      := postfix (('^' | '**') unary)?
+ *     postfix    := primary '!'*
+ *     primary    := number | name | function '(' args ')' | '(' sum ')'
+ *
+ * Implicit multiplication covers `2pi`, `3x`, `2(1+1)` and `(1+1)(2+2)`.
+ * Trigonometric functions work in degrees unless the caller asks for
+ * radians.
+ *
+ * Every program runs on doubles; [CompiledExpression.executeExact] runs
+ * the same code on BigDecimal when [CompiledExpression.isExact] says it
+ * only needs arithmetic that BigDecimal can do exactly.
+ */
+object ExpressionCompiler {
+
+    enum class TokenType { NUMBER, NAME, PLUS, MINUS, STAR, SLASH, PERCENT, CARET, LPAREN, RPAREN, COMMA, ASSIGN, BANG, END }
+
+    data class Token(
+        val type: TokenType,
+        val position: Int,
+        val text: String = "",
+        val number: Double = 0.0
+    )
+
+    val constants = mapOf(
+        "pi" to Math.PI,
+        "π" to Math.PI,
+        "e" to Math.E,
+        "phi" to 1.6180339887498949,
+        "φ" to 1.6180339887498949
+    )
+
+    // Name → allowed argument counts
+    val functions: Map<String, IntRange> = linkedMapOf(
+        "sin" to 1..1, "cos" to 1..1, "tan" to 1..1,
+        "asin" to 1..1, "acos" to 1..1, "atan" to 1..1,
+        "sinh" to 1..1, "cosh" to 1..1, "tanh" to 1..1,
+        "sqrt" to 1..1, "cbrt" to 1..1,
+        "log" to 1..1, "log10" to 1..1, "log2" to 1..1, "ln" to 1..1,
+        "abs" to 1..1, "floor" to 1..1, "ceil" to 1..1, "round" to 1..1,
+        "exp" to 1..1, "pow" to 2..2,
+        "min" to 1..Int.MAX_VALUE, "max" to 1..Int.MAX_VALUE,
+        "rad" to 1..1, "deg" to 1..1
+    )
+
+    // Functions with an exact BigDecimal counterpart; the rest are
+    // transcendental and always run on doubles
+    private val exactFunctions = setOf("abs", "floor", "ceil", "round", "pow", "min", "max")
+
+    // Largest n! computed exactly, and the largest power taken exactly
+    private const val MAX_EXACT_FACTORIAL = 5_000
+    private const val MAX_EXACT_EXPONENT = 9_999
+    // Most digits an exact power may have; (9^9999)^9999 would need ~95M
+    private const val MAX_EXACT_POWER_DIGITS = 100_000L
+
+    private val functionIds: Map<String, Int> = functions.keys.withIndex().associate { (index, name) -> name to index }
+    private val functionNames: Array<String> = functions.keys.toTypedArray()
+
+    /**
+     * Names that can't be assigned to
+     */
+    fun isReserved(name: String): Boolean = name in constants || name in functions || name == "mod"
+
+    /**
+     * Split [text] into tokens in one pass. `**` becomes [TokenType.CARET]
+     * and the word `mod` becomes [TokenType.PERCENT].
+     */
+    fun tokenize(text: String): List<Token> {
+        val tokens = ArrayList<Token>(text.length / 2 + 2)
+        var pos = 0
+        val length = text.length
+
+        while (pos < length) {
+            val c = text[pos]
+            when {
+                c == ' ' || c == '\t' -> pos++
+
+                c.isDigit() || (c == '.' && pos + 1 < length && text[pos + 1].isDigit()) -> {
+                    val start = pos
+                    while (pos < length && (text[pos].isDigit() || text[pos] == '.')) pos++
+                    // Exponent only if digits follow, so `2e` stays 2 × e
+                    if (pos < length && (text[pos] == 'e' || text[pos] == 'E')) {
+                        var look = pos + 1
+                        if (look < length && (text[look] == '+' || text[look] == '-')) look++
+                        if (look < length && text[look].isDigit()) {
+                            pos = look
+                            while (pos < length && text[pos].isDigit()) pos++
+                        }
+                    }
+                    val literal = text.substring(start, pos)
+                    val value = literal.toDoubleOrNull()
+                        ?: throw IllegalArgumentException("Invalid number: $literal")
+                    tokens.add(Token(TokenType.NUMBER, start, literal, value))
+                }
+
+                c.isLetter() || c == '_' -> {
+                    val start = pos
+                    while (pos < length && (text[pos].isLetterOrDigit() || text[pos] == '_')) pos++
+                    val name = text.substring(start, pos).lowercase()
+                    tokens.add(
+                        if (name == "mod") Token(TokenType.PERCENT, start, name)
+                        else Token(TokenType.NAME, start, name)
+                    )
+                }
+
+                else -> {
+                    val type = when (c) {
+                        '+' -> TokenType.PLUS
+                        '-' -> TokenType.MINUS
+                        '*' -> if (pos + 1 < length && text[pos + 1] == '*') TokenType.CARET else TokenType.STAR
+                        '×' -> TokenType.STAR
+                        '/', '÷' -> TokenType.SLASH
+                        '%' -> TokenType.PERCENT
+                        '^' -> TokenType.CARET
+                        '(' -> TokenType.LPAREN
+                        ')' -> TokenType.RPAREN
+                        ',' -> TokenType.COMMA
+                        '=' -> TokenType.ASSIGN
+                        '!' -> TokenType.BANG
+                        else -> throw IllegalArgumentException("Unexpected character: $c")
+                    }
+                    val width = if (c == '*' && type == TokenType.CARET) 2 else 1
+                    tokens.add(Token(type, pos, text.substring(pos, pos + width)))
+                    pos += width
+                }
+            }
+        }
+
+        tokens.add(Token(TokenType.END, length))
+        return tokens
+    }
+
+    /**
+     * Compile [text] into a program
+     * @throws IllegalArgumentException on a syntax error
+     */
+    fun compile(text: String): CompiledExpression {
+        val tokens = tokenize(text)
+        if (tokens.size == 1) throw IllegalArgumentException("Empty expression")
+
+        var target: String? = null
+        var from = 0
+        if (tokens.size > 2 && tokens[0].type == TokenType.NAME && tokens[1].type == TokenType.ASSIGN) {
+            target = tokens[0].text
+            if (isReserved(target)) throw IllegalArgumentException("Cannot assign to $target")
+            from = 2
+        }
+
+        val program = Emitter(tokens, from).run()
+        return program.copy(source = text, target = target)
+    }
+
+    /**
+     * Recursive descent over [tokens], writing postfix code
+     */
+    private class Emitter(private val tokens: List<Token>, private var pos: Int) {
+        private val code = IntArrayBuilder()
+        private val numbers = ArrayList<Double>()
+        // Source text of each number, null for folded constants
+        private val literals = ArrayList<String?>()
+        private val names = ArrayList<String>()
+        private var depth = 0
+        private var maxDepth = 0
+
+        fun run(): CompiledExpression {
+            sum()
+            val extra = peek()
+            if (extra.type != TokenType.END) {
+                throw IllegalArgumentException(
+                    if (extra.type == TokenType.RPAREN) "Unmatched ')'" else "Unexpected '${extra.text}'"
+                )
+            }
+            return CompiledExpression(
+                source = "",
+                target = null,
+                code = code.toArray(),
+                numbers = numbers.toDoubleArray(),
+                literals = literals.toTypedArray(),
+                names = names.toTypedArray(),
+                stackSize = maxDepth
+            )
+        }
+
+        private fun peek(): Token = tokens[pos]
+
+        private fun match(type: TokenType): Boolean {
+            if (tokens[pos].type != type) return false
+            pos++
+            return true
+        }
+
+        private fun expect(type: TokenType, message: String) {
+            if (!match(type)) throw IllegalArgumentException(message)
+        }
+
+        private fun sum() {
+            product()
+            while (true) {
+                when {
+                    match(TokenType.PLUS) -> { product(); binary(CompiledExpression.ADD) }
+                    match(TokenType.MINUS) -> { product(); binary(CompiledExpression.SUB) }
+                    else -> return
+                }
+            }
+        }
+
+        private fun product() {
+            unary()
+            while (true) {
+                when {
+                    match(TokenType.STAR) -> { unary(); binary(CompiledExpression.MUL) }
+                    match(TokenType.SLASH) -> { unary(); binary(CompiledExpression.DIV) }
+                    match(TokenType.PERCENT) -> { unary(); binary(CompiledExpression.MOD) }
+                    startsImplicitFactor() -> { power(); binary(CompiledExpression.MUL) }
+                    else -> return
+                }
+            }
+        }
+
+        // `2x`, `2(…)`, `(…)(…)`, `(…)2`; two bare numbers in a row stay an error
+        private fun startsImplicitFactor(): Boolean = when (peek().type) {
+            TokenType.NAME, TokenType.LPAREN -> true
+            TokenType.NUMBER -> tokens[pos - 1].type == TokenType.RPAREN
+            else -> false
+        }
+
+        private fun unary() {
+            when {
+                match(TokenType.MINUS) -> { unary(); emit(CompiledExpression.NEG) }
+                match(TokenType.PLUS) -> unary()
+                else -> power()
+            }
+        }
+
+        private fun power() {
+            postfix()
+            // Right associative, and the exponent may carry a sign: 2^-1
+            if (match(TokenType.CARET)) {
+                unary()
+                binary(CompiledExpression.POW)
+            }
+        }
+
+        private fun postfix() {
+            primary()
+            while (match(TokenType.BANG)) emit(CompiledExpression.FACT)
+        }
+
+        private fun primary() {
+            val token = peek()
+            when (token.type) {
+                TokenType.NUMBER -> {
+                    pos++
+                    push(token.number, token.text)
+                }
+
+                TokenType.LPAREN -> {
+                    pos++
+                    sum()
+                    expect(TokenType.RPAREN, "Missing closing parenthesis")
+                }
+
+                TokenType.NAME -> {
+                    pos++
+                    val name = token.text
+                    val functionId = functionIds[name]
+                    val constant = constants[name]
+                    when {
+                        functionId != null -> call(name, functionId)
+                        constant != null -> push(constant, null)
+                        else -> {
+                            val slot = names.indexOf(name).takeIf { it >= 0 }
+                                ?: names.size.also { names.add(name) }
+                            emit(CompiledExpression.LOAD, slot)
+                            grow(1)
+                        }
+                    }
+                }
+
+                TokenType.END -> throw IllegalArgumentException("Unexpected end of expression")
+                else -> throw IllegalArgumentException("Unexpected '${token.text}'")
+            }
+        }
+
+        private fun call(name: String, functionId: Int) {
+            expect(TokenType.LPAREN, "Expected '(' after function $name")
+            var count = 0
+            if (!match(TokenType.RPAREN)) {
+                do {
+                    sum()
+                    count++
+                } while (match(TokenType.COMMA))
+                expect(TokenType.RPAREN, "Missing ')' after function arguments")
+            }
+
+            val arity = functions.getValue(name)
+            if (count !in arity) {
+                val expected = if (arity.first == arity.last) "${arity.first}" else "at least ${arity.first}"
+                throw IllegalArgumentException("$name expects $expected argument${if (arity.first == 1 && arity.last == 1) "" else "s"}")
+            }
+            emit(CompiledExpression.CALL, functionId, count)
+            grow(1 - count)
+        }
+
+        private fun push(value: Double, literal: String?) {
+            numbers.add(value)
+            literals.add(literal)
+            emit(CompiledExpression.PUSH, numbers.size - 1)
+            grow(1)
+        }
+
+        private fun binary(op: Int) {
+            emit(op)
+            grow(-1)
+        }
+
+        private fun emit(vararg words: Int) {
+            for (word in words) code.add(word)
+        }
+
+        private fun grow(delta: Int) {
+            depth += delta
+            if (depth > maxDepth) maxDepth = depth
+        }
+    }
+
+    private class IntArrayBuilder {
+        private var data = IntArray(16)
+        private var size = 0
+
+        fun add(value: Int) {
+            if (size == data.size) data = data.copyOf(size * 2)
+            data[size++] = value
+        }
+
+        fun toArray(): IntArray = data.copyOf(size)
+    }
+
+    /**
+     * Run function [id] over `stack[from until from + count]`. When not
+     * [strict], domain errors give NaN or ±∞ instead of throwing.
+     */
+    internal fun applyFunction(id: Int, stack: DoubleArray, from: Int, count: Int, radians: Boolean, strict: Boolean): Double {
+        val x = stack[from]
+        return when (functionNames[id]) {
+            "sin" -> sin(if (radians) x else Math.toRadians(x))
+            "cos" -> cos(if (radians) x else Math.toRadians(x))
+            "tan" -> tan(if (radians) x else Math.toRadians(x))
+            "asin" -> asin(x).let { if (radians) it else Math.toDegrees(it) }
+            "acos" -> acos(x).let { if (radians) it else Math.toDegrees(it) }
+            "atan" -> atan(x).let { if (radians) it else Math.toDegrees(it) }
+            "sinh" -> sinh(x)
+            "cosh" -> cosh(x)
+            "tanh" -> tanh(x)
+            "sqrt" -> {
+                if (strict && x < 0) throw ArithmeticException("Cannot take square root of negative number")
+                sqrt(x)
+            }
+            "cbrt" -> cbrt(x)
+            "log", "log10" -> {
+                if (strict && x <= 0) throw ArithmeticException("Logarithm of non-positive number")
+                log10(x)
+            }
+            "log2" -> {
+                if (strict && x <= 0) throw ArithmeticException("Logarithm of non-positive number")
+                ln(x) / ln(2.0)
+            }
+            "ln" -> {
+                if (strict && x <= 0) throw ArithmeticException("Logarithm of non-positive number")
+                ln(x)
+            }
+            "abs" -> abs(x)
+            "floor" -> floor(x)
+            "ceil" -> ceil(x)
+            "round" -> round(x)
+            "exp" -> exp(x)
+            "pow" -> x.pow(stack[from + 1])
+            "min" -> {
+                var result = x
+                for (i in from + 1 until from + count) result = min(result, stack[i])
+                result
+            }
+            "max" -> {
+                var result = x
+                for (i in from + 1 until from + count) result = max(result, stack[i])
+                result
+            }
+            "rad" -> Math.toRadians(x)
+            "deg" -> Math.toDegrees(x)
+            else -> throw IllegalArgumentException("Unknown function: ${functionNames[id]}")
+        }
+    }
+
+    internal fun isExactFunction(id: Int): Boolean = functionNames[id] in exactFunctions
+
+    /**
+     * BigDecimal counterpart of [applyFunction] for [isExactFunction]
+     * ids. Null when this call can't be done exactly, such as a
+     * fractional power.
+     */
+    internal fun applyExact(id: Int, stack: Array<BigDecimal?>, from: Int, count: Int, context: MathContext): BigDecimal? {
+        val x = stack[from]!!
+        return when (functionNames[id]) {
+            "abs" -> x.abs()
+            "floor" -> x.setScale(0, RoundingMode.FLOOR)
+            "ceil" -> x.setScale(0, RoundingMode.CEILING)
+            // Half to even, like the double path's round()
+            "round" -> x.setScale(0, RoundingMode.HALF_EVEN)
+            "pow" -> power(x, stack[from + 1]!!, context)
+            "min" -> {
+                var result = x
+                for (i in from + 1 until from + count) result = result.min(stack[i]!!)
+                result
+            }
+            "max" -> {
+                var result = x
+                for (i in from + 1 until from + count) result = result.max(stack[i]!!)
+                result
+            }
+            else -> null
+        }
+    }
+
+    /**
+     * [base] to an integer [exponent]: exact for positive exponents,
+     * rounded to [context] for negative ones. Null for fractional or
+     * very large exponents, and for results that would run past
+     * [MAX_EXACT_POWER_DIGITS] digits, so nested powers fall back to
+     * doubles instead of hanging.
+     */
+    internal fun power(base: BigDecimal, exponent: BigDecimal, context: MathContext): BigDecimal? {
+        val n = integerOrNull(exponent) ?: return null
+        if (n.abs() > BigInteger.valueOf(MAX_EXACT_EXPONENT.toLong())) return null
+        val e = n.toInt()
+        // The digits of base^e are at most e times those of base
+        if (base.precision().toLong() * abs(e) > MAX_EXACT_POWER_DIGITS) return null
+        if (e >= 0) return base.pow(e)
+        if (base.signum() == 0) throw ArithmeticException("Division by zero")
+        return BigDecimal.ONE.divide(base.pow(-e), context)
+    }
+
+    /**
+     * n! for a non-negative integer n; [strict] decides whether other
+     * arguments throw or give NaN. Overflows to ∞ past 170!.
+     */
+    internal fun factorial(x: Double, strict: Boolean): Double {
+        if (x < 0 || x != floor(x)) {
+            if (strict) throw ArithmeticException("Factorial needs a non-negative integer")
+            return Double.NaN
+        }
+        if (x > 170) return Double.POSITIVE_INFINITY
+        var result = 1.0
+        for (i in 2..x.toInt()) result *= i
+        return result
+    }
+
+    /**
+     * Exact n!, or null past [MAX_EXACT_FACTORIAL]
+     * @throws ArithmeticException if [x] isn't a non-negative integer
+     */
+    internal fun factorial(x: BigDecimal): BigDecimal? {
+        val n = integerOrNull(x)
+        if (n == null || n.signum() < 0) throw ArithmeticException("Factorial needs a non-negative integer")
+        if (n > BigInteger.valueOf(MAX_EXACT_FACTORIAL.toLong())) return null
+        var result = BigInteger.ONE
+        for (i in 2..n.toInt()) result = result.multiply(BigInteger.valueOf(i.toLong()))
+        return BigDecimal(result)
+    }
+
+    private fun integerOrNull(x: BigDecimal): BigInteger? =
+        if (x.signum() == 0 || x.stripTrailingZeros().scale() <= 0) x.toBigInteger() else null
+}
+
+/**
+ * Postfix program for one expression. Immutable and safe to share
+ * between threads; each [evaluate] gets its own stack.
+ */
+data class CompiledExpression(
+    val source: String,
+    // Variable assigned by `name = …`, null for a plain expression
+    val target: String?,
+    val code: IntArray,
+    val numbers: DoubleArray,
+    // Source text of each number, null for constants such as pi
+    val literals: Array<String?>,
+    val names: Array<String>,
+    val stackSize: Int
+) {
+
+    /** Variables the program reads */
+    val variables: Set<String> get() = names.toSet()
+
+    /**
+     * Whether [executeExact] can run this program: no transcendental
+     * functions or constants. It may still fall back at run time.
+     */
+    val isExact: Boolean by lazy { checkExact() }
+
+    // Parsed on first exact run, so the double path never pays for it
+    private val exactNumbers: Array<BigDecimal?> by lazy {
+        Array(literals.size) { index -> literals[index]?.let(::BigDecimal) }
+    }
+
+    /**
+     * @param radians whether trigonometric functions take and return radians
+     * @throws IllegalArgumentException for an unknown variable
+     * @throws ArithmeticException for division by zero and domain errors
+     */
+    fun evaluate(variables: Map<String, Double> = emptyMap(), radians: Boolean = false): Double {
+        val slots = DoubleArray(names.size) { index ->
+            variables[names[index]] ?: throw IllegalArgumentException("Unknown variable: ${names[index]}")
+        }
+        return execute(DoubleArray(stackSize.coerceAtLeast(1)), slots, radians, strict = true)
+    }
+
+    /**
+     * This program as a function of [variable], with every other variable
+     * fixed to its current value in [variables]
+     * @throws IllegalArgumentException if the program reads a variable
+     * that is neither [variable] nor in [variables]
+     */
+    fun bind(variable: String, variables: Map<String, Double> = emptyMap(), radians: Boolean = false): BoundFunction {
+        val bound = ArrayList<Int>()
+        val slots = DoubleArray(names.size)
+        names.forEachIndexed { index, name ->
+            if (name == variable) {
+                bound.add(index)
+            } else {
+                slots[index] = variables[name] ?: throw IllegalArgumentException("Unknown variable: $name")
+            }
+        }
+        return BoundFunction(this, slots, bound.toIntArray(), radians)
+    }
+
+    internal fun execute(stack: DoubleArray, slots: DoubleArray, radians: Boolean, strict: Boolean): Double {
+        var sp = 0
+        var pc = 0
+        while (pc < code.size) {
+            when (code[pc++]) {
+                PUSH -> stack[sp++] = numbers[code[pc++]]
+                LOAD -> stack[sp++] = slots[code[pc++]]
+                NEG -> stack[sp - 1] = -stack[sp - 1]
+                ADD -> { sp--; stack[sp - 1] += stack[sp] }
+                SUB -> { sp--; stack[sp - 1] -= stack[sp] }
+                MUL -> { sp--; stack[sp - 1] *= stack[sp] }
+                DIV -> {
+                    sp--
+                    if (strict && stack[sp] == 0.0) throw ArithmeticException("Division by zero")
+                    stack[sp - 1] /= stack[sp]
+                }
+                MOD -> {
+                    sp--
+                    if (strict && stack[sp] == 0.0) throw ArithmeticException("Modulo by zero")
+                    stack[sp - 1] %= stack[sp]
+                }
+                POW -> { sp--; stack[sp - 1] = stack[sp - 1].pow(stack[sp]) }
+                CALL -> {
+                    val id = code[pc++]
+                    val count = code[pc++]
+                    sp -= count
+                    stack[sp] = ExpressionCompiler.applyFunction(id, stack, sp, count, radians, strict)
+                    sp++
+                }
+                FACT -> stack[sp - 1] = ExpressionCompiler.factorial(stack[sp - 1], strict)
+            }
+        }
+        return stack[0]
+    }
+
+    /**
+     * Run the program on BigDecimal: `+ - *`, integer powers and
+     * factorials are exact, division and negative powers are rounded to
+     * [context]. Returns null when some step can only be done on doubles
+     * (see [isExact]; fractional powers are only found at run time), in
+     * which case the caller should use [evaluate] instead.
+     * @param slots value of each of [names], in order
+     * @throws ArithmeticException for division by zero and bad factorials
+     */
+    fun executeExact(slots: Array<BigDecimal>, context: MathContext): BigDecimal? {
+        if (!isExact) return null
+        val stack = arrayOfNulls<BigDecimal>(stackSize.coerceAtLeast(1))
+        var sp = 0
+        var pc = 0
+        while (pc < code.size) {
+            when (code[pc++]) {
+                PUSH -> stack[sp++] = exactNumbers[code[pc++]]
+                LOAD -> stack[sp++] = slots[code[pc++]]
+                NEG -> stack[sp - 1] = stack[sp - 1]!!.negate()
+                ADD -> { sp--; stack[sp - 1] = stack[sp - 1]!!.add(stack[sp]) }
+                SUB -> { sp--; stack[sp - 1] = stack[sp - 1]!!.subtract(stack[sp]) }
+                MUL -> { sp--; stack[sp - 1] = stack[sp - 1]!!.multiply(stack[sp]) }
+                DIV -> {
+                    sp--
+                    if (stack[sp]!!.signum() == 0) throw ArithmeticException("Division by zero")
+                    stack[sp - 1] = stack[sp - 1]!!.divide(stack[sp], context)
+                }
+                MOD -> {
+                    sp--
+                    if (stack[sp]!!.signum() == 0) throw ArithmeticException("Modulo by zero")
+                    stack[sp - 1] = stack[sp - 1]!!.remainder(stack[sp])
+                }
+                POW -> {
+                    sp--
+                    stack[sp - 1] = ExpressionCompiler.power(stack[sp - 1]!!, stack[sp]!!, context) ?: return null
+                }
+                CALL -> {
+                    val id = code[pc++]
+                    val count = code[pc++]
+                    sp -= count
+                    stack[sp] = ExpressionCompiler.applyExact(id, stack, sp, count, context) ?: return null
+                    sp++
+                }
+                FACT -> stack[sp - 1] = ExpressionCompiler.factorial(stack[sp - 1]!!) ?: return null
+            }
+        }
+        return stack[0]
+    }
+
+    private fun checkExact(): Boolean {
+        var pc = 0
+        while (pc < code.size) {
+            when (code[pc++]) {
+                PUSH -> if (literals[code[pc++]] == null) return false
+                LOAD -> pc++
+                CALL -> {
+                    if (!ExpressionCompiler.isExactFunction(code[pc++])) return false
+                    pc++
+                }
+            }
+        }
+        return true
+    }
+
+    override fun equals(other: Any?): Boolean =
+        other is CompiledExpression && source == other.source && target == other.target && code.contentEquals(other.code)
+
+    override fun hashCode(): Int = 31 * source.hashCode() + code.contentHashCode()
+
+    companion object {
+        const val PUSH = 0
+        const val LOAD = 1
+        const val NEG = 2
+        const val ADD = 3
+        const val SUB = 4
+        const val MUL = 5
+        const val DIV = 6
+        const val MOD = 7
+        const val POW = 8
+        const val CALL = 9
+        const val FACT = 10
+    }
+}
+
+/**
+ * A [CompiledExpression] as a function of one variable. Owns its stack,
+ * so evaluating points allocates nothing; not thread-safe, so give each
+ * thread its own via [CompiledExpression.bind].
+ *
+ * Points where the function is undefined come out as NaN or ±∞ rather
+ * than throwing.
+ */
+class BoundFunction internal constructor(
+    private val program: CompiledExpression,
+    private val slots: DoubleArray,
+    private val bound: IntArray,
+    private val radians: Boolean
+) {
+    private val stack = DoubleArray(program.stackSize.coerceAtLeast(1))
+
+    operator fun invoke(x: Double): Double {
+        for (slot in bound) slots[slot] = x
+        return program.execute(stack, slots, radians, strict = false)
+    }
+
+    /**
+     * `ys[i] = f(xs[i])` for i in [from] until [to]
+     */
+    fun evaluateInto(xs: DoubleArray, ys: DoubleArray, from: Int = 0, to: Int = xs.size) {
+        for (i in from until to) ys[i] = invoke(xs[i])
+    }
+}
+
+/**
+ * Least-recently-used cache of compiled programs, keyed by the trimmed,
+ * lower-cased source text
+ */
+class ExpressionCache(private val capacity: Int = DEFAULT_CAPACITY) {
+
+    private val entries = object : LinkedHashMap<String, CompiledExpression>(capacity, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CompiledExpression>): Boolean =
+            size > capacity
+    }
+
+    var hits = 0L
+        private set
+    var misses = 0L
+        private set
+
+    fun get(text: String): CompiledExpression {
+        val key = normalize(text)
+        synchronized(entries) {
+            entries[key]?.let {
+                hits++
+                return it
+            }
+        }
+        // Compile outside the lock; a racing duplicate compile is harmless
+        val compiled = ExpressionCompiler.compile(key)
+        synchronized(entries) {
+            misses++
+            entries[key] = compiled
+        }
+        return compiled
+    }
+
+    val size: Int get() = synchronized(entries) { entries.size }
+
+    fun clear() = synchronized(entries) { entries.clear() }
+
+    companion object {
+        private const val DEFAULT_CAPACITY = 256
+
+        fun normalize(text: String): String = text.trim().lowercase()
+    }
+}
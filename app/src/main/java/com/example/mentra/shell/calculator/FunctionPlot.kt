@@ -0,0 +1,274 @@
+package com.example.mentra.shell.calculator
+
+import androidx.compose.foundation.Canvas
+import androidx.compose.foundation.background
+import androidx.compose.foundation.border
+import androidx.compose.foundation.clickable
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.shape.RoundedCornerShape
+import androidx.compose.foundation.text.BasicTextField
+import androidx.compose.material3.Text
+import androidx.compose.runtime.*
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.draw.clip
+import androidx.compose.ui.geometry.Offset
+import androidx.compose.ui.graphics.Color
+import androidx.compose.ui.graphics.Path
+import androidx.compose.ui.graphics.SolidColor
+import androidx.compose.ui.graphics.drawscope.Stroke
+import androidx.compose.ui.graphics.drawscope.clipRect
+import androidx.compose.ui.text.TextStyle
+import androidx.compose.ui.text.font.FontFamily
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.unit.dp
+import androidx.compose.ui.unit.sp
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import java.math.BigDecimal
+import java.math.MathContext
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * FUNCTION PLOT
+ * Graph of one expression, shared by the calculator modal and screen
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * The expression is compiled once per edit and sampled off the main
+ * thread by [FunctionSampler.plot]; the canvas only maps the resulting
+ * arrays to a path. The previous graph stays up while a new one is
+ * computed.
+ */
+
+data class PlotColors(
+    val line: Color,
+    val axis: Color,
+    val text: Color,
+    val label: Color,
+    val field: Color,
+    val accent: Color
+)
+
+private data class PlotState(
+    val samples: FunctionSamples? = null,
+    val error: String? = null
+)
+
+private const val PLOT_DEBOUNCE_MILLIS = 150L
+
+@Composable
+fun FunctionPlotPanel(
+    initial: FunctionRange,
+    radians: Boolean,
+    onToggleRadians: () -> Unit,
+    colors: PlotColors,
+    modifier: Modifier = Modifier
+) {
+    var expression by remember(initial) { mutableStateOf(initial.expression) }
+    var from by remember(initial) { mutableStateOf(formatBound(initial.start)) }
+    var to by remember(initial) { mutableStateOf(formatBound(initial.end)) }
+
+    val range = remember(expression, from, to, radians) {
+        val start = boundOrNull(from)
+        val end = boundOrNull(to)
+        if (expression.isBlank() || start == null || end == null || end <= start) null
+        else FunctionRange(expression, initial.variable, start, end, radians = radians)
+    }
+
+    val state by produceState(PlotState(), range) {
+        if (range == null) {
+            value = PlotState(error = "Enter f(${initial.variable}) and a range from low to high")
+            return@produceState
+        }
+        // Let typing settle before sampling
+        delay(PLOT_DEBOUNCE_MILLIS)
+        value = try {
+            PlotState(samples = FunctionSampler.plot(ExpressionCompiler.compile(range.expression), range))
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            PlotState(error = e.message ?: "Cannot plot this expression")
+        }
+    }
+
+    Column(
+        modifier = modifier,
+        verticalArrangement = Arrangement.spacedBy(10.dp)
+    ) {
+        PlotField(
+            label = "f(${initial.variable})",
+            value = expression,
+            onValueChange = { expression = it },
+            colors = colors,
+            modifier = Modifier.fillMaxWidth()
+        )
+
+        Row(
+            modifier = Modifier.fillMaxWidth(),
+            horizontalArrangement = Arrangement.spacedBy(10.dp),
+            verticalAlignment = Alignment.CenterVertically
+        ) {
+            PlotField("from", from, { from = it }, colors, Modifier.weight(1f))
+            PlotField("to", to, { to = it }, colors, Modifier.weight(1f))
+            Box(
+                modifier = Modifier
+                    .clip(RoundedCornerShape(8.dp))
+                    .background(colors.accent.copy(alpha = 0.15f))
+                    .border(1.dp, colors.accent.copy(alpha = 0.4f), RoundedCornerShape(8.dp))
+                    .clickable { onToggleRadians() }
+                    .padding(horizontal = 10.dp, vertical = 10.dp)
+            ) {
+                Text(
+                    text = if (radians) "RAD" else "DEG",
+                    color = colors.accent,
+                    fontSize = 11.sp,
+                    fontFamily = FontFamily.Monospace,
+                    fontWeight = FontWeight.Bold
+                )
+            }
+        }
+
+        Box(
+            modifier = Modifier
+                .fillMaxWidth()
+                .weight(1f)
+                .clip(RoundedCornerShape(16.dp))
+                .background(colors.field)
+                .border(1.dp, colors.axis.copy(alpha = 0.4f), RoundedCornerShape(16.dp))
+        ) {
+            state.samples?.let { FunctionCanvas(it, colors, Modifier.fillMaxSize().padding(12.dp)) }
+            state.error?.let {
+                Text(
+                    text = it,
+                    color = colors.label,
+                    fontSize = 12.sp,
+                    fontFamily = FontFamily.Monospace,
+                    modifier = Modifier
+                        .align(Alignment.BottomStart)
+                        .padding(12.dp)
+                )
+            }
+        }
+    }
+}
+
+@Composable
+private fun FunctionCanvas(
+    samples: FunctionSamples,
+    colors: PlotColors,
+    modifier: Modifier = Modifier
+) {
+    val view = remember(samples) { samples.viewRange() }
+
+    Box(modifier = modifier) {
+        Canvas(modifier = Modifier.fillMaxSize()) {
+            if (view == null || samples.size < 2) return@Canvas
+
+            val xMin = samples.xs.first()
+            val xMax = samples.xs.last()
+            val xScale = size.width / (xMax - xMin)
+            val yScale = size.height / (view.endInclusive - view.start)
+            fun screenX(x: Double) = ((x - xMin) * xScale).toFloat()
+            // Clamped so poles don't overflow float coordinates
+            fun screenY(y: Double) = (size.height - (y - view.start) * yScale)
+                .coerceIn(-size.height.toDouble(), 2.0 * size.height).toFloat()
+
+            if (0.0 in xMin..xMax) {
+                drawLine(colors.axis, Offset(screenX(0.0), 0f), Offset(screenX(0.0), size.height), strokeWidth = 1.dp.toPx())
+            }
+            if (0.0 in view) {
+                drawLine(colors.axis, Offset(0f, screenY(0.0)), Offset(size.width, screenY(0.0)), strokeWidth = 1.dp.toPx())
+            }
+
+            val path = Path()
+            var penDown = false
+            for (i in 0 until samples.size) {
+                val y = samples.ys[i]
+                if (!y.isFinite()) {
+                    penDown = false
+                    continue
+                }
+                // Don't join the two sides of a pole such as tan(90)
+                if (penDown) {
+                    val previous = samples.ys[i - 1]
+                    if ((previous > view.endInclusive && y < view.start) || (previous < view.start && y > view.endInclusive)) {
+                        penDown = false
+                    }
+                }
+                val x = screenX(samples.xs[i])
+                if (penDown) path.lineTo(x, screenY(y)) else path.moveTo(x, screenY(y))
+                penDown = true
+            }
+
+            clipRect {
+                drawPath(path, colors.line, style = Stroke(width = 2.dp.toPx()))
+            }
+        }
+
+        if (view != null) {
+            AxisLabel(formatBound(view.endInclusive), colors, Modifier.align(Alignment.TopStart))
+            AxisLabel(formatBound(view.start), colors, Modifier.align(Alignment.BottomStart))
+            AxisLabel(formatBound(samples.xs.last()), colors, Modifier.align(Alignment.BottomEnd))
+        }
+    }
+}
+
+@Composable
+private fun AxisLabel(text: String, colors: PlotColors, modifier: Modifier) {
+    Text(
+        text = text,
+        color = colors.label,
+        fontSize = 10.sp,
+        fontFamily = FontFamily.Monospace,
+        modifier = modifier
+    )
+}
+
+@Composable
+private fun PlotField(
+    label: String,
+    value: String,
+    onValueChange: (String) -> Unit,
+    colors: PlotColors,
+    modifier: Modifier = Modifier
+) {
+    Row(
+        modifier = modifier
+            .clip(RoundedCornerShape(12.dp))
+            .background(colors.field)
+            .padding(horizontal = 12.dp, vertical = 10.dp),
+        verticalAlignment = Alignment.CenterVertically
+    ) {
+        Text(
+            text = label,
+            color = colors.label,
+            fontSize = 12.sp,
+            fontFamily = FontFamily.Monospace
+        )
+        Spacer(modifier = Modifier.width(8.dp))
+        BasicTextField(
+            value = value,
+            onValueChange = onValueChange,
+            singleLine = true,
+            textStyle = TextStyle(
+                color = colors.text,
+                fontSize = 16.sp,
+                fontFamily = FontFamily.Monospace
+            ),
+            cursorBrush = SolidColor(colors.line),
+            modifier = Modifier.weight(1f)
+        )
+    }
+}
+
+private fun boundOrNull(text: String): Double? = try {
+    ExpressionCompiler.compile(text).evaluate().takeIf { it.isFinite() }
+} catch (e: Exception) {
+    null
+}
+
+// Six significant digits without trailing zeros: 3.14159, 0.5, 1E+12
+private fun formatBound(value: Double): String =
+    BigDecimal(value).round(MathContext(6)).stripTrailingZeros().let {
+        if (it.scale() < 0 && it.precision() - it.scale() <= 15) it.toPlainString() else it.toString()
+    }
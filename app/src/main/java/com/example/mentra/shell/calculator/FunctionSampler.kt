@@ -0,0 +1,242 @@
+package com.example.mentra.shell.calculator
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.withContext
+import kotlin.math.abs
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * FUNCTION SAMPLER
+ * One compiled expression evaluated over thousands of points
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * The expression is compiled once and bound to its variable; every point
+ * then only runs the program on a reused stack, writing into preallocated
+ * DoubleArrays. Tables of [PARALLEL_THRESHOLD] points or more are split
+ * into chunks evaluated on Dispatchers.Default, one [BoundFunction] per
+ * chunk.
+ *
+ * [plot] samples adaptively: a uniform pass first, then any interval
+ * where the curve bends, jumps or leaves its domain is bisected until it
+ * looks straight at screen resolution or the point budget runs out.
+ */
+object FunctionSampler {
+
+    const val MAX_TABLE_POINTS = 1_000_000
+    const val PARALLEL_THRESHOLD = 20_000
+    private const val MIN_CHUNK_POINTS = 8_192
+    private const val DEFAULT_TABLE_STEPS = 10
+    private const val MAX_PLOT_DEPTH = 10
+
+    /**
+     * Evaluate [program] at `start, start + step, …, end`
+     * @throws IllegalArgumentException for an empty or oversized range, or
+     * a variable other than [FunctionRange.variable] missing from [variables]
+     */
+    suspend fun table(
+        program: CompiledExpression,
+        range: FunctionRange,
+        variables: Map<String, Double> = emptyMap()
+    ): FunctionSamples {
+        val step = range.step ?: ((range.end - range.start) / DEFAULT_TABLE_STEPS).takeIf { it != 0.0 } ?: 1.0
+        val count = pointCount(range.start, range.end, step)
+        val xs = DoubleArray(count) { range.start + it * step }
+        val ys = DoubleArray(count)
+
+        // Binding up front reports unknown variables before any work starts
+        val first = program.bind(range.variable, variables, range.radians)
+        if (count < PARALLEL_THRESHOLD) {
+            first.evaluateInto(xs, ys)
+            return FunctionSamples(xs, ys)
+        }
+
+        val chunks = min(Runtime.getRuntime().availableProcessors(), count / MIN_CHUNK_POINTS).coerceAtLeast(1)
+        val chunkSize = (count + chunks - 1) / chunks
+        coroutineScope {
+            (0 until chunks).map { chunk ->
+                async(Dispatchers.Default) {
+                    val function = if (chunk == 0) first else program.bind(range.variable, variables, range.radians)
+                    function.evaluateInto(xs, ys, chunk * chunkSize, min(count, (chunk + 1) * chunkSize))
+                }
+            }.awaitAll()
+        }
+        return FunctionSamples(xs, ys)
+    }
+
+    /**
+     * Points for drawing [program] between [FunctionRange.start] and
+     * [FunctionRange.end]: [initialSamples] evenly spaced, plus extra
+     * points where the curve needs them, at most [maxPoints] in all.
+     * [tolerance] is the allowed deviation from a straight segment as a
+     * fraction of the curve's height.
+     */
+    suspend fun plot(
+        program: CompiledExpression,
+        range: FunctionRange,
+        variables: Map<String, Double> = emptyMap(),
+        initialSamples: Int = 256,
+        maxPoints: Int = 4_096,
+        tolerance: Double = 0.002
+    ): FunctionSamples = withContext(Dispatchers.Default) {
+        require(range.end > range.start) { "Plot range must go from low to high" }
+        val function = program.bind(range.variable, variables, range.radians)
+
+        val base = initialSamples.coerceIn(2, maxPoints)
+        val step = (range.end - range.start) / (base - 1)
+        val baseXs = DoubleArray(base) { if (it == base - 1) range.end else range.start + it * step }
+        val baseYs = DoubleArray(base)
+        function.evaluateInto(baseXs, baseYs)
+
+        val baseSamples = FunctionSamples(baseXs, baseYs)
+        if (baseSamples.yMin.isNaN()) return@withContext baseSamples
+        val threshold = tolerance * max(baseSamples.yMax - baseSamples.yMin, 1e-12)
+
+        val out = PointBuffer(max(base * 2, 64))
+        val refiner = Refiner(function, out, threshold)
+        out.add(baseXs[0], baseYs[0])
+        for (i in 1 until base) {
+            ensureActive()
+            refiner.budget = maxPoints - (base - i)
+            refiner.refine(baseXs[i - 1], baseYs[i - 1], baseXs[i], baseYs[i], 0)
+            out.add(baseXs[i], baseYs[i])
+        }
+        out.toSamples(baseYs)
+    }
+
+    /**
+     * Number of points in `start..end` by [step], end included when the
+     * step lands on it
+     */
+    fun pointCount(start: Double, end: Double, step: Double): Int {
+        require(start.isFinite() && end.isFinite()) { "Range bounds must be finite" }
+        require(step.isFinite() && step != 0.0) { "Step must be a non-zero number" }
+        val steps = (end - start) / step
+        require(steps >= 0) { "Step $step never reaches $end from $start" }
+        val count = floor(steps + 1e-9).toLong() + 1
+        require(count <= MAX_TABLE_POINTS) { "Too many points ($count), the limit is $MAX_TABLE_POINTS" }
+        return count.toInt()
+    }
+
+    private class Refiner(
+        private val function: BoundFunction,
+        private val out: PointBuffer,
+        private val threshold: Double
+    ) {
+        // Points [out] may hold before the next base point is appended
+        var budget = 0
+
+        fun refine(x0: Double, y0: Double, x1: Double, y1: Double, depth: Int) {
+            if (depth >= MAX_PLOT_DEPTH || out.size >= budget) return
+            val xm = (x0 + x1) / 2
+            val ym = function(xm)
+            if (!needsSplit(y0, ym, y1)) return
+
+            refine(x0, y0, xm, ym, depth + 1)
+            if (out.size >= budget) return
+            out.add(xm, ym)
+            refine(xm, ym, x1, y1, depth + 1)
+        }
+
+        private fun needsSplit(y0: Double, ym: Double, y1: Double): Boolean {
+            val finite0 = y0.isFinite()
+            if (finite0 != ym.isFinite() || finite0 != y1.isFinite()) return true
+            if (!finite0) return false
+            return abs(ym - (y0 + y1) / 2) > threshold
+        }
+    }
+
+    private class PointBuffer(capacity: Int) {
+        private var xs = DoubleArray(capacity)
+        private var ys = DoubleArray(capacity)
+        var size = 0
+            private set
+
+        fun add(x: Double, y: Double) {
+            if (size == xs.size) {
+                xs = xs.copyOf(size * 2)
+                ys = ys.copyOf(size * 2)
+            }
+            xs[size] = x
+            ys[size] = y
+            size++
+        }
+
+        fun toSamples(uniformYs: DoubleArray) = FunctionSamples(xs.copyOf(size), ys.copyOf(size), uniformYs)
+    }
+}
+
+/**
+ * `expression` as a function of [variable] over [start]..[end]. [step] is
+ * only used by tables; null picks ten steps.
+ */
+data class FunctionRange(
+    val expression: String,
+    val variable: String = "x",
+    val start: Double,
+    val end: Double,
+    val step: Double? = null,
+    // Trigonometric functions in radians rather than degrees
+    val radians: Boolean = false
+)
+
+/**
+ * Sampled points, sorted by x. Undefined points have a NaN or infinite y.
+ * [uniformYs] are the evenly spaced samples among them, used for
+ * [viewRange].
+ */
+class FunctionSamples(
+    val xs: DoubleArray,
+    val ys: DoubleArray,
+    private val uniformYs: DoubleArray = ys
+) {
+
+    val size: Int get() = xs.size
+
+    /** Smallest finite y, NaN if there is none */
+    val yMin: Double
+
+    /** Largest finite y, NaN if there is none */
+    val yMax: Double
+
+    init {
+        var low = Double.POSITIVE_INFINITY
+        var high = Double.NEGATIVE_INFINITY
+        for (y in ys) {
+            if (!y.isFinite()) continue
+            if (y < low) low = y
+            if (y > high) high = y
+        }
+        yMin = if (low <= high) low else Double.NaN
+        yMax = if (low <= high) high else Double.NaN
+    }
+
+    /**
+     * Y range worth showing: the finite values between the [trim] and
+     * 1 - [trim] quantiles, so poles like tan(90) don't flatten the rest
+     * of the curve. Taken over the evenly spaced samples only, since
+     * adaptive sampling crowds extra points around exactly those poles.
+     * Null if no point is finite.
+     */
+    fun viewRange(trim: Double = 0.02): ClosedFloatingPointRange<Double>? {
+        var finite = 0
+        for (y in uniformYs) if (y.isFinite()) finite++
+        if (finite == 0) return null
+
+        val sorted = DoubleArray(finite)
+        var index = 0
+        for (y in uniformYs) if (y.isFinite()) sorted[index++] = y
+        sorted.sort()
+
+        val low = sorted[(trim * (finite - 1)).toInt()]
+        val high = sorted[((1 - trim) * (finite - 1)).toInt()]
+        val pad = max((high - low) * 0.1, 1e-9)
+        return (low - pad)..(high + pad)
+    }
+}
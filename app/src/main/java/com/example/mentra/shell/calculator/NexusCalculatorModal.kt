@@ -70,12 +70,15 @@ private object NexusCalcColors {
 @Composable
 fun NexusCalculatorModal(
     onClose: () -> Unit,
-    modifier: Modifier = Modifier
+    modifier: Modifier = Modifier,
+    // Opens straight into the plot view, e.g. from `calc plot`
+    initialPlot: FunctionRange? = null
 ) {
     var expression by remember { mutableStateOf("") }
     var result by remember { mutableStateOf("0") }
     var isScientific by remember { mutableStateOf(false) }
-    var isRadians by remember { mutableStateOf(true) }
+    var isRadians by remember(initialPlot) { mutableStateOf(initialPlot?.radians ?: true) }
+    var isPlotting by remember(initialPlot) { mutableStateOf(initialPlot != null) }
     val haptic = LocalHapticFeedback.current
 
     // Animations
@@ -202,10 +205,15 @@ fun NexusCalculatorModal(
                 // Header
                 NexusCalcHeader(
                     isScientific = isScientific,
+                    isPlotting = isPlotting,
                     onToggleMode = {
                         haptic.performHapticFeedback(HapticFeedbackType.LongPress)
                         isScientific = !isScientific
                     },
+                    onTogglePlot = {
+                        haptic.performHapticFeedback(HapticFeedbackType.LongPress)
+                        isPlotting = !isPlotting
+                    },
                     onClose = {
                         haptic.performHapticFeedback(HapticFeedbackType.LongPress)
                         onClose()
@@ -213,49 +221,63 @@ fun NexusCalculatorModal(
                     pulseAlpha = pulseAlpha
                 )
 
-                // Display
-                NexusCalcDisplay(
-                    expression = expression,
-                    result = result,
-                    isScientific = isScientific,
-                    isRadians = isRadians,
-                    onToggleRadians = { isRadians = !isRadians },
-                    pulseAlpha = pulseAlpha
-                )
+                if (isPlotting) {
+                    FunctionPlotPanel(
+                        initial = initialPlot ?: FunctionRange(
+                            expression = expression.ifBlank { "sin(x)" },
+                            start = -10.0,
+                            end = 10.0
+                        ),
+                        radians = isRadians,
+                        onToggleRadians = { isRadians = !isRadians },
+                        colors = nexusPlotColors,
+                        modifier = Modifier.weight(1f)
+                    )
+                } else {
+                    // Display
+                    NexusCalcDisplay(
+                        expression = expression,
+                        result = result,
+                        isScientific = isScientific,
+                        isRadians = isRadians,
+                        onToggleRadians = { isRadians = !isRadians },
+                        pulseAlpha = pulseAlpha
+                    )
 
-                // Keypad
-                Box(modifier = Modifier.weight(1f)) {
-                    AnimatedContent(
-                        targetState = isScientific,
-                        transitionSpec = {
-                            (fadeIn(tween(300)) + scaleIn(initialScale = 0.95f)) togetherWith
-                            (fadeOut(tween(200)) + scaleOut(targetScale = 1.05f))
-                        },
-                        label = "keypad_switch"
-                    ) { scientific ->
-                        if (scientific) {
-                            NexusScientificKeypad(
-                                isRadians = isRadians,
-                                pulseAlpha = pulseAlpha,
-                                onKey = { key ->
-                                    haptic.performHapticFeedback(HapticFeedbackType.LongPress)
-                                    processKey(key, expression, isRadians) { newExpr, newResult ->
-                                        expression = newExpr
-                                        result = newResult
+                    // Keypad
+                    Box(modifier = Modifier.weight(1f)) {
+                        AnimatedContent(
+                            targetState = isScientific,
+                            transitionSpec = {
+                                (fadeIn(tween(300)) + scaleIn(initialScale = 0.95f)) togetherWith
+                                (fadeOut(tween(200)) + scaleOut(targetScale = 1.05f))
+                            },
+                            label = "keypad_switch"
+                        ) { scientific ->
+                            if (scientific) {
+                                NexusScientificKeypad(
+                                    isRadians = isRadians,
+                                    pulseAlpha = pulseAlpha,
+                                    onKey = { key ->
+                                        haptic.performHapticFeedback(HapticFeedbackType.LongPress)
+                                        processKey(key, expression, isRadians) { newExpr, newResult ->
+                                            expression = newExpr
+                                            result = newResult
+                                        }
                                     }
-                                }
-                            )
-                        } else {
-                            NexusSimpleKeypad(
-                                pulseAlpha = pulseAlpha,
-                                onKey = { key ->
-                                    haptic.performHapticFeedback(HapticFeedbackType.LongPress)
-                                    processKey(key, expression, isRadians) { newExpr, newResult ->
-                                        expression = newExpr
-                                        result = newResult
+                                )
+                            } else {
+                                NexusSimpleKeypad(
+                                    pulseAlpha = pulseAlpha,
+                                    onKey = { key ->
+                                        haptic.performHapticFeedback(HapticFeedbackType.LongPress)
+                                        processKey(key, expression, isRadians) { newExpr, newResult ->
+                                            expression = newExpr
+                                            result = newResult
+                                        }
                                     }
-                                }
-                            )
+                                )
+                            }
                         }
                     }
                 }
@@ -264,10 +286,21 @@ fun NexusCalculatorModal(
     }
 }
 
+private val nexusPlotColors = PlotColors(
+    line = NexusCalcColors.neonCyan,
+    axis = NexusCalcColors.electricPurple,
+    text = NexusCalcColors.textPure,
+    label = NexusCalcColors.textDim,
+    field = NexusCalcColors.numberBtn,
+    accent = NexusCalcColors.solarYellow
+)
+
 @Composable
 private fun NexusCalcHeader(
     isScientific: Boolean,
+    isPlotting: Boolean,
     onToggleMode: () -> Unit,
+    onTogglePlot: () -> Unit,
     onClose: () -> Unit,
     pulseAlpha: Float
 ) {
@@ -314,48 +347,83 @@ private fun NexusCalcHeader(
                 letterSpacing = 3.sp
             )
             Text(
-                text = if (isScientific) "SCI" else "CALC",
+                text = when {
+                    isPlotting -> "PLOT"
+                    isScientific -> "SCI"
+                    else -> "CALC"
+                },
                 color = NexusCalcColors.electricPurple,
                 fontSize = 12.sp,
                 fontFamily = FontFamily.Monospace
             )
         }
 
-        // Mode toggle
-        Box(
-            modifier = Modifier
-                .clip(RoundedCornerShape(12.dp))
-                .background(
-                    if (isScientific) NexusCalcColors.electricPurple.copy(alpha = 0.2f)
-                    else NexusCalcColors.numberBtn
-                )
-                .border(
-                    1.dp,
-                    if (isScientific) NexusCalcColors.electricPurple.copy(alpha = 0.6f)
-                    else Color.Transparent,
-                    RoundedCornerShape(12.dp)
-                )
-                .clickable { onToggleMode() }
-                .padding(horizontal = 14.dp, vertical = 10.dp)
+        Row(
+            verticalAlignment = Alignment.CenterVertically,
+            horizontalArrangement = Arrangement.spacedBy(8.dp)
         ) {
-            Row(
-                verticalAlignment = Alignment.CenterVertically,
-                horizontalArrangement = Arrangement.spacedBy(6.dp)
+            // Plot toggle
+            Box(
+                modifier = Modifier
+                    .size(40.dp)
+                    .clip(RoundedCornerShape(12.dp))
+                    .background(
+                        if (isPlotting) NexusCalcColors.neonCyan.copy(alpha = 0.2f)
+                        else NexusCalcColors.numberBtn
+                    )
+                    .border(
+                        1.dp,
+                        if (isPlotting) NexusCalcColors.neonCyan.copy(alpha = 0.6f)
+                        else Color.Transparent,
+                        RoundedCornerShape(12.dp)
+                    )
+                    .clickable { onTogglePlot() },
+                contentAlignment = Alignment.Center
             ) {
                 Icon(
-                    Icons.Default.Functions,
-                    contentDescription = null,
-                    tint = if (isScientific) NexusCalcColors.electricPurple else NexusCalcColors.textDim,
-                    modifier = Modifier.size(16.dp)
-                )
-                Text(
-                    text = if (isScientific) "SCIENTIFIC" else "SIMPLE",
-                    color = if (isScientific) NexusCalcColors.electricPurple else NexusCalcColors.textDim,
-                    fontSize = 10.sp,
-                    fontFamily = FontFamily.Monospace,
-                    fontWeight = FontWeight.Bold
+                    Icons.Default.ShowChart,
+                    contentDescription = "Plot",
+                    tint = if (isPlotting) NexusCalcColors.neonCyan else NexusCalcColors.textDim,
+                    modifier = Modifier.size(18.dp)
                 )
             }
+
+            // Mode toggle
+            Box(
+                modifier = Modifier
+                    .clip(RoundedCornerShape(12.dp))
+                    .background(
+                        if (isScientific) NexusCalcColors.electricPurple.copy(alpha = 0.2f)
+                        else NexusCalcColors.numberBtn
+                    )
+                    .border(
+                        1.dp,
+                        if (isScientific) NexusCalcColors.electricPurple.copy(alpha = 0.6f)
+                        else Color.Transparent,
+                        RoundedCornerShape(12.dp)
+                    )
+                    .clickable { onToggleMode() }
+                    .padding(horizontal = 14.dp, vertical = 10.dp)
+            ) {
+                Row(
+                    verticalAlignment = Alignment.CenterVertically,
+                    horizontalArrangement = Arrangement.spacedBy(6.dp)
+                ) {
+                    Icon(
+                        Icons.Default.Functions,
+                        contentDescription = null,
+                        tint = if (isScientific) NexusCalcColors.electricPurple else NexusCalcColors.textDim,
+                        modifier = Modifier.size(16.dp)
+                    )
+                    Text(
+                        text = if (isScientific) "SCIENTIFIC" else "SIMPLE",
+                        color = if (isScientific) NexusCalcColors.electricPurple else NexusCalcColors.textDim,
+                        fontSize = 10.sp,
+                        fontFamily = FontFamily.Monospace,
+                        fontWeight = FontWeight.Bold
+                    )
+                }
+            }
         }
     }
 }
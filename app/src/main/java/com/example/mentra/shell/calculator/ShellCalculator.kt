@@ -2,6 +2,11 @@ package com.example.mentra.shell.calculator
 
 import com.example.mentra.shell.models.ShellOutput
 import com.example.mentra.shell.models.ShellOutputType
+import kotlinx.coroutines.CancellationException
+import java.math.BigDecimal
+import java.math.MathContext
+import java.math.RoundingMode
+import java.util.concurrent.ConcurrentHashMap
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.*
@@ -19,7 +24,10 @@ import kotlin.math.*
  * - Parentheses for grouping
  * - Modulo: mod, %
  * - Power: ^, **
+ * - Factorial: 5!
  * - Scientific notation: 1e5, 2.5e-3
+ * - Implicit multiplication: 2pi, 3(4+1)
+ * - Variables: x = 3, then 2x + 1; ans holds the last result
  *
  * Commands:
  * - calc 2+2
@@ -28,6 +36,20 @@ import kotlin.math.*
  * - 5 mod 3
  * - sqrt(144)
  * - 2^10
+ * - r = 4, then pi r^2
+ * - calc vars / calc clear
+ * - calc mode exact, calc precision 50, calc exact 0.1 + 0.2
+ * - calc table x^2 for x in 0..10 step 2
+ * - calc plot sin(x) for x in 0..360
+ *
+ * Expressions are compiled once by [ExpressionCompiler] and cached, so
+ * evaluating the same text again only runs the compiled program.
+ *
+ * [NumberMode.EXACT] runs the program on BigDecimal instead, so
+ * `0.1 + 0.2` is 0.3 and `30!` keeps every digit. Division is rounded to
+ * [precision] significant digits. Anything BigDecimal can't do exactly
+ * (sin, sqrt, pi, fractional powers) falls back to doubles, and the
+ * result is shown with ≈ instead of =.
  */
 @Singleton
 class ShellCalculator @Inject constructor() {
@@ -35,24 +57,32 @@ class ShellCalculator @Inject constructor() {
     // Calculator command keywords
     private val calcKeywords = listOf("calc", "calculator", "calculate", "math", "eval")
 
-    // Math function names
-    private val mathFunctions = setOf(
-        "sin", "cos", "tan", "asin", "acos", "atan",
-        "sinh", "cosh", "tanh",
-        "sqrt", "cbrt", "log", "log10", "log2", "ln",
-        "abs", "floor", "ceil", "round",
-        "exp", "pow", "min", "max",
-        "rad", "deg"
-    )
-
-    // Constants
-    private val constants = mapOf(
-        "pi" to Math.PI,
-        "π" to Math.PI,
-        "e" to Math.E,
-        "phi" to 1.6180339887498949,
-        "φ" to 1.6180339887498949
-    )
+    private val cache = ExpressionCache()
+
+    // User variables plus "ans"
+    private val variables = ConcurrentHashMap<String, Double>()
+
+    // Exact values of variables last set by an exact evaluation
+    private val exactVariables = ConcurrentHashMap<String, BigDecimal>()
+
+    // Variables holding a rounded transcendental result, e.g. s = sin(30)
+    private val approximateVariables = ConcurrentHashMap.newKeySet<String>()
+
+    /** Mode for expressions that don't name one */
+    @Volatile
+    var mode = NumberMode.DOUBLE
+
+    /** Significant digits kept by exact division */
+    @Volatile
+    var precision = DEFAULT_PRECISION
+        set(value) {
+            require(value in 1..MAX_PRECISION) { "Precision must be between 1 and $MAX_PRECISION digits" }
+            field = value
+            mathContext = MathContext(value, RoundingMode.HALF_EVEN)
+        }
+
+    @Volatile
+    private var mathContext = MathContext(DEFAULT_PRECISION, RoundingMode.HALF_EVEN)
 
     /**
      * Check if input should trigger the calculator UI
@@ -71,44 +101,63 @@ class ShellCalculator @Inject constructor() {
     }
 
     /**
-     * Check if input looks like a math expression (auto-detect)
+     * Check if input looks like a math expression (auto-detect).
+     * Runs for every line nothing else claimed, so it only uses the
+     * precompiled patterns below.
      */
     fun isMathExpression(input: String): Boolean {
         val trimmed = input.trim()
+        if (trimmed.isEmpty()) return false
+        val lower = trimmed.lowercase()
+
+        // Assignment: x = 3, total = ans * 2
+        ASSIGNMENT.matchEntire(lower)?.let { match ->
+            val name = match.groupValues[1]
+            val value = match.groupValues[2]
+            return !ExpressionCompiler.isReserved(name) &&
+                (DIGIT.containsMatchIn(value) || startsWithKnownName(value))
+        }
+
+        // A variable on its own shows its value
+        if (variables.containsKey(lower)) return true
+
+        val startsWithFunction = FUNCTION_START.containsMatchIn(lower)
+        val startsWithName = startsWithKnownName(lower)
 
         // Skip if it's clearly a command or text
-        if (trimmed.contains(" ") && !trimmed.contains("mod") &&
-            !trimmed.contains("^") && !mathFunctions.any { trimmed.lowercase().contains(it) }) {
+        if (trimmed.contains(' ') && !WORD_MOD.containsMatchIn(lower) &&
+            !trimmed.contains('^') && !FUNCTION_CALL.containsMatchIn(lower)) {
             // Check if it has operators between numbers
-            val hasOperator = Regex("[+\\-*/^%]").containsMatchIn(trimmed)
-            val startsWithNumber = trimmed.firstOrNull()?.let { it.isDigit() || it == '(' || it == '-' } == true
-            if (!hasOperator || !startsWithNumber) return false
+            val startsWithNumber = trimmed[0].let { it.isDigit() || it == '(' || it == '-' }
+            if (!ARITHMETIC.containsMatchIn(trimmed) || !(startsWithNumber || startsWithName)) return false
         }
 
         // Must contain at least one operator or function
-        val hasOperator = Regex("[+\\-*/^%()]").containsMatchIn(trimmed) ||
-                         trimmed.lowercase().contains("mod") ||
-                         mathFunctions.any { trimmed.lowercase().startsWith(it) }
+        val hasOperator = OPERATOR.containsMatchIn(trimmed) || WORD_MOD.containsMatchIn(lower) || startsWithFunction
 
-        // Must start with a number, minus, parenthesis, or function
-        val validStart = trimmed.firstOrNull()?.let {
-            it.isDigit() || it == '-' || it == '(' || it == '.'
-        } == true || mathFunctions.any { trimmed.lowercase().startsWith(it) }
+        // Must start with a number, minus, parenthesis, function or known name
+        val validStart = trimmed[0].let { it.isDigit() || it == '-' || it == '(' || it == '.' } ||
+            startsWithFunction || startsWithName
 
         // Should not be a phone number (7-15 consecutive digits)
-        val looksLikePhone = Regex("^\\+?[0-9]{7,15}$").matches(trimmed.replace(" ", ""))
+        val looksLikePhone = PHONE.matches(trimmed.replace(" ", ""))
 
-        // Should have numbers
-        val hasNumbers = Regex("[0-9]").containsMatchIn(trimmed)
+        // Should have numbers, or names that stand for them
+        val hasNumbers = DIGIT.containsMatchIn(trimmed) || startsWithName
 
         return hasOperator && validStart && hasNumbers && !looksLikePhone
     }
 
+    private fun startsWithKnownName(text: String): Boolean {
+        val name = LEADING_NAME.find(text)?.value ?: return false
+        return variables.containsKey(name) || name in ExpressionCompiler.constants
+    }
+
     /**
      * Handle calculator command and return shell output
      * Returns special output with data="SHOW_UI" when UI should be displayed
      */
-    fun handleCommand(input: String): List<ShellOutput> {
+    suspend fun handleCommand(input: String): List<ShellOutput> {
         val trimmed = input.trim().lowercase()
 
         // If just "calc" or "calculator" with no expression, signal to show UI
@@ -135,26 +184,80 @@ class ShellCalculator @Inject constructor() {
                 ShellOutput("  calc 17 mod 5     → 2", ShellOutputType.SUCCESS),
                 ShellOutput("  calc log(100)     → 2", ShellOutputType.SUCCESS),
                 ShellOutput("  calc pi * 2       → 6.283...", ShellOutputType.SUCCESS),
+                ShellOutput("  r = 4             → r = 4", ShellOutputType.SUCCESS),
+                ShellOutput("  pi r^2            → 50.265...", ShellOutputType.SUCCESS),
+                ShellOutput("  ans / 2           → 25.132...", ShellOutputType.SUCCESS),
+                ShellOutput("", ShellOutputType.INFO),
+                ShellOutput("calc vars lists variables, calc clear removes them", ShellOutputType.INFO),
+                ShellOutput("calc mode exact|double  → exact decimals or fast doubles", ShellOutputType.INFO),
+                ShellOutput("calc exact 0.1+0.2      → one expression in exact mode", ShellOutputType.INFO),
+                ShellOutput("calc precision 50       → digits kept by exact division", ShellOutputType.INFO),
+                ShellOutput("calc table x^2 for x in 0..10 step 2   → table of values", ShellOutputType.INFO),
+                ShellOutput("calc plot sin(x) for x in 0..360       → graph", ShellOutputType.INFO),
                 ShellOutput("", ShellOutputType.INFO),
                 ShellOutput("Tip: Type 'calc' or 'calculator' to open UI", ShellOutputType.PROMPT)
             )
         }
 
-        return evaluate(expression)
+        RANGE_COMMAND.matchEntire(expression.lowercase())?.let { match ->
+            return try {
+                val range = parseRange(match)
+                if (match.groupValues[1] == "table") table(range)
+                else listOf(ShellOutput("Plotting ${range.expression}...", ShellOutputType.SUCCESS))
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                listOf(ShellOutput("❌ ${e.message ?: "Invalid range"}", ShellOutputType.ERROR))
+            }
+        }
+
+        SETTING_COMMAND.matchEntire(expression.lowercase())?.let { match ->
+            return setting(match.groupValues[1], match.groupValues[2])
+        }
+
+        return when (expression.lowercase()) {
+            "vars" -> listVariables()
+            "clear" -> {
+                variables.clear()
+                exactVariables.clear()
+                approximateVariables.clear()
+                listOf(ShellOutput("Variables cleared", ShellOutputType.SUCCESS))
+            }
+            else -> evaluate(expression)
+        }
     }
 
     /**
-     * Evaluate a math expression directly
+     * Evaluate a math expression directly. A leading `exact` or `double`
+     * overrides [mode] for this expression.
      */
     fun evaluate(expression: String): List<ShellOutput> {
+        MODE_PREFIX.matchEntire(expression.trim())?.let { match ->
+            return evaluate(match.groupValues[2], NumberMode.valueOf(match.groupValues[1].uppercase()))
+        }
+        return evaluate(expression, mode)
+    }
+
+    fun evaluate(expression: String, mode: NumberMode): List<ShellOutput> {
         return try {
-            val result = evaluateExpression(expression)
-            val formattedResult = formatResult(result)
-            val formattedExpr = expression.replace(" ", "")
+            val compiled = cache.get(expression)
+            val exact = if (mode == NumberMode.EXACT) evaluateExact(compiled) else null
+            val result = exact?.toDouble() ?: compiled.evaluate(variables)
+            val formattedResult = exact?.let(::formatExact) ?: formatResult(result)
+            // ≈ marks an exact-mode result that had to use doubles
+            val equals = if (mode == NumberMode.EXACT && exact == null) "≈" else "="
+
+            val approximate = exact == null && (mode == NumberMode.EXACT || !compiled.isExact)
+            store(ANS, result, exact, approximate)
+            val target = compiled.target
+            val line = if (target != null) {
+                store(target, result, exact, approximate)
+                "$target $equals $formattedResult"
+            } else {
+                "${expression.replace(" ", "")} $equals $formattedResult"
+            }
 
-            listOf(
-                ShellOutput("$formattedExpr = $formattedResult", ShellOutputType.SUCCESS)
-            )
+            listOf(ShellOutput(line, ShellOutputType.SUCCESS))
         } catch (e: Exception) {
             listOf(
                 ShellOutput("❌ ${e.message ?: "Invalid expression"}", ShellOutputType.ERROR)
@@ -162,6 +265,131 @@ class ShellCalculator @Inject constructor() {
         }
     }
 
+    /**
+     * [compiled] on BigDecimal, or null if it needs the double path.
+     * Variables set by plain arithmetic in double mode use their double
+     * value as written, so `x = 0.1` is still 0.1 here; approximate ones
+     * send the whole expression down the double path.
+     */
+    private fun evaluateExact(compiled: CompiledExpression): BigDecimal? {
+        if (!compiled.isExact) return null
+        val slots = Array(compiled.names.size) { index ->
+            val name = compiled.names[index]
+            exactVariables[name] ?: variables[name]?.let { value ->
+                if (!value.isFinite() || name in approximateVariables) return null
+                BigDecimal.valueOf(value)
+            } ?: throw IllegalArgumentException("Unknown variable: $name")
+        }
+        return compiled.executeExact(slots, mathContext)
+    }
+
+    private fun store(name: String, value: Double, exact: BigDecimal?, approximate: Boolean) {
+        variables[name] = value
+        if (exact != null) exactVariables[name] = exact else exactVariables.remove(name)
+        if (approximate) approximateVariables.add(name) else approximateVariables.remove(name)
+    }
+
+    // calc mode [exact|double], calc precision [digits]
+    private fun setting(name: String, value: String): List<ShellOutput> {
+        if (name == "mode") {
+            if (value.isNotEmpty()) {
+                mode = NumberMode.entries.firstOrNull { it.name.equals(value, ignoreCase = true) }
+                    ?: return listOf(ShellOutput("❌ Mode must be exact or double", ShellOutputType.ERROR))
+            }
+            return listOf(ShellOutput("Calculator mode: ${mode.name.lowercase()}", ShellOutputType.SUCCESS))
+        }
+        if (value.isNotEmpty()) {
+            val digits = value.toIntOrNull()
+            if (digits == null || digits !in 1..MAX_PRECISION) {
+                return listOf(ShellOutput("❌ Precision must be between 1 and $MAX_PRECISION digits", ShellOutputType.ERROR))
+            }
+            precision = digits
+        }
+        return listOf(ShellOutput("Exact precision: $precision significant digits", ShellOutputType.SUCCESS))
+    }
+
+    /**
+     * `calc plot <expr> [for <x> in <a>..<b>]` as a request for the plot
+     * view, or null if [input] isn't a well-formed plot command
+     */
+    fun plotRequest(input: String): FunctionRange? {
+        val match = RANGE_COMMAND.matchEntire(extractExpression(input).lowercase()) ?: return null
+        if (match.groupValues[1] != "plot") return null
+        return try {
+            parseRange(match)
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    /**
+     * Table of [range]'s expression, evaluated in parallel for large ranges
+     */
+    suspend fun table(range: FunctionRange): List<ShellOutput> {
+        val samples = FunctionSampler.table(cache.get(range.expression), range, variables)
+        val step = range.step?.let { " step ${formatResult(it)}" } ?: ""
+        val outputs = mutableListOf(
+            ShellOutput(
+                "🧮 ${range.expression} for ${range.variable} in " +
+                    "${formatResult(range.start)}..${formatResult(range.end)}$step (${samples.size} points)",
+                ShellOutputType.HEADER
+            ),
+            ShellOutput("  ${range.variable.padEnd(TABLE_COLUMN)} ${range.expression}", ShellOutputType.INFO)
+        )
+
+        val shown = minOf(samples.size, TABLE_ROWS)
+        for (i in 0 until shown) {
+            outputs.add(
+                ShellOutput("  ${formatResult(samples.xs[i]).padEnd(TABLE_COLUMN)} ${formatResult(samples.ys[i])}", ShellOutputType.SUCCESS)
+            )
+        }
+        if (samples.size > shown) {
+            outputs.add(ShellOutput("  … ${samples.size - shown} more rows", ShellOutputType.INFO))
+        }
+        if (samples.size > 1 && !samples.yMin.isNaN()) {
+            outputs.add(
+                ShellOutput("min ${formatResult(samples.yMin)}, max ${formatResult(samples.yMax)}", ShellOutputType.INFO)
+            )
+        }
+        return outputs
+    }
+
+    private fun parseRange(match: MatchResult): FunctionRange {
+        val groups = match.groupValues
+        val isTable = groups[1] == "table"
+        val expression = groups[2].trim()
+
+        val range = if (groups[3].isEmpty()) {
+            if (isTable) throw IllegalArgumentException("Usage: calc table f(x) for x in a..b [step s]")
+            FunctionRange(expression, start = DEFAULT_PLOT_START, end = DEFAULT_PLOT_END)
+        } else {
+            FunctionRange(
+                expression = expression,
+                variable = groups[3],
+                start = evaluateBound(groups[4]),
+                end = evaluateBound(groups[5]),
+                step = groups[6].takeIf { it.isNotBlank() }?.let(::evaluateBound)
+            )
+        }
+
+        // Fails now on syntax errors and unknown variables
+        cache.get(range.expression).bind(range.variable, variables)
+        return range
+    }
+
+    private fun evaluateBound(text: String): Double = cache.get(text).evaluate(variables)
+
+    private fun listVariables(): List<ShellOutput> {
+        if (variables.isEmpty()) {
+            return listOf(ShellOutput("No variables set. Try: x = 3", ShellOutputType.INFO))
+        }
+        return listOf(ShellOutput("🧮 Variables", ShellOutputType.HEADER)) +
+            variables.entries.sortedBy { it.key }.map { (name, value) ->
+                val shown = exactVariables[name]?.let(::formatExact) ?: formatResult(value)
+                ShellOutput("  $name = $shown", ShellOutputType.INFO)
+            }
+    }
+
     /**
      * Extract expression from command
      */
@@ -197,239 +425,58 @@ class ShellCalculator @Inject constructor() {
     }
 
     /**
-     * Main expression evaluator using recursive descent parsing
+     * Integers in full, anything else rounded to [precision] significant
+     * digits without trailing zeros
      */
-    private fun evaluateExpression(expr: String): Double {
-        val parser = ExpressionParser(preprocessExpression(expr))
-        val result = parser.parse()
-        if (!parser.isAtEnd()) {
-            throw IllegalArgumentException("Unexpected character: ${parser.peek()}")
-        }
-        return result
-    }
-
-    /**
-     * Preprocess expression - normalize operators and handle constants
-     */
-    private fun preprocessExpression(expr: String): String {
-        var processed = expr.lowercase().trim()
-
-        // Replace word operators
-        processed = processed.replace(" mod ", "%")
-        processed = processed.replace("mod", "%")
-        processed = processed.replace("**", "^")
-
-        // Replace constants
-        for ((name, value) in constants) {
-            processed = processed.replace(name, value.toString())
-        }
-
-        // Handle implicit multiplication: 2pi -> 2*pi, 2(3) -> 2*(3)
-        processed = processed.replace(Regex("(\\d)([a-z(])")) {
-            "${it.groupValues[1]}*${it.groupValues[2]}"
+    private fun formatExact(value: BigDecimal): String {
+        if (value.signum() == 0) return "0"
+        val integerDigits = value.precision() - value.scale()
+        if (value.stripTrailingZeros().scale() <= 0 && integerDigits <= MAX_PLAIN_DIGITS) {
+            return value.toBigInteger().toString()
         }
-        processed = processed.replace(Regex("(\\))([a-z0-9(])")) {
-            "${it.groupValues[1]}*${it.groupValues[2]}"
-        }
-
-        // Remove spaces
-        processed = processed.replace(" ", "")
-
-        return processed
+        val rounded = value.round(mathContext).stripTrailingZeros()
+        val exponent = rounded.precision() - rounded.scale() - 1
+        return if (exponent < -6 || exponent >= MAX_PLAIN_DIGITS) rounded.toString() else rounded.toPlainString()
     }
 
-    /**
-     * Recursive descent parser for mathematical expressions
-     */
-    private inner class ExpressionParser(private val expr: String) {
-        private var pos = 0
-
-        fun parse(): Double = parseAddSub()
-
-        fun isAtEnd(): Boolean = pos >= expr.length
-
-        fun peek(): Char = if (isAtEnd()) '\u0000' else expr[pos]
-
-        private fun advance(): Char {
-            return if (isAtEnd()) '\u0000' else expr[pos++]
-        }
-
-        private fun match(c: Char): Boolean {
-            if (peek() == c) {
-                advance()
-                return true
-            }
-            return false
-        }
-
-        // Addition and subtraction (lowest precedence)
-        private fun parseAddSub(): Double {
-            var result = parseMulDiv()
-            while (true) {
-                when {
-                    match('+') -> result += parseMulDiv()
-                    match('-') -> result -= parseMulDiv()
-                    else -> return result
-                }
-            }
-        }
-
-        // Multiplication, division, modulo
-        private fun parseMulDiv(): Double {
-            var result = parsePower()
-            while (true) {
-                when {
-                    match('*') -> result *= parsePower()
-                    match('/') -> {
-                        val divisor = parsePower()
-                        if (divisor == 0.0) throw ArithmeticException("Division by zero")
-                        result /= divisor
-                    }
-                    match('%') -> {
-                        val divisor = parsePower()
-                        if (divisor == 0.0) throw ArithmeticException("Modulo by zero")
-                        result %= divisor
-                    }
-                    else -> return result
-                }
-            }
-        }
-
-        // Power (right associative)
-        private fun parsePower(): Double {
-            var result = parseUnary()
-            if (match('^')) {
-                result = result.pow(parsePower()) // Right associative
-            }
-            return result
-        }
-
-        // Unary operators
-        private fun parseUnary(): Double {
-            return when {
-                match('-') -> -parseUnary()
-                match('+') -> parseUnary()
-                else -> parsePrimary()
-            }
-        }
-
-        // Primary: numbers, functions, parentheses
-        private fun parsePrimary(): Double {
-            // Parentheses
-            if (match('(')) {
-                val result = parseAddSub()
-                if (!match(')')) throw IllegalArgumentException("Missing closing parenthesis")
-                return result
-            }
-
-            // Function or number
-            val start = pos
-
-            // Try to read a function name
-            while (!isAtEnd() && peek().isLetter()) {
-                advance()
-            }
-
-            if (pos > start) {
-                val name = expr.substring(start, pos)
-                if (name in mathFunctions) {
-                    return evaluateFunction(name)
-                } else {
-                    throw IllegalArgumentException("Unknown function: $name")
-                }
-            }
-
-            // Number
-            return parseNumber()
-        }
+    companion object {
+        const val ANS = "ans"
 
-        private fun parseNumber(): Double {
-            val start = pos
+        const val DEFAULT_PRECISION = 34
+        const val MAX_PRECISION = 1_000
 
-            // Integer part
-            while (!isAtEnd() && (peek().isDigit() || peek() == '.')) {
-                advance()
-            }
+        // Longest number shown without an exponent
+        private const val MAX_PLAIN_DIGITS = 1_000
 
-            // Scientific notation
-            if (!isAtEnd() && (peek() == 'e' || peek() == 'E')) {
-                advance()
-                if (!isAtEnd() && (peek() == '+' || peek() == '-')) {
-                    advance()
-                }
-                while (!isAtEnd() && peek().isDigit()) {
-                    advance()
-                }
-            }
+        private const val TABLE_ROWS = 100
+        private const val TABLE_COLUMN = 14
+        private const val DEFAULT_PLOT_START = -10.0
+        private const val DEFAULT_PLOT_END = 10.0
 
-            if (pos == start) {
-                throw IllegalArgumentException("Expected number at position $pos")
-            }
+        // table|plot <expr> [for <name> in <from>..<to> [step <step>]]
+        private val RANGE_COMMAND = Regex(
+            "^(table|plot)\\s+(.+?)(?:\\s+for\\s+([a-z_][a-z0-9_]*)\\s+in\\s+(.+?)\\s*\\.\\.\\s*(.+?)(?:\\s+step\\s+(.+))?)?$"
+        )
 
-            val numStr = expr.substring(start, pos)
-            return numStr.toDoubleOrNull()
-                ?: throw IllegalArgumentException("Invalid number: $numStr")
-        }
+        private val SETTING_COMMAND = Regex("^(mode|precision)(?:\\s+(\\S+))?$")
+        private val MODE_PREFIX = Regex("^(exact|double)\\s+(.+)$", RegexOption.IGNORE_CASE)
 
-        private fun evaluateFunction(name: String): Double {
-            if (!match('(')) throw IllegalArgumentException("Expected '(' after function $name")
+        private val ASSIGNMENT = Regex("^([a-z_][a-z0-9_]*)\\s*=\\s*(\\S.*)$")
+        private val LEADING_NAME = Regex("^[a-zπφ_][a-z0-9_]*")
+        private val DIGIT = Regex("[0-9]")
+        private val ARITHMETIC = Regex("[+\\-*/^%]")
+        private val OPERATOR = Regex("[+\\-*/^%()!]")
+        private val WORD_MOD = Regex("(?<![a-z])mod(?![a-z])")
+        private val PHONE = Regex("^\\+?[0-9]{7,15}$")
 
-            val args = mutableListOf<Double>()
-            if (!match(')')) {
-                args.add(parseAddSub())
-                while (match(',')) {
-                    args.add(parseAddSub())
-                }
-                if (!match(')')) throw IllegalArgumentException("Missing ')' after function arguments")
-            }
-
-            return when (name) {
-                "sin" -> sin(Math.toRadians(args.getOrElse(0) { 0.0 }))
-                "cos" -> cos(Math.toRadians(args.getOrElse(0) { 0.0 }))
-                "tan" -> tan(Math.toRadians(args.getOrElse(0) { 0.0 }))
-                "asin" -> Math.toDegrees(asin(args.getOrElse(0) { 0.0 }))
-                "acos" -> Math.toDegrees(acos(args.getOrElse(0) { 0.0 }))
-                "atan" -> Math.toDegrees(atan(args.getOrElse(0) { 0.0 }))
-                "sinh" -> sinh(args.getOrElse(0) { 0.0 })
-                "cosh" -> cosh(args.getOrElse(0) { 0.0 })
-                "tanh" -> tanh(args.getOrElse(0) { 0.0 })
-                "sqrt" -> {
-                    val arg = args.getOrElse(0) { 0.0 }
-                    if (arg < 0) throw ArithmeticException("Cannot take square root of negative number")
-                    sqrt(arg)
-                }
-                "cbrt" -> cbrt(args.getOrElse(0) { 0.0 })
-                "log", "log10" -> {
-                    val arg = args.getOrElse(0) { 0.0 }
-                    if (arg <= 0) throw ArithmeticException("Logarithm of non-positive number")
-                    log10(arg)
-                }
-                "log2" -> {
-                    val arg = args.getOrElse(0) { 0.0 }
-                    if (arg <= 0) throw ArithmeticException("Logarithm of non-positive number")
-                    ln(arg) / ln(2.0)
-                }
-                "ln" -> {
-                    val arg = args.getOrElse(0) { 0.0 }
-                    if (arg <= 0) throw ArithmeticException("Logarithm of non-positive number")
-                    ln(arg)
-                }
-                "abs" -> abs(args.getOrElse(0) { 0.0 })
-                "floor" -> floor(args.getOrElse(0) { 0.0 })
-                "ceil" -> ceil(args.getOrElse(0) { 0.0 })
-                "round" -> round(args.getOrElse(0) { 0.0 })
-                "exp" -> exp(args.getOrElse(0) { 0.0 })
-                "pow" -> {
-                    val base = args.getOrElse(0) { 0.0 }
-                    val exp = args.getOrElse(1) { 1.0 }
-                    base.pow(exp)
-                }
-                "min" -> args.minOrNull() ?: 0.0
-                "max" -> args.maxOrNull() ?: 0.0
-                "rad" -> Math.toRadians(args.getOrElse(0) { 0.0 })
-                "deg" -> Math.toDegrees(args.getOrElse(0) { 0.0 })
-                else -> throw IllegalArgumentException("Unknown function: $name")
-            }
-        }
+        private val FUNCTION_ALTERNATION = ExpressionCompiler.functions.keys.joinToString("|")
+        private val FUNCTION_START = Regex("^(?:$FUNCTION_ALTERNATION)\\s*\\(")
+        private val FUNCTION_CALL = Regex("\\b(?:$FUNCTION_ALTERNATION)\\s*\\(")
     }
 }
+
+/**
+ * How [ShellCalculator] evaluates: fast doubles, or BigDecimal with a
+ * double fallback for transcendental functions
+ */
+enum class NumberMode { DOUBLE, EXACT }
@@ -1,13 +1,24 @@
 package com.example.mentra.shell.calling
 
 import android.content.Context
-import android.provider.ContactsContract
+import com.example.mentra.contacts.ContactRepository
 import com.example.mentra.dialer.CallState as DialerCallState
+import com.example.mentra.dialer.CallType
 import com.example.mentra.dialer.DialerManager
+import com.example.mentra.dialer.stats.CallStatsRepository
+import com.example.mentra.dialer.ussd.UssdMacro
+import com.example.mentra.dialer.ussd.UssdMacroStore
+import com.example.mentra.dialer.ussd.UssdResult
 import com.example.mentra.dialer.ussd.UssdService
+import com.example.mentra.messaging.MessageType
+import com.example.mentra.shell.core.CommandRegistry
+import com.example.mentra.shell.core.CommandSpec
+import com.example.mentra.shell.core.MatchMode
 import com.example.mentra.shell.messaging.ContactAliasManager
 import com.example.mentra.shell.models.ShellOutput
 import com.example.mentra.shell.models.ShellOutputType
+import com.example.mentra.timeline.TimelineEvent
+import com.example.mentra.timeline.TimelineRepository
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -17,6 +28,7 @@ import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -35,7 +47,11 @@ class ShellCallingCommandHandler @Inject constructor(
     @ApplicationContext private val context: Context,
     private val dialerManager: DialerManager,
     private val ussdService: UssdService,
-    private val aliasManager: ContactAliasManager
+    private val ussdMacroStore: UssdMacroStore,
+    private val aliasManager: ContactAliasManager,
+    private val contactRepository: ContactRepository,
+    private val callStatsRepository: CallStatsRepository,
+    private val timelineRepository: TimelineRepository
 ) {
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Main)
 
@@ -305,6 +321,13 @@ class ShellCallingCommandHandler @Inject constructor(
         return " ".repeat(leftPad) + str + " ".repeat(rightPad)
     }
 
+    companion object {
+        private const val CATEGORY = "Calling"
+
+        // Events shown by `timeline`
+        private const val TIMELINE_LIMIT = 20
+    }
+
     // Common USSD shortcuts
     private val ussdShortcuts = mapOf(
         "check balance" to "*144#",
@@ -327,35 +350,34 @@ class ShellCallingCommandHandler @Inject constructor(
     )
 
     /**
-     * Check if command is a calling command
+     * Phrases this handler answers to, registered with the shell's command registry
      */
-    fun isCallingCommand(input: String): Boolean {
-        val lowerInput = input.lowercase().trim()
-        return lowerInput.startsWith("call ") ||
-               lowerInput.startsWith("dial ") ||
-               lowerInput.startsWith("phone ") ||
-               lowerInput == "call" ||
-               lowerInput == "make a call" ||
-               lowerInput == "make call" ||
-               lowerInput == "place a call" ||
-               lowerInput == "place call" ||
-               lowerInput.startsWith("check balance") ||
-               lowerInput.startsWith("balance") ||
-               lowerInput.startsWith("check data") ||
-               lowerInput.startsWith("data balance") ||
-               lowerInput.startsWith("my number") ||
-               lowerInput.startsWith("airtime balance") ||
-               lowerInput.startsWith("dial bank") ||
-               lowerInput.startsWith("check minutes") ||
-               lowerInput.startsWith("bank ussd") ||
-               lowerInput.startsWith("equity") ||
-               lowerInput.startsWith("kcb") ||
-               lowerInput.startsWith("coop") ||
-               lowerInput.startsWith("family bank") ||
-               lowerInput.startsWith("ollin") ||
-               lowerInput.startsWith("stanchart")
+    val commands: List<CommandSpec> = listOf(
+        CommandSpec("call", listOf("dial", "phone"), MatchMode.WITH_ARGS,
+            usage = "call <number|alias>", description = "Make a call", category = CATEGORY),
+        CommandSpec("make a call", listOf("call", "make call", "place a call", "place call"), MatchMode.EXACT,
+            usage = "call", description = "Choose who to call", category = CATEGORY),
+        CommandSpec("calls stats", match = MatchMode.EXACT,
+            description = "Call statistics", category = CATEGORY),
+        CommandSpec("timeline", usage = "timeline [contact]",
+            description = "Calls and SMS, newest first", category = CATEGORY),
+        CommandSpec("ussd", usage = "ussd <code> > 1 > 2 | <macro>",
+            description = "USSD menu paths and macros", category = CATEGORY),
+        CommandSpec("check balance", listOf(
+            "balance", "check data", "data balance", "my number", "airtime balance", "dial bank",
+            "check minutes", "bank ussd", "equity", "kcb", "coop", "family bank", "ollin", "stanchart"
+        ), MatchMode.PREFIX, description = "USSD shortcuts", category = CATEGORY)
+    )
+
+    private val registry = CommandRegistry<Unit>().apply {
+        commands.forEach { register(it, Unit) }
     }
 
+    /**
+     * Check if command is a calling command
+     */
+    fun isCallingCommand(input: String): Boolean = registry.resolve(input) != null
+
     /**
      * Handle calling commands
      */
@@ -363,6 +385,14 @@ class ShellCallingCommandHandler @Inject constructor(
         val lowerInput = input.lowercase().trim()
 
         return when {
+            lowerInput == "calls stats" -> buildCallStats()
+
+            // Merged calls + SMS activity
+            lowerInput == "timeline" || lowerInput.startsWith("timeline ") -> buildTimeline(input.trim().substring(8).trim())
+
+            // USSD menu paths and macros
+            lowerInput == "ussd" || lowerInput.startsWith("ussd ") -> handleUssdMacroCommand(input.trim().substring(4).trim())
+
             // USSD shortcuts
             lowerInput.startsWith("check balance") ||
             lowerInput.startsWith("balance") ||
@@ -405,6 +435,234 @@ class ShellCallingCommandHandler @Inject constructor(
         }
     }
 
+    /**
+     * Call statistics from the precomputed aggregates (no call-log scan)
+     */
+    private suspend fun buildCallStats(): List<ShellOutput> {
+        val totals = callStatsRepository.totals.first()
+        if (totals.totalCalls == 0) {
+            return listOf(ShellOutput("No calls in the call log yet", ShellOutputType.INFO))
+        }
+
+        val talkTime = callStatsRepository.getTalkTime()
+        val topContacts = callStatsRepository.getTopContacts(5)
+        val dateFormat = java.text.SimpleDateFormat("MMM d, HH:mm", java.util.Locale.getDefault())
+
+        return buildList {
+            add(ShellOutput("📊 CALL STATISTICS", ShellOutputType.HEADER))
+            add(ShellOutput("  Total:     ${totals.totalCalls}", ShellOutputType.INFO))
+            add(ShellOutput("  Incoming:  ${totals.incoming}", ShellOutputType.INFO))
+            add(ShellOutput("  Outgoing:  ${totals.outgoing}", ShellOutputType.INFO))
+            add(ShellOutput("  Missed:    ${totals.missed}", ShellOutputType.INFO))
+            add(ShellOutput("  Rejected:  ${totals.rejected}", ShellOutputType.INFO))
+            add(ShellOutput("⏱ TALK TIME", ShellOutputType.HEADER))
+            add(ShellOutput("  Today:     ${formatDuration(talkTime.todaySeconds * 1000)}", ShellOutputType.INFO))
+            add(ShellOutput("  7 days:    ${formatDuration(talkTime.weekSeconds * 1000)}", ShellOutputType.INFO))
+            add(ShellOutput("  All time:  ${formatDuration(totals.talkSeconds * 1000)}", ShellOutputType.INFO))
+            if (topContacts.isNotEmpty()) {
+                add(ShellOutput("👥 TOP CONTACTS", ShellOutputType.HEADER))
+                topContacts.forEach { contact ->
+                    val name = (contact.contactName ?: contact.number).take(18).padEnd(18)
+                    val last = dateFormat.format(java.util.Date(contact.lastCallTime))
+                    add(ShellOutput("  $name ${contact.totalCalls().toString().padStart(4)} calls  last $last", ShellOutputType.INFO))
+                }
+            }
+        }
+    }
+
+    /**
+     * Latest calls and SMS, merged newest first
+     * `timeline` for everything, `timeline <number|alias|name>` for one contact
+     */
+    private suspend fun buildTimeline(target: String): List<ShellOutput> {
+        var title = "ALL ACTIVITY"
+        var number: String? = null
+
+        if (target.isNotEmpty()) {
+            val alias = aliasManager.getContactByAlias(target.lowercase().removePrefix("my ").trim())
+            val contact = if (alias == null) searchContactsByName(target).firstOrNull() else null
+            number = extractPhoneNumber(target)
+                ?: alias?.phoneNumbers?.firstOrNull()
+                ?: contact?.number
+                ?: return listOf(ShellOutput("No contact or number matches '$target'", ShellOutputType.ERROR))
+            title = (alias?.name ?: contact?.name)?.let { "$it ($number)" } ?: number
+        }
+
+        val page = timelineRepository.page(contact = number, limit = TIMELINE_LIMIT)
+        if (page.events.isEmpty()) {
+            return listOf(ShellOutput("No calls or messages found", ShellOutputType.INFO))
+        }
+
+        val dateFormat = java.text.SimpleDateFormat("MMM d, HH:mm", java.util.Locale.getDefault())
+        return buildList {
+            add(ShellOutput("🕘 $title", ShellOutputType.HEADER))
+            page.events.forEach { event ->
+                val time = dateFormat.format(java.util.Date(event.timestamp)).padEnd(13)
+                val who = if (number == null) " " + event.address.take(16).padEnd(16) else ""
+                val line = when (event) {
+                    is TimelineEvent.Call -> {
+                        val entry = event.entry
+                        val icon = when (entry.callType) {
+                            CallType.INCOMING -> "📥"
+                            CallType.OUTGOING -> "📤"
+                            CallType.MISSED -> "❌"
+                            else -> "📞"
+                        }
+                        val duration = if (entry.duration > 0) " ${formatDuration(entry.duration * 1000)}" else ""
+                        "$icon $time$who ${entry.callType.name.lowercase()} call$duration"
+                    }
+                    is TimelineEvent.Message -> {
+                        val message = event.message
+                        val icon = if (message.type == MessageType.SENT) "💬" else "📨"
+                        "$icon $time$who ${message.body.replace('\n', ' ').take(40)}"
+                    }
+                }
+                add(ShellOutput("  $line", ShellOutputType.INFO))
+            }
+            if (page.nextKey != null) {
+                add(ShellOutput("  … showing latest $TIMELINE_LIMIT", ShellOutputType.INFO))
+            }
+        }
+    }
+
+    /**
+     * ═══════════════════════════════════════════════════════════════════
+     * USSD MACROS
+     * ussd *144# > 2 > 1 [sim N]      walk a menu path
+     * ussd save <name> *144# > 2 > 1  save a path
+     * ussd <name> [sim N]             run a saved path
+     * ussd macros | ussd delete <name> | ussd menu <code>
+     * ═══════════════════════════════════════════════════════════════════
+     */
+    private suspend fun handleUssdMacroCommand(args: String): List<ShellOutput> {
+        val lowerArgs = args.lowercase()
+        val simSlot = when {
+            lowerArgs.endsWith(" sim 1") || lowerArgs.endsWith(" sim1") -> 0
+            lowerArgs.endsWith(" sim 2") || lowerArgs.endsWith(" sim2") -> 1
+            else -> null
+        }
+        val cleanArgs = if (simSlot != null) {
+            args.substring(0, lowerArgs.lastIndexOf(" sim")).trim()
+        } else {
+            args
+        }
+
+        val command = cleanArgs.substringBefore(' ').lowercase()
+        val rest = cleanArgs.substringAfter(' ', "").trim()
+
+        return when {
+            cleanArgs.isEmpty() || command == "help" -> buildUssdMacroHelp()
+            command == "macros" || command == "list" -> listUssdMacros()
+            command == "save" -> saveUssdMacro(rest)
+            command == "delete" || command == "rm" -> {
+                if (ussdMacroStore.deleteMacro(rest)) {
+                    listOf(ShellOutput("🗑 Deleted USSD macro '$rest'", ShellOutputType.SUCCESS))
+                } else {
+                    listOf(ShellOutput("No USSD macro named '$rest'", ShellOutputType.ERROR))
+                }
+            }
+            command == "menu" -> showCachedUssdMenu(rest, simSlot ?: 0)
+            else -> {
+                val macro = ussdMacroStore.getMacro(cleanArgs)
+                    ?: UssdMacro.parse(cleanArgs, cleanArgs)
+                    ?: return listOf(
+                        ShellOutput("Unknown USSD macro or path: $cleanArgs", ShellOutputType.ERROR),
+                        ShellOutput("Try: ussd *144# > 2 > 1", ShellOutputType.INFO)
+                    )
+                runUssdMacro(macro, simSlot)
+            }
+        }
+    }
+
+    private suspend fun saveUssdMacro(spec: String): List<ShellOutput> {
+        val name = spec.substringBefore(' ').trim()
+        val path = spec.substringAfter(' ', "").trim()
+        val macro = UssdMacro.parse(name, path)
+
+        if (name.isEmpty() || macro == null) {
+            return listOf(
+                ShellOutput("Usage: ussd save <name> *144# > 2 > 1", ShellOutputType.ERROR)
+            )
+        }
+
+        ussdMacroStore.saveMacro(macro)
+        return listOf(
+            ShellOutput("✓ Saved USSD macro '${name.lowercase()}': ${macro.describe()}", ShellOutputType.SUCCESS),
+            ShellOutput("Run it with: ussd ${name.lowercase()}", ShellOutputType.INFO)
+        )
+    }
+
+    private suspend fun listUssdMacros(): List<ShellOutput> {
+        val macros = ussdMacroStore.getAllMacros()
+        if (macros.isEmpty()) {
+            return listOf(
+                ShellOutput("No USSD macros saved", ShellOutputType.INFO),
+                ShellOutput("Save one with: ussd save data *144# > 2 > 1", ShellOutputType.INFO)
+            )
+        }
+
+        return listOf(ShellOutput("USSD MACROS", ShellOutputType.HEADER)) +
+            macros.values.sortedBy { it.name }.map { macro ->
+                ShellOutput("  ${macro.name.padEnd(12)} ${macro.describe()}", ShellOutputType.INFO)
+            }
+    }
+
+    private fun showCachedUssdMenu(spec: String, simSlot: Int): List<ShellOutput> {
+        val macro = UssdMacro.parse("", spec) ?: return listOf(
+            ShellOutput("Usage: ussd menu *144# [> 2 ...]", ShellOutputType.ERROR)
+        )
+        val menu = ussdService.cachedMenu(macro.code, simSlot, macro.steps) ?: return listOf(
+            ShellOutput("No cached menu for ${macro.describe()} on SIM ${simSlot + 1}", ShellOutputType.INFO)
+        )
+
+        return listOf(ShellOutput(macro.describe(), ShellOutputType.HEADER)) +
+            listOfNotNull(menu.title.takeIf { it.isNotEmpty() }?.let { ShellOutput(it, ShellOutputType.INFO) }) +
+            menu.options.map { ShellOutput("  ${it.key}. ${it.label}", ShellOutputType.INFO) }
+    }
+
+    private suspend fun runUssdMacro(macro: UssdMacro, simSlot: Int?): List<ShellOutput> {
+        _callState.value = CallState.Idle
+
+        val slot = simSlot ?: run {
+            val availableSims = dialerManager.availableSims.value
+            if (availableSims.size > 1) {
+                _callState.value = CallState.AwaitingSimSelection(
+                    action = CallAction.UssdPath(macro)
+                )
+                return buildSimSelectionPrompt("📲 USSD: ${macro.describe()}", availableSims)
+            }
+            availableSims.firstOrNull()?.slotIndex ?: 0
+        }
+
+        return formatUssdMacroResult(macro, slot, ussdService.runMacro(macro, slot))
+    }
+
+    private fun formatUssdMacroResult(macro: UssdMacro, simSlot: Int, result: UssdResult): List<ShellOutput> {
+        return when (result) {
+            is UssdResult.Success -> listOf(
+                ShellOutput("📲 ${macro.describe()} (SIM ${simSlot + 1})", ShellOutputType.HEADER),
+                ShellOutput(result.response.response, ShellOutputType.SUCCESS)
+            )
+            is UssdResult.LegacyDial -> listOf(
+                ShellOutput("📲 Dialing USSD: ${result.code} (SIM ${simSlot + 1})", ShellOutputType.SUCCESS),
+                ShellOutput("Check your system dialer for the response", ShellOutputType.INFO)
+            )
+            is UssdResult.Error -> listOf(
+                ShellOutput("USSD ${macro.describe()} failed: ${result.message ?: result.error.name}", ShellOutputType.ERROR)
+            )
+        }
+    }
+
+    private fun buildUssdMacroHelp(): List<ShellOutput> = listOf(
+        ShellOutput("USSD MACROS", ShellOutputType.HEADER),
+        ShellOutput("  ussd *144# > 2 > 1 [sim N]      walk a menu path", ShellOutputType.INFO),
+        ShellOutput("  ussd save <name> *144# > 2 > 1  save a path", ShellOutputType.INFO),
+        ShellOutput("  ussd <name> [sim N]             run a saved path", ShellOutputType.INFO),
+        ShellOutput("  ussd macros                     list saved paths", ShellOutputType.INFO),
+        ShellOutput("  ussd delete <name>              delete a saved path", ShellOutputType.INFO),
+        ShellOutput("  ussd menu *144# [> 2]           show a cached menu", ShellOutputType.INFO)
+    )
+
     /**
      * Handle USSD shortcut commands
      */
@@ -976,6 +1234,10 @@ class ShellCallingCommandHandler @Inject constructor(
                         )
                     )
                 }
+                is CallAction.UssdPath -> {
+                    _callState.value = CallState.Idle
+                    formatUssdMacroResult(action.macro, simSlot, ussdService.runMacro(action.macro, simSlot))
+                }
             }
         } else {
             listOf(
@@ -1043,39 +1305,21 @@ class ShellCallingCommandHandler @Inject constructor(
     fun getUssdShortcuts(): Map<String, String> = ussdShortcuts
 
     /**
-     * Search contacts by name using ContentResolver
+     * Search contacts by name in the shared ContactRepository snapshot
      */
-    private fun searchContactsByName(query: String): List<SimpleContact> {
-        val contacts = mutableListOf<SimpleContact>()
-
-        try {
-            val cursor = context.contentResolver.query(
-                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                arrayOf(
-                    ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                    ContactsContract.CommonDataKinds.Phone.NUMBER
-                ),
-                "${ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME} LIKE ?",
-                arrayOf("%$query%"),
-                ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME
-            )
-
-            cursor?.use {
-                val nameIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)
-                val numberIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-
-                while (it.moveToNext() && contacts.size < 10) { // Limit to 10 results
-                    val name = it.getString(nameIndex)
-                    val number = it.getString(numberIndex)
-                    contacts.add(SimpleContact(name, number))
-                }
-            }
+    private suspend fun searchContactsByName(query: String): List<SimpleContact> {
+        return try {
+            contactRepository.awaitSnapshot()
+                .contacts
+                .asSequence()
+                .filter { it.name.contains(query, ignoreCase = true) }
+                .flatMap { contact -> contact.phones.asSequence().map { SimpleContact(contact.name, it.number) } }
+                .take(10) // Limit to 10 results
+                .toList()
         } catch (e: Exception) {
-            // Handle permission or other errors
             android.util.Log.e("CallingHandler", "Error searching contacts", e)
+            emptyList()
         }
-
-        return contacts
     }
 }
 
@@ -1108,6 +1352,7 @@ sealed class CallState {
 sealed class CallAction {
     data class Call(val phoneNumber: String, val contactName: String?) : CallAction()
     data class Ussd(val code: String) : CallAction()
+    data class UssdPath(val macro: UssdMacro) : CallAction()
 }
 
 /**
@@ -25,6 +25,7 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.compose.ui.window.Dialog
 import androidx.compose.ui.window.DialogProperties
+import com.example.mentra.contacts.ContactSearchIndex
 import com.example.mentra.messaging.Contact
 
 /**
@@ -53,6 +54,7 @@ private object CallPickerColors {
 fun ShellCallingContactPickerDialog(
     title: String,
     contacts: List<Contact>,
+    searchIndex: ContactSearchIndex,
     isLoading: Boolean = false,
     onCallWithSim: (Contact, String, Int) -> Unit, // contact, number, simSlot (0 or 1)
     onDismiss: () -> Unit
@@ -61,12 +63,11 @@ fun ShellCallingContactPickerDialog(
     var selectedContact by remember { mutableStateOf<Contact?>(null) }
     var selectedNumber by remember { mutableStateOf<String?>(null) }
 
-    val filteredContacts = remember(contacts, searchQuery) {
+    // One session per index so each keystroke refines the previous query
+    val searchSession = remember(searchIndex) { searchIndex.newSession() }
+    val filteredContacts = remember(contacts, searchSession, searchQuery) {
         if (searchQuery.isBlank()) contacts
-        else contacts.filter { contact ->
-            contact.name.contains(searchQuery, ignoreCase = true) ||
-            contact.phoneNumbers.any { it.contains(searchQuery) }
-        }
+        else searchSession.search(searchQuery, limit = 50).map { it.contact }
     }
 
     // Calculate adaptive height based on content
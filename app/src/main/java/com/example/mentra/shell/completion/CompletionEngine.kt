@@ -0,0 +1,366 @@
+package com.example.mentra.shell.completion
+
+import com.example.mentra.contacts.ContactRepository
+import com.example.mentra.shell.apps.AppCacheService
+import com.example.mentra.shell.core.CommandExecutor
+import com.example.mentra.shell.core.CommandSpec
+import com.example.mentra.shell.core.ContextManager
+import com.example.mentra.shell.history.ShellHistoryStore
+import com.example.mentra.shell.messaging.ContactAliasManager
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * COMPLETION ENGINE
+ * Ranked suggestions for the shell prompt, one lookup per keystroke
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Each source keeps its own [CompletionTrie], rebuilt in the background
+ * when the source changes:
+ * - command phrases and verbs from the executor and the shell's routes
+ * - shell aliases (ContextManager)
+ * - app names (AppCacheService)
+ * - contact aliases (ContactAliasManager) and contact names
+ *
+ * What gets completed depends on where the cursor is: the first word
+ * draws on commands and aliases, `--` on the verb's flags, and the
+ * arguments of app, contact and file verbs on apps, contacts and the
+ * file system. History lines starting with the input are offered too.
+ *
+ * Scores are [Frecency] values. Every candidate starts with its source's
+ * weight as if used once when indexed, and completions the user accepts
+ * or runs add a use, so frequent and recent picks rise. Uses are kept for
+ * the life of the process; history supplies long-term frecency.
+ */
+@Singleton
+class CompletionEngine @Inject constructor(
+    private val executor: CommandExecutor,
+    private val contextManager: ContextManager,
+    private val appCacheService: AppCacheService,
+    private val aliasManager: ContactAliasManager,
+    private val contactRepository: ContactRepository,
+    private val historyStore: ShellHistoryStore
+) {
+    companion object {
+        private const val PATH_CACHE_MILLIS = 2_000L
+
+        private val APP_VERBS = setOf(
+            "open", "launch", "start", "freeze", "unfreeze", "disable", "enable", "hide", "unhide"
+        )
+        private val CONTACT_VERBS = setOf(
+            "call", "dial", "message", "sms", "text", "send", "msg", "timeline", "inbox"
+        )
+        private val PATH_VERBS = setOf(
+            "cd", "ls", "list", "cat", "read", "write", "echo", "rm", "delete", "del"
+        )
+
+        // Starting weights per source, in uses
+        private const val WEIGHT_COMMAND = 1.0
+        private const val WEIGHT_SHELL_ALIAS = 1.5
+        private const val WEIGHT_APP = 1.0
+        private const val WEIGHT_CONTACT_ALIAS = 2.0
+        private const val WEIGHT_CONTACT = 1.0
+        private const val WEIGHT_FLAG = 1.0
+        private const val WEIGHT_PATH = 1.0
+        private const val WEIGHT_USE = 2.0
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    // Replaced whole on rebuild, so lookups never see a half-built trie
+    @Volatile private var commands = CompletionTrie<Candidate>()
+    @Volatile private var shellAliases = CompletionTrie<Candidate>()
+    @Volatile private var apps = CompletionTrie<Candidate>()
+    @Volatile private var contactAliases = CompletionTrie<Candidate>()
+    @Volatile private var contacts = CompletionTrie<Candidate>()
+
+    // Command phrases from outside the executor (calling, messaging routes)
+    private val extraCommands = ConcurrentHashMap.newKeySet<CommandSpec>()
+
+    @Volatile
+    private var flags: Map<String, List<String>> = emptyMap()
+
+    // Accepted or executed uses per "kind:key", as Frecency scores
+    private val uses = ConcurrentHashMap<String, Double>()
+
+    @Volatile
+    private var pathCache: PathListing? = null
+
+    init {
+        scope.launch { rebuildCommands() }
+        scope.launch {
+            contextManager.currentContext
+                .map { it.aliases.toMap() }
+                .distinctUntilChanged()
+                .collect { aliases ->
+                    shellAliases = build(CompletionKind.SHELL_ALIAS, WEIGHT_SHELL_ALIAS, aliases.map { (alias, target) ->
+                        alias to Candidate(alias, "$alias ", target)
+                    })
+                }
+        }
+        scope.launch {
+            appCacheService.cachedApps.collect { list ->
+                apps = build(CompletionKind.APP, WEIGHT_APP, list.filter { it.isLaunchable }.map { app ->
+                    app.name to Candidate(app.name, app.name, app.packageName)
+                })
+            }
+        }
+        scope.launch {
+            aliasManager.aliases.collect { aliases ->
+                contactAliases = build(CompletionKind.CONTACT_ALIAS, WEIGHT_CONTACT_ALIAS, aliases.map { (alias, contact) ->
+                    alias to Candidate(alias, "$alias ", contact.contactName)
+                })
+            }
+        }
+        scope.launch {
+            contactRepository.snapshot.collect { snapshot ->
+                contacts = build(CompletionKind.CONTACT, WEIGHT_CONTACT, snapshot.contacts.flatMap { contact ->
+                    val candidate = Candidate(contact.name, "${contact.name} ", contact.phoneNumbers.firstOrNull())
+                    (listOf(contact.name) + contact.nicknames).map { it to candidate }
+                })
+            }
+        }
+    }
+
+    /**
+     * Add command phrases routed outside the executor (calling, messaging)
+     */
+    fun addCommands(specs: Collection<CommandSpec>) {
+        if (extraCommands.addAll(specs)) scope.launch { rebuildCommands() }
+    }
+
+    /**
+     * Up to [limit] completions for [input], best first. Checks for
+     * cancellation between sources, so a newer keystroke can abandon it.
+     */
+    suspend fun complete(input: String, limit: Int = 8): List<Completion> = withContext(Dispatchers.Default) {
+        val line = input.trimStart()
+        if (line.isEmpty()) return@withContext emptyList()
+
+        val found = ArrayList<Completion>()
+        val firstSpace = line.indexOf(' ')
+
+        // Command phrases may span words ("list apps", "check balance")
+        addMatches(found, commands, line, CompletionKind.COMMAND, limit) { it.insert }
+        if (firstSpace < 0) {
+            addMatches(found, shellAliases, line, CompletionKind.SHELL_ALIAS, limit) { it.insert }
+        } else {
+            ensureActive()
+            completeArguments(found, line, firstSpace, limit)
+        }
+
+        ensureActive()
+        for (match in historyStore.search(line, limit * 2)) {
+            if (match.matchStart != 0 || match.command.length <= line.length) continue
+            found.add(Completion(
+                text = match.command,
+                line = match.command,
+                kind = CompletionKind.HISTORY,
+                score = Frecency.ofUse(match.lastUsed, match.uses.toDouble())
+            ))
+        }
+
+        found
+            // Nothing to add to what's typed
+            .filter { !it.line.trimEnd().equals(line.trimEnd(), ignoreCase = true) }
+            .sortedByDescending { it.score }
+            .distinctBy { it.line.trimEnd().lowercase() }
+            .take(limit)
+    }
+
+    /**
+     * Count a completion the user picked
+     */
+    fun recordAccepted(completion: Completion) {
+        val trie = trieFor(completion.kind) ?: return
+        bump(trie, completion.kind, completion.text.trimEnd('/'), System.currentTimeMillis())
+    }
+
+    /**
+     * Count the verb and argument of a command that was run
+     */
+    fun recordExecuted(commandLine: String) {
+        val line = commandLine.trim()
+        if (line.isEmpty()) return
+        val now = System.currentTimeMillis()
+        val verb = line.substringBefore(' ')
+        bump(commands, CompletionKind.COMMAND, verb, now)
+        bump(shellAliases, CompletionKind.SHELL_ALIAS, verb, now)
+
+        val args = line.substringAfter(' ', "").trim()
+        if (args.isEmpty()) return
+        when (resolveVerb(verb)) {
+            in APP_VERBS -> bump(apps, CompletionKind.APP, args, now)
+            in CONTACT_VERBS -> {
+                val target = args.substringBefore(' ')
+                bump(contactAliases, CompletionKind.CONTACT_ALIAS, target, now)
+                bump(contacts, CompletionKind.CONTACT, target, now)
+            }
+        }
+    }
+
+    private suspend fun completeArguments(found: MutableList<Completion>, line: String, firstSpace: Int, limit: Int) {
+        val verb = resolveVerb(line.substring(0, firstSpace))
+        var argStart = firstSpace
+        while (argStart < line.length && line[argStart] == ' ') argStart++
+        val args = line.substring(argStart)
+        val tokenStart = line.lastIndexOf(' ') + 1
+        val token = line.substring(tokenStart)
+        val head = line.substring(0, tokenStart)
+
+        when {
+            token.startsWith("-") -> {
+                for (flag in flags[verb].orEmpty()) {
+                    if (!flag.startsWith(token) || flag == token) continue
+                    val insert = if (flag.endsWith("=")) flag else "$flag "
+                    found.add(Completion(flag, head + insert, CompletionKind.FLAG, Frecency.ofUse(System.currentTimeMillis(), WEIGHT_FLAG)))
+                }
+            }
+            verb in APP_VERBS -> {
+                addMatches(found, apps, args, CompletionKind.APP, limit) { line.substring(0, argStart) + it.insert }
+            }
+            verb in CONTACT_VERBS -> {
+                addMatches(found, contactAliases, args, CompletionKind.CONTACT_ALIAS, limit) { line.substring(0, argStart) + it.insert }
+                addMatches(found, contacts, args, CompletionKind.CONTACT, limit) { line.substring(0, argStart) + it.insert }
+            }
+            verb in PATH_VERBS -> completePath(found, head, token, limit)
+        }
+    }
+
+    private suspend fun completePath(found: MutableList<Completion>, head: String, token: String, limit: Int) {
+        val slash = token.lastIndexOf('/')
+        val dirPart = if (slash >= 0) token.substring(0, slash + 1) else ""
+        val namePrefix = token.substring(slash + 1)
+        val dir = when {
+            dirPart.startsWith("/") -> dirPart
+            else -> contextManager.getWorkingDirectory().trimEnd('/') + "/" + dirPart
+        }
+
+        val listing = listDirectory(dir)
+        val score = Frecency.ofUse(System.currentTimeMillis(), WEIGHT_PATH)
+        var added = 0
+        for (entry in listing.entries) {
+            if (added == limit) break
+            if (!entry.name.startsWith(namePrefix) || (namePrefix.isEmpty() && entry.name.startsWith("."))) continue
+            val insert = dirPart + entry.name + if (entry.isDirectory) "/" else " "
+            found.add(Completion(entry.name + if (entry.isDirectory) "/" else "", head + insert, CompletionKind.PATH, score))
+            added++
+        }
+    }
+
+    // Directory listings are reused while the user keeps typing in the same directory
+    private suspend fun listDirectory(dir: String): PathListing {
+        val now = System.currentTimeMillis()
+        pathCache?.let { if (it.dir == dir && now - it.listedAt < PATH_CACHE_MILLIS) return it }
+
+        val entries = withContext(Dispatchers.IO) {
+            File(dir).listFiles().orEmpty()
+                .map { PathEntry(it.name, it.isDirectory) }
+                .sortedWith(compareByDescending<PathEntry> { it.isDirectory }.thenBy(String.CASE_INSENSITIVE_ORDER) { it.name })
+        }
+        return PathListing(dir, now, entries).also { pathCache = it }
+    }
+
+    private suspend fun addMatches(
+        found: MutableList<Completion>,
+        trie: CompletionTrie<Candidate>,
+        prefix: String,
+        kind: CompletionKind,
+        limit: Int,
+        line: (Candidate) -> String
+    ) {
+        currentCoroutineContext().ensureActive()
+        for (scored in trie.top(prefix, limit)) {
+            val candidate = scored.value
+            found.add(Completion(candidate.text, line(candidate), kind, scored.score, candidate.detail))
+        }
+    }
+
+    private fun rebuildCommands() {
+        val entries = ArrayList<Pair<String, Candidate>>()
+        for (spec in executor.builtInCommands() + extraCommands) {
+            // Placeholders like "<expr>" aren't typed
+            for (phrase in spec.phrases.filterNot { it.startsWith("<") }) {
+                val takesArgs = spec.usage != spec.name
+                entries.add(phrase to Candidate(phrase, if (takesArgs) "$phrase " else phrase, spec.description))
+            }
+        }
+        for (verb in executor.actionVerbs()) {
+            entries.add(verb to Candidate(verb, "$verb ", null))
+        }
+        flags = executor.commandFlags()
+        commands = build(CompletionKind.COMMAND, WEIGHT_COMMAND, entries.distinctBy { it.first })
+    }
+
+    private fun build(
+        kind: CompletionKind,
+        weight: Double,
+        entries: List<Pair<String, Candidate>>
+    ): CompletionTrie<Candidate> {
+        val prior = Frecency.ofUse(System.currentTimeMillis(), weight)
+        val trie = CompletionTrie<Candidate>()
+        for ((key, candidate) in entries) {
+            val used = uses[usageKey(kind, key)] ?: Double.NEGATIVE_INFINITY
+            trie.insert(key, candidate, Frecency.combine(prior, used))
+        }
+        return trie
+    }
+
+    private fun bump(trie: CompletionTrie<Candidate>, kind: CompletionKind, key: String, time: Long) {
+        val current = trie.scoreOf(key) ?: return
+        val use = Frecency.ofUse(time, WEIGHT_USE)
+        uses.merge(usageKey(kind, key), use, Frecency::combine)
+        trie.boost(key, Frecency.combine(current, use))
+    }
+
+    private fun trieFor(kind: CompletionKind): CompletionTrie<Candidate>? = when (kind) {
+        CompletionKind.COMMAND -> commands
+        CompletionKind.SHELL_ALIAS -> shellAliases
+        CompletionKind.APP -> apps
+        CompletionKind.CONTACT_ALIAS -> contactAliases
+        CompletionKind.CONTACT -> contacts
+        CompletionKind.FLAG, CompletionKind.PATH, CompletionKind.HISTORY -> null
+    }
+
+    private fun resolveVerb(word: String): String =
+        contextManager.resolveAlias(word.lowercase()).substringBefore(' ').lowercase()
+
+    private fun usageKey(kind: CompletionKind, key: String) = "${kind.name}:${key.lowercase()}"
+
+    private class Candidate(
+        val text: String,
+        // What goes on the prompt, trailing space included when more follows
+        val insert: String,
+        val detail: String?
+    )
+
+    private class PathEntry(val name: String, val isDirectory: Boolean)
+
+    private class PathListing(val dir: String, val listedAt: Long, val entries: List<PathEntry>)
+}
+
+enum class CompletionKind {
+    COMMAND, SHELL_ALIAS, FLAG, APP, CONTACT_ALIAS, CONTACT, PATH, HISTORY
+}
+
+data class Completion(
+    // Shown in the suggestion strip
+    val text: String,
+    // The whole input line once accepted
+    val line: String,
+    val kind: CompletionKind,
+    val score: Double,
+    val detail: String? = null
+)
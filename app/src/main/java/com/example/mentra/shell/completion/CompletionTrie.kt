@@ -0,0 +1,156 @@
+package com.example.mentra.shell.completion
+
+import java.util.PriorityQueue
+import kotlin.math.abs
+import kotlin.math.exp
+import kotlin.math.ln
+import kotlin.math.ln1p
+import kotlin.math.max
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * COMPLETION TRIE
+ * Prefix trie returning the k best-scored keys under a prefix
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Every node keeps the best score in its subtree. A lookup walks down
+ * the prefix, then expands nodes best-first from a priority queue, so
+ * it stops after the k-th item instead of visiting every key below the
+ * prefix.
+ *
+ * Scores may only go up ([boost]), which keeps the subtree maxima
+ * correct without walking back up. [Frecency] scores are built that way.
+ * All methods are synchronized; lookups are short and run off the main
+ * thread.
+ */
+class CompletionTrie<T> {
+
+    private class Node<T> {
+        var children: HashMap<Char, Node<T>>? = null
+        var items: ArrayList<Item<T>>? = null
+        var best = Double.NEGATIVE_INFINITY
+    }
+
+    private class Item<T>(val key: String, val value: T, var score: Double)
+
+    private val root = Node<T>()
+
+    var size = 0
+        private set
+
+    /**
+     * Add [value] under [key] (matched case-insensitively). Several values
+     * may share a key.
+     */
+    @Synchronized
+    fun insert(key: String, value: T, score: Double) {
+        val normalized = key.lowercase()
+        var node = root
+        node.best = max(node.best, score)
+        for (char in normalized) {
+            val children = node.children ?: HashMap<Char, Node<T>>(4).also { node.children = it }
+            node = children.getOrPut(char) { Node() }
+            node.best = max(node.best, score)
+        }
+        val items = node.items ?: ArrayList<Item<T>>(1).also { node.items = it }
+        items.add(Item(normalized, value, score))
+        size++
+    }
+
+    /**
+     * Raise the score of every value under exactly [key] to [score].
+     * Lower scores are ignored. False if [key] isn't in the trie.
+     */
+    @Synchronized
+    fun boost(key: String, score: Double): Boolean {
+        val normalized = key.lowercase()
+        val path = ArrayList<Node<T>>(normalized.length + 1)
+        var node = root
+        path.add(node)
+        for (char in normalized) {
+            node = node.children?.get(char) ?: return false
+            path.add(node)
+        }
+        val items = node.items ?: return false
+        for (item in items) item.score = max(item.score, score)
+        for (step in path) step.best = max(step.best, score)
+        return true
+    }
+
+    @Synchronized
+    fun contains(key: String): Boolean = find(key.lowercase())?.items != null
+
+    /**
+     * Best score among the values under exactly [key], null if none
+     */
+    @Synchronized
+    fun scoreOf(key: String): Double? = find(key.lowercase())?.items?.maxOfOrNull { it.score }
+
+    /**
+     * Up to [limit] values with a key starting with [prefix], best first
+     */
+    @Synchronized
+    fun top(prefix: String, limit: Int): List<Scored<T>> {
+        if (limit <= 0) return emptyList()
+        val start = find(prefix.lowercase()) ?: return emptyList()
+
+        // Holds nodes (ranked by their subtree best) and items (by their own score)
+        val queue = PriorityQueue<Pending<T>>(16, compareByDescending { it.score })
+        queue.add(Pending(start.best, start, null))
+        val result = ArrayList<Scored<T>>(limit)
+
+        while (result.size < limit) {
+            val next = queue.poll() ?: break
+            val item = next.item
+            if (item != null) {
+                result.add(Scored(item.key, item.value, item.score))
+                continue
+            }
+            val node = next.node ?: continue
+            node.items?.forEach { queue.add(Pending(it.score, null, it)) }
+            node.children?.values?.forEach { queue.add(Pending(it.best, it, null)) }
+        }
+        return result
+    }
+
+    private fun find(key: String): Node<T>? {
+        var node = root
+        for (char in key) {
+            node = node.children?.get(char) ?: return null
+        }
+        return node
+    }
+
+    private class Pending<T>(val score: Double, val node: Node<T>?, val item: Item<T>?)
+}
+
+data class Scored<T>(
+    // Normalized (lowercase) key
+    val key: String,
+    val value: T,
+    val score: Double
+)
+
+/**
+ * Frecency as a log-domain score that only grows
+ *
+ * A use at time t is worth `weight * 2^((t - REFERENCE) / HALF_LIFE)`, and
+ * an item's score is the log of the sum over its uses. Comparing two
+ * scores is the same as comparing decayed weights at any common "now",
+ * but nothing has to be decayed as time passes, so scores never go down
+ * and can be kept in a [CompletionTrie].
+ */
+object Frecency {
+    const val HALF_LIFE_MILLIS = 7 * 24 * 60 * 60 * 1000.0
+    private const val REFERENCE_MILLIS = 1_700_000_000_000L
+
+    fun ofUse(time: Long, weight: Double = 1.0): Double =
+        ln(weight) + (time - REFERENCE_MILLIS) / HALF_LIFE_MILLIS * ln(2.0)
+
+    /** Score of two sets of uses together */
+    fun combine(a: Double, b: Double): Double {
+        if (a == Double.NEGATIVE_INFINITY) return b
+        if (b == Double.NEGATIVE_INFINITY) return a
+        return max(a, b) + ln1p(exp(-abs(a - b)))
+    }
+}
@@ -4,6 +4,10 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.graphics.drawable.Drawable
+import com.example.mentra.infrastructure.privileged.PrivilegeReport
+import com.example.mentra.infrastructure.privileged.PrivilegedExecutor
+import com.example.mentra.infrastructure.privileged.ProbeResult
+import com.example.mentra.infrastructure.privileged.SessionStats
 import com.example.mentra.shell.actions.ActionRouter
 import com.example.mentra.shell.apps.AppCacheService
 import com.example.mentra.shell.apps.CacheState
@@ -26,7 +30,8 @@ class CommandExecutor @Inject constructor(
     private val contextManager: ContextManager,
     private val actionRouter: ActionRouter,
     private val appCacheService: AppCacheService,
-    private val calculator: ShellCalculator
+    private val calculator: ShellCalculator,
+    private val privilegedExecutor: PrivilegedExecutor
 ) {
 
     /**
@@ -42,8 +47,8 @@ class CommandExecutor @Inject constructor(
             // Parse command
             val command = parser.parse(commandText)
 
-            // Add to history
-            contextManager.addToHistory(command)
+            // Remember for !!; the prompt records the typed line in history
+            contextManager.setLastCommand(command)
 
             // Handle built-in shell commands FIRST (before validation)
             // This allows special commands like 'sms --ui' to bypass strict validation
@@ -110,128 +115,192 @@ class CommandExecutor @Inject constructor(
         }
     }
 
+    /**
+     * Built-in shell commands by phrase (cd, history, apps, open …)
+     * Handlers may return null to fall through to action routing.
+     */
+    private val builtIns = CommandRegistry<suspend (ShellCommand, String) -> ShellResult?>()
+
+    init {
+        registerBuiltIns()
+    }
+
+    /**
+     * Built-in commands with their usage, for help and completion
+     */
+    fun builtInCommands(): List<CommandSpec> = builtIns.commands
+
+    fun completeBuiltIn(prefix: String, limit: Int = 20): List<CommandSpec> = builtIns.complete(prefix, limit)
+
+    /**
+     * Verbs routed to action handlers (wifi, call, ls …), for completion
+     */
+    fun actionVerbs(): Set<String> = ACTION_VERBS.keys
+
+    /**
+     * Flags each command documents in its usage or in help, keyed by the
+     * command's first word. Valued flags end at '=' ("--state=").
+     */
+    fun commandFlags(): Map<String, List<String>> {
+        val flags = HashMap<String, LinkedHashSet<String>>()
+        fun collect(verb: String, text: String) {
+            FLAG.findAll(text).forEach { flags.getOrPut(verb) { LinkedHashSet() }.add(it.value) }
+        }
+        for (spec in builtIns.commands) {
+            spec.phrases.forEach { phrase -> collect(phrase.substringBefore(' '), spec.usage + " " + phrase) }
+        }
+        for (line in HELP_BODY.lineSequence()) {
+            val trimmed = line.trim()
+            collect(trimmed.substringBefore(' '), trimmed)
+        }
+        return flags.mapValues { it.value.toList() }
+    }
+
     /**
      * Handle built-in shell commands (cd, ls, history, etc.)
+     * One trie walk over the input instead of testing each command in turn
      */
-    private fun handleBuiltInCommands(command: ShellCommand): ShellResult? {
-        // First check for multi-word commands
-        val rawLower = command.raw.lowercase().trim()
+    private suspend fun handleBuiltInCommands(command: ShellCommand): ShellResult? {
+        val match = builtIns.resolve(command.raw) ?: return null
+        return match.target(command, match.args)
+    }
 
-        // Handle calendar UI trigger
-        if (rawLower == "calendar" || rawLower == "cal" || rawLower == "date") {
-            return ShellResult(
+    private fun registerBuiltIns(): Unit = with(builtIns) {
+        // Calendar, calculator and math auto-detect keep their original precedence
+        register(CommandSpec("calendar", listOf("cal", "date"), MatchMode.EXACT,
+            description = "Open calendar", category = CATEGORY_NAVIGATION, priority = 2)) { _, _ ->
+            ShellResult(
                 status = ResultStatus.SUCCESS,
                 message = "Opening Calendar...",
                 data = "SHOW_CALENDAR_UI"  // Signal to show calendar UI
             )
         }
 
-        // Handle calculator UI trigger (just "calc" or "calculator")
-        if (calculator.shouldShowUI(command.raw)) {
-            return ShellResult(
-                status = ResultStatus.SUCCESS,
-                message = "Opening Calculator...",
-                data = "SHOW_CALCULATOR_UI"  // Signal to show calculator UI
-            )
-        }
-
-        // Handle calculator commands with expressions (calc 2+2)
-        if (calculator.isCalculatorCommand(command.raw)) {
-            val outputs = calculator.handleCommand(command.raw)
-            return ShellResult(
-                status = ResultStatus.SUCCESS,
-                message = outputs.joinToString("\n") { it.text },
-                data = outputs
-            )
+        register(CommandSpec("calc", listOf("calculator", "calculate", "math", "eval"), MatchMode.WORD,
+            usage = "calc <expr>", description = "Calculate expression", category = CATEGORY_CALCULATOR, priority = 2)) { command, _ ->
+            if (calculator.shouldShowUI(command.raw)) {
+                ShellResult(
+                    status = ResultStatus.SUCCESS,
+                    message = "Opening Calculator...",
+                    data = "SHOW_CALCULATOR_UI"  // Signal to show calculator UI
+                )
+            } else {
+                val plot = calculator.plotRequest(command.raw)
+                if (plot != null) {
+                    ShellResult(
+                        status = ResultStatus.SUCCESS,
+                        message = "Plotting ${plot.expression}...",
+                        data = plot  // Signal to show calculator UI with the plot
+                    )
+                } else {
+                    val outputs = calculator.handleCommand(command.raw)
+                    ShellResult(
+                        status = ResultStatus.SUCCESS,
+                        message = outputs.joinToString("\n") { it.text },
+                        data = outputs
+                    )
+                }
+            }
         }
 
         // Auto-detect math expressions (e.g., 1+1, sqrt(144), 2^10)
-        if (calculator.isMathExpression(command.raw)) {
+        registerFallback(CommandSpec("<expr>", usage = "1+1", description = "Auto-detect math",
+            category = CATEGORY_CALCULATOR, priority = 1), { command, _ ->
             val outputs = calculator.evaluate(command.raw)
-            return ShellResult(
+            ShellResult(
                 status = ResultStatus.SUCCESS,
                 message = outputs.joinToString("\n") { it.text },
                 data = outputs
             )
-        }
+        }, calculator::isMathExpression)
 
-        // Handle "list apps", "show apps", "apps", "app" commands
-        if (rawLower == "apps" || rawLower == "app" || rawLower == "list apps" || rawLower == "show apps" ||
-            rawLower.startsWith("apps ") || rawLower.startsWith("app ") ||
-            rawLower.startsWith("list apps ") || rawLower.startsWith("show apps ")) {
-            val filter = when {
-                rawLower.startsWith("list apps ") -> rawLower.removePrefix("list apps ").trim()
-                rawLower.startsWith("show apps ") -> rawLower.removePrefix("show apps ").trim()
-                rawLower.startsWith("apps ") -> rawLower.removePrefix("apps ").trim()
-                rawLower.startsWith("app ") -> rawLower.removePrefix("app ").trim()
-                else -> null
-            }
+        register(CommandSpec("apps", listOf("app", "list apps", "show apps"), MatchMode.WORD,
+            usage = "apps [search|--ui|--all|--system]", description = "List installed apps", category = CATEGORY_APPS)) { _, args ->
+            val filter = args.lowercase().takeIf { it.isNotEmpty() }
             // Check for --ui flag
             if (filter?.contains("--ui") == true) {
-                return ShellResult(
+                ShellResult(
                     status = ResultStatus.SUCCESS,
                     message = "SHOW_APP_PICKER",
                     data = "show_app_picker"
                 )
+            } else {
+                handleListApps(filter)
             }
-            return handleListApps(filter)
         }
 
-        // Handle "sms --ui", "messages --ui" to open messaging UI
-        if (rawLower == "sms --ui" || rawLower == "messages --ui" ||
-            rawLower == "open messages" || rawLower == "open sms") {
-            return ShellResult(
+        register(CommandSpec("sms --ui", listOf("messages --ui", "open messages", "open sms"), MatchMode.EXACT,
+            description = "Open messaging UI", category = CATEGORY_NAVIGATION)) { _, _ ->
+            ShellResult(
                 status = ResultStatus.SUCCESS,
                 message = "NAVIGATE_MESSAGES",
                 data = "navigate_messages"
             )
         }
 
-        // Handle "dialer", "phone", "dial" UI commands
-        if (rawLower == "dialer" || rawLower == "phone" || rawLower == "dialer --ui" ||
-            rawLower == "open dialer" || rawLower == "open phone") {
-            return ShellResult(
+        register(CommandSpec("dialer", listOf("phone", "dialer --ui", "open dialer", "open phone"), MatchMode.EXACT,
+            description = "Open dialer/phone UI", category = CATEGORY_NAVIGATION)) { _, _ ->
+            ShellResult(
                 status = ResultStatus.SUCCESS,
                 message = "NAVIGATE_DIALER",
                 data = "navigate_dialer"
             )
         }
 
-        // Handle "open", "launch", "start" app commands
-        if (rawLower.startsWith("open ") || rawLower.startsWith("launch ") || rawLower.startsWith("start ")) {
-            val appName = when {
-                rawLower.startsWith("open ") -> command.raw.substring(5).trim()
-                rawLower.startsWith("launch ") -> command.raw.substring(7).trim()
-                rawLower.startsWith("start ") -> command.raw.substring(6).trim()
-                else -> ""
-            }
-            if (appName.isNotEmpty()) {
-                return handleOpenApp(appName)
-            }
+        register(CommandSpec("open", listOf("launch", "start"), MatchMode.WITH_ARGS,
+            usage = "open <app>", description = "Open application", category = CATEGORY_APPS)) { _, args ->
+            handleOpenApp(args)
         }
 
-        return when (command.verb.lowercase()) {
-            "cd" -> {
-                val path = command.target ?: "/"
-                contextManager.changeDirectory(path)
+        register(CommandSpec("privileges", listOf("privs"), usage = "privileges [--probe]",
+            description = "Privileged backends and routing", category = CATEGORY_BUILT_IN)) { _, args ->
+            if (args.contains("--probe")) {
+                privilegedExecutor.reprobe()
                 ShellResult(
                     status = ResultStatus.SUCCESS,
-                    message = "Changed directory to ${contextManager.getWorkingDirectory()}"
+                    message = "Re-probing Shizuku and root... run 'privileges' again in a moment."
                 )
-            }
-
-            "pwd" -> {
+            } else {
                 ShellResult(
                     status = ResultStatus.SUCCESS,
-                    message = contextManager.getWorkingDirectory()
+                    message = formatPrivilegeReport(privilegedExecutor.getPrivilegeReport())
                 )
             }
+        }
+
+        register(CommandSpec("cd", usage = "cd [path]", description = "Change directory", category = CATEGORY_BUILT_IN)) { command, _ ->
+            val path = command.target ?: "/"
+            contextManager.changeDirectory(path)
+            ShellResult(
+                status = ResultStatus.SUCCESS,
+                message = "Changed directory to ${contextManager.getWorkingDirectory()}"
+            )
+        }
 
-            "history", "h" -> {
+        register(CommandSpec("pwd", description = "Print working directory", category = CATEGORY_BUILT_IN)) { _, _ ->
+            ShellResult(
+                status = ResultStatus.SUCCESS,
+                message = contextManager.getWorkingDirectory()
+            )
+        }
+
+        register(CommandSpec("history", listOf("h"), usage = "history [n|-c|search <text>]",
+            description = "Show command history", category = CATEGORY_BUILT_IN)) { command, _ ->
+            if (command.target == "-c" || command.target == "clear") {
+                contextManager.clearHistory()
+                ShellResult(status = ResultStatus.SUCCESS, message = "History cleared")
+            } else if (command.target == "search" && !command.entity.isNullOrBlank()) {
+                val matches = contextManager.searchHistory(command.entity)
+                ShellResult(
+                    status = ResultStatus.SUCCESS,
+                    message = if (matches.isEmpty()) "No history matches '${command.entity}'" else matches.joinToString("\n"),
+                    data = matches
+                )
+            } else {
                 val count = command.target?.toIntOrNull() ?: 10
                 val history = contextManager.getHistory(count)
-                val historyText = history.mapIndexed { index, cmd ->
-                    "${index + 1}. ${cmd.raw}"
+                val historyText = history.mapIndexed { index, line ->
+                    "${index + 1}. $line"
                 }.joinToString("\n")
 
                 ShellResult(
@@ -240,335 +309,117 @@ class CommandExecutor @Inject constructor(
                     data = history
                 )
             }
+        }
 
-            "clear", "c" -> {
+        register(CommandSpec("clear", listOf("c"), description = "Clear screen", category = CATEGORY_BUILT_IN)) { _, _ ->
+            ShellResult(
+                status = ResultStatus.SUCCESS,
+                message = "clear_screen",
+                data = "clear"
+            )
+        }
+
+        register(CommandSpec("export", usage = "export VAR=val",
+            description = "Set environment variable", category = CATEGORY_BUILT_IN)) { command, _ ->
+            // export VAR=value
+            if (command.target?.contains("=") == true) {
+                val parts = command.target.split("=", limit = 2)
+                contextManager.setEnv(parts[0], parts.getOrNull(1) ?: "")
                 ShellResult(
                     status = ResultStatus.SUCCESS,
-                    message = "clear_screen",
-                    data = "clear"
+                    message = "Set ${parts[0]}=${parts.getOrNull(1)}"
                 )
-            }
-
-            "export" -> {
-                // export VAR=value
-                if (command.target?.contains("=") == true) {
-                    val parts = command.target.split("=", limit = 2)
-                    contextManager.setEnv(parts[0], parts.getOrNull(1) ?: "")
-                    ShellResult(
-                        status = ResultStatus.SUCCESS,
-                        message = "Set ${parts[0]}=${parts.getOrNull(1)}"
-                    )
-                } else {
-                    ShellResult(
-                        status = ResultStatus.INVALID_COMMAND,
-                        message = "Usage: export VAR=value"
-                    )
-                }
-            }
-
-            "env" -> {
-                val env = contextManager.getAllEnv()
-                val envText = env.entries.joinToString("\n") { "${it.key}=${it.value}" }
+            } else {
                 ShellResult(
-                    status = ResultStatus.SUCCESS,
-                    message = envText,
-                    data = env
+                    status = ResultStatus.INVALID_COMMAND,
+                    message = "Usage: export VAR=value"
                 )
             }
+        }
 
-            "alias" -> {
-                if (command.target == null) {
-                    // List aliases
-                    val aliases = contextManager.getAllAliases()
-                    val aliasText = aliases.entries.joinToString("\n") {
-                        "alias ${it.key}='${it.value}'"
-                    }
-                    ShellResult(
-                        status = ResultStatus.SUCCESS,
-                        message = aliasText,
-                        data = aliases
-                    )
-                } else if (command.target.contains("=")) {
-                    // Set alias
-                    val parts = command.target.split("=", limit = 2)
-                    contextManager.setAlias(parts[0], parts.getOrNull(1) ?: "")
-                    ShellResult(
-                        status = ResultStatus.SUCCESS,
-                        message = "Set alias ${parts[0]}='${parts.getOrNull(1)}'"
-                    )
-                } else {
-                    ShellResult(
-                        status = ResultStatus.INVALID_COMMAND,
-                        message = "Usage: alias name=value"
-                    )
-                }
-            }
+        register(CommandSpec("env", description = "Show all environment variables", category = CATEGORY_BUILT_IN)) { _, _ ->
+            val env = contextManager.getAllEnv()
+            val envText = env.entries.joinToString("\n") { "${it.key}=${it.value}" }
+            ShellResult(
+                status = ResultStatus.SUCCESS,
+                message = envText,
+                data = env
+            )
+        }
 
-            "!!" -> {
-                // Repeat last command
-                val lastCmd = contextManager.getLastCommand()
-                if (lastCmd != null) {
-                    ShellResult(
-                        status = ResultStatus.SUCCESS,
-                        message = "repeat_last",
-                        data = lastCmd.raw
-                    )
-                } else {
-                    ShellResult(
-                        status = ResultStatus.FAILURE,
-                        message = "No previous command"
-                    )
+        register(CommandSpec("alias", usage = "alias name=cmd",
+            description = "Create command alias", category = CATEGORY_BUILT_IN)) { command, _ ->
+            if (command.target == null) {
+                // List aliases
+                val aliases = contextManager.getAllAliases()
+                val aliasText = aliases.entries.joinToString("\n") {
+                    "alias ${it.key}='${it.value}'"
                 }
-            }
-
-            "help", "?" -> {
-                val helpText = """
-                    Mentra AI Shell v1.0 - System Administrator
-                    
-                    ═══════════════════════════════════════
-                    BUILT-IN COMMANDS:
-                    ═══════════════════════════════════════
-                    cd [path]         Change directory
-                    pwd               Print working directory
-                    ls [path]         List files
-                    history [n]       Show command history
-                    clear             Clear screen
-                    export VAR=val    Set environment variable
-                    env               Show all environment variables
-                    alias name=cmd    Create command alias
-                    !!                Repeat last command
-                    
-                    ═══════════════════════════════════════
-                    POWER MANAGEMENT (Requires Shizuku):
-                    ═══════════════════════════════════════
-                    shutdown          Shutdown device
-                    reboot            Reboot device
-                    reboot --mode=recovery    Reboot to recovery
-                    reboot --mode=bootloader  Reboot to bootloader
-                    sleep             Put device to sleep
-                    lock              Lock screen
-                    
-                    ═══════════════════════════════════════
-                    NETWORK CONTROL (Requires Shizuku):
-                    ═══════════════════════════════════════
-                    wifi --state=on/off       Control WiFi
-                    data --state=on/off       Control mobile data
-                    airplane --state=on/off   Control airplane mode
-                    bluetooth --state=on/off  Control Bluetooth
-                    
-                    ═══════════════════════════════════════
-                    DISPLAY & BRIGHTNESS (Requires Shizuku):
-                    ═══════════════════════════════════════
-                    brightness <0-255>        Set brightness
-                    timeout <seconds>         Set screen timeout
-                    autobrightness --state=on/off  Auto-brightness
-                    
-                    ═══════════════════════════════════════
-                    VOLUME & AUDIO (Requires Shizuku):
-                    ═══════════════════════════════════════
-                    volume --type=music/ring/notification <0-15>
-                    mute --state=on/off       Mute all audio
-                    
-                    ═══════════════════════════════════════
-                    INFORMATION QUERIES (No Shizuku needed):
-                    ═══════════════════════════════════════
-                    show battery      Battery status
-                    show storage      Storage information
-                    show device       Device information
-                    show time         Current time
-                    show date         Current date
-                    
-                    ═══════════════════════════════════════
-                    CALCULATOR:
-                    ═══════════════════════════════════════
-                    calc <expr>       Calculate expression
-                    1+1               Auto-detect math
-                    calc sqrt(144)    Functions supported
-                    calc 2^10         Power operations
-                    calc 17 mod 5     Modulo operations
-                    calc pi * 2       Constants: pi, e
-                    show steps        Step count today
-                    sysinfo           Complete system info
-                    
-                    ═══════════════════════════════════════
-                    APP CONTROL:
-                    ═══════════════════════════════════════
-                    apps              List installed apps
-                    apps --ui         Show app picker UI
-                    apps --all        List all apps (user + system)
-                    apps --system     List system apps only
-                    apps [search]     Search apps by name
-                    list apps         Same as 'apps'
-                    show apps         Same as 'apps'
-                    open <app>        Open application
-                    settings [type]   Open settings (wifi/bluetooth/etc)
-                    freeze <pkg>      Freeze/disable app (Shizuku)
-                    unfreeze <pkg>    Unfreeze app (Shizuku)
-                    hide <pkg>        Hide app from launcher (Shizuku)
-                    unhide <pkg>      Unhide app (Shizuku)
-                    
-                    ═══════════════════════════════════════
-                    NAVIGATION:
-                    ═══════════════════════════════════════
-                    sms --ui          Open messaging UI
-                    dialer            Open dialer/phone UI
-                    phone             Same as 'dialer'
-                    
-                    ═══════════════════════════════════════
-                    PERFORMANCE (Requires Shizuku):
-                    ═══════════════════════════════════════
-                    performance high/balanced/powersave
-                    batterysaver --state=on/off
-                    clearram          Clear RAM/kill background
-                    clearcache        Clear all app caches
-                    
-                    ═══════════════════════════════════════
-                    MESSAGING:
-                    ═══════════════════════════════════════
-                    inbox             View recent messages
-                    inbox [name]      Open contact's inbox
-                    inbox [name] [n]  Show last n messages
-                                      e.g: inbox mpesa 5
-                    unread            Show unread count
-                    read [contact]    Read conversation
-                    chat [contact]    Same as read
-                    reply [message]   Quick reply to open chat
-                    
-                    message [contact] [text]  Send message
-                    text [contact] [text]     Send message  
-                    sms [number] [text]       Send to number
-                    
-                    alias [name] [contact]    Set contact alias
-                    Example: alias wife Jane Doe
-                    
-                    ═══════════════════════════════════════
-                    CALLING:
-                    ═══════════════════════════════════════
-                    call <number>     Make a call
-                    call [alias]      Call using alias
-                    dial <number>     Open dialer
-                    
-                    ═══════════════════════════════════════
-                    FILE OPERATIONS:
-                    ═══════════════════════════════════════
-                    ls [path]         List files
-                    cat <file>        Read file
-                    rm <file>         Delete file
-                    
-                    ═══════════════════════════════════════
-                    SETTINGS (Requires Shizuku):
-                    ═══════════════════════════════════════
-                    developermode --state=on/off
-                    adb --state=on/off           USB debugging
-                    animations <0.0-2.0>         Animation scale
-                    location --state=on/off      Location services
-                    dnd --state=on/off           Do Not Disturb
-                    
-                    ═══════════════════════════════════════
-                    TIPS:
-                    ═══════════════════════════════════════
-                    • Use quotes for multi-word arguments
-                    • Chain commands with ; or &&
-                    • Most system commands require Shizuku
-                    • Install Shizuku from Play Store for full power
-                    
-                    Total: 80+ commands available!
-                    Type 'syshelp' for detailed system command guide.
-                """.trimIndent()
-
                 ShellResult(
                     status = ResultStatus.SUCCESS,
-                    message = helpText
+                    message = aliasText,
+                    data = aliases
+                )
+            } else if (command.target.contains("=")) {
+                // Set alias
+                val parts = command.target.split("=", limit = 2)
+                contextManager.setAlias(parts[0], parts.getOrNull(1) ?: "")
+                ShellResult(
+                    status = ResultStatus.SUCCESS,
+                    message = "Set alias ${parts[0]}='${parts.getOrNull(1)}'"
+                )
+            } else {
+                ShellResult(
+                    status = ResultStatus.INVALID_COMMAND,
+                    message = "Usage: alias name=value"
                 )
             }
+        }
 
-            "syshelp" -> {
-                val sysHelpText = """
-                    ═══════════════════════════════════════
-                    MENTRA SYSTEM SHELL - COMPLETE GUIDE
-                    ═══════════════════════════════════════
-                    
-                    ⚡ POWER COMMANDS:
-                    shutdown                  Shutdown device
-                    reboot                    Reboot device  
-                    reboot --mode=recovery    Reboot to recovery
-                    reboot --mode=bootloader  Reboot to bootloader/fastboot
-                    reboot --mode=safe        Reboot in safe mode
-                    sleep                     Put device to sleep
-                    lock                      Lock screen
-                    
-                    🌐 NETWORK COMMANDS:
-                    wifi --state=on           Enable WiFi
-                    wifi --state=off          Disable WiFi
-                    data --state=on           Enable mobile data
-                    data --state=off          Disable mobile data
-                    airplane --state=on       Enable airplane mode
-                    airplane --state=off      Disable airplane mode
-                    bluetooth --state=on      Enable Bluetooth
-                    bluetooth --state=off     Disable Bluetooth
-                    
-                    💡 DISPLAY COMMANDS:
-                    brightness 128            Set brightness (0-255)
-                    brightness 255            Max brightness
-                    autobrightness --state=on Enable auto-brightness
-                    timeout 30                Screen timeout 30 seconds
-                    
-                    🔊 AUDIO COMMANDS:
-                    volume --type=music 10    Set music volume
-                    volume --type=ring 15     Set ring volume
-                    volume --type=notification 8
-                    mute --state=on           Mute all audio
-                    
-                    📱 APP MANAGEMENT:
-                    freeze com.example.app    Disable/freeze app
-                    unfreeze com.example.app  Enable/unfreeze app
-                    hide com.example.app      Hide from launcher
-                    unhide com.example.app    Unhide app
-                    
-                    🚀 PERFORMANCE:
-                    performance high          High performance mode
-                    performance balanced      Balanced mode
-                    performance powersave     Power saving mode
-                    batterysaver --state=on   Enable battery saver
-                    clearram                  Clear RAM
-                    clearcache                Clear all app caches
-                    
-                    ⚙️ SETTINGS:
-                    developermode --state=on  Enable developer mode
-                    adb --state=on            Enable USB debugging
-                    animations 0.5            Set animation scale
-                    location --state=off      Disable location
-                    dnd --state=on            Enable Do Not Disturb
-                    
-                    📊 SYSTEM INFO:
-                    show battery              Battery status
-                    show storage              Storage info
-                    show device               Device info
-                    show time                 Current time
-                    show date                 Current date
-                    sysinfo                   Complete system info
-                    
-                    💾 FILE OPERATIONS:
-                    ls /sdcard                List files
-                    cat /sdcard/file.txt      Read file
-                    rm /sdcard/file.txt       Delete file
-                    
-                    ⚠️  NOTE: Most system commands require Shizuku
-                    Install Shizuku from Play Store for full power!
-                    
-                    Type 'help' for quick reference.
-                """.trimIndent()
-
+        register(CommandSpec("!!", description = "Repeat last command", category = CATEGORY_BUILT_IN)) { _, _ ->
+            // Repeat last command
+            val lastCmd = contextManager.getLastCommand()
+            if (lastCmd != null) {
                 ShellResult(
                     status = ResultStatus.SUCCESS,
-                    message = sysHelpText
+                    message = "repeat_last",
+                    data = lastCmd.raw
+                )
+            } else {
+                ShellResult(
+                    status = ResultStatus.FAILURE,
+                    message = "No previous command"
                 )
             }
+        }
+
+        register(CommandSpec("help", listOf("?"), description = "Quick reference", category = CATEGORY_HELP)) { _, _ ->
+            ShellResult(
+                status = ResultStatus.SUCCESS,
+                message = buildHelpText()
+            )
+        }
 
-            else -> null // Not a built-in command
+        register(CommandSpec("syshelp", description = "System command guide", category = CATEGORY_HELP)) { _, _ ->
+            ShellResult(
+                status = ResultStatus.SUCCESS,
+                message = SYS_HELP_TEXT
+            )
         }
     }
 
+    /**
+     * Quick reference; the built-in section is generated from the registry
+     */
+    private fun buildHelpText(): String {
+        val builtInSection = builtIns.commands
+            .filter { it.category == CATEGORY_BUILT_IN }
+            .joinToString("\n") { it.usage.padEnd(18) + it.description }
+
+        return HELP_HEADER + "\n\n" + HELP_BANNER + "\nBUILT-IN COMMANDS:\n" + HELP_BANNER + "\n" +
+            builtInSection + "\n\n" + HELP_BODY
+    }
+
     /**
      * Convert ShellCommand to ShellAction
      */
@@ -594,70 +445,7 @@ class CommandExecutor @Inject constructor(
      * Map command verb to action type
      */
     private fun mapVerbToActionType(verb: String): ActionType {
-        return when (verb.lowercase()) {
-            // App & Settings
-            "open", "launch", "start" -> ActionType.OPEN_APP
-            "settings" -> ActionType.OPEN_SETTINGS
-
-            // Communication
-            "call", "dial" -> ActionType.MAKE_CALL
-            "message", "sms", "text" -> ActionType.SEND_SMS
-
-            // Media
-            "play" -> ActionType.PLAY_MUSIC
-            "pause" -> ActionType.PAUSE_MEDIA
-            "stop" -> ActionType.STOP_MEDIA
-            "next" -> ActionType.NEXT_TRACK
-            "previous", "prev" -> ActionType.PREVIOUS_TRACK
-
-            // Navigation
-            "navigate", "goto", "go" -> ActionType.NAVIGATE_TO
-
-            // Information queries
-            "show", "display", "get" -> ActionType.SYSTEM_COMMAND // Will be handled by target
-
-            // File operations
-            "ls", "list" -> ActionType.LIST_FILES
-            "cat", "read" -> ActionType.READ_FILE
-            "write", "echo" -> ActionType.WRITE_FILE
-            "rm", "delete", "del" -> ActionType.DELETE_FILE
-
-            // System commands (all routed to AdvancedSystemActionHandler)
-            "shutdown", "poweroff",
-            "reboot", "restart",
-            "sleep", "suspend",
-            "lock",
-            "wifi",
-            "data", "mobiledata",
-            "airplane", "airplanemode",
-            "bluetooth", "bt",
-            "brightness",
-            "timeout", "screentimeout",
-            "autobrightness",
-            "volume",
-            "mute",
-            "settime",
-            "settimezone",
-            "autotime",
-            "freeze", "disable",
-            "unfreeze", "enable",
-            "hide",
-            "unhide",
-            "performance", "perf",
-            "batterysaver", "powersave",
-            "clearram", "freeram",
-            "clearcache",
-            "dnd", "donotdisturb",
-            "notify",
-            "developermode", "devmode",
-            "adb", "usbdebug",
-            "stayawake",
-            "animations",
-            "location",
-            "sysinfo", "systeminfo" -> ActionType.SYSTEM_COMMAND
-
-            else -> ActionType.UNKNOWN
-        }
+        return ACTION_VERBS[verb.lowercase()] ?: ActionType.UNKNOWN
     }
 
     /**
@@ -682,7 +470,10 @@ class CommandExecutor @Inject constructor(
     /**
      * Handle opening an app by name
      */
-    private fun handleOpenApp(appName: String): ShellResult {
+    private suspend fun handleOpenApp(appName: String): ShellResult {
+        // On a cold start, wait for the saved catalog (or the first scan) rather than report "not found"
+        appCacheService.awaitReady()
+
         // Use cache service to launch app
         return when (val result = appCacheService.launchApp(appName)) {
             is LaunchResult.Success -> {
@@ -693,7 +484,7 @@ class CommandExecutor @Inject constructor(
             }
             is LaunchResult.NotFound -> {
                 // Try to find similar apps
-                val suggestions = appCacheService.searchApps(appName).take(5)
+                val suggestions = appCacheService.searchApps(appName, limit = 5)
                 val suggestionText = if (suggestions.isNotEmpty()) {
                     "\n\n💡 Did you mean:\n" + suggestions.joinToString("\n") { "   • ${it.name}" }
                 } else {
@@ -726,6 +517,42 @@ class CommandExecutor @Inject constructor(
         }
     }
 
+    private fun formatPrivilegeReport(report: PrivilegeReport): String {
+        val capabilities = report.capabilities
+            ?: return "Probing privileged backends... run 'privileges' again in a moment."
+
+        fun probeLine(name: String, probe: ProbeResult) =
+            "${if (probe.available) "✓" else "✗"} ${name.padEnd(10)} ${"${probe.millis} ms".padEnd(8)} ${probe.detail}"
+
+        fun sessionLine(name: String, stats: SessionStats) =
+            "  ${name.padEnd(10)} ${stats.commands} cmds, avg ${stats.averageLatencyMillis} ms, " +
+                "last ${stats.lastLatencyMillis} ms, ${stats.restarts} restarts"
+
+        return buildString {
+            appendLine("═══ PRIVILEGES ═══")
+            appendLine(probeLine("Shizuku", capabilities.shizuku))
+            appendLine(capabilities.root?.let { probeLine("Root", it) } ?: "… ${"Root".padEnd(10)} waiting for su")
+            appendLine("✓ ${"ADB".padEnd(10)} app shell")
+            appendLine("✓ ${"APIs".padEnd(10)} Android API fallback")
+            appendLine()
+            appendLine("Active: ${report.activeMethod}")
+            appendLine("Probed: ${java.text.SimpleDateFormat("HH:mm:ss", java.util.Locale.getDefault()).format(capabilities.probedAt)}")
+            appendLine()
+            appendLine("Sessions:")
+            appendLine(sessionLine("root", report.rootSession))
+            appendLine(sessionLine("shizuku", report.shizukuSession))
+
+            if (report.routes.isNotEmpty()) {
+                appendLine()
+                appendLine("Routes:")
+                report.routes.forEach { route ->
+                    val skipped = if (route.skipped.isEmpty()) "" else "  (skipping ${route.skipped.joinToString()})"
+                    appendLine("  ${route.commandClass.padEnd(20)} → ${route.preferred ?: "-"}$skipped")
+                }
+            }
+        }.trimEnd()
+    }
+
     /**
      * Handle listing installed apps
      * Supports: apps, apps --system, apps --user, apps --all, apps [search]
@@ -751,21 +578,18 @@ class CommandExecutor @Inject constructor(
                 ?.trim()
                 ?.takeIf { it.isNotEmpty() }
 
-            // Get apps from cache
-            val appsList = when {
-                showAll -> appCacheService.getAllApps()
-                showSystem -> appCacheService.getSystemApps()
-                else -> appCacheService.getUserApps()
-            }.let { apps ->
-                if (searchTerm != null) {
-                    apps.filter { app ->
-                        app.name.contains(searchTerm, ignoreCase = true) ||
-                        app.packageName.contains(searchTerm, ignoreCase = true)
-                    }
-                } else {
-                    apps
+            // Get apps from cache; a search term ranks them, best match first
+            val appsList = if (searchTerm != null) {
+                appCacheService.searchApps(searchTerm) { app ->
+                    showAll || app.isSystemApp == showSystem
                 }
-            }.sortedBy { it.name.lowercase() }
+            } else {
+                when {
+                    showAll -> appCacheService.getAllApps()
+                    showSystem -> appCacheService.getSystemApps()
+                    else -> appCacheService.getUserApps()
+                }.sortedBy { it.name.lowercase() }
+            }
 
             if (appsList.isEmpty()) {
                 return ShellResult(
@@ -948,4 +772,316 @@ class CommandExecutor @Inject constructor(
         val version: String,
         val isSystemApp: Boolean
     )
+
+    companion object {
+        private const val CATEGORY_BUILT_IN = "Built-in"
+        private const val CATEGORY_NAVIGATION = "Navigation"
+        private const val CATEGORY_CALCULATOR = "Calculator"
+        private const val CATEGORY_APPS = "Apps"
+        private const val CATEGORY_HELP = "Help"
+
+        // "--all", or "--state" plus its '=' in "--state=on/off"
+        private val FLAG = Regex("--[a-z][a-z-]*=?")
+
+        // Verbs routed to action handlers
+        private val ACTION_VERBS: Map<String, ActionType> = buildMap {
+            fun route(type: ActionType, vararg verbs: String) = verbs.forEach { put(it, type) }
+
+            // App & Settings
+            route(ActionType.OPEN_APP, "open", "launch", "start")
+            route(ActionType.OPEN_SETTINGS, "settings")
+
+            // Communication
+            route(ActionType.MAKE_CALL, "call", "dial")
+            route(ActionType.SEND_SMS, "message", "sms", "text")
+
+            // Media
+            route(ActionType.PLAY_MUSIC, "play")
+            route(ActionType.PAUSE_MEDIA, "pause")
+            route(ActionType.STOP_MEDIA, "stop")
+            route(ActionType.NEXT_TRACK, "next")
+            route(ActionType.PREVIOUS_TRACK, "previous", "prev")
+
+            // Navigation
+            route(ActionType.NAVIGATE_TO, "navigate", "goto", "go")
+
+            // Information queries, handled by target
+            route(ActionType.SYSTEM_COMMAND, "show", "display", "get")
+
+            // File operations
+            route(ActionType.LIST_FILES, "ls", "list")
+            route(ActionType.READ_FILE, "cat", "read")
+            route(ActionType.WRITE_FILE, "write", "echo")
+            route(ActionType.DELETE_FILE, "rm", "delete", "del")
+
+            // System commands (all routed to AdvancedSystemActionHandler)
+            route(
+                ActionType.SYSTEM_COMMAND,
+                "shutdown", "poweroff",
+                "reboot", "restart",
+                "sleep", "suspend",
+                "lock",
+                "wifi",
+                "data", "mobiledata",
+                "airplane", "airplanemode",
+                "bluetooth", "bt",
+                "brightness",
+                "timeout", "screentimeout",
+                "autobrightness",
+                "volume",
+                "mute",
+                "settime",
+                "settimezone",
+                "autotime",
+                "freeze", "disable",
+                "unfreeze", "enable",
+                "hide",
+                "unhide",
+                "performance", "perf",
+                "batterysaver", "powersave",
+                "clearram", "freeram",
+                "clearcache",
+                "dnd", "donotdisturb",
+                "nightmode", "night",
+                "notify",
+                "developermode", "devmode",
+                "adb", "usbdebug",
+                "stayawake",
+                "animations",
+                "location",
+                "sysinfo", "systeminfo"
+            )
+        }
+
+        private const val HELP_BANNER = "═══════════════════════════════════════"
+
+        private const val HELP_HEADER = "Mentra AI Shell v1.0 - System Administrator"
+
+        private val HELP_BODY = """
+            ═══════════════════════════════════════
+            POWER MANAGEMENT (Requires Shizuku):
+            ═══════════════════════════════════════
+            shutdown          Shutdown device
+            reboot            Reboot device
+            reboot --mode=recovery    Reboot to recovery
+            reboot --mode=bootloader  Reboot to bootloader
+            sleep             Put device to sleep
+            lock              Lock screen
+
+            ═══════════════════════════════════════
+            NETWORK CONTROL (Requires Shizuku):
+            ═══════════════════════════════════════
+            wifi --state=on/off       Control WiFi
+            data --state=on/off       Control mobile data
+            airplane --state=on/off   Control airplane mode
+            bluetooth --state=on/off  Control Bluetooth
+
+            ═══════════════════════════════════════
+            DISPLAY & BRIGHTNESS (Requires Shizuku):
+            ═══════════════════════════════════════
+            brightness <0-255>        Set brightness
+            timeout <seconds>         Set screen timeout
+            autobrightness --state=on/off  Auto-brightness
+
+            ═══════════════════════════════════════
+            VOLUME & AUDIO (Requires Shizuku):
+            ═══════════════════════════════════════
+            volume --type=music/ring/notification <0-15>
+            mute --state=on/off       Mute all audio
+
+            ═══════════════════════════════════════
+            INFORMATION QUERIES (No Shizuku needed):
+            ═══════════════════════════════════════
+            show battery      Battery status
+            show storage      Storage information
+            show device       Device information
+            show time         Current time
+            show date         Current date
+
+            ═══════════════════════════════════════
+            CALCULATOR:
+            ═══════════════════════════════════════
+            calc <expr>       Calculate expression
+            1+1               Auto-detect math
+            calc sqrt(144)    Functions supported
+            calc 2^10         Power operations
+            calc 17 mod 5     Modulo operations
+            calc pi * 2       Constants: pi, e
+            x = 3, then 2x+1  Variables, ans = last result
+            calc table x^2 for x in 0..10 step 2
+            calc plot sin(x) for x in 0..360
+            calc mode exact   Exact decimals (calc mode double)
+            calc exact 0.1+0.2  One expression exactly
+            calc precision 50 Digits kept by exact division
+            show steps        Step count today
+            sysinfo           Complete system info
+
+            ═══════════════════════════════════════
+            APP CONTROL:
+            ═══════════════════════════════════════
+            apps              List installed apps
+            apps --ui         Show app picker UI
+            apps --all        List all apps (user + system)
+            apps --system     List system apps only
+            apps [search]     Search apps by name
+            list apps         Same as 'apps'
+            show apps         Same as 'apps'
+            open <app>        Open application
+            settings [type]   Open settings (wifi/bluetooth/etc)
+            freeze <pkg>      Freeze/disable app (Shizuku)
+            unfreeze <pkg>    Unfreeze app (Shizuku)
+            hide <pkg>        Hide app from launcher (Shizuku)
+            unhide <pkg>      Unhide app (Shizuku)
+
+            ═══════════════════════════════════════
+            NAVIGATION:
+            ═══════════════════════════════════════
+            sms --ui          Open messaging UI
+            dialer            Open dialer/phone UI
+            phone             Same as 'dialer'
+
+            ═══════════════════════════════════════
+            PERFORMANCE (Requires Shizuku):
+            ═══════════════════════════════════════
+            performance high/balanced/powersave
+            batterysaver --state=on/off
+            clearram          Clear RAM/kill background
+            clearcache        Clear all app caches
+
+            ═══════════════════════════════════════
+            MESSAGING:
+            ═══════════════════════════════════════
+            inbox             View recent messages
+            inbox [name]      Open contact's inbox
+            inbox [name] [n]  Show last n messages
+                              e.g: inbox mpesa 5
+            unread            Show unread count
+            read [contact]    Read conversation
+            chat [contact]    Same as read
+            reply [message]   Quick reply to open chat
+
+            message [contact] [text]  Send message
+            text [contact] [text]     Send message  
+            sms [number] [text]       Send to number
+
+            alias [name] [contact]    Set contact alias
+            Example: alias wife Jane Doe
+
+            ═══════════════════════════════════════
+            CALLING:
+            ═══════════════════════════════════════
+            call <number>     Make a call
+            call [alias]      Call using alias
+            dial <number>     Open dialer
+
+            ═══════════════════════════════════════
+            FILE OPERATIONS:
+            ═══════════════════════════════════════
+            ls [path]         List files
+            cat <file>        Read file
+            rm <file>         Delete file
+
+            ═══════════════════════════════════════
+            SETTINGS (Requires Shizuku):
+            ═══════════════════════════════════════
+            developermode --state=on/off
+            adb --state=on/off           USB debugging
+            animations <0.0-2.0>         Animation scale
+            location --state=on/off      Location services
+            dnd --state=on/off           Do Not Disturb
+
+            ═══════════════════════════════════════
+            TIPS:
+            ═══════════════════════════════════════
+            • Use quotes for multi-word arguments
+            • Chain commands with ; or &&
+            • Most system commands require Shizuku
+            • Install Shizuku from Play Store for full power
+
+            Total: 80+ commands available!
+            Type 'syshelp' for detailed system command guide.
+        """.trimIndent()
+
+        private val SYS_HELP_TEXT = """
+            ═══════════════════════════════════════
+            MENTRA SYSTEM SHELL - COMPLETE GUIDE
+            ═══════════════════════════════════════
+
+            ⚡ POWER COMMANDS:
+            shutdown                  Shutdown device
+            reboot                    Reboot device  
+            reboot --mode=recovery    Reboot to recovery
+            reboot --mode=bootloader  Reboot to bootloader/fastboot
+            reboot --mode=safe        Reboot in safe mode
+            sleep                     Put device to sleep
+            lock                      Lock screen
+
+            🌐 NETWORK COMMANDS:
+            wifi --state=on           Enable WiFi
+            wifi --state=off          Disable WiFi
+            data --state=on           Enable mobile data
+            data --state=off          Disable mobile data
+            airplane --state=on       Enable airplane mode
+            airplane --state=off      Disable airplane mode
+            bluetooth --state=on      Enable Bluetooth
+            bluetooth --state=off     Disable Bluetooth
+
+            💡 DISPLAY COMMANDS:
+            brightness 128            Set brightness (0-255)
+            brightness 255            Max brightness
+            autobrightness --state=on Enable auto-brightness
+            timeout 30                Screen timeout 30 seconds
+
+            🔊 AUDIO COMMANDS:
+            volume --type=music 10    Set music volume
+            volume --type=ring 15     Set ring volume
+            volume --type=notification 8
+            mute --state=on           Mute all audio
+
+            📱 APP MANAGEMENT:
+            freeze com.example.app    Disable/freeze app
+            unfreeze com.example.app  Enable/unfreeze app
+            hide com.example.app      Hide from launcher
+            unhide com.example.app    Unhide app
+
+            🚀 PERFORMANCE:
+            performance high          High performance mode
+            performance balanced      Balanced mode
+            performance powersave     Power saving mode
+            batterysaver --state=on   Enable battery saver
+            clearram                  Clear RAM
+            clearcache                Clear all app caches
+
+            ⚙️ SETTINGS:
+            developermode --state=on  Enable developer mode
+            adb --state=on            Enable USB debugging
+            animations 0.5            Set animation scale
+            location --state=off      Disable location
+            dnd --state=on            Enable Do Not Disturb
+            nightmode --state=on      Dim, DND, battery saver
+                                      (applied in one batch)
+
+            📊 SYSTEM INFO:
+            show battery              Battery status
+            show storage              Storage info
+            show device               Device info
+            show time                 Current time
+            show date                 Current date
+            sysinfo                   Complete system info
+
+            🖥️ RAW SHELL:
+            sh dumpsys battery        Run a command, output streams
+                                      live (Ctrl+C stops it)
+
+            💾 FILE OPERATIONS:
+            ls /sdcard                List files
+            cat /sdcard/file.txt      Read file
+            rm /sdcard/file.txt       Delete file
+
+            ⚠️  NOTE: Most system commands require Shizuku
+            Install Shizuku from Play Store for full power!
+
+            Type 'help' for quick reference.
+        """.trimIndent()
+    }
 }
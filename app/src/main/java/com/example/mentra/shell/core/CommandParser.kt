@@ -163,9 +163,12 @@ class CommandParser @Inject constructor() {
      * Parse multiple commands (separated by ; or &&)
      */
     fun parseMultiple(input: String): List<ShellCommand> {
-        // Split by ; or &&
-        val commands = input.split(Regex(";|&&"))
-        return commands.map { parse(it) }
+        // Split on ; && || | & outside quotes
+        return try {
+            ShellScriptParser.parse(input).commands().map { parse(it.text) }
+        } catch (e: ShellSyntaxException) {
+            listOf(parse(input))
+        }
     }
 
     /**
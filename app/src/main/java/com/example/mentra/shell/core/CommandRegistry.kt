@@ -0,0 +1,178 @@
+package com.example.mentra.shell.core
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * COMMAND REGISTRY
+ * Verb/alias dispatch through a character trie
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Every phrase a command answers to ("apps", "list apps", "check balance")
+ * is inserted once. Resolving input walks the trie along the input, so the
+ * cost depends on the input length, not on how many commands are
+ * registered. The same specs back `help` and completion.
+ *
+ * Registration is expected to happen up front; lookups after that are
+ * read-only and safe from any thread.
+ */
+class CommandRegistry<T> {
+
+    private class Node<T> {
+        val children = HashMap<Char, Node<T>>(4)
+        val entries = ArrayList<Entry<T>>(1)
+    }
+
+    private class Entry<T>(val spec: CommandSpec, val phrase: String, val target: T)
+
+    private class Fallback<T>(
+        val spec: CommandSpec,
+        val target: T,
+        val predicate: (String) -> Boolean
+    )
+
+    private val root = Node<T>()
+    private val fallbacks = mutableListOf<Fallback<T>>()
+    private val specs = LinkedHashSet<CommandSpec>()
+
+    /** Registered commands, in registration order */
+    val commands: List<CommandSpec> get() = specs.toList()
+
+    /**
+     * Register [spec] under its name and every alias
+     */
+    fun register(spec: CommandSpec, target: T): CommandRegistry<T> {
+        for (phrase in spec.phrases) {
+            val normalized = phrase.trim().lowercase()
+            require(normalized.isNotEmpty()) { "Empty phrase in ${spec.name}" }
+            var node = root
+            for (char in normalized) {
+                node = node.children.getOrPut(char) { Node() }
+            }
+            node.entries.add(Entry(spec, normalized, target))
+        }
+        specs.add(spec)
+        return this
+    }
+
+    /**
+     * Claim input that can't be described by a phrase (e.g. "1+1").
+     * Checked only when no phrase of equal or higher priority matched,
+     * highest priority first.
+     */
+    fun registerFallback(spec: CommandSpec, target: T, predicate: (String) -> Boolean): CommandRegistry<T> {
+        fallbacks.add(Fallback(spec, target, predicate))
+        fallbacks.sortByDescending { it.spec.priority }
+        specs.add(spec)
+        return this
+    }
+
+    /**
+     * Best command for [input]: highest priority, then longest phrase
+     */
+    fun resolve(input: String): CommandMatch<T>? {
+        val text = input.trim()
+        var best: Entry<T>? = null
+
+        var node = root
+        var i = 0
+        while (true) {
+            for (entry in node.entries) {
+                if (entry.spec.match.accepts(text, i) && (best == null || beats(entry, best))) {
+                    best = entry
+                }
+            }
+            if (i == text.length) break
+            node = node.children[text[i].lowercaseChar()] ?: break
+            i++
+        }
+
+        for (fallback in fallbacks) {
+            if (best != null && fallback.spec.priority <= best.spec.priority) break
+            if (fallback.predicate(text)) {
+                return CommandMatch(fallback.spec, fallback.target, phrase = "", args = text)
+            }
+        }
+
+        return best?.let {
+            CommandMatch(it.spec, it.target, it.phrase, text.substring(it.phrase.length).trim())
+        }
+    }
+
+    /**
+     * Commands with a phrase starting with [prefix], for completion
+     */
+    fun complete(prefix: String, limit: Int = 20): List<CommandSpec> {
+        var node = root
+        for (char in prefix.trimStart().lowercase()) {
+            node = node.children[char] ?: return emptyList()
+        }
+
+        val found = LinkedHashSet<CommandSpec>()
+        val stack = ArrayDeque<Node<T>>()
+        stack.addLast(node)
+        while (stack.isNotEmpty()) {
+            val current = stack.removeLast()
+            current.entries.forEach { found.add(it.spec) }
+            current.children.values.forEach { stack.addLast(it) }
+        }
+
+        return found
+            .sortedWith(compareByDescending<CommandSpec> { it.priority }.thenBy { it.name })
+            .take(limit)
+    }
+
+    private fun beats(candidate: Entry<T>, current: Entry<T>): Boolean {
+        if (candidate.spec.priority != current.spec.priority) {
+            return candidate.spec.priority > current.spec.priority
+        }
+        return candidate.phrase.length > current.phrase.length
+    }
+}
+
+/**
+ * How a phrase must line up with the input
+ */
+enum class MatchMode {
+    /** The whole input is the phrase ("dialer") */
+    EXACT,
+    /** Phrase followed by arguments ("call <target>") */
+    WITH_ARGS,
+    /** Phrase alone or with arguments ("history", "history 20") */
+    WORD,
+    /** Input merely starts with the phrase ("balance…") */
+    PREFIX;
+
+    internal fun accepts(input: String, phraseLength: Int): Boolean {
+        val atEnd = phraseLength == input.length
+        val atSpace = !atEnd && input[phraseLength] == ' '
+        return when (this) {
+            EXACT -> atEnd
+            WITH_ARGS -> atSpace
+            WORD -> atEnd || atSpace
+            PREFIX -> true
+        }
+    }
+}
+
+/**
+ * A command's phrases plus the metadata shown by help and completion
+ */
+data class CommandSpec(
+    val name: String,
+    val aliases: List<String> = emptyList(),
+    val match: MatchMode = MatchMode.WORD,
+    val usage: String = name,
+    val description: String = "",
+    val category: String = "",
+    val priority: Int = 0
+) {
+    val phrases: List<String> get() = listOf(name) + aliases
+}
+
+data class CommandMatch<T>(
+    val spec: CommandSpec,
+    val target: T,
+    // Phrase that matched, empty for fallbacks
+    val phrase: String,
+    // Input after the phrase, original case
+    val args: String
+)
@@ -1,5 +1,6 @@
 package com.example.mentra.shell.core
 
+import com.example.mentra.shell.history.ShellHistoryStore
 import com.example.mentra.shell.models.ShellCommand
 import com.example.mentra.shell.models.ShellContext
 import com.example.mentra.shell.models.ShellResult
@@ -12,14 +13,21 @@ import javax.inject.Singleton
 
 /**
  * Manages shell session context
- * Handles environment variables, aliases, history, and session state
+ * Handles environment variables, aliases, history, and session state.
+ * History itself lives in [ShellHistoryStore], shared with the prompt.
  */
 @Singleton
-class ContextManager @Inject constructor() {
+class ContextManager @Inject constructor(
+    private val historyStore: ShellHistoryStore
+) {
 
     private val _currentContext = MutableStateFlow(createNewContext())
     val currentContext: StateFlow<ShellContext> = _currentContext.asStateFlow()
 
+    // Kept outside the context so recording it doesn't copy the context
+    @Volatile
+    private var lastCommand: ShellCommand? = null
+
     /**
      * Create a new shell context
      */
@@ -61,12 +69,10 @@ class ContextManager @Inject constructor() {
     }
 
     /**
-     * Add command to history
+     * Remember the command being run, for !!
      */
-    fun addToHistory(command: ShellCommand) {
-        val context = _currentContext.value
-        context.addToHistory(command)
-        _currentContext.value = context.copy(lastCommand = command)
+    fun setLastCommand(command: ShellCommand) {
+        lastCommand = command
     }
 
     /**
@@ -78,26 +84,31 @@ class ContextManager @Inject constructor() {
     }
 
     /**
-     * Get recent history
+     * Get recent history, oldest first
      */
-    fun getHistory(count: Int = 10): List<ShellCommand> {
-        return _currentContext.value.getRecentHistory(count)
+    fun getHistory(count: Int = 10): List<String> {
+        return historyStore.recent(count)
     }
 
     /**
      * Get full history
      */
-    fun getAllHistory(): List<ShellCommand> {
-        return _currentContext.value.history.toList()
+    fun getAllHistory(): List<String> {
+        return historyStore.all()
+    }
+
+    /**
+     * Distinct history lines containing [query], best first
+     */
+    fun searchHistory(query: String, limit: Int = 10): List<String> {
+        return historyStore.search(query, limit).map { it.command }
     }
 
     /**
      * Clear history
      */
     fun clearHistory() {
-        val context = _currentContext.value
-        context.history.clear()
-        _currentContext.value = context.copy()
+        historyStore.clear()
     }
 
     /**
@@ -194,6 +205,7 @@ class ContextManager @Inject constructor() {
      */
     fun reset() {
         _currentContext.value = createNewContext()
+        lastCommand = null
     }
 
     /**
@@ -207,7 +219,7 @@ class ContextManager @Inject constructor() {
      * Get last command
      */
     fun getLastCommand(): ShellCommand? {
-        return _currentContext.value.lastCommand
+        return lastCommand
     }
 
     /**
@@ -221,7 +233,7 @@ class ContextManager @Inject constructor() {
      * Repeat last command (!! in shell)
      */
     fun getRepeatCommand(): ShellCommand? {
-        return _currentContext.value.lastCommand
+        return lastCommand
     }
 
     /**
@@ -0,0 +1,91 @@
+package com.example.mentra.shell.core
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.produce
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.selects.select
+
+/**
+ * Group items into lists so a fast producer causes one UI update per
+ * batch instead of one per line.
+ *
+ * The first item after a quiet spell goes out on its own straight away,
+ * so a slow producer (one line a second) shows every line at once. Items
+ * that follow within [maxDelayMillis] are held and flushed by a timer at
+ * most [maxDelayMillis] later, or as soon as [maxSize] of them are
+ * waiting. Lines at the end of a burst therefore show up on time even if
+ * the producer then goes quiet. Whatever is left is emitted when the
+ * upstream completes or fails.
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+fun <T> Flow<T>.batched(maxSize: Int, maxDelayMillis: Long): Flow<List<T>> = flow {
+    coroutineScope {
+        val items = produce {
+            try {
+                collect { send(it) }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Throwable) {
+                // Hand the failure over with the items, so pending lines go out first
+                channel.close(e)
+            }
+        }
+        // Ids of expired windows; a restarted window's stale tick is ignored
+        val ticks = Channel<Int>(Channel.UNLIMITED)
+
+        var batch = ArrayList<T>()
+        // Running while batches are being held back
+        var window: Job? = null
+        var windowId = 0
+
+        suspend fun flush() {
+            emit(batch)
+            batch = ArrayList()
+        }
+
+        fun startWindow() {
+            window?.cancel()
+            val id = ++windowId
+            window = launch {
+                delay(maxDelayMillis)
+                ticks.send(id)
+            }
+        }
+
+        var open = true
+        while (open) {
+            select<Unit> {
+                items.onReceiveCatching { result ->
+                    if (result.isClosed) {
+                        open = false
+                        if (batch.isNotEmpty()) flush()
+                        result.exceptionOrNull()?.let { throw it }
+                    } else {
+                        batch.add(result.getOrThrow())
+                        if (window == null || batch.size >= maxSize) {
+                            flush()
+                            startWindow()
+                        }
+                    }
+                }
+                ticks.onReceive { id ->
+                    if (id != windowId) return@onReceive
+                    if (batch.isEmpty()) {
+                        window = null
+                    } else {
+                        flush()
+                        startWindow()
+                    }
+                }
+            }
+        }
+        window?.cancel()
+    }
+}
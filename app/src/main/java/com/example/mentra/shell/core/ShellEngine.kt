@@ -1,9 +1,21 @@
 package com.example.mentra.shell.core
 
+import com.example.mentra.infrastructure.privileged.PrivilegedExecutor
 import com.example.mentra.shell.models.*
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.flow.onStart
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -15,7 +27,8 @@ import javax.inject.Singleton
 class ShellEngine @Inject constructor(
     private val parser: CommandParser,
     private val executor: CommandExecutor,
-    private val contextManager: ContextManager
+    private val contextManager: ContextManager,
+    private val privilegedExecutor: PrivilegedExecutor
 ) {
 
     private val _lastResult = MutableStateFlow<ShellResult?>(null)
@@ -24,6 +37,16 @@ class ShellEngine @Inject constructor(
     private val _isExecuting = MutableStateFlow(false)
     val isExecuting: StateFlow<Boolean> = _isExecuting.asStateFlow()
 
+    // Background (&) jobs outlive the command line that started them
+    private val jobScope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val defaultRunner = ShellScriptRunner(jobScope) { executor.execute(it) }
+
+    /** Background jobs as they finish */
+    val jobEvents: SharedFlow<JobEvent> get() = defaultRunner.jobEvents
+
+    // Commands whose output is streamed rather than returned at the end
+    private val streamingCommands = CommandRegistry<Unit>().register(STREAM_COMMAND, Unit)
+
     /**
      * Execute command
      */
@@ -34,7 +57,7 @@ class ShellEngine @Inject constructor(
         _isExecuting.value = true
 
         return try {
-            val result = executor.execute(command, options)
+            val result = if (isStreamingCommand(command)) collectStream(command) else executor.execute(command, options)
             _lastResult.value = result
             result
         } finally {
@@ -43,16 +66,89 @@ class ShellEngine @Inject constructor(
     }
 
     /**
-     * Execute multiple commands
+     * True if [command] produces output over time and should be run
+     * with [executeStreaming]
      */
-    suspend fun executeMultiple(commands: List<String>): List<ShellResult> {
-        return commands.map { execute(it) }
+    fun isStreamingCommand(command: String): Boolean = streamingCommands.resolve(command) != null
+
+    /**
+     * Execute command, emitting output line by line as it is produced.
+     * The command runs while the flow is collected; cancelling the
+     * collector (Ctrl+C) stops it. Other commands emit their result's
+     * lines once it completes.
+     */
+    fun executeStreaming(command: String): Flow<ShellOutput> {
+        val match = streamingCommands.resolve(command)
+            ?: return flow {
+                val result = execute(command)
+                val type = if (result.status == ResultStatus.SUCCESS) ShellOutputType.SUCCESS else ShellOutputType.ERROR
+                result.message.lineSequence().forEach { emit(ShellOutput(it, type)) }
+            }
+
+        return privilegedExecutor.executeStream(match.args)
+            .map { ShellOutput(it) }
+            .catch { e ->
+                if (e is CancellationException) throw e
+                emit(ShellOutput(e.message ?: "Command failed", ShellOutputType.ERROR))
+            }
+            .onStart { _isExecuting.value = true }
+            .onCompletion { _isExecuting.value = false }
+    }
+
+    private suspend fun collectStream(command: String): ShellResult {
+        val start = System.currentTimeMillis()
+        val lines = StringBuilder()
+        var failed = false
+        executeStreaming(command).collect { output ->
+            if (lines.isNotEmpty()) lines.append('\n')
+            lines.append(output.text)
+            failed = failed || output.type == ShellOutputType.ERROR
+        }
+        return ShellResult(
+            status = if (failed) ResultStatus.FAILURE else ResultStatus.SUCCESS,
+            message = lines.toString(),
+            executionTime = System.currentTimeMillis() - start
+        )
+    }
+
+    /**
+     * Execute a command line with ; && || | and &.
+     * [runner] runs each simple command, so callers can route commands
+     * the engine doesn't own; background jobs report on [jobEvents] for
+     * the default runner and on [ShellScriptRunner.jobEvents] otherwise.
+     */
+    suspend fun executeMultiple(
+        input: String,
+        runner: ShellScriptRunner = defaultRunner
+    ): List<ScriptOutput> {
+        val script = try {
+            ShellScriptParser.parse(input)
+        } catch (e: ShellSyntaxException) {
+            return listOf(ScriptOutput(input, execute(input)))
+        }
+
+        _isExecuting.value = true
+        return try {
+            val outputs = runner.execute(script)
+            _lastResult.value = outputs.lastOrNull()?.result
+            outputs
+        } finally {
+            _isExecuting.value = false
+        }
+    }
+
+    /**
+     * Script runner whose simple commands go through [run], with
+     * background jobs in the engine's job scope
+     */
+    fun scriptRunner(run: suspend (String) -> ShellResult): ShellScriptRunner {
+        return ShellScriptRunner(jobScope, run)
     }
 
     /**
      * Get command history
      */
-    fun getHistory(count: Int = 10): List<ShellCommand> {
+    fun getHistory(count: Int = 10): List<String> {
         return contextManager.getHistory(count)
     }
 
@@ -119,5 +215,13 @@ class ShellEngine @Inject constructor(
     fun importContext(data: String) {
         contextManager.importContext(data)
     }
-}
 
+    companion object {
+        val STREAM_COMMAND = CommandSpec(
+            "sh", listOf("exec"), MatchMode.WITH_ARGS,
+            usage = "sh <command>",
+            description = "Run a privileged shell command, streaming its output",
+            category = "System"
+        )
+    }
+}
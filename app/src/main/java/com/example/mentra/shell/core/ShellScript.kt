@@ -0,0 +1,232 @@
+package com.example.mentra.shell.core
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * SHELL SCRIPT SYNTAX
+ * Quote-aware lexer and AST for ; && || | and trailing &
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * list     := andOr ((';' | '&') andOr?)*
+ * andOr    := pipeline (('&&' | '||') pipeline)*
+ * pipeline := command ('|' command)*
+ *
+ * Tokens and commands are offsets into the input; a command's text is only
+ * copied out when it is run. Operators inside '…' or "…" (or after a
+ * backslash) are plain text, so `sms mom "a; b"` stays one command.
+ */
+
+enum class TokenType {
+    WORD,
+    SEMI,    // ;
+    AND_IF,  // &&
+    OR_IF,   // ||
+    PIPE,    // |
+    AMP,     // &
+    EOF
+}
+
+/**
+ * A token as a [start, end) slice of the source
+ */
+data class Token(
+    val type: TokenType,
+    val start: Int,
+    val end: Int
+) {
+    fun text(source: CharSequence): CharSequence = source.subSequence(start, end)
+}
+
+class ShellSyntaxException(message: String, val position: Int) : IllegalArgumentException(message)
+
+/**
+ * Splits input into words and operators. Quotes are kept in the word
+ * slices (CommandParser strips them); an unterminated quote runs to the
+ * end of the input, matching how CommandParser tokenizes.
+ */
+class ShellLexer(private val source: CharSequence) {
+    private var pos = 0
+
+    fun next(): Token {
+        while (pos < source.length && source[pos].isWhitespace()) pos++
+        if (pos >= source.length) return Token(TokenType.EOF, pos, pos)
+
+        val start = pos
+        val c = source[pos]
+        val n = source.getOrNull(pos + 1)
+        return when {
+            c == ';' -> op(TokenType.SEMI, 1)
+            c == '&' && n == '&' -> op(TokenType.AND_IF, 2)
+            c == '&' -> op(TokenType.AMP, 1)
+            c == '|' && n == '|' -> op(TokenType.OR_IF, 2)
+            c == '|' -> op(TokenType.PIPE, 1)
+            else -> {
+                word()
+                Token(TokenType.WORD, start, pos)
+            }
+        }
+    }
+
+    fun tokenize(): List<Token> {
+        val tokens = mutableListOf<Token>()
+        do {
+            val token = next()
+            tokens.add(token)
+        } while (token.type != TokenType.EOF)
+        return tokens
+    }
+
+    private fun op(type: TokenType, length: Int): Token {
+        val token = Token(type, pos, pos + length)
+        pos += length
+        return token
+    }
+
+    private fun word() {
+        var quote: Char? = null
+        while (pos < source.length) {
+            val c = source[pos]
+            when {
+                quote != null -> if (c == quote) quote = null
+                c == '\\' && pos + 1 < source.length -> pos++
+                c == '"' || c == '\'' -> quote = c
+                c.isWhitespace() || c == ';' || c == '&' || c == '|' -> return
+            }
+            pos++
+        }
+    }
+
+    companion object {
+        /** True if [input] contains an operator outside quotes */
+        fun hasOperators(input: CharSequence): Boolean {
+            val lexer = ShellLexer(input)
+            while (true) {
+                val token = lexer.next()
+                when (token.type) {
+                    TokenType.EOF -> return false
+                    TokenType.WORD -> continue
+                    else -> return true
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Script AST
+ */
+sealed class ShellNode {
+
+    /** One command: the source slice from its first to its last word */
+    class Command(val source: String, val start: Int, val end: Int) : ShellNode() {
+        val text: String get() = source.substring(start, end)
+
+        override fun toString(): String = text
+    }
+
+    class Pipeline(val stages: List<Command>) : ShellNode() {
+        override fun toString(): String = stages.joinToString(" | ")
+    }
+
+    class AndOr(val left: ShellNode, val op: TokenType, val right: ShellNode) : ShellNode() {
+        override fun toString(): String = "$left ${if (op == TokenType.AND_IF) "&&" else "||"} $right"
+    }
+
+    /** Run [node] as a job without waiting for it */
+    class Background(val node: ShellNode) : ShellNode() {
+        override fun toString(): String = "$node &"
+    }
+
+    class Sequence(val items: List<ShellNode>) : ShellNode() {
+        override fun toString(): String = buildString {
+            items.forEachIndexed { i, item ->
+                append(item)
+                if (i < items.lastIndex) append(if (item is Background) " " else "; ")
+            }
+        }
+    }
+
+    /** Every simple command, left to right */
+    fun commands(): List<Command> = when (this) {
+        is Command -> listOf(this)
+        is Pipeline -> stages
+        is AndOr -> left.commands() + right.commands()
+        is Background -> node.commands()
+        is Sequence -> items.flatMap { it.commands() }
+    }
+}
+
+/**
+ * Recursive-descent parser over [ShellLexer] tokens
+ */
+class ShellScriptParser private constructor(private val source: String) {
+    private val tokens = ShellLexer(source).tokenize()
+    private var index = 0
+
+    private val current: Token get() = tokens[index]
+
+    private fun list(): ShellNode {
+        val items = mutableListOf<ShellNode>()
+        while (current.type != TokenType.EOF) {
+            var item = andOr()
+            when (current.type) {
+                TokenType.AMP -> {
+                    index++
+                    item = ShellNode.Background(item)
+                }
+                TokenType.SEMI -> index++
+                TokenType.EOF -> {}
+                else -> throw unexpected()
+            }
+            items.add(item)
+        }
+        if (items.isEmpty()) throw ShellSyntaxException("Empty command", 0)
+        return items.singleOrNull() ?: ShellNode.Sequence(items)
+    }
+
+    private fun andOr(): ShellNode {
+        var node = pipeline()
+        while (current.type == TokenType.AND_IF || current.type == TokenType.OR_IF) {
+            val op = current.type
+            index++
+            node = ShellNode.AndOr(node, op, pipeline())
+        }
+        return node
+    }
+
+    private fun pipeline(): ShellNode {
+        val stages = mutableListOf(command())
+        while (current.type == TokenType.PIPE) {
+            index++
+            stages.add(command())
+        }
+        return stages.singleOrNull() ?: ShellNode.Pipeline(stages)
+    }
+
+    private fun command(): ShellNode.Command {
+        if (current.type != TokenType.WORD) throw unexpected()
+        val start = current.start
+        var end = current.end
+        while (current.type == TokenType.WORD) {
+            end = current.end
+            index++
+        }
+        return ShellNode.Command(source, start, end)
+    }
+
+    private fun unexpected(): ShellSyntaxException {
+        val token = current
+        return if (token.type == TokenType.EOF) {
+            ShellSyntaxException("Unexpected end of input", token.start)
+        } else {
+            ShellSyntaxException("Unexpected '${token.text(source)}' at ${token.start + 1}", token.start)
+        }
+    }
+
+    companion object {
+        /**
+         * Parse [input] into an AST
+         * @throws ShellSyntaxException on a misplaced operator
+         */
+        fun parse(input: String): ShellNode = ShellScriptParser(input).list()
+    }
+}
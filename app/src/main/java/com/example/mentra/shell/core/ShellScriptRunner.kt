@@ -0,0 +1,296 @@
+package com.example.mentra.shell.core
+
+import com.example.mentra.shell.models.ResultStatus
+import com.example.mentra.shell.models.ShellResult
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.channels.SendChannel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * SHELL SCRIPT RUNNER
+ * Evaluates a parsed script: sequences, && / ||, pipelines and & jobs
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * - `a && b` / `a || b` run b only if a succeeded / failed
+ * - `a &` starts a as a job in [jobScope] and moves on; its results
+ *   arrive later on [jobEvents]
+ * - `a | b` runs every stage at once, passing output lines through
+ *   channels. grep/head/tail/wc/sort/uniq consume their input as it
+ *   streams; any other command ignores its input, like a program that
+ *   doesn't read stdin.
+ *
+ * [run] executes one simple command.
+ */
+class ShellScriptRunner(
+    private val jobScope: CoroutineScope,
+    private val run: suspend (String) -> ShellResult
+) {
+    private val nextJobId = AtomicInteger(1)
+
+    private val _jobEvents = MutableSharedFlow<JobEvent>(extraBufferCapacity = 64)
+    val jobEvents: SharedFlow<JobEvent> = _jobEvents.asSharedFlow()
+
+    /**
+     * Run [script] and return the foreground output, one entry per
+     * command or pipeline, in order
+     */
+    suspend fun execute(script: ShellNode): List<ScriptOutput> {
+        val outputs = mutableListOf<ScriptOutput>()
+        eval(script, outputs)
+        return outputs
+    }
+
+    private suspend fun eval(node: ShellNode, outputs: MutableList<ScriptOutput>): ResultStatus {
+        return when (node) {
+            is ShellNode.Command -> {
+                val result = runCommand(node.text)
+                outputs.add(ScriptOutput(node.text, result))
+                result.status
+            }
+
+            is ShellNode.Pipeline -> {
+                val result = runPipeline(node)
+                outputs.add(ScriptOutput(node.toString(), result))
+                result.status
+            }
+
+            is ShellNode.AndOr -> {
+                val left = eval(node.left, outputs)
+                val succeeded = left == ResultStatus.SUCCESS
+                val runRight = if (node.op == TokenType.AND_IF) succeeded else !succeeded
+                if (runRight) eval(node.right, outputs) else left
+            }
+
+            is ShellNode.Sequence -> {
+                var status = ResultStatus.SUCCESS
+                for (item in node.items) status = eval(item, outputs)
+                status
+            }
+
+            is ShellNode.Background -> {
+                val id = nextJobId.getAndIncrement()
+                val text = node.node.toString()
+                jobScope.launch {
+                    val jobOutputs = mutableListOf<ScriptOutput>()
+                    val status = try {
+                        eval(node.node, jobOutputs)
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        jobOutputs.add(ScriptOutput(text, failure(e)))
+                        ResultStatus.FAILURE
+                    }
+                    _jobEvents.emit(JobEvent(id, text, status, jobOutputs))
+                }
+                outputs.add(ScriptOutput("$text &", ShellResult(ResultStatus.SUCCESS, "[$id] started")))
+                ResultStatus.SUCCESS
+            }
+        }
+    }
+
+    private suspend fun runCommand(text: String): ShellResult {
+        return try {
+            run(text)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            failure(e)
+        }
+    }
+
+    private suspend fun runPipeline(pipeline: ShellNode.Pipeline): ShellResult = coroutineScope {
+        val start = System.currentTimeMillis()
+        val statuses = arrayOfNulls<ResultStatus>(pipeline.stages.size)
+        var upstream: ReceiveChannel<String>? = null
+
+        pipeline.stages.forEachIndexed { i, stage ->
+            val input = upstream
+            val output = Channel<String>(PIPE_CAPACITY)
+            launch {
+                try {
+                    statuses[i] = runStage(stage.text, input, output)
+                } finally {
+                    output.close()
+                }
+            }
+            upstream = output
+        }
+
+        val lines = mutableListOf<String>()
+        for (line in upstream!!) lines.add(line)
+
+        ShellResult(
+            status = statuses.last() ?: ResultStatus.FAILURE,
+            message = lines.joinToString("\n"),
+            executionTime = System.currentTimeMillis() - start
+        )
+    }
+
+    private suspend fun runStage(
+        text: String,
+        input: ReceiveChannel<String>?,
+        output: SendChannel<String>
+    ): ResultStatus {
+        if (input != null) {
+            val filter = PipeFilter.parse(text)
+            if (filter != null) return filter.run(input, output)
+            // Let the upstream stage finish rather than block on a full channel
+            for (ignored in input) { }
+        }
+
+        val result = runCommand(text)
+        result.message.lineSequence().forEach { output.send(it) }
+        return result.status
+    }
+
+    private fun failure(e: Exception) = ShellResult(
+        status = ResultStatus.FAILURE,
+        message = "Execution failed: ${e.message}",
+        error = e
+    )
+
+    companion object {
+        private const val PIPE_CAPACITY = 64
+    }
+}
+
+/**
+ * Output of one command or pipeline in a script
+ */
+data class ScriptOutput(
+    val command: String,
+    val result: ShellResult
+)
+
+/**
+ * A background job finished
+ */
+data class JobEvent(
+    val id: Int,
+    val command: String,
+    val status: ResultStatus,
+    val outputs: List<ScriptOutput>
+)
+
+/**
+ * Line filters usable after `|`; they read their input as it streams
+ */
+internal sealed class PipeFilter {
+    abstract suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus
+
+    class Grep(private val pattern: String, private val ignoreCase: Boolean, private val invert: Boolean) : PipeFilter() {
+        override suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus {
+            var matched = false
+            for (line in input) {
+                if (line.contains(pattern, ignoreCase) != invert) {
+                    matched = true
+                    output.send(line)
+                }
+            }
+            return if (matched) ResultStatus.SUCCESS else ResultStatus.FAILURE
+        }
+    }
+
+    class Head(private val count: Int) : PipeFilter() {
+        override suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus {
+            var sent = 0
+            for (line in input) {
+                // Keep draining so the upstream stage can finish
+                if (sent < count) {
+                    output.send(line)
+                    sent++
+                }
+            }
+            return ResultStatus.SUCCESS
+        }
+    }
+
+    class Tail(private val count: Int) : PipeFilter() {
+        override suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus {
+            val last = ArrayDeque<String>(count)
+            for (line in input) {
+                if (count == 0) continue
+                if (last.size == count) last.removeFirst()
+                last.addLast(line)
+            }
+            last.forEach { output.send(it) }
+            return ResultStatus.SUCCESS
+        }
+    }
+
+    class Count(private val linesOnly: Boolean) : PipeFilter() {
+        override suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus {
+            var lines = 0
+            var words = 0
+            var chars = 0
+            for (line in input) {
+                lines++
+                words += line.split(WHITESPACE).count { it.isNotEmpty() }
+                chars += line.length + 1
+            }
+            output.send(if (linesOnly) "$lines" else "$lines $words $chars")
+            return ResultStatus.SUCCESS
+        }
+    }
+
+    class Sort(private val reverse: Boolean) : PipeFilter() {
+        override suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus {
+            val lines = mutableListOf<String>()
+            for (line in input) lines.add(line)
+            lines.sort()
+            if (reverse) lines.reverse()
+            lines.forEach { output.send(it) }
+            return ResultStatus.SUCCESS
+        }
+    }
+
+    object Uniq : PipeFilter() {
+        override suspend fun run(input: ReceiveChannel<String>, output: SendChannel<String>): ResultStatus {
+            var previous: String? = null
+            for (line in input) {
+                if (line != previous) output.send(line)
+                previous = line
+            }
+            return ResultStatus.SUCCESS
+        }
+    }
+
+    companion object {
+        private val WHITESPACE = Regex("\\s+")
+
+        fun parse(text: String): PipeFilter? {
+            val words = text.trim().split(WHITESPACE)
+            val flags = words.drop(1).filter { it.startsWith("-") && it.length > 1 }.toSet()
+            val args = words.drop(1).filterNot { it in flags }.map { it.trim('"', '\'') }
+            return when (words.first().lowercase()) {
+                "grep" -> {
+                    val pattern = text.trim().substringAfter(' ', "")
+                        .split(WHITESPACE).filterNot { it in flags }.joinToString(" ").trim('"', '\'')
+                    if (pattern.isEmpty()) null else Grep(pattern, "-i" in flags, "-v" in flags)
+                }
+                "head" -> Head(count(args, flags))
+                "tail" -> Tail(count(args, flags))
+                "wc" -> Count("-l" in flags)
+                "sort" -> Sort("-r" in flags)
+                "uniq" -> Uniq
+                else -> null
+            }
+        }
+
+        // "head 5", "head -5" or "head -n 5"; 10 by default
+        private fun count(args: List<String>, flags: Set<String>): Int {
+            return args.firstOrNull()?.toIntOrNull()
+                ?: flags.firstNotNullOfOrNull { it.drop(1).toIntOrNull() }
+                ?: 10
+        }
+    }
+}
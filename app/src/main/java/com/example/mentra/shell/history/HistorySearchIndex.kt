@@ -0,0 +1,266 @@
+package com.example.mentra.shell.history
+
+import kotlin.math.ln
+
+/**
+ * A distinct history line and how it has been used
+ */
+data class CommandStats(
+    val command: String,
+    val uses: Int,
+    val lastUsed: Long
+)
+
+data class HistoryMatch(
+    val command: String,
+    // Where the query starts in [command]
+    val matchStart: Int,
+    val score: Double,
+    val lastUsed: Long,
+    val uses: Int = 1
+)
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * HISTORY SEARCH INDEX
+ * Distinct history lines, found by substring and ranked by frecency
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Every distinct line is one entry, so repeats add to its use count
+ * rather than to the result list. Entries are indexed by the trigrams
+ * of their lower-cased text: a query of three or more characters only
+ * looks at entries holding all of its trigrams, then checks the
+ * substring. Shorter queries scan the entries directly.
+ *
+ * Hits are ranked by how the query matched (whole line, prefix, word
+ * start, elsewhere) times frecency, a mix of how often and how recently
+ * the line was used; only the top-k are kept while scanning.
+ *
+ * Use a [Session] for per-keystroke searching: typing one more character
+ * only re-checks the previous hits. All methods are synchronized.
+ */
+class HistorySearchIndex {
+
+    private class Entry(val command: String, val lower: String, var uses: Int, var lastUsed: Long)
+
+    private val entries = ArrayList<Entry>()
+    private val ids = HashMap<String, Int>()
+    // Postings are entry ids in ascending order, as entries are only appended
+    private val trigrams = HashMap<Long, IntList>()
+
+    // Bumped when entries are added or removed, so sessions know to start over
+    private var version = 0
+
+    @get:Synchronized
+    val size: Int get() = entries.size
+
+    /**
+     * A use of [command] at [timestamp]
+     */
+    @Synchronized
+    fun record(command: String, timestamp: Long) {
+        val id = ids[command]
+        if (id != null) {
+            val entry = entries[id]
+            entry.uses++
+            if (timestamp > entry.lastUsed) entry.lastUsed = timestamp
+        } else {
+            insert(command, 1, timestamp)
+        }
+    }
+
+    /**
+     * Merge usage counted elsewhere, e.g. loaded from the database
+     */
+    @Synchronized
+    fun addAll(stats: List<CommandStats>) {
+        for (stat in stats) {
+            val id = ids[stat.command]
+            if (id != null) {
+                val entry = entries[id]
+                entry.uses += stat.uses
+                if (stat.lastUsed > entry.lastUsed) entry.lastUsed = stat.lastUsed
+            } else {
+                insert(stat.command, stat.uses, stat.lastUsed)
+            }
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        ids.clear()
+        trigrams.clear()
+        version++
+    }
+
+    /**
+     * One-shot search, see [Session.search]
+     */
+    fun search(query: String, limit: Int = 10, now: Long = System.currentTimeMillis()): List<HistoryMatch> =
+        newSession().search(query, limit, now)
+
+    fun newSession(): Session = Session()
+
+    /**
+     * Search state for one query being typed. Not thread-safe; use one
+     * per search field.
+     */
+    inner class Session internal constructor() {
+        private var lastQuery: String? = null
+        private var lastHits = IntArray(0)
+        private var lastVersion = -1
+
+        fun search(query: String, limit: Int = 10, now: Long = System.currentTimeMillis()): List<HistoryMatch> =
+            synchronized(this@HistorySearchIndex) {
+                val needle = query.lowercase()
+                if (needle.isEmpty() || limit <= 0) return@synchronized emptyList()
+
+                val previous = lastQuery
+                val hits = if (previous != null && lastVersion == version && needle.contains(previous)) {
+                    // Anything matching the longer query matched the shorter one
+                    filter(lastHits, needle)
+                } else {
+                    find(needle)
+                }
+                lastQuery = needle
+                lastHits = hits
+                lastVersion = version
+
+                rank(hits, needle, limit, now)
+            }
+    }
+
+    private fun insert(command: String, uses: Int, lastUsed: Long) {
+        val id = entries.size
+        val entry = Entry(command, command.lowercase(), uses, lastUsed)
+        entries.add(entry)
+        ids[command] = id
+        val seen = HashSet<Long>()
+        forEachTrigram(entry.lower) { key ->
+            if (seen.add(key)) trigrams.getOrPut(key) { IntList() }.add(id)
+        }
+        version++
+    }
+
+    private fun find(needle: String): IntArray {
+        if (needle.length < 3) return filter(null, needle)
+
+        // Walk the shortest posting list, probing the others
+        val lists = ArrayList<IntList>()
+        forEachTrigram(needle) { key -> lists.add(trigrams[key] ?: return IntArray(0)) }
+        lists.sortBy { it.size }
+        val shortest = lists[0]
+        val result = IntList()
+        for (i in 0 until shortest.size) {
+            val id = shortest[i]
+            var inAll = true
+            for (l in 1 until lists.size) {
+                if (!lists[l].containsSorted(id)) {
+                    inAll = false
+                    break
+                }
+            }
+            if (inAll && entries[id].lower.contains(needle)) result.add(id)
+        }
+        return result.toArray()
+    }
+
+    // Entries among [candidates] (all entries if null) containing [needle]
+    private fun filter(candidates: IntArray?, needle: String): IntArray {
+        val result = IntList()
+        if (candidates == null) {
+            for (id in entries.indices) if (entries[id].lower.contains(needle)) result.add(id)
+        } else {
+            for (id in candidates) if (entries[id].lower.contains(needle)) result.add(id)
+        }
+        return result.toArray()
+    }
+
+    private fun rank(hits: IntArray, needle: String, limit: Int, now: Long): List<HistoryMatch> {
+        // Top [limit] kept sorted best first; only the winners become HistoryMatch objects
+        val topIds = IntArray(limit)
+        val topScores = DoubleArray(limit)
+        var count = 0
+        for (id in hits) {
+            val entry = entries[id]
+            val score = quality(entry.lower, needle, entry.lower.indexOf(needle)) * frecency(entry, now)
+            if (count == limit && !beats(score, entry, topScores[limit - 1], entries[topIds[limit - 1]])) continue
+
+            var slot = if (count < limit) count++ else limit - 1
+            while (slot > 0 && beats(score, entry, topScores[slot - 1], entries[topIds[slot - 1]])) {
+                topIds[slot] = topIds[slot - 1]
+                topScores[slot] = topScores[slot - 1]
+                slot--
+            }
+            topIds[slot] = id
+            topScores[slot] = score
+        }
+
+        return List(count) { rank ->
+            val entry = entries[topIds[rank]]
+            HistoryMatch(entry.command, entry.lower.indexOf(needle), topScores[rank], entry.lastUsed, entry.uses)
+        }
+    }
+
+    // The more recent line wins ties
+    private fun beats(score: Double, entry: Entry, otherScore: Double, other: Entry): Boolean =
+        score > otherScore || (score == otherScore && entry.lastUsed > other.lastUsed)
+
+    private fun quality(lower: String, needle: String, start: Int): Double = when {
+        lower.length == needle.length -> QUALITY_EXACT
+        start == 0 -> QUALITY_PREFIX
+        !lower[start - 1].isLetterOrDigit() -> QUALITY_WORD
+        else -> QUALITY_SUBSTRING
+    }
+
+    // Recency bucket times a log of the use count
+    private fun frecency(entry: Entry, now: Long): Double {
+        val age = now - entry.lastUsed
+        val recency = when {
+            age < 4 * HOUR -> 100.0
+            age < DAY -> 70.0
+            age < 7 * DAY -> 50.0
+            age < 30 * DAY -> 30.0
+            else -> 10.0
+        }
+        return recency * ln(1.0 + entry.uses)
+    }
+
+    private inline fun forEachTrigram(text: String, action: (Long) -> Unit) {
+        for (i in 0..text.length - 3) {
+            action(
+                (text[i].code.toLong() shl 32) or
+                    (text[i + 1].code.toLong() shl 16) or
+                    text[i + 2].code.toLong()
+            )
+        }
+    }
+
+    private class IntList {
+        private var data = IntArray(4)
+        var size = 0
+            private set
+
+        fun add(value: Int) {
+            if (size == data.size) data = data.copyOf(size * 2)
+            data[size++] = value
+        }
+
+        operator fun get(index: Int): Int = data[index]
+
+        fun containsSorted(value: Int): Boolean = java.util.Arrays.binarySearch(data, 0, size, value) >= 0
+
+        fun toArray(): IntArray = data.copyOf(size)
+    }
+
+    companion object {
+        private const val QUALITY_EXACT = 3.0
+        private const val QUALITY_PREFIX = 2.0
+        private const val QUALITY_WORD = 1.5
+        private const val QUALITY_SUBSTRING = 1.0
+
+        private const val HOUR = 3_600_000L
+        private const val DAY = 24 * HOUR
+    }
+}
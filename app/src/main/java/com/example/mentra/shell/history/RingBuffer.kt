@@ -0,0 +1,65 @@
+package com.example.mentra.shell.history
+
+/**
+ * Fixed-capacity list that drops its oldest item when full. Adding is
+ * O(1); indices run from the oldest item (0) to the newest.
+ *
+ * Not thread-safe; [ShellHistoryStore] guards its buffer with a lock.
+ */
+class RingBuffer<T>(val capacity: Int) {
+
+    init {
+        require(capacity > 0) { "Capacity must be positive" }
+    }
+
+    private val items = arrayOfNulls<Any?>(capacity)
+    // Slot of the oldest item
+    private var head = 0
+
+    var size = 0
+        private set
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun add(item: T) {
+        if (size < capacity) {
+            items[(head + size) % capacity] = item
+            size++
+        } else {
+            items[head] = item
+            head = (head + 1) % capacity
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    operator fun get(index: Int): T {
+        if (index !in 0 until size) throw IndexOutOfBoundsException("Index $index, size $size")
+        return items[(head + index) % capacity] as T
+    }
+
+    fun lastOrNull(): T? = if (size == 0) null else get(size - 1)
+
+    /** The newest [count] items, oldest first */
+    fun takeLast(count: Int): List<T> {
+        val n = count.coerceIn(0, size)
+        return List(n) { get(size - n + it) }
+    }
+
+    fun toList(): List<T> = takeLast(size)
+
+    /**
+     * Put [older] (oldest first) in front of the current items, keeping
+     * the newest [capacity] of the combined list
+     */
+    fun prependAll(older: List<T>) {
+        val combined = (older + toList()).takeLast(capacity)
+        clear()
+        combined.forEach(::add)
+    }
+
+    fun clear() {
+        items.fill(null)
+        head = 0
+        size = 0
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.mentra.shell.history
+
+/**
+ * Terminal scrollback: the newest [maxLines] lines of output, each with a
+ * stable id. Ids count up from the first line ever appended and survive
+ * eviction, so a list keyed by id keeps its items when old lines drop
+ * off the top.
+ *
+ * Lines live in fixed-size chunks. Appending fills the last chunk (or
+ * starts a new one) and, once over the cap, advances past the oldest line,
+ * dropping its chunk when it has been passed entirely, so both are O(1).
+ * Slots are written once and never reused, which lets [snapshot] share
+ * the chunks instead of copying lines.
+ *
+ * Not thread-safe; ShellViewModel only touches it on the main thread.
+ */
+class Scrollback<T>(maxLines: Int) {
+
+    companion object {
+        const val CHUNK_SIZE = 256
+    }
+
+    init {
+        require(maxLines > 0) { "Line cap must be positive" }
+    }
+
+    var maxLines = maxLines
+        private set
+
+    private val chunks = ArrayDeque<Array<Any?>>()
+    // Slot of the oldest line in the first chunk
+    private var headOffset = 0
+    // Slots used in the last chunk
+    private var tailFill = 0
+
+    var size = 0
+        private set
+
+    // Id of the oldest line still kept
+    var firstId = 0L
+        private set
+
+    fun isEmpty(): Boolean = size == 0
+
+    /**
+     * Add [line] as the newest line and return its id
+     */
+    fun append(line: T): Long {
+        if (chunks.isEmpty() || tailFill == CHUNK_SIZE) {
+            chunks.addLast(arrayOfNulls(CHUNK_SIZE))
+            tailFill = 0
+        }
+        chunks.last()[tailFill++] = line
+        size++
+        val id = firstId + size - 1
+        if (size > maxLines) dropOldest(size - maxLines)
+        return id
+    }
+
+    fun appendAll(lines: Iterable<T>) {
+        lines.forEach { append(it) }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    operator fun get(index: Int): T {
+        if (index !in 0 until size) throw IndexOutOfBoundsException("Index $index, size $size")
+        val slot = headOffset + index
+        return chunks[slot / CHUNK_SIZE][slot % CHUNK_SIZE] as T
+    }
+
+    fun idAt(index: Int): Long = firstId + index
+
+    /**
+     * Index of the newest line at or before [from] that matches, or -1
+     */
+    inline fun indexOfLast(from: Int = size - 1, predicate: (T) -> Boolean): Int {
+        for (index in from.coerceAtMost(size - 1) downTo 0) {
+            if (predicate(get(index))) return index
+        }
+        return -1
+    }
+
+    /**
+     * Index of the oldest line at or after [from] that matches, or -1
+     */
+    inline fun indexOfFirst(from: Int = 0, predicate: (T) -> Boolean): Int {
+        for (index in from.coerceAtLeast(0) until size) {
+            if (predicate(get(index))) return index
+        }
+        return -1
+    }
+
+    /**
+     * Change the cap; shrinking drops the oldest lines
+     */
+    fun resize(maxLines: Int) {
+        require(maxLines > 0) { "Line cap must be positive" }
+        this.maxLines = maxLines
+        if (size > maxLines) dropOldest(size - maxLines)
+    }
+
+    fun clear() {
+        // Snapshots may still read the old chunks, so drop them rather than clearing them
+        firstId += size
+        chunks.clear()
+        headOffset = 0
+        tailFill = 0
+        size = 0
+    }
+
+    /**
+     * Immutable view of the current lines. Costs one reference per chunk;
+     * later appends and evictions don't show through.
+     */
+    fun snapshot(): ScrollbackSnapshot<T> =
+        ScrollbackSnapshot(chunks.toTypedArray(), headOffset, size, firstId)
+
+    private fun dropOldest(count: Int) {
+        var remaining = count
+        while (remaining > 0) {
+            val used = if (chunks.size == 1) tailFill else CHUNK_SIZE
+            val taken = minOf(remaining, used - headOffset)
+            headOffset += taken
+            size -= taken
+            firstId += taken
+            remaining -= taken
+            if (headOffset == CHUNK_SIZE && chunks.size > 1) {
+                chunks.removeFirst()
+                headOffset = 0
+            }
+        }
+        if (size == 0) {
+            chunks.clear()
+            headOffset = 0
+            tailFill = 0
+        }
+    }
+}
+
+/**
+ * Lines of a [Scrollback] as they were when the snapshot was taken.
+ * Deliberately not a List: equality is identity, so publishing one in a
+ * StateFlow never compares lines.
+ */
+class ScrollbackSnapshot<T> internal constructor(
+    private val chunks: Array<Array<Any?>>,
+    private val headOffset: Int,
+    val size: Int,
+    // Id of line 0
+    val firstId: Long
+) {
+    companion object {
+        fun <T> empty(): ScrollbackSnapshot<T> = ScrollbackSnapshot(emptyArray(), 0, 0, 0L)
+    }
+
+    // Id of the newest line; changes with every append, even at the cap
+    val lastId: Long get() = firstId + size - 1
+
+    fun isEmpty(): Boolean = size == 0
+
+    @Suppress("UNCHECKED_CAST")
+    operator fun get(index: Int): T {
+        if (index !in 0 until size) throw IndexOutOfBoundsException("Index $index, size $size")
+        val slot = headOffset + index
+        return chunks[slot / Scrollback.CHUNK_SIZE][slot % Scrollback.CHUNK_SIZE] as T
+    }
+
+    fun idAt(index: Int): Long = firstId + index
+
+    /**
+     * Index of the line with [id], or -1 if it isn't in this snapshot
+     */
+    fun indexOfId(id: Long): Int {
+        val index = id - firstId
+        return if (index in 0 until size) index.toInt() else -1
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.mentra.shell.history
+
+import androidx.room.withTransaction
+import com.example.mentra.core.data.local.MentraDatabase
+import com.example.mentra.core.data.local.dao.ShellHistoryDao
+import com.example.mentra.core.data.local.entity.ShellHistoryEntity
+import com.example.mentra.shell.settings.ShellSettingsManager
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import java.util.UUID
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * SHELL HISTORY STORE
+ * Lines typed at the prompt, kept in memory and saved in the background
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * The newest lines live in a [RingBuffer] sized by the history size
+ * setting, so adding one never shifts the rest. Every line is also
+ * queued for a single writer coroutine, which saves whatever arrived
+ * within [BATCH_WINDOW_MILLIS] in one transaction and keeps the table
+ * to [MAX_STORED_COMMANDS] rows.
+ *
+ * Earlier sessions are loaded in the background when the store is
+ * created; the prompt works straight away and older lines slot in
+ * behind anything typed in the meantime.
+ *
+ * Every line ever saved is also counted in a [HistorySearchIndex] for
+ * reverse search, one entry per distinct line.
+ */
+@Singleton
+class ShellHistoryStore @Inject constructor(
+    private val database: MentraDatabase,
+    private val dao: ShellHistoryDao,
+    settings: ShellSettingsManager
+) {
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val lock = Any()
+    private val writes = Channel<Write>(Channel.UNLIMITED)
+    private val sessionId = UUID.randomUUID().toString()
+
+    private var buffer = RingBuffer<String>(settings.historySize.value)
+    private val searchIndex = HistorySearchIndex()
+
+    // Set by clear() so a restore still in flight doesn't bring lines back
+    private var discardRestore = false
+
+    private val _isRestored = MutableStateFlow(false)
+    val isRestored: StateFlow<Boolean> = _isRestored.asStateFlow()
+
+    init {
+        scope.launch {
+            restore()
+            // Started after the restore so it never reads this session's rows
+            writeLoop()
+        }
+        scope.launch {
+            settings.historySize.collect(::resize)
+        }
+    }
+
+    /**
+     * Record [command], unless it repeats the previous line
+     */
+    fun add(command: String) {
+        val timestamp = System.currentTimeMillis()
+        synchronized(lock) {
+            if (buffer.lastOrNull() == command) return
+            buffer.add(command)
+            searchIndex.record(command, timestamp)
+        }
+        writes.trySend(Write.Insert(ShellHistoryEntity(command = command, timestamp = timestamp, sessionId = sessionId)))
+    }
+
+    val size: Int get() = synchronized(lock) { buffer.size }
+
+    /** The newest [count] lines, oldest first */
+    fun recent(count: Int): List<String> = synchronized(lock) { buffer.takeLast(count) }
+
+    fun all(): List<String> = synchronized(lock) { buffer.toList() }
+
+    /**
+     * Line [offset] steps back from the newest (0 is the newest), or null
+     * past the oldest. Counting from the newest keeps arrow-key
+     * navigation stable while a restore prepends older lines.
+     */
+    fun fromNewest(offset: Int): String? = synchronized(lock) {
+        if (offset !in 0 until buffer.size) null else buffer[buffer.size - 1 - offset]
+    }
+
+    /**
+     * Distinct lines containing [query], best first
+     */
+    fun search(query: String, limit: Int = 10): List<HistoryMatch> = searchIndex.search(query, limit)
+
+    /**
+     * Search state for a query typed one key at a time (reverse-i-search)
+     */
+    fun newSearch(): HistorySearchIndex.Session = searchIndex.newSession()
+
+    /**
+     * Forget every line, in memory and on disk
+     */
+    fun clear() {
+        synchronized(lock) {
+            buffer.clear()
+            searchIndex.clear()
+            if (!_isRestored.value) discardRestore = true
+        }
+        writes.trySend(Write.Clear)
+    }
+
+    private suspend fun restore() {
+        try {
+            val rows = dao.getRecent(synchronized(lock) { buffer.capacity })
+            val stats = dao.getCommandUsage().map { CommandStats(it.command, it.uses, it.lastUsed) }
+            synchronized(lock) {
+                if (!discardRestore) {
+                    buffer.prependAll(rows.asReversed().map { it.command })
+                    searchIndex.addAll(stats)
+                }
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            android.util.Log.e("ShellHistory", "Failed to restore history", e)
+        } finally {
+            _isRestored.value = true
+        }
+    }
+
+    private suspend fun writeLoop() {
+        for (first in writes) {
+            // Lines typed in quick succession share one transaction
+            delay(BATCH_WINDOW_MILLIS)
+            val batch = mutableListOf(first)
+            while (batch.size < MAX_BATCH) batch.add(writes.tryReceive().getOrNull() ?: break)
+            persist(batch)
+        }
+    }
+
+    private suspend fun persist(batch: List<Write>) {
+        try {
+            database.withTransaction {
+                val rows = ArrayList<ShellHistoryEntity>(batch.size)
+                for (write in batch) {
+                    when (write) {
+                        is Write.Insert -> rows.add(write.row)
+                        Write.Clear -> {
+                            rows.clear()
+                            dao.clearHistory()
+                        }
+                    }
+                }
+                if (rows.isNotEmpty()) {
+                    dao.insertAll(rows)
+                    dao.trimTo(MAX_STORED_COMMANDS)
+                }
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            android.util.Log.e("ShellHistory", "Failed to save ${batch.size} history entries", e)
+        }
+    }
+
+    private fun resize(capacity: Int) = synchronized(lock) {
+        if (capacity == buffer.capacity) return@synchronized
+        val lines = buffer.toList()
+        buffer = RingBuffer<String>(capacity).also { it.prependAll(lines) }
+    }
+
+    private sealed interface Write {
+        class Insert(val row: ShellHistoryEntity) : Write
+        data object Clear : Write
+    }
+
+    companion object {
+        const val MAX_STORED_COMMANDS = 100_000
+        private const val BATCH_WINDOW_MILLIS = 250L
+        private const val MAX_BATCH = 500
+    }
+}
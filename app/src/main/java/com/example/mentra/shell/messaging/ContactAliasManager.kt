@@ -10,6 +10,7 @@ import com.example.mentra.messaging.Contact
 import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.map
 import javax.inject.Inject
@@ -73,15 +74,20 @@ class ContactAliasManager @Inject constructor(
         )
     }
 
+    /**
+     * All saved aliases, re-emitted whenever they change
+     */
+    val aliases: Flow<Map<String, ContactAlias>> = context.aliasDataStore.data.map { preferences ->
+        val json = preferences[ALIASES_KEY] ?: "{}"
+        val type = object : TypeToken<Map<String, ContactAlias>>() {}.type
+        gson.fromJson<Map<String, ContactAlias>>(json, type) ?: emptyMap()
+    }
+
     /**
      * Get all saved aliases
      */
     suspend fun getAllAliases(): Map<String, ContactAlias> {
-        return context.aliasDataStore.data.map { preferences ->
-            val json = preferences[ALIASES_KEY] ?: "{}"
-            val type = object : TypeToken<Map<String, ContactAlias>>() {}.type
-            gson.fromJson<Map<String, ContactAlias>>(json, type) ?: emptyMap()
-        }.first()
+        return aliases.first()
     }
 
     /**
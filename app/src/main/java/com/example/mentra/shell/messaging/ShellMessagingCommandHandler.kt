@@ -1,6 +1,9 @@
 package com.example.mentra.shell.messaging
 
 import com.example.mentra.messaging.Contact
+import com.example.mentra.shell.core.CommandRegistry
+import com.example.mentra.shell.core.CommandSpec
+import com.example.mentra.shell.core.MatchMode
 import com.example.mentra.shell.models.ShellResult
 import com.example.mentra.shell.models.ResultStatus
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -72,27 +75,49 @@ class ShellMessagingCommandHandler @Inject constructor(
     private val _showContactPicker = MutableStateFlow<ContactPickerRequest?>(null)
     val showContactPicker: StateFlow<ContactPickerRequest?> = _showContactPicker.asStateFlow()
 
+    companion object {
+        private const val CATEGORY = "Messaging"
+
+        /**
+         * Messaging UI navigation; handled by the shell executor, never by this handler
+         */
+        val UI_COMMANDS = CommandSpec(
+            "sms --ui", listOf("messages --ui", "open messages", "open sms"), MatchMode.EXACT,
+            description = "Open messaging UI", category = "Navigation"
+        )
+    }
+
     /**
-     * Check if the input matches messaging commands
+     * Phrases this handler answers to, registered with the shell's command registry
      */
-    fun isMessagingCommand(input: String): Boolean {
-        val lowercaseInput = input.lowercase().trim()
+    val commands: List<CommandSpec> = listOf(
+        CommandSpec("send", listOf("text", "sms", "message", "msg", "compose"), MatchMode.PREFIX,
+            usage = "message [contact] [text]", description = "Send message", category = CATEGORY),
+        CommandSpec("inbox", listOf("messages", "unread", "read", "chat"), MatchMode.PREFIX,
+            usage = "inbox [name] [n]", description = "Read messages", category = CATEGORY),
+        CommandSpec("alias", listOf("set alias", "setup"), MatchMode.PREFIX,
+            usage = "alias [name] [contact]", description = "Set contact alias", category = CATEGORY)
+    )
 
-        // Exclude UI navigation commands - these should be handled by the shell executor
-        if (lowercaseInput == "sms --ui" || lowercaseInput == "messages --ui" ||
-            lowercaseInput == "open messages" || lowercaseInput == "open sms") {
-            return false
-        }
+    /**
+     * Any input mentioning "message" is treated as a messaging request
+     */
+    val mentionFallback = CommandSpec("<mentions message>", category = CATEGORY)
 
-        val messagingKeywords = listOf(
-            "send", "text", "sms", "message", "msg", "compose",
-            "alias", "set alias", "setup",
-            // Read commands
-            "inbox", "unread", "read", "messages", "chat"
-        )
-        return messagingKeywords.any { lowercaseInput.startsWith(it) || lowercaseInput.contains("message") }
+    fun mentionsMessage(input: String): Boolean = input.lowercase().contains("message")
+
+    // Own lookup for isMessagingCommand; UI navigation stays with the shell executor
+    private val registry = CommandRegistry<Boolean>().apply {
+        register(UI_COMMANDS.copy(priority = 1), false)
+        commands.forEach { register(it, true) }
+        registerFallback(mentionFallback, true, ::mentionsMessage)
     }
 
+    /**
+     * Check if the input matches messaging commands
+     */
+    fun isMessagingCommand(input: String): Boolean = registry.resolve(input)?.target == true
+
     /**
      * Handle a shell input command
      * Returns list of shell outputs to display
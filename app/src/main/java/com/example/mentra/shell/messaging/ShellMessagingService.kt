@@ -1,13 +1,12 @@
 package com.example.mentra.shell.messaging
 
-import android.content.ContentResolver
 import android.content.Context
-import android.database.Cursor
 import android.net.Uri
 import android.provider.ContactsContract
 import android.provider.Telephony
 import android.telephony.SmsManager
-import androidx.core.database.getStringOrNull
+import com.example.mentra.contacts.ContactRepository
+import com.example.mentra.contacts.ContactSearchService
 import com.example.mentra.messaging.Contact
 import com.example.mentra.messaging.SimInfo
 import dagger.hilt.android.qualifiers.ApplicationContext
@@ -36,7 +35,9 @@ import javax.inject.Singleton
 @Singleton
 class ShellMessagingService @Inject constructor(
     @ApplicationContext private val context: Context,
-    private val aliasManager: ContactAliasManager
+    private val aliasManager: ContactAliasManager,
+    private val contactRepository: ContactRepository,
+    private val contactSearchService: ContactSearchService
 ) {
 
     private val _currentState = MutableStateFlow<MessagingState>(MessagingState.Idle)
@@ -314,67 +315,17 @@ class ShellMessagingService @Inject constructor(
     }
 
     /**
-     * Get all contacts from the phone
+     * Get all contacts from the phone (shared ContactRepository snapshot)
      */
-    suspend fun getAllContacts(): List<Contact> = withContext(Dispatchers.IO) {
-        val contacts = mutableListOf<Contact>()
-        val contentResolver: ContentResolver = context.contentResolver
-
-        val cursor: Cursor? = contentResolver.query(
-            ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-            arrayOf(
-                ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
-                ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                ContactsContract.CommonDataKinds.Phone.NUMBER,
-                ContactsContract.CommonDataKinds.Phone.PHOTO_URI
-            ),
-            null,
-            null,
-            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " ASC"
-        )
-
-        cursor?.use {
-            val idIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.CONTACT_ID)
-            val nameIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)
-            val numberIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-            val photoIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.PHOTO_URI)
-
-            val seenIds = mutableSetOf<String>()
-
-            while (it.moveToNext()) {
-                val id = it.getString(idIndex)
-                if (id in seenIds) continue
-                seenIds.add(id)
-
-                val name = it.getStringOrNull(nameIndex) ?: continue
-                val number = it.getStringOrNull(numberIndex) ?: continue
-                val photoUri = it.getStringOrNull(photoIndex)
-
-                contacts.add(
-                    Contact(
-                        id = id,
-                        name = name,
-                        phoneNumbers = listOf(number),
-                        photoUri = photoUri
-                    )
-                )
-            }
-        }
-
-        contacts
+    suspend fun getAllContacts(): List<Contact> {
+        return contactRepository.awaitSnapshot().asContacts
     }
 
     /**
-     * Search contacts by name or number
+     * Search contacts by name, nickname, alias or number (ranked, typo tolerant)
      */
     suspend fun searchContacts(query: String): List<Contact> {
-        val allContacts = getAllContacts()
-        val lowercaseQuery = query.lowercase()
-
-        return allContacts.filter { contact ->
-            contact.name.lowercase().contains(lowercaseQuery) ||
-            contact.phoneNumbers.any { it.contains(query) }
-        }
+        return contactSearchService.search(query)
     }
 
     /**
@@ -1,6 +1,8 @@
 package com.example.mentra.shell.messaging.di
 
 import android.content.Context
+import com.example.mentra.contacts.ContactRepository
+import com.example.mentra.contacts.ContactSearchService
 import com.example.mentra.shell.messaging.ContactAliasManager
 import com.example.mentra.shell.messaging.ShellMessagingCommandHandler
 import com.example.mentra.shell.messaging.ShellMessagingService
@@ -30,9 +32,11 @@ object ShellMessagingModule {
     @Singleton
     fun provideShellMessagingService(
         @ApplicationContext context: Context,
-        aliasManager: ContactAliasManager
+        aliasManager: ContactAliasManager,
+        contactRepository: ContactRepository,
+        contactSearchService: ContactSearchService
     ): ShellMessagingService {
-        return ShellMessagingService(context, aliasManager)
+        return ShellMessagingService(context, aliasManager, contactRepository, contactSearchService)
     }
 
     @Provides
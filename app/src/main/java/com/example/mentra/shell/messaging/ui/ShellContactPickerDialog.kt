@@ -26,6 +26,7 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.compose.ui.window.Dialog
 import androidx.compose.ui.window.DialogProperties
+import com.example.mentra.contacts.ContactSearchIndex
 import com.example.mentra.messaging.Contact
 import com.example.mentra.messaging.ui.theme.NexusColors
 import com.example.mentra.shell.messaging.AliasInfo
@@ -42,6 +43,7 @@ import com.example.mentra.shell.messaging.ContactAliasManager
 fun ShellContactPickerDialog(
     title: String,
     contacts: List<Contact>,
+    searchIndex: ContactSearchIndex,
     forAlias: String? = null,
     isLoading: Boolean = false,
     onContactSelected: (Contact, String) -> Unit,
@@ -51,12 +53,11 @@ fun ShellContactPickerDialog(
     var selectedContact by remember { mutableStateOf<Contact?>(null) }
     var selectedNumber by remember { mutableStateOf<String?>(null) }
 
-    val filteredContacts = remember(contacts, searchQuery) {
+    // One session per index so each keystroke refines the previous query
+    val searchSession = remember(searchIndex) { searchIndex.newSession() }
+    val filteredContacts = remember(contacts, searchSession, searchQuery) {
         if (searchQuery.isBlank()) contacts
-        else contacts.filter { contact ->
-            contact.name.contains(searchQuery, ignoreCase = true) ||
-            contact.phoneNumbers.any { it.contains(searchQuery) }
-        }
+        else searchSession.search(searchQuery, limit = 50).map { it.contact }
     }
 
     // Glow animation
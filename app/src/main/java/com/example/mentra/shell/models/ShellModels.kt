@@ -144,27 +144,8 @@ data class ShellContext(
     val workingDirectory: String = "/",
     val environment: MutableMap<String, String> = mutableMapOf(),
     val aliases: MutableMap<String, String> = mutableMapOf(),
-    val lastCommand: ShellCommand? = null,
-    val lastResult: ShellResult? = null,
-    val history: MutableList<ShellCommand> = mutableListOf()
+    val lastResult: ShellResult? = null
 ) {
-    /**
-     * Add command to history
-     */
-    fun addToHistory(command: ShellCommand) {
-        history.add(command)
-        if (history.size > 1000) {
-            history.removeFirst()
-        }
-    }
-
-    /**
-     * Get last N commands
-     */
-    fun getRecentHistory(count: Int = 10): List<ShellCommand> {
-        return history.takeLast(count)
-    }
-
     /**
      * Set environment variable
      */
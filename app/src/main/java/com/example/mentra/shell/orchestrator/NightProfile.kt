@@ -0,0 +1,69 @@
+package com.example.mentra.shell.orchestrator
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * NIGHT PROFILE
+ * Dim screen, no auto-brightness, Do Not Disturb, battery saver, short
+ * screen timeout and faster animations
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * The settings it changes are read before it is applied ([capture]),
+ * so [restore] can put back what the user had rather than fixed
+ * defaults. Values that couldn't be read fall back to those defaults.
+ */
+internal object NightProfile {
+    const val BRIGHTNESS_MODE = "system/screen_brightness_mode"
+    const val BRIGHTNESS = "system/screen_brightness"
+    const val ZEN_MODE = "global/zen_mode"
+    const val LOW_POWER = "global/low_power"
+    const val SCREEN_TIMEOUT = "system/screen_off_timeout"
+    const val ANIMATION_SCALE = "global/animator_duration_scale"
+
+    private val CAPTURED = listOf(BRIGHTNESS_MODE, BRIGHTNESS, ZEN_MODE, LOW_POWER, SCREEN_TIMEOUT, ANIMATION_SCALE)
+
+    private const val NIGHT_BRIGHTNESS = 20
+    private const val NIGHT_SCREEN_TIMEOUT_MILLIS = 30_000L
+    private const val DAY_SCREEN_TIMEOUT_MILLIS = 60_000L
+
+    /**
+     * Read every setting the profile changes
+     */
+    fun capture(transaction: SystemTransaction) {
+        CAPTURED.forEach { setting ->
+            val (namespace, key) = setting.split('/', limit = 2)
+            transaction.read(namespace, key)
+        }
+    }
+
+    /**
+     * Values read by [capture], keyed like its labels; unset settings
+     * (`settings get` prints "null") and failed reads are left out
+     */
+    fun captured(results: List<OperationResult>): Map<String, String> =
+        results
+            .filter { it.isSuccess && it.operation.label in CAPTURED }
+            .associate { it.operation.label to it.output.trim() }
+            .filterValues { it.isNotEmpty() && it != "null" }
+
+    fun apply(transaction: SystemTransaction) = with(transaction) {
+        autoBrightness(false)
+        brightness(NIGHT_BRIGHTNESS)
+        doNotDisturb(true)
+        batterySaver(true)
+        screenTimeout(NIGHT_SCREEN_TIMEOUT_MILLIS)
+        animationScale(0.5f)
+    }
+
+    /**
+     * Put back the values in [saved] (from [captured])
+     */
+    fun restore(transaction: SystemTransaction, saved: Map<String, String>) = with(transaction) {
+        // Brightness first: it only sticks while the mode is manual
+        saved[BRIGHTNESS]?.toIntOrNull()?.let { brightness(it) }
+        autoBrightness(saved[BRIGHTNESS_MODE]?.toIntOrNull()?.let { it == 1 } ?: true)
+        doNotDisturb(saved[ZEN_MODE]?.toIntOrNull()?.let { it != 0 } ?: false)
+        batterySaver(saved[LOW_POWER] == "1")
+        screenTimeout(saved[SCREEN_TIMEOUT]?.toLongOrNull() ?: DAY_SCREEN_TIMEOUT_MILLIS)
+        animationScale(saved[ANIMATION_SCALE]?.toFloatOrNull() ?: 1.0f)
+    }
+}
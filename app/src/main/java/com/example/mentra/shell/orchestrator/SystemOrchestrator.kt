@@ -4,9 +4,14 @@ import android.content.Context
 import com.example.mentra.infrastructure.privileged.PrivilegedExecutor
 import com.example.mentra.infrastructure.shizuku.PrivilegedActions
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.toList
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -26,6 +31,9 @@ class SystemOrchestrator @Inject constructor(
     private val _systemStatus = MutableStateFlow<SystemStatus>(SystemStatus.Idle)
     val systemStatus: StateFlow<SystemStatus> = _systemStatus.asStateFlow()
 
+    // Settings from before `nightmode on`, empty while night mode is off
+    private val nightPrefs by lazy { context.getSharedPreferences(NIGHT_PREFS, Context.MODE_PRIVATE) }
+
     // ============================================
     // POWER MANAGEMENT
     // ============================================
@@ -109,8 +117,7 @@ class SystemOrchestrator @Inject constructor(
      * Control Bluetooth
      */
     suspend fun setBluetoothEnabled(enabled: Boolean): Result<String> {
-        val command = if (enabled) "svc bluetooth enable" else "svc bluetooth disable"
-        return privilegedExecutor.execute(command)
+        return executeSingle { bluetooth(enabled) }
     }
 
     /**
@@ -172,14 +179,7 @@ class SystemOrchestrator @Inject constructor(
      * Set volume for different streams
      */
     suspend fun setVolume(streamType: AudioStream, level: Int): Result<String> {
-        val stream = when (streamType) {
-            AudioStream.MUSIC -> 3
-            AudioStream.RING -> 2
-            AudioStream.NOTIFICATION -> 5
-            AudioStream.ALARM -> 4
-            AudioStream.VOICE_CALL -> 0
-        }
-        return privilegedActions.setVolume(stream, level.coerceIn(0, 15))
+        return privilegedActions.setVolume(streamType.id, level.coerceIn(0, 15))
     }
 
     /**
@@ -339,12 +339,7 @@ class SystemOrchestrator @Inject constructor(
      * Toggle location services
      */
     suspend fun setLocationEnabled(enabled: Boolean): Result<String> {
-        val command = if (enabled) {
-            "settings put secure location_mode 3"
-        } else {
-            "settings put secure location_mode 0"
-        }
-        return privilegedExecutor.execute(command)
+        return executeSingle { location(enabled) }
     }
 
     // ============================================
@@ -367,12 +362,7 @@ class SystemOrchestrator @Inject constructor(
      * Toggle battery saver
      */
     suspend fun setBatterySaver(enabled: Boolean): Result<String> {
-        val command = if (enabled) {
-            "cmd battery set battery-saver 1"
-        } else {
-            "cmd battery set battery-saver 0"
-        }
-        return privilegedExecutor.execute(command)
+        return executeSingle { batterySaver(enabled) }
     }
 
     /**
@@ -398,14 +388,70 @@ class SystemOrchestrator @Inject constructor(
      * Toggle Do Not Disturb
      */
     suspend fun setDoNotDisturb(enabled: Boolean): Result<String> {
-        val mode = if (enabled) "1" else "0" // 0=off, 1=priority, 2=alarms, 3=total
-        return privilegedExecutor.execute("cmd notification set_dnd $mode")
+        // 0=off, 1=priority, 2=alarms, 3=total
+        return executeSingle { doNotDisturb(enabled) }
     }
 
     // ============================================
     // ADVANCED SYSTEM OPERATIONS
     // ============================================
 
+    /**
+     * Run several operations in one privileged round trip, e.g.
+     * `transaction { brightness(20); doNotDisturb(true) }`.
+     * Every operation runs even if an earlier one fails.
+     */
+    suspend fun transaction(block: SystemTransaction.() -> Unit): TransactionResult {
+        val operations = SystemTransaction().apply(block).operations
+        if (operations.isEmpty()) return TransactionResult(emptyList(), 0)
+
+        val start = System.currentTimeMillis()
+        val token = SystemTransaction.newToken()
+        _systemStatus.value = SystemStatus.Executing(operations.joinToString(", ") { it.label })
+
+        val results = privilegedExecutor.executeShell(SystemTransaction.compile(operations, token)).fold(
+            onSuccess = { output -> SystemTransaction.parse(output, operations, token) },
+            onFailure = { e ->
+                operations.map { OperationResult(it, SystemTransaction.NOT_RUN, e.message ?: "Command failed") }
+            }
+        )
+
+        val result = TransactionResult(results, System.currentTimeMillis() - start)
+        _systemStatus.value = if (result.allSucceeded) {
+            SystemStatus.Success
+        } else {
+            SystemStatus.Error(result.failures.joinToString(", ") { it.operation.label } + " failed")
+        }
+        return result
+    }
+
+    /**
+     * Apply or undo the [NightProfile]. The settings it changes are saved
+     * before it is applied, and undoing it restores them.
+     */
+    suspend fun setNightMode(enabled: Boolean): TransactionResult {
+        if (!enabled) {
+            val saved = nightPrefs.all.mapNotNull { (key, value) -> (value as? String)?.let { key to it } }.toMap()
+            return transaction { NightProfile.restore(this, saved) }.also {
+                if (it.allSucceeded) nightPrefs.edit().clear().apply()
+            }
+        }
+
+        // Already on: keep the values from before the first `on`
+        if (nightPrefs.all.isEmpty()) {
+            val read = transaction { NightProfile.capture(this) }
+            nightPrefs.edit().apply {
+                NightProfile.captured(read.results).forEach { (key, value) -> putString(key, value) }
+            }.apply()
+        }
+        return transaction { NightProfile.apply(this) }
+    }
+
+    private suspend fun executeSingle(block: SystemTransaction.() -> Unit): Result<String> {
+        val operation = SystemTransaction().apply(block).operations.single()
+        return privilegedExecutor.execute(operation.command)
+    }
+
     /**
      * Execute custom system command
      */
@@ -429,8 +475,13 @@ class SystemOrchestrator @Inject constructor(
                 "device" to android.os.Build.DEVICE,
                 "product" to android.os.Build.PRODUCT
             )
-            val battery = privilegedActions.getBatteryStats().getOrNull() ?: ""
-            val memory = privilegedActions.getMemoryInfo().getOrNull() ?: ""
+            // Independent reads, each in its own process so they overlap
+            // instead of queueing on the shared privileged session
+            val (battery, memory) = coroutineScope {
+                listOf("dumpsys battery", "dumpsys meminfo")
+                    .map { command -> async { readOutput(command) } }
+                    .awaitAll()
+            }
 
             Result.success(
                 SystemInfo(
@@ -444,6 +495,20 @@ class SystemOrchestrator @Inject constructor(
             Result.failure(e)
         }
     }
+
+    private suspend fun readOutput(command: String): String {
+        return try {
+            privilegedExecutor.executeStream(command).toList().joinToString("\n")
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            ""
+        }
+    }
+
+    companion object {
+        private const val NIGHT_PREFS = "night_mode"
+    }
 }
 
 // ============================================
@@ -484,12 +549,12 @@ enum class NetworkMode {
 /**
  * Audio streams
  */
-enum class AudioStream {
-    MUSIC,
-    RING,
-    NOTIFICATION,
-    ALARM,
-    VOICE_CALL
+enum class AudioStream(val id: Int) {
+    MUSIC(3),
+    RING(2),
+    NOTIFICATION(5),
+    ALARM(4),
+    VOICE_CALL(0)
 }
 
 /**
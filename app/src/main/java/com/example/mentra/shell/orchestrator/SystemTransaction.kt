@@ -0,0 +1,151 @@
+package com.example.mentra.shell.orchestrator
+
+import java.util.UUID
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * SYSTEM TRANSACTION
+ * Several settings changes sent as one privileged shell script
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Built with [SystemOrchestrator.transaction]:
+ *
+ *     orchestrator.transaction {
+ *         brightness(20)
+ *         autoBrightness(false)
+ *         doNotDisturb(true)
+ *     }
+ *
+ * Operations run in order in a single shell. Each is followed by a
+ * marker line carrying its exit code, so one failing operation doesn't
+ * stop the rest and every operation gets its own result.
+ */
+class SystemTransaction {
+
+    private val _operations = mutableListOf<SystemOperation>()
+    val operations: List<SystemOperation> get() = _operations
+
+    fun command(label: String, command: String) {
+        _operations.add(SystemOperation(label, command))
+    }
+
+    fun setting(namespace: String, key: String, value: String) =
+        command("$namespace/$key", "settings put $namespace $key $value")
+
+    // The value comes back as the operation's output
+    fun read(namespace: String, key: String) =
+        command("$namespace/$key", "settings get $namespace $key")
+
+    fun wifi(enabled: Boolean) = command("wifi", "svc wifi ${enableWord(enabled)}")
+
+    fun mobileData(enabled: Boolean) = command("data", "svc data ${enableWord(enabled)}")
+
+    fun bluetooth(enabled: Boolean) = command("bluetooth", "svc bluetooth ${enableWord(enabled)}")
+
+    fun airplaneMode(enabled: Boolean) = setting("global", "airplane_mode_on", flag(enabled))
+
+    fun brightness(level: Int) = setting("system", "screen_brightness", level.coerceIn(0, 255).toString())
+
+    fun autoBrightness(enabled: Boolean) = setting("system", "screen_brightness_mode", flag(enabled))
+
+    fun screenTimeout(milliseconds: Long) = setting("system", "screen_off_timeout", milliseconds.toString())
+
+    fun volume(streamType: AudioStream, level: Int) =
+        command("volume ${streamType.name.lowercase()}", "media volume --stream ${streamType.id} --set ${level.coerceIn(0, 15)}")
+
+    fun location(enabled: Boolean) = setting("secure", "location_mode", if (enabled) "3" else "0")
+
+    fun batterySaver(enabled: Boolean) = command("battery saver", "cmd battery set battery-saver ${flag(enabled)}")
+
+    fun doNotDisturb(enabled: Boolean) = command("dnd", "cmd notification set_dnd ${flag(enabled)}")
+
+    fun stayAwake(enabled: Boolean) = setting("global", "stay_on_while_plugged_in", flag(enabled))
+
+    fun animationScale(scale: Float) = setting("global", "animator_duration_scale", scale.toString())
+
+    private fun flag(enabled: Boolean) = if (enabled) "1" else "0"
+
+    private fun enableWord(enabled: Boolean) = if (enabled) "enable" else "disable"
+
+    companion object {
+        private const val MARKER_PREFIX = "__MENTRA_OP_"
+
+        /**
+         * One shell script running every operation, each followed by
+         * `<marker> <index> <exit code>`
+         */
+        fun compile(operations: List<SystemOperation>, token: String = newToken()): String {
+            val marker = "$MARKER_PREFIX${token}__"
+            return operations.withIndex().joinToString("\n") { (index, operation) ->
+                "{ ${operation.command}\n} </dev/null 2>&1; echo \"$marker $index \$?\""
+            }
+        }
+
+        /**
+         * Split the script's output back into one result per operation.
+         * Operations with no marker (the shell died or the script was cut
+         * short) are reported as not run.
+         */
+        fun parse(output: String, operations: List<SystemOperation>, token: String): List<OperationResult> {
+            val marker = "$MARKER_PREFIX${token}__"
+            val outputs = arrayOfNulls<String>(operations.size)
+            val exitCodes = IntArray(operations.size) { NOT_RUN }
+            val current = StringBuilder()
+
+            for (line in output.lineSequence()) {
+                val at = line.indexOf(marker)
+                if (at < 0) {
+                    if (current.isNotEmpty()) current.append('\n')
+                    current.append(line)
+                    continue
+                }
+
+                // Output without a trailing newline shares the marker's line
+                if (at > 0) {
+                    if (current.isNotEmpty()) current.append('\n')
+                    current.append(line, 0, at)
+                }
+                val fields = line.substring(at + marker.length).trim().split(' ')
+                val index = fields.getOrNull(0)?.toIntOrNull()
+                if (index != null && index in operations.indices) {
+                    outputs[index] = current.toString()
+                    exitCodes[index] = fields.getOrNull(1)?.toIntOrNull() ?: NOT_RUN
+                }
+                current.setLength(0)
+            }
+
+            return operations.mapIndexed { index, operation ->
+                OperationResult(operation, exitCodes[index], outputs[index] ?: "")
+            }
+        }
+
+        fun newToken(): String = UUID.randomUUID().toString().replace("-", "")
+
+        const val NOT_RUN = -1
+    }
+}
+
+/**
+ * One step of a [SystemTransaction]
+ */
+data class SystemOperation(
+    val label: String,
+    val command: String
+)
+
+data class OperationResult(
+    val operation: SystemOperation,
+    // SystemTransaction.NOT_RUN if the operation never reported back
+    val exitCode: Int,
+    val output: String
+) {
+    val isSuccess: Boolean get() = exitCode == 0
+}
+
+data class TransactionResult(
+    val results: List<OperationResult>,
+    val elapsedMillis: Long
+) {
+    val allSucceeded: Boolean get() = results.all { it.isSuccess }
+    val failures: List<OperationResult> get() = results.filterNot { it.isSuccess }
+}
@@ -6,7 +6,6 @@ import androidx.compose.foundation.*
 import androidx.compose.foundation.gestures.detectTapGestures
 import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.lazy.LazyColumn
-import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.lazy.rememberLazyListState
 import androidx.compose.foundation.shape.CircleShape
 import androidx.compose.foundation.shape.RoundedCornerShape
@@ -44,21 +43,42 @@ import androidx.hilt.navigation.compose.hiltViewModel
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.example.mentra.messaging.Contact
+import com.example.mentra.shell.completion.Completion
+import com.example.mentra.shell.completion.CompletionEngine
+import com.example.mentra.shell.completion.CompletionKind
+import com.example.mentra.shell.core.CommandRegistry
 import com.example.mentra.shell.core.ShellEngine
+import com.example.mentra.shell.core.ShellLexer
+import com.example.mentra.shell.core.ShellScriptParser
+import com.example.mentra.shell.core.ShellSyntaxException
+import com.example.mentra.shell.core.batched
+import com.example.mentra.shell.history.HistoryMatch
+import com.example.mentra.shell.history.HistorySearchIndex
+import com.example.mentra.shell.history.Scrollback
+import com.example.mentra.shell.history.ScrollbackSnapshot
+import com.example.mentra.shell.history.ShellHistoryStore
+import com.example.mentra.shell.models.ResultStatus
+import com.example.mentra.shell.models.ShellOutputType as CallingOutputType
 import com.example.mentra.shell.messaging.ContactPickerRequest
 import com.example.mentra.shell.messaging.ShellMessagingCommandHandler
+import com.example.mentra.shell.messaging.ShellOutputType as MessagingOutputType
 import com.example.mentra.shell.messaging.ShellMessagingService
 import com.example.mentra.shell.messaging.ui.ShellContactPickerDialog
 import com.example.mentra.shell.ui.keyboard.TerminalKeyboard
 import com.example.mentra.shell.calling.ui.ShellCallingContactPickerDialog
+import com.example.mentra.shell.calculator.FunctionRange
 import com.example.mentra.shell.calculator.NexusCalculatorModal
 import com.example.mentra.shell.calendar.NexusCalendarModal
 import com.example.mentra.shell.models.ShellResult
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.launch
 import java.text.SimpleDateFormat
 import java.util.*
@@ -114,9 +134,13 @@ fun ShellScreen(
     appCacheService: com.example.mentra.shell.apps.AppCacheService? = null
 ) {
     val uiState by viewModel.uiState.collectAsState()
+    val historySearch by viewModel.historySearch.collectAsState()
+    val scrollbackSearch by viewModel.scrollbackSearch.collectAsState()
+    val completions by viewModel.completions.collectAsState()
     val contactPickerRequest by viewModel.contactPickerRequest.collectAsState()
     val callingContactPickerRequest by viewModel.callingContactPickerRequest.collectAsState()
     val contacts by viewModel.contacts.collectAsState()
+    val contactSearchIndex by viewModel.contactSearchIndex.collectAsState()
     val listState = rememberLazyListState()
 
     val focusRequester = remember { FocusRequester() }
@@ -139,13 +163,20 @@ fun ShellScreen(
         }
     }
 
-    // Auto-scroll to bottom when new output is added
-    LaunchedEffect(uiState.output.size) {
-        if (uiState.output.isNotEmpty()) {
-            listState.animateScrollToItem(uiState.output.size)
+    // Auto-scroll to bottom when new output is added (the size stops
+    // growing at the line cap, the newest id doesn't)
+    LaunchedEffect(uiState.scrollback.lastId) {
+        if (!uiState.scrollback.isEmpty() && scrollbackSearch == null) {
+            listState.animateScrollToItem(uiState.scrollback.size)
         }
     }
 
+    // Bring the current scrollback search match into view
+    LaunchedEffect(scrollbackSearch?.matchId) {
+        val index = scrollbackSearch?.matchId?.let { uiState.scrollback.indexOfId(it) } ?: -1
+        if (index >= 0) listState.scrollToItem(index)
+    }
+
     // Update cursor position when input changes
     LaunchedEffect(uiState.input) {
         cursorPosition = uiState.input.length
@@ -159,6 +190,7 @@ fun ShellScreen(
         ShellContactPickerDialog(
             title = request.title,
             contacts = contacts,
+            searchIndex = contactSearchIndex,
             forAlias = request.forAlias,
             isLoading = contacts.isEmpty(),
             onContactSelected = { contact, number ->
@@ -173,6 +205,7 @@ fun ShellScreen(
         ShellCallingContactPickerDialog(
             title = request.title,
             contacts = contacts,
+            searchIndex = contactSearchIndex,
             isLoading = contacts.isEmpty(),
             onCallWithSim = { contact, number, simSlot ->
                 viewModel.onCallingContactSelectedWithSim(contact, number, simSlot)
@@ -191,6 +224,7 @@ fun ShellScreen(
 
     // Calculator Dialog - must be displayed as overlay
     val showCalculatorUI by viewModel.showCalculatorUI.collectAsState()
+    val calculatorPlot by viewModel.calculatorPlot.collectAsState()
 
     // Calendar Dialog - must be displayed as overlay
     val showCalendarUI by viewModel.showCalendarUI.collectAsState()
@@ -293,34 +327,71 @@ fun ShellScreen(
                 state = listState,
                 reverseLayout = false
             ) {
-                // Output history
-                items(uiState.output) { entry ->
-                    TerminalOutputEntry(entry)
-                    Spacer(modifier = Modifier.height(4.dp))
+                // Output history, one row per line; ids stay put as old lines drop off
+                val lines = uiState.scrollback
+                val matchId = scrollbackSearch?.matchId
+                items(
+                    count = lines.size,
+                    key = { lines.idAt(it) },
+                    contentType = { if (lines[it] is TerminalLine.Prompt) 0 else 1 }
+                ) { index ->
+                    TerminalLineRow(lines[index], highlighted = lines.idAt(index) == matchId)
                 }
 
-                // Current input line (inline like real terminal)
+                // Current input line (inline like real terminal), or reverse-i-search
                 item {
-                    CurrentInputLineCustom(
-                        currentTime = currentTime,
-                        input = uiState.input,
-                        cursorPosition = cursorPosition,
-                        isExecuting = uiState.isExecuting
-                    )
+                    val search = historySearch
+                    if (search != null) {
+                        HistorySearchLine(search)
+                    } else {
+                        CurrentInputLineCustom(
+                            currentTime = currentTime,
+                            input = uiState.input,
+                            cursorPosition = cursorPosition,
+                            isExecuting = uiState.isExecuting
+                        )
+                    }
                 }
             }
 
+            // Scrollback search prompt stays in view while the list scrolls to matches
+            scrollbackSearch?.let { search ->
+                ScrollbackSearchLine(search)
+            }
+
+            // Ranked completions for what's typed; Tab takes the first
+            if (historySearch == null && scrollbackSearch == null && completions.isNotEmpty()) {
+                CompletionStrip(
+                    completions = completions,
+                    onSelect = { viewModel.acceptCompletion(it) }
+                )
+            }
+
             // Custom Terminal Keyboard
             TerminalKeyboard(
                 visible = showKeyboard,
                 onKeyPress = { key ->
-                    val currentInput = uiState.input
-                    val newInput = currentInput.substring(0, cursorPosition) + key + currentInput.substring(cursorPosition)
-                    viewModel.updateInput(newInput)
-                    cursorPosition += key.length
+                    val search = historySearch
+                    val find = scrollbackSearch
+                    if (search != null) {
+                        viewModel.updateHistorySearch(search.query + key)
+                    } else if (find != null) {
+                        viewModel.updateScrollbackSearch(find.query + key)
+                    } else {
+                        val currentInput = uiState.input
+                        val newInput = currentInput.substring(0, cursorPosition) + key + currentInput.substring(cursorPosition)
+                        viewModel.updateInput(newInput)
+                        cursorPosition += key.length
+                    }
                 },
                 onBackspace = {
-                    if (cursorPosition > 0) {
+                    val search = historySearch
+                    val find = scrollbackSearch
+                    if (search != null) {
+                        viewModel.updateHistorySearch(search.query.dropLast(1))
+                    } else if (find != null) {
+                        viewModel.updateScrollbackSearch(find.query.dropLast(1))
+                    } else if (cursorPosition > 0) {
                         val currentInput = uiState.input
                         val newInput = currentInput.substring(0, cursorPosition - 1) + currentInput.substring(cursorPosition)
                         viewModel.updateInput(newInput)
@@ -329,16 +400,32 @@ fun ShellScreen(
                 },
                 onEnter = {
                     haptic.performHapticFeedback(HapticFeedbackType.LongPress)
-                    viewModel.executeCommand()
-                    cursorPosition = 0
+                    if (historySearch != null) {
+                        // Puts the match on the prompt to edit or run
+                        viewModel.acceptHistorySearch()
+                    } else if (scrollbackSearch != null) {
+                        // Leaves the scrollback where the match is
+                        viewModel.closeScrollbackSearch()
+                    } else {
+                        viewModel.executeCommand()
+                        cursorPosition = 0
+                    }
                 },
                 onArrowUp = {
-                    // Navigate to previous command in history
-                    viewModel.navigateHistoryUp()
+                    // Previous command in history, or the next-best search match
+                    when {
+                        historySearch != null -> viewModel.nextHistoryMatch()
+                        scrollbackSearch != null -> viewModel.olderScrollbackMatch()
+                        else -> viewModel.navigateHistoryUp()
+                    }
                 },
                 onArrowDown = {
-                    // Navigate to next command in history
-                    viewModel.navigateHistoryDown()
+                    // Next command in history, or the previous search match
+                    when {
+                        historySearch != null -> viewModel.previousHistoryMatch()
+                        scrollbackSearch != null -> viewModel.newerScrollbackMatch()
+                        else -> viewModel.navigateHistoryDown()
+                    }
                 },
                 onArrowLeft = {
                     if (cursorPosition > 0) {
@@ -357,16 +444,26 @@ fun ShellScreen(
                     cursorPosition = uiState.input.length
                 },
                 onTab = {
-                    // TODO: Auto-complete functionality
-                    viewModel.updateInput(uiState.input + "    ")
-                    cursorPosition += 4
+                    completions.firstOrNull()?.let { viewModel.acceptCompletion(it) }
                 },
                 onCtrlC = {
-                    // Cancel current operation
-                    viewModel.cancelOperation()
+                    // Leave a search, or cancel current operation
+                    when {
+                        historySearch != null -> viewModel.cancelHistorySearch()
+                        scrollbackSearch != null -> viewModel.closeScrollbackSearch()
+                        else -> viewModel.cancelOperation()
+                    }
                 },
                 onClear = {
                     viewModel.clearHistory()
+                },
+                onCtrlR = {
+                    // Start reverse search, or step to the next match
+                    viewModel.startHistorySearch()
+                },
+                onCtrlF = {
+                    // Search the scrollback, or step to the next older match
+                    viewModel.startScrollbackSearch()
                 }
             )
         }
@@ -374,7 +471,8 @@ fun ShellScreen(
         // Calculator Dialog Overlay
         if (showCalculatorUI) {
             NexusCalculatorModal(
-                onClose = { viewModel.dismissCalculatorUI() }
+                onClose = { viewModel.dismissCalculatorUI() },
+                initialPlot = calculatorPlot
             )
         }
 
@@ -506,34 +604,36 @@ private fun TerminalHeader(
     }
 }
 
+/**
+ * One scrollback row; [highlighted] marks the current search match
+ */
 @Composable
-private fun TerminalOutputEntry(entry: OutputItem) {
-    Column(modifier = Modifier.fillMaxWidth()) {
-        // Command line with prompt
-        if (entry.command.isNotBlank() && entry.command != "welcome" && entry.command != "contact_selected") {
+private fun TerminalLineRow(line: TerminalLine, highlighted: Boolean) {
+    val modifier = Modifier
+        .fillMaxWidth()
+        .then(if (highlighted) Modifier.background(TerminalColors.neonPurple.copy(alpha = 0.25f)) else Modifier)
+
+    when (line) {
+        is TerminalLine.Prompt -> Box(modifier.padding(top = 4.dp)) {
             TerminalPromptLine(
-                time = entry.timestamp,
-                command = entry.command,
+                time = line.time,
+                command = line.text,
                 isHistory = true
             )
         }
-
-        // Result output
-        entry.result?.let { result ->
-            Text(
-                text = result.message,
-                color = when (result.status) {
-                    com.example.mentra.shell.models.ResultStatus.SUCCESS -> TerminalColors.success
-                    com.example.mentra.shell.models.ResultStatus.FAILURE -> TerminalColors.error
-                    com.example.mentra.shell.models.ResultStatus.INVALID_COMMAND -> TerminalColors.warning
-                    else -> TerminalColors.info
-                },
-                fontFamily = terminalFont,
-                fontSize = 13.sp,
-                lineHeight = 18.sp,
-                modifier = Modifier.padding(start = 4.dp, top = 2.dp)
-            )
-        }
+        is TerminalLine.Output -> Text(
+            text = line.text,
+            color = when (line.status) {
+                ResultStatus.SUCCESS -> TerminalColors.success
+                ResultStatus.FAILURE -> TerminalColors.error
+                ResultStatus.INVALID_COMMAND -> TerminalColors.warning
+                else -> TerminalColors.info
+            },
+            fontFamily = terminalFont,
+            fontSize = 13.sp,
+            lineHeight = 18.sp,
+            modifier = modifier.padding(start = 4.dp)
+        )
     }
 }
 
@@ -669,6 +769,149 @@ private fun CurrentInputLine(
     }
 }
 
+/**
+ * Reverse-i-search prompt: the query, the selected match with the query
+ * highlighted, and the next few matches below it
+ */
+@Composable
+private fun HistorySearchLine(state: HistorySearchState) {
+    Column(
+        modifier = Modifier
+            .fillMaxWidth()
+            .padding(vertical = 8.dp)
+    ) {
+        val current = state.current
+        val line = buildAnnotatedString {
+            withStyle(SpanStyle(color = TerminalColors.neonPurple, fontWeight = FontWeight.Bold)) {
+                append(if (current == null && state.query.isNotEmpty()) "(failed reverse-i-search)" else "(reverse-i-search)")
+            }
+            withStyle(SpanStyle(color = TerminalColors.warning)) {
+                append("`${state.query}'")
+            }
+            withStyle(SpanStyle(color = TerminalColors.promptSeparator)) {
+                append(": ")
+            }
+            if (current != null) {
+                val start = current.matchStart.coerceIn(0, current.command.length)
+                val end = (start + state.query.length).coerceAtMost(current.command.length)
+                withStyle(SpanStyle(color = TerminalColors.inputText)) {
+                    append(current.command.substring(0, start))
+                }
+                withStyle(SpanStyle(color = TerminalColors.background, background = TerminalColors.neonGreen)) {
+                    append(current.command.substring(start, end))
+                }
+                withStyle(SpanStyle(color = TerminalColors.inputText)) {
+                    append(current.command.substring(end))
+                }
+            }
+        }
+
+        Text(
+            text = line,
+            fontFamily = terminalFont,
+            fontSize = 13.sp
+        )
+
+        if (state.matches.size > 1) {
+            Text(
+                text = "${state.selected + 1}/${state.matches.size}  ↑↓ or Ctrl+R to browse, Enter to use, Ctrl+C to cancel",
+                color = TerminalColors.muted,
+                fontFamily = terminalFont,
+                fontSize = 11.sp
+            )
+            state.matches.drop(state.selected + 1).take(HISTORY_SEARCH_PREVIEW).forEach { match ->
+                Text(
+                    text = "  ${match.command}",
+                    color = TerminalColors.muted,
+                    fontFamily = terminalFont,
+                    fontSize = 12.sp,
+                    maxLines = 1,
+                    overflow = TextOverflow.Ellipsis
+                )
+            }
+        }
+    }
+}
+
+private const val HISTORY_SEARCH_PREVIEW = 3
+
+/**
+ * Scrollback search prompt, below the output
+ */
+@Composable
+private fun ScrollbackSearchLine(state: ScrollbackSearchState) {
+    val line = buildAnnotatedString {
+        withStyle(SpanStyle(color = TerminalColors.neonPurple, fontWeight = FontWeight.Bold)) {
+            append(if (state.matchId == null && state.query.isNotEmpty()) "(failed scrollback-search)" else "(scrollback-search)")
+        }
+        withStyle(SpanStyle(color = TerminalColors.warning)) {
+            append("`${state.query}'")
+        }
+        withStyle(SpanStyle(color = TerminalColors.muted)) {
+            append("  ↑↓ or Ctrl+F to browse, Enter to stay, Ctrl+C to close")
+        }
+    }
+
+    Text(
+        text = line,
+        fontFamily = terminalFont,
+        fontSize = 12.sp,
+        maxLines = 1,
+        overflow = TextOverflow.Ellipsis,
+        modifier = Modifier
+            .fillMaxWidth()
+            .padding(horizontal = 12.dp, vertical = 4.dp)
+    )
+}
+
+/**
+ * Suggestion chips above the keyboard, best first
+ */
+@Composable
+private fun CompletionStrip(
+    completions: List<Completion>,
+    onSelect: (Completion) -> Unit
+) {
+    Row(
+        modifier = Modifier
+            .fillMaxWidth()
+            .horizontalScroll(rememberScrollState())
+            .padding(horizontal = 12.dp, vertical = 4.dp),
+        horizontalArrangement = Arrangement.spacedBy(6.dp)
+    ) {
+        completions.forEach { completion ->
+            val color = completionColor(completion.kind)
+            Box(
+                modifier = Modifier
+                    .clip(RoundedCornerShape(6.dp))
+                    .background(color.copy(alpha = 0.12f))
+                    .border(1.dp, color.copy(alpha = 0.4f), RoundedCornerShape(6.dp))
+                    .clickable { onSelect(completion) }
+                    .padding(horizontal = 8.dp, vertical = 4.dp)
+            ) {
+                Text(
+                    text = completion.text,
+                    color = color,
+                    fontFamily = terminalFont,
+                    fontSize = 12.sp,
+                    maxLines = 1,
+                    overflow = TextOverflow.Ellipsis,
+                    modifier = Modifier.widthIn(max = 220.dp)
+                )
+            }
+        }
+    }
+}
+
+private fun completionColor(kind: CompletionKind): Color = when (kind) {
+    CompletionKind.COMMAND, CompletionKind.SHELL_ALIAS -> TerminalColors.neonGreen
+    CompletionKind.FLAG -> TerminalColors.warning
+    CompletionKind.APP -> TerminalColors.neonCyan
+    CompletionKind.CONTACT_ALIAS, CompletionKind.CONTACT -> TerminalColors.neonPurple
+    CompletionKind.PATH -> TerminalColors.inputText
+    CompletionKind.HISTORY -> TerminalColors.muted
+}
+
 /**
  * Custom input line for use with custom keyboard (no system keyboard)
  * Shows input with cursor at specified position
@@ -978,7 +1221,10 @@ class ShellViewModel @Inject constructor(
     private val messagingService: ShellMessagingService,
     private val callingHandler: com.example.mentra.shell.calling.ShellCallingCommandHandler,
     val shellSettingsManager: com.example.mentra.shell.settings.ShellSettingsManager,
-    private val shellIncomingCallHandler: com.example.mentra.shell.calling.ShellIncomingCallHandler
+    private val shellIncomingCallHandler: com.example.mentra.shell.calling.ShellIncomingCallHandler,
+    private val contactSearchService: com.example.mentra.contacts.ContactSearchService,
+    private val historyStore: ShellHistoryStore,
+    private val completionEngine: CompletionEngine
 ) : ViewModel() {
 
     private val _uiState = MutableStateFlow(ShellUiState())
@@ -990,6 +1236,21 @@ class ShellViewModel @Inject constructor(
     private val _contacts = MutableStateFlow<List<Contact>>(emptyList())
     val contacts: StateFlow<List<Contact>> = _contacts.asStateFlow()
 
+    // Ranked search over the same contacts, used by the picker dialogs
+    val contactSearchIndex = contactSearchService.index
+
+    // Which handler owns a command, resolved with one trie walk.
+    // Calling outranks messaging; messaging UI navigation stays with the shell.
+    private val commandRoutes = CommandRegistry<ShellRoute>().apply {
+        register(ShellMessagingCommandHandler.UI_COMMANDS.copy(priority = 30), ShellRoute.SHELL)
+        callingHandler.commands.forEach { register(it.copy(priority = 20), ShellRoute.CALLING) }
+        messagingHandler.commands.forEach { register(it.copy(priority = 10), ShellRoute.MESSAGING) }
+        registerFallback(messagingHandler.mentionFallback.copy(priority = 10), ShellRoute.MESSAGING, messagingHandler::mentionsMessage)
+    }
+
+    // Runs command lines with ; && || | and &, routing each command like a single one
+    private val scriptRunner = shellEngine.scriptRunner { runRouted(it) }
+
     // Calling contact picker state
     private val _callingContactPickerRequest = MutableStateFlow<CallingContactPickerRequest?>(null)
     val callingContactPickerRequest: StateFlow<CallingContactPickerRequest?> = _callingContactPickerRequest.asStateFlow()
@@ -998,6 +1259,10 @@ class ShellViewModel @Inject constructor(
     private val _showCalculatorUI = MutableStateFlow(false)
     val showCalculatorUI: StateFlow<Boolean> = _showCalculatorUI.asStateFlow()
 
+    // Function to open the calculator's plot view on, from `calc plot`
+    private val _calculatorPlot = MutableStateFlow<FunctionRange?>(null)
+    val calculatorPlot: StateFlow<FunctionRange?> = _calculatorPlot.asStateFlow()
+
     // Calendar UI state
     private val _showCalendarUI = MutableStateFlow(false)
     val showCalendarUI: StateFlow<Boolean> = _showCalendarUI.asStateFlow()
@@ -1016,17 +1281,39 @@ class ShellViewModel @Inject constructor(
     // Active call session for terminal display
     val activeCallSession = callingHandler.activeCallSession
 
-    // Command history for navigation
-    private val commandHistory = mutableListOf<String>()
+    // Command being executed, cancelled by Ctrl+C
+    private var executionJob: Job? = null
+
+    // Steps back from the newest history line while navigating, -1 when not
     private var historyIndex = -1
+
+    // Reverse-i-search (Ctrl+R); the session narrows results as the query grows
+    private val _historySearch = MutableStateFlow<HistorySearchState?>(null)
+    val historySearch: StateFlow<HistorySearchState?> = _historySearch.asStateFlow()
+    private var historySearchSession: HistorySearchIndex.Session? = null
+
+    // Screen output, capped at historySize * SCROLLBACK_LINES_PER_ENTRY lines
+    private val scrollback = Scrollback<TerminalLine>(
+        shellSettingsManager.historySize.value * SCROLLBACK_LINES_PER_ENTRY
+    )
+
+    // Search within the scrollback (Ctrl+F)
+    private val _scrollbackSearch = MutableStateFlow<ScrollbackSearchState?>(null)
+    val scrollbackSearch: StateFlow<ScrollbackSearchState?> = _scrollbackSearch.asStateFlow()
+
+    // Completions for the current input, recomputed per keystroke
+    private val _completions = MutableStateFlow<List<Completion>>(emptyList())
+    val completions: StateFlow<List<Completion>> = _completions.asStateFlow()
     private var tempInput = "" // Stores current input when navigating history
 
-    fun showCalculator() {
+    fun showCalculator(plot: FunctionRange? = null) {
+        _calculatorPlot.value = plot
         _showCalculatorUI.value = true
     }
 
     fun dismissCalculatorUI() {
         _showCalculatorUI.value = false
+        _calculatorPlot.value = null
     }
 
     fun showCalendar() {
@@ -1065,17 +1352,16 @@ class ShellViewModel @Inject constructor(
      * Navigate to previous command in history (arrow up)
      */
     fun navigateHistoryUp() {
-        if (commandHistory.isEmpty()) return
+        // Stays put on the oldest line
+        val line = historyStore.fromNewest(historyIndex + 1) ?: return
 
         if (historyIndex == -1) {
             // Save current input
             tempInput = _uiState.value.input
-            historyIndex = commandHistory.size - 1
-        } else if (historyIndex > 0) {
-            historyIndex--
         }
+        historyIndex++
 
-        _uiState.value = _uiState.value.copy(input = commandHistory[historyIndex])
+        _uiState.value = _uiState.value.copy(input = line)
     }
 
     /**
@@ -1084,9 +1370,9 @@ class ShellViewModel @Inject constructor(
     fun navigateHistoryDown() {
         if (historyIndex == -1) return
 
-        if (historyIndex < commandHistory.size - 1) {
-            historyIndex++
-            _uiState.value = _uiState.value.copy(input = commandHistory[historyIndex])
+        if (historyIndex > 0) {
+            historyIndex--
+            _uiState.value = _uiState.value.copy(input = historyStore.fromNewest(historyIndex) ?: "")
         } else {
             // Return to original input
             historyIndex = -1
@@ -1094,6 +1380,106 @@ class ShellViewModel @Inject constructor(
         }
     }
 
+    /**
+     * Start reverse-i-search (Ctrl+R), or step to the next match if it's
+     * already running
+     */
+    fun startHistorySearch() {
+        if (_historySearch.value != null) {
+            nextHistoryMatch()
+            return
+        }
+        closeScrollbackSearch()
+        historySearchSession = historyStore.newSearch()
+        _historySearch.value = HistorySearchState(originalInput = _uiState.value.input)
+    }
+
+    /**
+     * New search text; runs on every keystroke, narrowing the previous
+     * results when the query only grew
+     */
+    fun updateHistorySearch(query: String) {
+        val state = _historySearch.value ?: return
+        val matches = historySearchSession?.search(query, HISTORY_SEARCH_LIMIT) ?: emptyList()
+        _historySearch.value = state.copy(query = query, matches = matches, selected = 0)
+    }
+
+    fun nextHistoryMatch() {
+        val state = _historySearch.value ?: return
+        _historySearch.value = state.copy(selected = (state.selected + 1).coerceAtMost((state.matches.size - 1).coerceAtLeast(0)))
+    }
+
+    fun previousHistoryMatch() {
+        val state = _historySearch.value ?: return
+        _historySearch.value = state.copy(selected = (state.selected - 1).coerceAtLeast(0))
+    }
+
+    /**
+     * Put the selected match on the prompt, ready to edit or run
+     */
+    fun acceptHistorySearch() {
+        val state = _historySearch.value ?: return
+        closeHistorySearch()
+        _uiState.value = _uiState.value.copy(input = state.current?.command ?: state.originalInput)
+    }
+
+    /**
+     * Leave reverse-i-search, restoring what was typed before
+     */
+    fun cancelHistorySearch() {
+        val state = _historySearch.value ?: return
+        closeHistorySearch()
+        _uiState.value = _uiState.value.copy(input = state.originalInput)
+    }
+
+    private fun closeHistorySearch() {
+        _historySearch.value = null
+        historySearchSession = null
+        historyIndex = -1
+    }
+
+    /**
+     * Start searching the scrollback (Ctrl+F), or step to the next older
+     * match if a search is already open
+     */
+    fun startScrollbackSearch() {
+        if (_scrollbackSearch.value != null) {
+            olderScrollbackMatch()
+            return
+        }
+        if (_historySearch.value != null) cancelHistorySearch()
+        _scrollbackSearch.value = ScrollbackSearchState()
+    }
+
+    /**
+     * New search text: jumps to the newest line containing it
+     */
+    fun updateScrollbackSearch(query: String) {
+        if (_scrollbackSearch.value == null) return
+        val index = if (query.isEmpty()) -1 else scrollback.indexOfLast { it.text.contains(query, ignoreCase = true) }
+        _scrollbackSearch.value = ScrollbackSearchState(query, scrollback.idOrNull(index))
+    }
+
+    fun olderScrollbackMatch() = stepScrollbackSearch(older = true)
+
+    fun newerScrollbackMatch() = stepScrollbackSearch(older = false)
+
+    private fun stepScrollbackSearch(older: Boolean) {
+        val state = _scrollbackSearch.value ?: return
+        val current = state.matchId ?: return
+        val from = (current - scrollback.firstId).toInt()
+        val matches = { line: TerminalLine -> line.text.contains(state.query, ignoreCase = true) }
+        val index = if (older) scrollback.indexOfLast(from - 1, matches) else scrollback.indexOfFirst(from + 1, matches)
+        // Stay on the last match at either end
+        if (index >= 0) _scrollbackSearch.value = state.copy(matchId = scrollback.idAt(index))
+    }
+
+    fun closeScrollbackSearch() {
+        _scrollbackSearch.value = null
+    }
+
+    private fun Scrollback<TerminalLine>.idOrNull(index: Int): Long? = if (index >= 0) idAt(index) else null
+
     /**
      * Cancel current operation (Ctrl+C)
      */
@@ -1120,6 +1506,8 @@ class ShellViewModel @Inject constructor(
         _callingContactPickerRequest.value = null
 
         if (_uiState.value.isExecuting) {
+            // Stops a streaming command's process too
+            executionJob?.cancel()
             _uiState.value = _uiState.value.copy(isExecuting = false, input = "")
             addOutput(OutputItem(
                 command = "^C",
@@ -1158,6 +1546,37 @@ class ShellViewModel @Inject constructor(
     init {
         // Shell starts empty - users can type 'help' for commands
 
+        // Calling and messaging phrases complete like built-ins
+        completionEngine.addCommands(commandRoutes.commands)
+
+        viewModelScope.launch {
+            shellSettingsManager.historySize.collect { size ->
+                scrollback.resize(size * SCROLLBACK_LINES_PER_ENTRY)
+                publishScrollback()
+            }
+        }
+
+        // A newer keystroke cancels the lookup still running for the last one
+        viewModelScope.launch {
+            _uiState.map { it.input }.distinctUntilChanged().collectLatest { input ->
+                _completions.value = if (input.isBlank()) emptyList() else completionEngine.complete(input, COMPLETION_LIMIT)
+            }
+        }
+
+        // Report background jobs as they finish
+        viewModelScope.launch {
+            scriptRunner.jobEvents.collect { event ->
+                addOutput(OutputItem(
+                    command = "[${event.id}] done  ${event.command}",
+                    timestamp = getCurrentTimeString(),
+                    result = ShellResult(event.status, "")
+                ))
+                event.outputs.forEach { output ->
+                    addOutput(OutputItem(command = output.command, timestamp = getCurrentTimeString(), result = output.result))
+                }
+            }
+        }
+
         // Observe contact picker requests from messaging handler
         viewModelScope.launch {
             messagingHandler.showContactPicker.collect { request ->
@@ -1225,6 +1644,7 @@ class ShellViewModel @Inject constructor(
     private fun loadContacts() {
         viewModelScope.launch {
             _contacts.value = messagingService.getAllContacts()
+            contactSearchService.currentIndex()
         }
     }
 
@@ -1358,32 +1778,36 @@ class ShellViewModel @Inject constructor(
         _uiState.value = _uiState.value.copy(input = text)
     }
 
+    /**
+     * Replace the input with a completion and count it for ranking
+     */
+    fun acceptCompletion(completion: Completion) {
+        updateInput(completion.line)
+        completionEngine.recordAccepted(completion)
+    }
+
     fun executeCommand() {
         val command = _uiState.value.input.trim()
         if (command.isEmpty()) return
 
-        // Add to command history (avoid duplicates of last command)
-        if (commandHistory.isEmpty() || commandHistory.last() != command) {
-            commandHistory.add(command)
-            // Keep history size reasonable
-            if (commandHistory.size > 1000) {
-                commandHistory.removeAt(0)
-            }
-        }
+        // Add to command history (skips a repeat of the last command) and save it
+        historyStore.add(command)
+        completionEngine.recordExecuted(command)
         historyIndex = -1 // Reset history navigation
 
-        viewModelScope.launch {
+        executionJob = viewModelScope.launch {
             _uiState.value = _uiState.value.copy(isExecuting = true)
 
             try {
                 // Handle special commands
                 if (command == "clear") {
-                    _uiState.value = ShellUiState()
+                    clearScreen()
                     messagingHandler.reset()
                     return@launch
                 }
 
                 val timestamp = getCurrentTimeString()
+                val route = commandRoutes.resolve(command)?.target ?: ShellRoute.SHELL
 
                 // ═══════════════════════════════════════════════════════════════
                 // PRIORITY 1: Check if we have an active shell incoming call
@@ -1459,7 +1883,19 @@ class ShellViewModel @Inject constructor(
                             )
                         ))
                     }
-                } else if (callingHandler.isCallingCommand(command)) {
+                } else if (route == ShellRoute.SHELL && !messagingHandler.isInConversation() && isScript(command)) {
+                    // Shell command line with ; && || | or &. Calling and messaging
+                    // lines never split, so `sms mom rock & roll` sends all of it
+                    val outputs = shellEngine.executeMultiple(command, scriptRunner)
+
+                    outputs.forEachIndexed { index, output ->
+                        addOutput(OutputItem(
+                            command = if (outputs.size == 1) command else output.command,
+                            timestamp = if (index == 0) timestamp else getCurrentTimeString(),
+                            result = output.result
+                        ))
+                    }
+                } else if (route == ShellRoute.CALLING) {
                     // Initial calling command
                     val outputs = callingHandler.handleCommand(command)
 
@@ -1478,7 +1914,7 @@ class ShellViewModel @Inject constructor(
                             )
                         ))
                     }
-                } else if (messagingHandler.isInConversation() || messagingHandler.isMessagingCommand(command)) {
+                } else if (messagingHandler.isInConversation() || route == ShellRoute.MESSAGING) {
                     // Check if we're in a messaging conversation or this is a messaging command
                     val outputs = messagingHandler.handleCommand(command)
 
@@ -1497,6 +1933,9 @@ class ShellViewModel @Inject constructor(
                             )
                         ))
                     }
+                } else if (shellEngine.isStreamingCommand(command)) {
+                    // Long-running command: output is appended as it arrives
+                    streamOutput(command, timestamp)
                 } else {
                     // Regular shell command
                     val result = shellEngine.execute(command)
@@ -1505,6 +1944,9 @@ class ShellViewModel @Inject constructor(
                     if (result.data == "SHOW_CALCULATOR_UI") {
                         showCalculator()
                     }
+                    if (result.data is FunctionRange) {
+                        showCalculator(plot = result.data)
+                    }
 
                     // Check if calendar UI should be shown
                     if (result.data == "SHOW_CALENDAR_UI") {
@@ -1548,16 +1990,102 @@ class ShellViewModel @Inject constructor(
         }
     }
 
+    private suspend fun streamOutput(command: String, timestamp: String) {
+        addOutput(OutputItem(command = command, timestamp = timestamp))
+        _uiState.value = _uiState.value.copy(input = "")
+
+        shellEngine.executeStreaming(command)
+            .batched(STREAM_BATCH_LINES, STREAM_BATCH_MILLIS)
+            .collect { batch ->
+                // One output item per run of lines with the same type
+                var start = 0
+                while (start < batch.size) {
+                    val type = batch[start].type
+                    var end = start
+                    while (end < batch.size && batch[end].type == type) end++
+                    addOutput(OutputItem(
+                        command = "",
+                        timestamp = timestamp,
+                        result = ShellResult(
+                            status = if (type == com.example.mentra.shell.models.ShellOutputType.ERROR) ResultStatus.FAILURE else ResultStatus.SUCCESS,
+                            message = batch.subList(start, end).joinToString("\n") { it.text }
+                        )
+                    ))
+                    start = end
+                }
+            }
+    }
+
+    private fun isScript(command: String): Boolean {
+        if (!ShellLexer.hasOperators(command)) return false
+        return try {
+            ShellScriptParser.parse(command)
+            true
+        } catch (e: ShellSyntaxException) {
+            // e.g. a trailing "&&"; run it the old way
+            false
+        }
+    }
+
+    /**
+     * Run one command of a script through the handler that owns it
+     */
+    private suspend fun runRouted(command: String): ShellResult {
+        val start = System.currentTimeMillis()
+        val outputs: List<Pair<String, Boolean>> = when (commandRoutes.resolve(command)?.target ?: ShellRoute.SHELL) {
+            ShellRoute.CALLING -> callingHandler.handleCommand(command).map {
+                it.text to (it.type == CallingOutputType.ERROR)
+            }
+            ShellRoute.MESSAGING -> messagingHandler.handleCommand(command).map {
+                it.text to (it.type == MessagingOutputType.ERROR)
+            }
+            ShellRoute.SHELL -> return shellEngine.execute(command)
+        }
+        return ShellResult(
+            status = if (outputs.any { it.second }) ResultStatus.FAILURE else ResultStatus.SUCCESS,
+            message = outputs.joinToString("\n") { it.first },
+            executionTime = System.currentTimeMillis() - start
+        )
+    }
+
+    // Clears the screen; saved command history stays (history -c removes it)
     fun clearHistory() {
-        _uiState.value = ShellUiState()
-        shellEngine.clearHistory()
+        clearScreen()
         messagingHandler.reset()
     }
 
+    private fun clearScreen() {
+        scrollback.clear()
+        closeScrollbackSearch()
+        _uiState.value = ShellUiState(scrollback = scrollback.snapshot())
+    }
+
+    /**
+     * Append [item] to the scrollback, one line per row, and publish it
+     */
     private fun addOutput(item: OutputItem) {
-        val currentOutput = _uiState.value.output.toMutableList()
-        currentOutput.add(item)
-        _uiState.value = _uiState.value.copy(output = currentOutput)
+        if (item.command.isNotBlank() && item.command != "welcome" && item.command != "contact_selected") {
+            scrollback.append(TerminalLine.Prompt(item.timestamp, item.command))
+        }
+        item.result?.takeIf { it.message.isNotEmpty() }?.let { result ->
+            result.message.lineSequence().forEach { scrollback.append(TerminalLine.Output(it, result.status)) }
+        }
+        publishScrollback()
+    }
+
+    private fun publishScrollback() {
+        _uiState.value = _uiState.value.copy(scrollback = scrollback.snapshot())
+    }
+
+    companion object {
+        // Streamed output is appended at most this many lines at a time
+        private const val STREAM_BATCH_LINES = 200
+        private const val STREAM_BATCH_MILLIS = 100L
+        private const val HISTORY_SEARCH_LIMIT = 10
+        private const val COMPLETION_LIMIT = 8
+
+        // Scrollback lines kept per history entry the settings allow
+        private const val SCROLLBACK_LINES_PER_ENTRY = 10
     }
 }
 
@@ -1566,10 +2094,31 @@ class ShellViewModel @Inject constructor(
  */
 data class ShellUiState(
     val input: String = "",
-    val output: List<OutputItem> = emptyList(),
+    val scrollback: ScrollbackSnapshot<TerminalLine> = ScrollbackSnapshot.empty(),
     val isExecuting: Boolean = false
 )
 
+/**
+ * Reverse-i-search in progress; [originalInput] comes back on cancel
+ */
+data class HistorySearchState(
+    val query: String = "",
+    val matches: List<HistoryMatch> = emptyList(),
+    val selected: Int = 0,
+    val originalInput: String = ""
+) {
+    val current: HistoryMatch? get() = matches.getOrNull(selected)
+}
+
+/**
+ * Scrollback search (Ctrl+F); [matchId] is the scrollback line id of the
+ * current match, null if nothing matches
+ */
+data class ScrollbackSearchState(
+    val query: String = "",
+    val matchId: Long? = null
+)
+
 /**
  * Output item with timestamp
  */
@@ -1579,6 +2128,17 @@ data class OutputItem(
     val result: ShellResult? = null
 )
 
+/**
+ * One row of the scrollback: an echoed command, or one line of its output
+ */
+sealed interface TerminalLine {
+    val text: String
+
+    data class Prompt(val time: String, override val text: String) : TerminalLine
+
+    data class Output(override val text: String, val status: ResultStatus) : TerminalLine
+}
+
 /**
  * Calling contact picker request
  */
@@ -1586,6 +2146,15 @@ data class CallingContactPickerRequest(
     val title: String = "Select Contact to Call"
 )
 
+/**
+ * Handler that owns a shell command
+ */
+enum class ShellRoute {
+    CALLING,
+    MESSAGING,
+    SHELL
+}
+
 /**
  * Navigation events from shell
  */
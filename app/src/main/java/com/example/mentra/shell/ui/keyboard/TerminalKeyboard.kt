@@ -38,13 +38,15 @@ fun TerminalKeyboard(
     onTab: () -> Unit,
     onCtrlC: () -> Unit,
     onClear: () -> Unit,
+    onCtrlR: () -> Unit = {},
+    onCtrlF: () -> Unit = {},
     modifier: Modifier = Modifier
 ) {
     val haptic = LocalHapticFeedback.current
     var isShiftActive by remember { mutableStateOf(false) }
     var keyboardMode by remember { mutableStateOf(KeyboardMode.LETTERS) }
 
-    // CTRL key state for Ctrl+C functionality
+    // CTRL key state for Ctrl+C, Ctrl+R and Ctrl+F
     var isCtrlActive by remember { mutableStateOf(false) }
     var ctrlActivationTime by remember { mutableStateOf(0L) }
 
@@ -176,10 +178,16 @@ fun TerminalKeyboard(
                             isCtrlActive = isCtrlActive,
                             onKeyPress = { key ->
                                 haptic.performHapticFeedback(HapticFeedbackType.TextHandleMove)
-                                // Check for Ctrl+C
+                                // Check for Ctrl+C, Ctrl+R and Ctrl+F
                                 if (isCtrlActive && key.equals("c", ignoreCase = true)) {
                                     isCtrlActive = false
                                     onCtrlC()
+                                } else if (isCtrlActive && key.equals("r", ignoreCase = true)) {
+                                    isCtrlActive = false
+                                    onCtrlR()
+                                } else if (isCtrlActive && key.equals("f", ignoreCase = true)) {
+                                    isCtrlActive = false
+                                    onCtrlF()
                                 } else {
                                     onKeyPress(if (isShiftActive) key.uppercase() else key.lowercase())
                                     if (isShiftActive) isShiftActive = false
@@ -0,0 +1,79 @@
+package com.example.mentra.timeline
+
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.messaging.SmsMessage
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * TIMELINE EVENT
+ * One call or SMS in the unified activity timeline
+ * ═══════════════════════════════════════════════════════════════════
+ */
+sealed class TimelineEvent {
+    abstract val id: Long
+    abstract val timestamp: Long
+    abstract val address: String
+    abstract val kind: TimelineKind
+
+    val key: TimelineKey get() = TimelineKey(timestamp, kind, id)
+
+    data class Call(val entry: CallLogEntry) : TimelineEvent() {
+        override val id: Long get() = entry.id
+        override val timestamp: Long get() = entry.timestamp
+        override val address: String get() = entry.number
+        override val kind: TimelineKind get() = TimelineKind.CALL
+    }
+
+    data class Message(val message: SmsMessage) : TimelineEvent() {
+        override val id: Long get() = message.id
+        override val timestamp: Long get() = message.timestamp
+        override val address: String get() = message.address
+        override val kind: TimelineKind get() = TimelineKind.MESSAGE
+    }
+
+    companion object {
+        /** Newest first; the order both provider cursors are read in */
+        val ORDER: Comparator<TimelineEvent> = Comparator { a, b -> TimelineKey.ORDER.compare(a.key, b.key) }
+    }
+}
+
+enum class TimelineKind {
+    CALL,
+    MESSAGE
+}
+
+/**
+ * Position of an event in the timeline, used as the keyset for paging:
+ * the next page holds every event ordered after the last key returned
+ */
+data class TimelineKey(
+    val timestamp: Long,
+    val kind: TimelineKind,
+    val id: Long
+) {
+    companion object {
+        val ORDER: Comparator<TimelineKey> = compareByDescending<TimelineKey> { it.timestamp }
+            .thenBy { it.kind }
+            .thenByDescending { it.id }
+    }
+}
+
+data class TimelinePage(
+    val events: List<TimelineEvent>,
+    // Key to pass for the next page; null once both sources are exhausted
+    val nextKey: TimelineKey?
+) {
+    companion object {
+        val EMPTY = TimelinePage(emptyList(), null)
+    }
+}
+
+/**
+ * Pages of the timeline loaded so far, for list UIs that page on scroll
+ */
+data class TimelineFeedState(
+    val events: List<TimelineEvent> = emptyList(),
+    val nextKey: TimelineKey? = null,
+    val isLoading: Boolean = false,
+    val endReached: Boolean = false
+)
@@ -0,0 +1,44 @@
+package com.example.mentra.timeline
+
+import java.util.PriorityQueue
+
+// ═══════════════════════════════════════════════════════════════════
+// TIMELINE MERGE
+// Lazy k-way merge of already sorted sources
+// ═══════════════════════════════════════════════════════════════════
+
+/**
+ * Merge [sources], each already ordered by [comparator], into one ordered
+ * sequence. Only the current head of every source is held in memory, so
+ * taking n items reads at most n + k rows across k sources.
+ */
+fun <T> mergeSorted(sources: List<Iterator<T>>, comparator: Comparator<in T>): Sequence<T> = sequence {
+    class Head(val value: T, val source: Iterator<T>)
+
+    val heads = PriorityQueue<Head>(maxOf(1, sources.size)) { a, b -> comparator.compare(a.value, b.value) }
+    for (source in sources) {
+        if (source.hasNext()) heads.add(Head(source.next(), source))
+    }
+
+    while (heads.isNotEmpty()) {
+        val head = heads.poll()!!
+        yield(head.value)
+        if (head.source.hasNext()) heads.add(Head(head.source.next(), head.source))
+    }
+}
+
+/**
+ * The first [limit] of [events] (newest first) ordered after [after]. One
+ * extra event is read to tell whether another page exists; its key is then
+ * the last one returned, so the next page starts right behind this one.
+ */
+internal fun pageAfter(events: Sequence<TimelineEvent>, after: TimelineKey?, limit: Int): TimelinePage {
+    val taken = events
+        .filter { after == null || TimelineKey.ORDER.compare(it.key, after) > 0 }
+        .take(limit + 1)
+        .toList()
+
+    val hasMore = taken.size > limit
+    val page = if (hasMore) taken.subList(0, limit) else taken
+    return TimelinePage(page, if (hasMore) page.last().key else null)
+}
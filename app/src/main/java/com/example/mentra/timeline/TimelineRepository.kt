@@ -0,0 +1,246 @@
+package com.example.mentra.timeline
+
+import android.Manifest
+import android.content.Context
+import android.content.pm.PackageManager
+import android.database.Cursor
+import android.provider.CallLog
+import android.provider.Telephony
+import androidx.core.content.ContextCompat
+import com.example.mentra.contacts.ContactSnapshot
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.dialer.CallLogManager
+import com.example.mentra.dialer.CallSource
+import com.example.mentra.messaging.MessageType
+import com.example.mentra.messaging.SmsMessage
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * ═══════════════════════════════════════════════════════════════════
+ * TIMELINE REPOSITORY
+ * Calls and SMS as one activity timeline, read a page at a time
+ * ═══════════════════════════════════════════════════════════════════
+ *
+ * Both providers are queried newest first and merged lazily; a page of n
+ * events reads about n rows in total, however large either log is. Pages
+ * are keyed by the last event returned, so new calls or messages arriving
+ * between pages don't shift or repeat rows.
+ */
+@Singleton
+class TimelineRepository @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 50
+
+        // Trailing digits matched in SQL; candidates are then checked against
+        // the full number key (formatting may split longer runs of digits)
+        private const val SQL_MATCH_DIGITS = 3
+    }
+
+    /**
+     * Next page of events, newest first
+     *
+     * @param contact only events with this number, or everything when null
+     * @param after key of the last event already shown, null for the first page
+     */
+    suspend fun page(
+        contact: String? = null,
+        after: TimelineKey? = null,
+        limit: Int = DEFAULT_PAGE_SIZE,
+        kinds: Set<TimelineKind> = TimelineKind.entries.toSet()
+    ): TimelinePage = withContext(Dispatchers.IO) {
+        val numberKey = contact?.let { ContactSnapshot.numberKey(it) }
+        if (numberKey != null && numberKey.isEmpty()) return@withContext TimelinePage.EMPTY
+
+        val cursors = mutableListOf<Cursor>()
+        try {
+            val sources = mutableListOf<Iterator<TimelineEvent>>()
+            if (TimelineKind.CALL in kinds && hasPermission(Manifest.permission.READ_CALL_LOG)) {
+                queryCalls(numberKey, after)?.let {
+                    cursors.add(it)
+                    sources.add(CursorIterator(it, CallReader(it)))
+                }
+            }
+            if (TimelineKind.MESSAGE in kinds && hasPermission(Manifest.permission.READ_SMS)) {
+                queryMessages(numberKey, after)?.let {
+                    cursors.add(it)
+                    sources.add(CursorIterator(it, MessageReader(it)))
+                }
+            }
+
+            val events = mergeSorted(sources, TimelineEvent.ORDER)
+                .filter { numberKey == null || ContactSnapshot.numberKey(it.address) == numberKey }
+            pageAfter(events, after, limit)
+        } catch (e: Exception) {
+            e.printStackTrace()
+            TimelinePage.EMPTY
+        } finally {
+            cursors.forEach { it.close() }
+        }
+    }
+
+    /**
+     * Most recent call with [contact], without loading the call log
+     */
+    suspend fun lastCall(contact: String): CallLogEntry? {
+        val event = page(contact, limit = 1, kinds = setOf(TimelineKind.CALL)).events.firstOrNull()
+        return (event as? TimelineEvent.Call)?.entry
+    }
+
+    private fun queryCalls(numberKey: String?, after: TimelineKey?): Cursor? {
+        val (selection, args) = selection(CallLog.Calls.DATE, CallLog.Calls.NUMBER, numberKey, after)
+        return context.contentResolver.query(
+            CallLog.Calls.CONTENT_URI,
+            arrayOf(
+                CallLog.Calls._ID,
+                CallLog.Calls.NUMBER,
+                CallLog.Calls.CACHED_NAME,
+                CallLog.Calls.TYPE,
+                CallLog.Calls.DATE,
+                CallLog.Calls.DURATION,
+                CallLog.Calls.CACHED_PHOTO_URI,
+                CallLog.Calls.PHONE_ACCOUNT_ID
+            ),
+            selection,
+            args,
+            "${CallLog.Calls.DATE} DESC, ${CallLog.Calls._ID} DESC"
+        )
+    }
+
+    private fun queryMessages(numberKey: String?, after: TimelineKey?): Cursor? {
+        val (selection, args) = selection(Telephony.Sms.DATE, Telephony.Sms.ADDRESS, numberKey, after)
+        return context.contentResolver.query(
+            Telephony.Sms.CONTENT_URI,
+            arrayOf(
+                Telephony.Sms._ID,
+                Telephony.Sms.ADDRESS,
+                Telephony.Sms.BODY,
+                Telephony.Sms.DATE,
+                Telephony.Sms.TYPE,
+                Telephony.Sms.READ,
+                Telephony.Sms.THREAD_ID
+            ),
+            selection,
+            args,
+            "${Telephony.Sms.DATE} DESC, ${Telephony.Sms._ID} DESC"
+        )
+    }
+
+    private fun selection(
+        dateColumn: String,
+        numberColumn: String,
+        numberKey: String?,
+        after: TimelineKey?
+    ): Pair<String?, Array<String>?> {
+        val clauses = mutableListOf<String>()
+        val args = mutableListOf<String>()
+        if (after != null) {
+            // Inclusive: events sharing the boundary timestamp are dropped by key after the merge
+            clauses.add("$dateColumn <= ?")
+            args.add(after.timestamp.toString())
+        }
+        if (numberKey != null) {
+            clauses.add("$numberColumn LIKE ?")
+            args.add("%" + numberKey.takeLast(SQL_MATCH_DIGITS))
+        }
+        if (clauses.isEmpty()) return null to null
+        return clauses.joinToString(" AND ") to args.toTypedArray()
+    }
+
+    private fun hasPermission(permission: String): Boolean {
+        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED
+    }
+
+    // ═══════════════════════════════════════════════════════════════
+    // CURSOR ADAPTERS
+    // ═══════════════════════════════════════════════════════════════
+
+    /**
+     * Reads one row at a time; the caller owns and closes the cursor
+     */
+    private class CursorIterator<T>(
+        private val cursor: Cursor,
+        private val read: (Cursor) -> T
+    ) : Iterator<T> {
+        private var advanced = false
+        private var hasRow = false
+
+        override fun hasNext(): Boolean {
+            if (!advanced) {
+                hasRow = cursor.moveToNext()
+                advanced = true
+            }
+            return hasRow
+        }
+
+        override fun next(): T {
+            if (!hasNext()) throw NoSuchElementException()
+            advanced = false
+            return read(cursor)
+        }
+    }
+
+    private class CallReader(cursor: Cursor) : (Cursor) -> TimelineEvent {
+        private val idIndex = cursor.getColumnIndexOrThrow(CallLog.Calls._ID)
+        private val numberIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.NUMBER)
+        private val nameIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.CACHED_NAME)
+        private val typeIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.TYPE)
+        private val dateIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.DATE)
+        private val durationIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.DURATION)
+        private val photoIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.CACHED_PHOTO_URI)
+        private val accountIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.PHONE_ACCOUNT_ID)
+
+        override fun invoke(cursor: Cursor): TimelineEvent {
+            val type = cursor.getInt(typeIndex)
+            val accountId = cursor.getString(accountIndex)
+            return TimelineEvent.Call(
+                CallLogEntry(
+                    id = cursor.getLong(idIndex),
+                    number = cursor.getString(numberIndex) ?: "",
+                    contactName = cursor.getString(nameIndex),
+                    callType = CallLogManager.mapCallType(type),
+                    timestamp = cursor.getLong(dateIndex),
+                    duration = cursor.getLong(durationIndex),
+                    photoUri = cursor.getString(photoIndex),
+                    simId = accountId,
+                    isNew = type == CallLog.Calls.MISSED_TYPE,
+                    callSource = CallSource.fromAccountId(accountId)
+                )
+            )
+        }
+    }
+
+    private class MessageReader(cursor: Cursor) : (Cursor) -> TimelineEvent {
+        private val idIndex = cursor.getColumnIndexOrThrow(Telephony.Sms._ID)
+        private val addressIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS)
+        private val bodyIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.BODY)
+        private val dateIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE)
+        private val typeIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.TYPE)
+        private val readIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.READ)
+        private val threadIdIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.THREAD_ID)
+
+        override fun invoke(cursor: Cursor): TimelineEvent {
+            return TimelineEvent.Message(
+                SmsMessage(
+                    id = cursor.getLong(idIndex),
+                    address = cursor.getString(addressIndex) ?: "",
+                    body = cursor.getString(bodyIndex) ?: "",
+                    timestamp = cursor.getLong(dateIndex),
+                    type = when (cursor.getInt(typeIndex)) {
+                        Telephony.Sms.MESSAGE_TYPE_INBOX -> MessageType.RECEIVED
+                        Telephony.Sms.MESSAGE_TYPE_SENT -> MessageType.SENT
+                        Telephony.Sms.MESSAGE_TYPE_DRAFT -> MessageType.DRAFT
+                        else -> MessageType.RECEIVED
+                    },
+                    isRead = cursor.getInt(readIndex) == 1,
+                    threadId = cursor.getLong(threadIdIndex)
+                )
+            )
+        }
+    }
+}
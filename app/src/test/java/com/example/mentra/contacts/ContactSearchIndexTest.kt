@@ -0,0 +1,122 @@
+package com.example.mentra.contacts
+
+import com.example.mentra.messaging.Contact
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.random.Random
+
+class ContactSearchIndexTest {
+
+    private fun doc(
+        id: Int,
+        name: String,
+        number: String = "07${id.toString().padStart(8, '0')}",
+        nicknames: List<String> = emptyList(),
+        aliases: List<String> = emptyList(),
+        frecency: Double = 0.0
+    ) = ContactSearchDocument(
+        contact = Contact(id.toString(), name, listOf(number), null),
+        nicknames = nicknames,
+        aliases = aliases,
+        frecency = frecency
+    )
+
+    private val index = ContactSearchIndex.build(
+        listOf(
+            doc(1, "John Smith"),
+            doc(2, "Johnny Walker"),
+            doc(3, "Mary Jane", nicknames = listOf("MJ")),
+            doc(4, "Zoë Kamau", aliases = listOf("wife")),
+            doc(5, "Peter Johnson", number = "+254 712 345 678"),
+            doc(6, "Joanne Otieno")
+        )
+    )
+
+    private fun names(query: String, limit: Int = 10) = index.search(query, limit).map { it.contact.name }
+
+    @Test
+    fun exactTokenRanksAbovePrefixAndFuzzy() {
+        val hits = index.search("john")
+        assertEquals(listOf("John Smith", "Johnny Walker", "Peter Johnson", "Joanne Otieno"), hits.map { it.contact.name })
+        assertEquals(ContactMatchKind.FUZZY, hits.last().matchKind)
+    }
+
+    @Test
+    fun allTokensMustMatch() {
+        assertEquals(listOf("John Smith"), names("jo sm"))
+    }
+
+    @Test
+    fun toleratesTypos() {
+        val hits = index.search("jhon")
+        assertEquals("John Smith", hits.first().contact.name)
+        assertEquals(ContactMatchKind.FUZZY, hits.first().matchKind)
+    }
+
+    @Test
+    fun matchesNicknamesAliasesAndAccents() {
+        assertEquals(listOf("Mary Jane"), names("mj"))
+        assertEquals(listOf("Zoë Kamau"), names("wife"))
+        assertEquals(listOf("Zoë Kamau"), names("zoe"))
+    }
+
+    @Test
+    fun matchesNumbersAcrossCountryCodeFormats() {
+        assertEquals(listOf("Peter Johnson"), names("0712345678"))
+        assertEquals(listOf("Peter Johnson"), names("+254712345678"))
+    }
+
+    @Test
+    fun substringMatchesInsideTerms() {
+        val hits = index.search("anne")
+        assertEquals("Joanne Otieno", hits.single().contact.name)
+        assertEquals(ContactMatchKind.SUBSTRING, hits.single().matchKind)
+    }
+
+    @Test
+    fun frecencyBreaksTies() {
+        val ranked = ContactSearchIndex.build(
+            listOf(doc(1, "Ann Alpha"), doc(2, "Ann Beta", frecency = 1.0))
+        )
+        assertEquals("Ann Beta", ranked.search("ann").first().contact.name)
+    }
+
+    @Test
+    fun respectsLimit() {
+        assertEquals(2, index.search("jo", limit = 2).size)
+    }
+
+    @Test
+    fun sessionRefinementMatchesOneShotSearch() {
+        val session = index.newSession()
+        for (query in listOf("j", "jo", "joh", "john", "john s", "john sm", "jhon")) {
+            assertEquals(query, index.search(query), session.search(query))
+        }
+    }
+
+    @Test
+    fun editDistanceCountsTranspositionAsOneEdit() {
+        assertEquals(1, ContactSearchIndex.editDistance("jhon", "john", 2))
+        assertEquals(0, ContactSearchIndex.editDistance("mary", "mary", 1))
+        assertEquals(2, ContactSearchIndex.editDistance("abc", "abcdefg", 1))
+    }
+
+    @Test
+    fun tenThousandContactsStillRankAndRespectLimits() {
+        val random = Random(42)
+        val syllables = listOf("ka", "mo", "ri", "jo", "an", "ne", "wa", "ki", "lu", "so", "te", "ba", "chi", "ma", "do")
+        fun word() = (1..random.nextInt(2, 4)).joinToString("") { syllables.random(random) }
+            .replaceFirstChar { it.uppercase() }
+        val docs = (0 until 10_000).map { i ->
+            doc(i, "${word()} ${word()}", frecency = random.nextDouble())
+        } + doc(10_000, "Xavier Quist")
+        val big = ContactSearchIndex.build(docs)
+
+        for (query in listOf("k", "ka", "kamo", "jo an", "moir", "0700001", "lusote", "chima ba")) {
+            assertTrue(query, big.search(query).size <= 10)
+            assertEquals(query, big.search(query), big.newSession().search(query))
+        }
+        assertEquals("Xavier Quist", big.search("xavier").first().contact.name)
+        assertEquals("Xavier Quist", big.search("xavier q").first().contact.name)
+    }
+}
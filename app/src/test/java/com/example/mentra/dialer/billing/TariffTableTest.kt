@@ -0,0 +1,159 @@
+package com.example.mentra.dialer.billing
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+class TariffTableTest {
+
+    private val zone = ZoneId.of("Africa/Nairobi")
+
+    private val safaricom = TariffTable.forOperator(MobileNetworkOperator.SAFARICOM)
+
+    private val perMinute = TariffTable.dayNight(
+        MobileNetworkOperator.UNKNOWN,
+        peak = 5.00,
+        offPeak = 3.00,
+        rounding = BillingRounding.PER_MINUTE
+    )
+
+    private fun at(hour: Int, minute: Int, second: Int = 0): Long {
+        return LocalDateTime.of(2026, 3, 10, hour, minute, second)
+            .atZone(zone).toInstant().toEpochMilli()
+    }
+
+    private fun seconds(s: Long) = s * 1000
+
+    @Test
+    fun `call inside peak band is billed per second at peak rate`() {
+        val start = at(10, 0)
+        val charge = safaricom.price(start, start + seconds(90), zone)
+
+        assertEquals(90, charge.durationSeconds)
+        assertEquals(90, charge.billedSeconds)
+        assertEquals(1, charge.segments.size)
+        assertTrue(charge.segments[0].band.isPeak)
+        assertEquals(90 * 4.87 / 60, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `call crossing into off-peak is split at 10pm`() {
+        val start = at(21, 59, 30)
+        val charge = safaricom.price(start, start + seconds(90), zone)
+
+        assertEquals(2, charge.segments.size)
+        val (peak, offPeak) = charge.segments
+        assertTrue(peak.band.isPeak)
+        assertEquals(30, peak.billedSeconds)
+        assertEquals(at(22, 0), peak.endMillis)
+        assertFalse(offPeak.band.isPeak)
+        assertEquals(60, offPeak.billedSeconds)
+        assertEquals(30 * 4.87 / 60 + 60 * 2.50 / 60, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `call crossing into peak is split at 8am`() {
+        val start = at(7, 58)
+        val charge = safaricom.price(start, start + seconds(5 * 60), zone)
+
+        assertEquals(listOf(false, true), charge.segments.map { it.band.isPeak })
+        assertEquals(listOf(120L, 180L), charge.segments.map { it.billedSeconds })
+        assertEquals(2 * 2.50 + 3 * 4.87, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `call crossing midnight stays off-peak`() {
+        val start = at(23, 59, 30)
+        val charge = safaricom.price(start, start + seconds(60), zone)
+
+        assertTrue(charge.segments.none { it.band.isPeak })
+        assertEquals(60, charge.segments.sumOf { it.billedSeconds })
+        assertEquals(2.50, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `full day call is billed 14 hours peak and 10 hours off-peak`() {
+        val start = at(0, 0)
+        val charge = safaricom.price(start, start + seconds(24 * 60 * 60), zone)
+
+        val peakSeconds = charge.segments.filter { it.band.isPeak }.sumOf { it.billedSeconds }
+        val offPeakSeconds = charge.segments.filterNot { it.band.isPeak }.sumOf { it.billedSeconds }
+        assertEquals(14 * 3600L, peakSeconds)
+        assertEquals(10 * 3600L, offPeakSeconds)
+        assertEquals(14 * 60 * 4.87 + 10 * 60 * 2.50, charge.totalCost, 1e-6)
+    }
+
+    @Test
+    fun `partial second is billed as a whole second`() {
+        val start = at(12, 0)
+        val charge = safaricom.price(start, start + 1500, zone)
+
+        assertEquals(1, charge.durationSeconds)
+        assertEquals(2, charge.billedSeconds)
+        assertEquals(2 * 4.87 / 60, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `zero length call costs nothing`() {
+        val start = at(12, 0)
+        val charge = safaricom.price(start, start, zone)
+
+        assertEquals(0, charge.billedSeconds)
+        assertTrue(charge.segments.isEmpty())
+        assertEquals(0.0, charge.totalCost, 0.0)
+    }
+
+    @Test
+    fun `per minute rounding charges every started minute`() {
+        val start = at(12, 0)
+
+        assertEquals(5.00, perMinute.price(start, start + 1, zone).totalCost, 1e-9)
+        assertEquals(5.00, perMinute.price(start, start + seconds(60), zone).totalCost, 1e-9)
+        assertEquals(10.00, perMinute.price(start, start + seconds(61), zone).totalCost, 1e-9)
+    }
+
+    @Test
+    fun `per minute unit is priced at the rate in force when it started`() {
+        // Units start at 21:59:30 (peak) and 22:00:30 (off-peak)
+        val start = at(21, 59, 30)
+        val charge = perMinute.price(start, start + seconds(90), zone)
+
+        assertEquals(120, charge.billedSeconds)
+        assertEquals(listOf(60L, 60L), charge.segments.map { it.billedSeconds })
+        assertEquals(5.00 + 3.00, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `per minute unit started just before the boundary stays peak`() {
+        // Units start at 21:58:30 and 21:59:30, both peak
+        val start = at(21, 58, 30)
+        val charge = perMinute.price(start, start + seconds(61), zone)
+
+        assertEquals(1, charge.segments.size)
+        assertTrue(charge.segments[0].band.isPeak)
+        assertEquals(10.00, charge.totalCost, 1e-9)
+    }
+
+    @Test
+    fun `next change is one unit boundary ahead`() {
+        val start = at(12, 0)
+
+        assertEquals(start + 1, perMinute.nextChangeMillis(start, start))
+        assertEquals(start + seconds(60) + 1, perMinute.nextChangeMillis(start, start + seconds(10)))
+        assertEquals(start + seconds(60) + 1, perMinute.nextChangeMillis(start, start + seconds(60)))
+        assertEquals(start + seconds(2) + 1, safaricom.nextChangeMillis(start, start + 1500))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `tariff with a gap between bands is rejected`() {
+        OperatorTariff(
+            mno = MobileNetworkOperator.UNKNOWN,
+            bands = listOf(
+                TariffBand(0, 600, 2.0, isPeak = false),
+                TariffBand(660, 24 * 60, 4.0, isPeak = true)
+            ),
+            rounding = BillingRounding.PER_SECOND
+        )
+    }
+}
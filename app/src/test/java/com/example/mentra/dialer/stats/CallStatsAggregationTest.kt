@@ -0,0 +1,91 @@
+package com.example.mentra.dialer.stats
+
+import com.example.mentra.core.data.local.entity.CallContactStatsEntity
+import com.example.mentra.core.data.local.entity.CallDailyStatsEntity
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.dialer.CallType
+import org.junit.Assert.*
+import org.junit.Test
+import java.time.ZoneId
+import kotlin.random.Random
+
+class CallStatsAggregationTest {
+
+    private val zone = ZoneId.of("Africa/Nairobi")
+
+    // Two spellings of the same number, so they must land on one row
+    private val numbers = listOf("0712345678", "+254 712 345 678", "0722000111", "0733999888", "", "PRIVATE")
+    private val names = listOf(null, "Amina", "Brian")
+
+    private fun callLog(size: Int, seed: Int): List<CallLogEntry> {
+        val random = Random(seed)
+        var timestamp = 1_700_000_000_000L
+        return (1L..size).map { id ->
+            // Gaps of up to ~2 days, and sometimes none, so calls share days and instants
+            timestamp += random.nextLong(0, 2 * 86_400_000L)
+            CallLogEntry(
+                id,
+                numbers.random(random),
+                names.random(random),
+                CallType.entries.random(random),
+                timestamp,
+                random.nextLong(0, 600),
+                null,
+                null
+            )
+        }
+    }
+
+    /** Fold [entries] in as consecutive deltas of [batch] calls, the way sync() does */
+    private fun incremental(entries: List<CallLogEntry>, batch: Int): Pair<Map<String, CallContactStatsEntity>, Map<Long, CallDailyStatsEntity>> {
+        val contacts = HashMap<String, CallContactStatsEntity>()
+        val days = HashMap<Long, CallDailyStatsEntity>()
+        for (added in entries.chunked(batch)) {
+            val delta = aggregateCalls(added, zone)
+            delta.contactsMergedInto(contacts).forEach { contacts[it.numberKey] = it }
+            delta.daysMergedInto(days).forEach { days[it.epochDay] = it }
+        }
+        return contacts to days
+    }
+
+    @Test
+    fun incrementalDeltasMatchFullRecompute() {
+        val entries = callLog(size = 2_000, seed = 3)
+        val full = aggregateCalls(entries, zone)
+
+        for (batch in listOf(1, 7, 250, entries.size)) {
+            val (contacts, days) = incremental(entries, batch)
+            assertEquals("contacts, batch $batch", full.contacts, contacts)
+            assertEquals("days, batch $batch", full.days, days)
+        }
+    }
+
+    @Test
+    fun aggregatesCountEveryCallOnce() {
+        val entries = callLog(size = 500, seed = 5)
+        val full = aggregateCalls(entries, zone)
+
+        assertEquals(entries.size, full.contacts.values.sumOf { it.totalCalls() })
+        assertEquals(entries.size, full.days.values.sumOf { it.incoming + it.outgoing + it.missed + it.rejected + it.other })
+        assertEquals(entries.sumOf { it.duration }, full.days.values.sumOf { it.talkSeconds })
+        assertEquals(
+            entries.count { it.callType == CallType.MISSED },
+            full.contacts.values.sumOf { it.missed }
+        )
+    }
+
+    @Test
+    fun sameNumberInAnyFormatSharesARow() {
+        val entries = listOf(
+            CallLogEntry(1, "0712345678", null, CallType.INCOMING, 1_000, 30, null, null),
+            CallLogEntry(2, "+254 712 345 678", "Amina", CallType.OUTGOING, 2_000, 60, null, null)
+        )
+
+        val row = aggregateCalls(entries, zone).contacts.values.single()
+
+        assertEquals(2, row.totalCalls())
+        assertEquals(90L, row.talkSeconds)
+        assertEquals("Amina", row.contactName)
+        assertEquals(CallType.OUTGOING.name, row.lastCallType)
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.mentra.dialer.ussd
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class UssdMenuTest {
+
+    private val bundles = """
+        Data Bundles
+        1. Daily 100MB
+        2) Weekly 1GB
+        3: Monthly 5GB
+        98 More
+        0. Exit
+    """.trimIndent()
+
+    @Test
+    fun parserSplitsTitleAndOptions() {
+        val menu = UssdMenuParser.parse(bundles)
+
+        assertEquals("Data Bundles", menu.title)
+        assertEquals(listOf("1", "2", "3", "98", "0"), menu.options.map { it.key })
+        assertEquals("Weekly 1GB", menu.option("2")?.label)
+        assertTrue(menu.isInteractive)
+        assertFalse(menu.hasOption("4"))
+    }
+
+    @Test
+    fun parserTellsFinalResponsesFromPrompts() {
+        val final = UssdMenuParser.parse("Your balance is KES 120.50. Valid until 31/12.")
+        assertFalse(final.isInteractive)
+        assertTrue(final.options.isEmpty())
+        assertEquals(final.text, final.title)
+
+        // No numbered options, but it still waits for input
+        assertTrue(UssdMenuParser.parse("Enter 4 digit PIN").isInteractive)
+        assertTrue(UssdMenuParser.parse("Reply with amount").isInteractive)
+        assertEquals(listOf("*", "#"), UssdMenuParser.parse("Pick one\n* Back\n# Next").options.map { it.key })
+    }
+
+    @Test
+    fun macroParsesPathsAndChainsThem() {
+        val macro = UssdMacro.parse("bundle", " *144# > 2 >1 ")!!
+        assertEquals("*144#", macro.code)
+        assertEquals(listOf("2", "1"), macro.steps)
+        assertEquals("*144# > 2 > 1", macro.describe())
+        assertEquals("*144*2*1#", macro.toChainedCode())
+
+        // The closing # is optional on the root
+        assertEquals("*100#", UssdMacro.parse("", "*100")!!.code)
+        assertEquals("*100#", UssdMacro.parse("", "*100")!!.toChainedCode())
+
+        assertNull(UssdMacro.parse("", "144 > 1"))
+        assertNull(UssdMacro.parse("", "*144# > two"))
+        assertNull(UssdMacro.parse("", "*144# > "))
+        assertNull(UssdMacro.parse("", "*144# > 123456789"))
+    }
+
+    @Test
+    fun cacheBuildsATreeAndChecksPaths() {
+        val cache = UssdMenuCache()
+        val root = UssdMenuParser.parse(bundles)
+        val weekly = UssdMenuParser.parse("Weekly 1GB\n1. Buy\n2. Gift")
+        cache.record("*144#", 0, emptyList(), root)
+        cache.record("*144#", 0, listOf("2"), weekly)
+
+        assertEquals(weekly, cache.menuAt("*144#", 0, listOf("2")))
+        assertNull(cache.menuAt("*144#", 1))
+
+        assertNull(cache.firstInvalidStep("*144#", 0, listOf("2", "1")))
+        assertEquals(0, cache.firstInvalidStep("*144#", 0, listOf("7")))
+        assertEquals(1, cache.firstInvalidStep("*144#", 0, listOf("2", "9")))
+        // Past what was seen, nothing can be checked
+        assertNull(cache.firstInvalidStep("*144#", 0, listOf("1", "9")))
+        assertNull(cache.firstInvalidStep("*999#", 0, listOf("9")))
+
+        // A menu below an unseen one isn't invented
+        cache.record("*144#", 0, listOf("3", "1"), weekly)
+        assertNull(cache.menuAt("*144#", 0, listOf("3")))
+    }
+
+    @Test
+    fun cacheDropsBranchesAMenuNoLongerOffers() {
+        val cache = UssdMenuCache()
+        cache.record("*144#", 0, emptyList(), UssdMenuParser.parse(bundles))
+        cache.record("*144#", 0, listOf("2"), UssdMenuParser.parse("Weekly\n1. Buy"))
+
+        cache.record("*144#", 0, emptyList(), UssdMenuParser.parse("Data\n1. Daily\n3. Monthly"))
+        assertNull(cache.menuAt("*144#", 0, listOf("2")))
+        assertEquals(0, cache.firstInvalidStep("*144#", 0, listOf("2")))
+    }
+
+    @Test
+    fun cacheEvictsTheLeastRecentlyUsedCode() {
+        val cache = UssdMenuCache(maxCodes = 2)
+        val menu = UssdMenuParser.parse(bundles)
+        cache.record("*1#", 0, emptyList(), menu)
+        cache.record("*2#", 0, emptyList(), menu)
+        cache.menuAt("*1#", 0)
+        cache.record("*3#", 0, emptyList(), menu)
+
+        assertNotNull(cache.menuAt("*1#", 0))
+        assertNull(cache.menuAt("*2#", 0))
+        assertNotNull(cache.menuAt("*3#", 0))
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.mentra.infrastructure.privileged
+
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.IOException
+
+/**
+ * Runs against a local `sh` standing in for su
+ */
+class PrivilegedShellSessionTest {
+
+    private val session = PrivilegedShellSession(listOf("sh"), commandTimeoutMillis = 2_000)
+
+    @After
+    fun tearDown() = runBlocking { session.close() }
+
+    @Test
+    fun capturesOutputAndExitCode() = runBlocking {
+        val ok = session.execute("echo hello; echo world")
+        assertEquals("hello\nworld", ok.output)
+        assertEquals(0, ok.exitCode)
+
+        val failed = session.execute("echo oops >&2; exit_code() { return 3; }; exit_code")
+        assertEquals("oops", failed.output)
+        assertEquals(3, failed.exitCode)
+        assertFalse(failed.isSuccess)
+    }
+
+    @Test
+    fun framingSurvivesQuotesMissingNewlinesAndStdinReaders() = runBlocking {
+        assertEquals("it's \"quoted\"", session.execute("echo \"it's \\\"quoted\\\"\"").output)
+        assertEquals("no newline", session.execute("printf 'no newline'").output)
+        assertEquals("", session.execute("true").output)
+        // Would swallow the next command if stdin weren't redirected
+        assertEquals("", session.execute("cat").output)
+        assertEquals("after", session.execute("echo after").output)
+        assertEquals(1, session.stats.value.starts)
+    }
+
+    @Test
+    fun concurrentCallersEachGetTheirOwnOutput() = runBlocking {
+        val results = (1..50).map { i ->
+            async { session.execute("echo start $i; echo end $i") }
+        }.awaitAll()
+
+        results.forEachIndexed { index, result ->
+            val i = index + 1
+            assertEquals("start $i\nend $i", result.output)
+        }
+        assertEquals(50, session.stats.value.commands)
+        assertEquals(1, session.stats.value.starts)
+    }
+
+    @Test
+    fun commandsDoNotLeakStateIntoTheSession() = runBlocking {
+        val home = session.execute("pwd").output
+        session.execute("cd /proc; export LEAK=1; VAR=2")
+        assertEquals(home, session.execute("pwd").output)
+        assertEquals("[][]", session.execute("echo \"[\$LEAK][\$VAR]\"").output)
+
+        val exited = session.execute("exit 4")
+        assertEquals(4, exited.exitCode)
+        assertEquals("alive", session.execute("echo alive").output)
+        assertEquals(1, session.stats.value.starts)
+    }
+
+    @Test
+    fun restartsAfterTheShellDies() = runBlocking {
+        assertEquals("1", session.execute("echo 1").output)
+
+        try {
+            // $$ is the session shell itself, not the command's subshell
+            session.execute("kill -9 \$\$")
+            fail("killing the shell should end the session")
+        } catch (e: IOException) {
+            // expected
+        }
+
+        assertEquals("2", session.execute("echo 2").output)
+        assertEquals(1, session.stats.value.restarts)
+    }
+
+    @Test
+    fun timeoutKillsTheCommandAndTheSessionRecovers() = runBlocking {
+        val start = System.currentTimeMillis()
+        try {
+            session.execute("sleep 30")
+            fail("sleep should time out")
+        } catch (e: IOException) {
+            assertTrue(e.message!!.contains("timed out"))
+        }
+        assertTrue(System.currentTimeMillis() - start < 10_000)
+        assertEquals("ok", session.execute("echo ok").output)
+    }
+
+    @Test
+    fun cancelledCallerDoesNotBlockTheQueue() = runBlocking {
+        val slow = launch { session.execute("sleep 30") }
+        delay(200)
+        slow.cancel()
+        assertEquals("next", session.execute("echo next").output)
+    }
+
+    @Test
+    fun manySequentialCommandsShareOneShell() = runBlocking {
+        repeat(100) { assertEquals("$it", session.execute("echo $it").output) }
+        assertEquals(1, session.stats.value.starts)
+        assertEquals(100, session.stats.value.commands)
+        assertEquals(0, session.stats.value.failures)
+    }
+}
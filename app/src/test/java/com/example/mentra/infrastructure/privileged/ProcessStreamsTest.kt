@@ -0,0 +1,44 @@
+package com.example.mentra.infrastructure.privileged
+
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Assert.*
+import org.junit.Test
+
+class ProcessStreamsTest {
+
+    private fun sh(script: String) = listOf("sh", "-c", script)
+
+    @Test
+    fun linesArriveInOrderWithStderrMerged() = runBlocking {
+        val lines = processLines(sh("echo one; echo two >&2; echo three")).toList()
+        assertEquals(listOf("one", "two", "three"), lines)
+    }
+
+    @Test
+    fun stdinIsWrittenToTheProcess() = runBlocking {
+        assertEquals(listOf("HELLO", "WORLD"), processLines(listOf("sh"), stdin = "echo HELLO\necho WORLD\nexit\n").toList())
+    }
+
+    @Test
+    fun nonZeroExitFailsAfterEveryLine() = runBlocking {
+        val seen = mutableListOf<String>()
+        try {
+            processLines(sh("echo partial; echo broken >&2; exit 3")).collect { seen.add(it) }
+            fail("Expected ProcessExitException")
+        } catch (e: ProcessExitException) {
+            assertEquals(3, e.exitCode)
+            assertEquals(listOf("partial", "broken"), e.tail)
+        }
+        assertEquals(listOf("partial", "broken"), seen)
+    }
+
+    @Test
+    fun cancellingTheCollectorStopsAnEndlessProcess() = runBlocking {
+        // `yes` never exits on its own; take() cancels the flow, which must destroy it
+        val lines = withTimeout(10_000) { processLines(listOf("yes"), bufferLines = 4).take(3).toList() }
+        assertEquals(listOf("y", "y", "y"), lines)
+    }
+}
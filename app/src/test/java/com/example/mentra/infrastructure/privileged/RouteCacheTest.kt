@@ -0,0 +1,70 @@
+package com.example.mentra.infrastructure.privileged
+
+import com.example.mentra.infrastructure.privileged.ExecutionMethod.ADB
+import com.example.mentra.infrastructure.privileged.ExecutionMethod.LIMITED
+import com.example.mentra.infrastructure.privileged.ExecutionMethod.ROOT
+import com.example.mentra.infrastructure.privileged.ExecutionMethod.SHIZUKU
+import org.junit.Assert.*
+import org.junit.Test
+
+class RouteCacheTest {
+
+    private var now = 0L
+    private val cache = RouteCache(negativeTtlMillis = 1_000, clock = { now })
+    private val all = listOf(SHIZUKU, ROOT, ADB, LIMITED)
+
+    @Test
+    fun commandClassKeepsTheSubcommandOfMultiplexers() {
+        assertEquals("settings put", RouteCache.commandClass("settings put global adb_enabled 1"))
+        assertEquals("svc wifi", RouteCache.commandClass("  SVC  wifi enable"))
+        assertEquals("input", RouteCache.commandClass("input tap 10 20"))
+        assertEquals("pm", RouteCache.commandClass("pm"))
+    }
+
+    @Test
+    fun unknownClassesUseTheAvailableOrder() {
+        assertEquals(all, cache.order("input", all))
+    }
+
+    @Test
+    fun lastSuccessfulMethodGoesFirst() {
+        cache.recordSuccess("input", ADB)
+        assertEquals(listOf(ADB, SHIZUKU, ROOT, LIMITED), cache.order("input", all))
+        // A preferred method that is no longer available is ignored
+        assertEquals(listOf(SHIZUKU, LIMITED), cache.order("input", listOf(SHIZUKU, LIMITED)))
+        // Other classes are unaffected
+        assertEquals(all, cache.order("settings put", all))
+    }
+
+    @Test
+    fun failedMethodsAreSkippedUntilTheTtlPasses() {
+        cache.recordFailure("svc wifi", SHIZUKU)
+        cache.recordSuccess("svc wifi", ROOT)
+        assertEquals(listOf(ROOT, ADB, LIMITED), cache.order("svc wifi", all))
+        assertEquals(listOf(SHIZUKU), cache.snapshot().single().skipped)
+
+        now += 1_000
+        assertEquals(listOf(ROOT, SHIZUKU, ADB, LIMITED), cache.order("svc wifi", all))
+        assertTrue(cache.snapshot().single().skipped.isEmpty())
+    }
+
+    @Test
+    fun failureDropsThePreferenceAndSuccessLiftsTheSkip() {
+        cache.recordSuccess("input", ROOT)
+        cache.recordFailure("input", ROOT)
+        assertNull(cache.snapshot().single().preferred)
+        assertEquals(listOf(SHIZUKU, ADB, LIMITED), cache.order("input", all))
+
+        cache.recordSuccess("input", ROOT)
+        assertEquals(all.sortedBy { it != ROOT }, cache.order("input", all))
+        assertEquals(2, cache.snapshot().single().successes)
+    }
+
+    @Test
+    fun clearForgetsEveryRoute() {
+        cache.recordFailure("input", SHIZUKU)
+        cache.clear()
+        assertTrue(cache.snapshot().isEmpty())
+        assertEquals(all, cache.order("input", all))
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.mentra.launcher
+
+import android.content.Context
+import android.content.pm.PackageManager
+import android.os.BatteryManager
+import com.example.mentra.shell.apps.AppCacheService
+import com.example.mentra.shell.apps.CachedApp
+import io.mockk.Called
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import io.mockk.verify
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.resetMain
+import kotlinx.coroutines.test.setMain
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * The launcher lists apps from [AppCacheService]'s catalog; building the
+ * grid, at start or when the catalog changes, must not ask PackageManager
+ * anything
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+class LauncherViewModelTest {
+
+    private val packageManager = mockk<PackageManager>(relaxed = true)
+    private val context = mockk<Context>(relaxed = true)
+    private val catalog = MutableStateFlow<List<CachedApp>>(emptyList())
+    private val appCacheService = mockk<AppCacheService>(relaxed = true)
+
+    private fun app(name: String, launchable: Boolean = true) =
+        CachedApp(name, "pkg.${name.lowercase()}", "1.0", isSystemApp = false, isLaunchable = launchable, lastUpdated = 7L)
+
+    @Before
+    fun setUp() {
+        // Nothing advances its scheduler, so the clock and battery loops stay parked
+        Dispatchers.setMain(UnconfinedTestDispatcher())
+        mockkStatic(android.util.Log::class)
+        every { android.util.Log.d(any(), any()) } returns 0
+        every { context.packageManager } returns packageManager
+        every { context.getSystemService(Context.BATTERY_SERVICE) } returns mockk<BatteryManager>(relaxed = true)
+        every { appCacheService.cachedApps } returns catalog
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(android.util.Log::class)
+        Dispatchers.resetMain()
+    }
+
+    @Test
+    fun appGridNeverQueriesPackageManager() = runBlocking {
+        val viewModel = LauncherViewModel(context, mockk(relaxed = true), appCacheService)
+
+        catalog.value = listOf(app("Camera"), app("Settings"), app("Service", launchable = false))
+        val shown = withTimeout(5_000) { viewModel.installedApps.first { it.isNotEmpty() } }
+        assertEquals(
+            listOf(AppInfo("Camera", "pkg.camera", lastUpdated = 7L), AppInfo("Settings", "pkg.settings", lastUpdated = 7L)),
+            shown
+        )
+
+        // A package event updates the catalog; the grid follows it
+        catalog.value = catalog.value + app("Maps")
+        withTimeout(5_000) { viewModel.installedApps.first { it.size == 3 } }
+
+        verify { appCacheService.initialize() }
+        verify { packageManager wasNot Called }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.mentra.shell.apps
+
+import io.mockk.mockk
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+class AppCacheServiceTest {
+
+    private val service = AppCacheService(mockk(relaxed = true), mockk(relaxed = true))
+
+    private fun generation(number: Int, apps: Int) = (0 until apps).map { n ->
+        CachedApp("App $n g$number", "pkg.app$n", "g$number", isSystemApp = false, isLaunchable = true)
+    }
+
+    /**
+     * A writer keeps publishing new generations while readers look apps
+     * up through the service. A reader that caught a half-built index
+     * would miss a package or see a partial list, and one that caught a
+     * stale index after a newer one would see the generation go back.
+     */
+    @Test
+    fun readersNeverSeeAHalfBuiltIndex() {
+        val apps = 500
+        val stop = CountDownLatch(1)
+        val failures = AtomicInteger()
+        val lookups = AtomicInteger()
+        val errors = AtomicReference<Throwable?>(null)
+
+        val readers = (1..3).map { reader ->
+            Thread {
+                try {
+                    var i = reader
+                    var seen = -1
+                    while (stop.count > 0) {
+                        val n = i++ % apps
+                        val byPackage = service.findApp("pkg.app$n")
+                        if (byPackage == null) {
+                            if (seen >= 0) failures.incrementAndGet()
+                            continue
+                        }
+                        val byName = service.findApp("app $n ")
+                        val listed = service.getAllApps()
+                        val generation = byPackage.version.drop(1).toInt()
+                        val nameGeneration = byName?.version?.drop(1)?.toInt() ?: -1
+
+                        if (byPackage.packageName != "pkg.app$n" || generation < seen ||
+                            nameGeneration < generation || listed.size != apps
+                        ) {
+                            failures.incrementAndGet()
+                        }
+                        seen = nameGeneration
+                        lookups.incrementAndGet()
+                    }
+                } catch (t: Throwable) {
+                    errors.compareAndSet(null, t)
+                }
+            }
+        }
+        readers.forEach { it.start() }
+
+        val generations = 200
+        repeat(generations) { service.publish(generation(it, apps)) }
+        stop.countDown()
+        readers.forEach { it.join(TimeUnit.SECONDS.toMillis(10)) }
+
+        errors.get()?.let { throw AssertionError("Reader failed", it) }
+        assertEquals("inconsistent lookups out of ${lookups.get()}", 0, failures.get())
+        assertTrue(lookups.get() > 0)
+        assertEquals("g${generations - 1}", service.findApp("pkg.app0")?.version)
+        assertEquals(CacheState.Ready(apps), service.cacheState.value)
+    }
+}
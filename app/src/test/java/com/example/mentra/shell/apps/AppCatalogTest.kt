@@ -0,0 +1,102 @@
+package com.example.mentra.shell.apps
+
+import org.junit.Assert.*
+import org.junit.Ignore
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class AppCatalogTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun apps(count: Int) = (0 until count).map { n ->
+        CachedApp(
+            name = "App ${n.toString().padStart(4, '0')} – ünïcode",
+            packageName = "com.example.app$n",
+            version = "1.$n",
+            isSystemApp = n % 3 == 0,
+            isLaunchable = n % 2 == 0,
+            lastUpdated = 1_700_000_000_000L + n
+        )
+    }
+
+    @Test
+    fun roundTrip() {
+        val file = folder.root.resolve("catalog.bin")
+        val snapshot = AppCatalog.Snapshot("en-GB", apps(50))
+
+        AppCatalog.write(file, snapshot)
+
+        assertEquals(snapshot, AppCatalog.read(file))
+        assertFalse(folder.root.resolve("catalog.bin.tmp").exists())
+    }
+
+    @Test
+    fun unreadableCatalogIsIgnored() {
+        val file = folder.root.resolve("catalog.bin")
+        assertNull(AppCatalog.read(file))
+
+        AppCatalog.write(file, AppCatalog.Snapshot("en", apps(20)))
+        val bytes = file.readBytes()
+        file.writeBytes(bytes.copyOf(bytes.size / 2))
+        assertNull(AppCatalog.read(file))
+
+        file.writeBytes(byteArrayOf(1, 2, 3, 4, 5, 6, 7, 8))
+        assertNull(AppCatalog.read(file))
+    }
+
+    @Test
+    fun corruptCountOrTextIsIgnored() {
+        val file = folder.root.resolve("catalog.bin")
+        AppCatalog.write(file, AppCatalog.Snapshot("en", apps(1)))
+        val header = file.readBytes().copyOf(4 + 4 + 2 + 2)
+
+        // A count far beyond what the file holds must not be allocated
+        file.writeBytes(header + byteArrayOf(0x7F, -1, -1, -1))
+        assertNull(AppCatalog.read(file))
+
+        // One record whose package name is malformed modified UTF-8
+        val record = byteArrayOf(0, 2, 0xC0.toByte(), 0x20) + ByteArray(16)
+        file.writeBytes(header + byteArrayOf(0, 0, 0, 1) + record)
+        assertNull(AppCatalog.read(file))
+    }
+
+    /**
+     * Cold-start path up to the first `open`: read the catalog, build the
+     * index, find the app, all without asking PackageManager
+     */
+    @Test
+    fun catalogAloneIsEnoughForTheFirstOpen() {
+        val file = folder.root.resolve("catalog.bin")
+        AppCatalog.write(file, AppCatalog.Snapshot("en", apps(600)))
+
+        val snapshot = AppCatalog.read(file)!!
+        assertEquals(600, snapshot.apps.size)
+        assertEquals("com.example.app599", AppIndex.build(snapshot.apps).find("app 0599")?.packageName)
+    }
+
+    /**
+     * Time for the same path, best of 10. Without the catalog this point
+     * is reached only after PackageManager has been scanned (seconds on a
+     * device with a few hundred packages).
+     */
+    @Ignore("Benchmark: prints timings, run by hand")
+    @Test
+    fun benchmarkTimeToFirstOpen() {
+        val file = folder.root.resolve("catalog.bin")
+        AppCatalog.write(file, AppCatalog.Snapshot("en", apps(600)))
+
+        var best = Long.MAX_VALUE
+        var found: CachedApp? = null
+        repeat(10) {
+            val start = System.nanoTime()
+            val snapshot = AppCatalog.read(file)!!
+            found = AppIndex.build(snapshot.apps).find("app 0599")
+            best = minOf(best, System.nanoTime() - start)
+        }
+
+        println("AppCatalog: ${file.length() / 1024} KB, 600 apps to first open (${found?.packageName}) in ${best / 1_000} us")
+    }
+}
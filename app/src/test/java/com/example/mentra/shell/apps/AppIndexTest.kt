@@ -0,0 +1,114 @@
+package com.example.mentra.shell.apps
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class AppIndexTest {
+
+    private fun app(name: String, packageName: String) =
+        CachedApp(name, packageName, "1.0", isSystemApp = false, isLaunchable = true)
+
+    @Test
+    fun lookupsMatchTheOldMaps() {
+        val index = AppIndex.build(listOf(
+            app("YouTube", "com.google.android.youtube"),
+            app("Google Chrome", "com.android.chrome"),
+            app("WhatsApp", "com.whatsapp")
+        ))
+
+        assertEquals(listOf("Google Chrome", "WhatsApp", "YouTube"), index.apps.map { it.name })
+        assertEquals("WhatsApp", index.find("com.whatsapp")?.name)
+        assertEquals("YouTube", index.find("yt")?.name)
+        assertEquals("Google Chrome", index.find("chrome")?.name)
+        assertEquals("Google Chrome", index.find("browser")?.name)
+        assertEquals("WhatsApp", index.find("what")?.name)
+        assertEquals("YouTube", index.byPackage("COM.GOOGLE.ANDROID.YOUTUBE")?.name)
+        assertNull(index.find("telegram"))
+    }
+
+    private val catalog = AppIndex.build(listOf(
+        app("Calculator", "com.android.calculator2"),
+        app("Calendar", "com.google.android.calendar"),
+        app("Camera", "com.android.camera"),
+        app("Google Chrome", "com.android.chrome"),
+        app("Chrome Beta", "com.chrome.beta"),
+        app("WhatsApp", "com.whatsapp"),
+        app("WhatsApp Business", "com.whatsapp.w4b"),
+        app("Škoda Connect", "cz.skodaauto.connect"),
+        app("ВКонтакте", "com.vkontakte.android"),
+        app("Straße Navi", "de.strasse.navi")
+    ))
+
+    private fun names(query: String, limit: Int = 10, usage: Map<String, Int> = emptyMap()) =
+        catalog.search(query, limit, usage).map { it.app.name }
+
+    @Test
+    fun searchRanksByMatchQuality() {
+        assertEquals(listOf("Chrome Beta", "Google Chrome"), names("chrome"))
+        assertEquals("Google Chrome", names("gc").first())
+        assertEquals(AppMatchKind.INITIALS, catalog.search("wab").first().matchKind)
+        assertEquals(listOf("WhatsApp", "WhatsApp Business"), names("whatsapp"))
+        assertEquals("Calculator", names("calc").first())
+        assertEquals(listOf("Calculator", "Calendar"), names("cal").take(2).sorted())
+        assertEquals("Calendar", catalog.find("cal")?.name)
+        assertEquals(AppMatchKind.PACKAGE, catalog.search("w4b").single().matchKind)
+        assertEquals("Calculator", names("clcltr").single())
+    }
+
+    @Test
+    fun accentsAndOtherScriptsAreTransliterated() {
+        assertEquals("Škoda Connect", catalog.find("skoda")?.name)
+        assertEquals("ВКонтакте", catalog.find("vkontakte")?.name)
+        assertEquals("ВКонтакте", catalog.find("вконтакте")?.name)
+        assertEquals("Straße Navi", catalog.find("strasse")?.name)
+    }
+
+    @Test
+    fun usageBoostsWithinATierOnly() {
+        // Shortest name covers most of it
+        assertEquals("Camera", names("ca").first())
+        val usage = mapOf("com.android.calculator2" to 40)
+        assertEquals("Calculator", names("ca", usage = usage).first())
+        // An exact name still beats a much-used prefix match
+        assertEquals("WhatsApp", names("whatsapp", usage = mapOf("com.whatsapp.w4b" to 1_000)).first())
+    }
+
+    @Test
+    fun resultsAreDeterministicAndLooseMatchesDontOpen() {
+        val shuffled = AppIndex.build(listOf(
+            app("Notes", "b.notes"), app("Notes", "a.notes"), app("Notes", "c.notes")
+        ))
+        repeat(3) {
+            assertEquals(listOf("a.notes", "b.notes", "c.notes"), shuffled.search("not").map { it.app.packageName })
+        }
+        assertEquals(listOf("a.notes"), shuffled.search("notes", 1).map { it.app.packageName })
+
+        // "cmr" fits Calculator and Camera only loosely
+        assertFalse(catalog.search("cmr").isEmpty())
+        assertNull(catalog.find("cmr"))
+        assertNull(catalog.find("xyz"))
+    }
+
+    @Test
+    fun everyKeystrokeNarrowsTowardsTheTypedApp() {
+        val words = listOf("google", "photo", "music", "notes", "maps", "bank", "wallet", "chat", "news", "video")
+        val apps = (0 until 600).map { n ->
+            app("${words[n % words.size].replaceFirstChar { it.uppercase() }}${words[(n / 10) % words.size]} $n", "com.example.app$n")
+        }
+        val index = AppIndex.build(apps)
+
+        // Names are "<Word><word> <n>"; "Musicbank" is every n ending in 52
+        val typed = "musicbank 52"
+        var previous = Int.MAX_VALUE
+        for (end in 1..typed.length) {
+            val hits = index.search(typed.substring(0, end), 24)
+            assertTrue(hits.size <= 24)
+            if (end >= "musicbank".length) {
+                assertTrue(typed.substring(0, end), hits.all { it.app.name.startsWith("Musicbank") })
+                assertTrue(hits.size <= previous)
+                previous = hits.size
+            }
+        }
+        assertEquals("com.example.app52", index.search(typed).first().app.packageName)
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.mentra.shell.calculator
+
+import com.example.mentra.shell.models.ShellOutputType
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Ignore
+import org.junit.Test
+
+class ShellCalculatorTest {
+
+    private val calculator = ShellCalculator()
+
+    private fun eval(text: String): Double = ExpressionCompiler.compile(text).evaluate()
+
+    private fun line(text: String): String = calculator.evaluate(text).single().text
+
+    @Test
+    fun precedenceAndAssociativity() {
+        assertEquals(14.0, eval("2 + 3 * 4"), 0.0)
+        assertEquals(20.0, eval("(2 + 3) * 4"), 0.0)
+        assertEquals(2.0.pow(9.0), eval("2 ^ 3 ^ 2"), 0.0)
+        assertEquals(1024.0, eval("2 ** 10"), 0.0)
+        assertEquals(-4.0, eval("-2^2"), 0.0)
+        assertEquals(0.5, eval("2^-1"), 0.0)
+        assertEquals(2.0, eval("17 mod 5"), 0.0)
+        assertEquals(2.0, eval("17%5"), 0.0)
+        assertEquals(1.0, eval("10 - 4 - 5"), 0.0)
+    }
+
+    @Test
+    fun numbersConstantsAndImplicitMultiplication() {
+        assertEquals(100000.0, eval("1e5"), 0.0)
+        assertEquals(0.0025, eval("2.5e-3"), 1e-15)
+        assertEquals(2 * Math.E, eval("2e"), 1e-12)
+        assertEquals(2 * Math.PI, eval("2pi"), 1e-12)
+        assertEquals(10.0, eval("2(3+2)"), 0.0)
+        assertEquals(21.0, eval("(1+2)(3+4)"), 0.0)
+        assertEquals(6.0, eval("(1+2)2"), 0.0)
+        assertEquals(0.5, eval(".5"), 0.0)
+    }
+
+    @Test
+    fun functions() {
+        assertEquals(12.0, eval("sqrt(144)"), 0.0)
+        assertEquals(0.5, eval("sin(30)"), 1e-12)
+        assertEquals(2.0, eval("log(100)"), 1e-12)
+        assertEquals(3.0, eval("log10(1000)"), 1e-12)
+        assertEquals(4.0, eval("ceil(3.2)"), 0.0)
+        assertEquals(8.0, eval("pow(2, 3)"), 0.0)
+        assertEquals(1.0, eval("min(4, 1, 3)"), 0.0)
+        assertEquals(4.0, eval("max(4, 1, 3)"), 0.0)
+    }
+
+    @Test
+    fun errors() {
+        assertTrue(line("1/0").contains("Division by zero"))
+        assertTrue(line("sqrt(-1)").contains("square root"))
+        assertTrue(line("(1+2").contains("Missing closing parenthesis"))
+        assertTrue(line("pow(2)").contains("pow expects 2 arguments"))
+        assertTrue(line("1 + y").contains("Unknown variable: y"))
+        assertTrue(line("pi = 3").contains("Cannot assign"))
+        assertEquals(ShellOutputType.ERROR, calculator.evaluate("2 $ 3").single().type)
+    }
+
+    @Test
+    fun variablesAndAns() = runBlocking {
+        assertEquals("r = 4", line("r = 4"))
+        assertEquals("pir^2 = 50.2654824574", line("pi r^2"))
+        assertEquals("ans/2 = 25.1327412287", line("ans / 2"))
+        assertEquals("x = 3", line("x = 3"))
+        assertEquals("2x+1 = 7", line("2x + 1"))
+
+        // Cached program picks up the new value
+        line("x = 10")
+        assertEquals("2x+1 = 21", line("2x + 1"))
+
+        val vars = calculator.handleCommand("calc vars").joinToString("\n") { it.text }
+        assertTrue(vars.contains("x = 10"))
+        assertTrue(vars.contains("ans = 21"))
+
+        calculator.handleCommand("calc clear")
+        assertTrue(line("2x + 1").contains("Unknown variable"))
+    }
+
+    @Test
+    fun tableCommand() = runBlocking {
+        val lines = calculator.handleCommand("calc table x^2 for x in 0..10 step 2").map { it.text }
+        assertTrue(lines[0].contains("(6 points)"))
+        assertEquals(listOf("0", "4", "16", "36", "64", "100"), lines.subList(2, 8).map { it.trim().split(Regex("\\s+"))[1] })
+        assertTrue(lines.last().contains("min 0, max 100"))
+
+        // Bounds are expressions; other variables keep their values
+        calculator.evaluate("k = 2")
+        val scaled = calculator.handleCommand("calc table k*sin(t) for t in 0..90 step 30").map { it.text }
+        assertEquals("2", scaled.last { it.startsWith("  90") }.trim().split(Regex("\\s+"))[1])
+
+        // Long tables are cut short on screen
+        val long = calculator.handleCommand("calc table x for x in 1..1000 step 1").map { it.text }
+        assertTrue(long.any { it.contains("900 more rows") })
+
+        assertTrue(calculator.handleCommand("calc table x for x in 0..1 step -1").single().text.contains("never reaches"))
+        assertTrue(calculator.handleCommand("calc table y*x for x in 0..1").single().text.contains("Unknown variable: y"))
+        assertTrue(calculator.handleCommand("calc table x^2").single().text.contains("Usage"))
+    }
+
+    @Test
+    fun plotRequest() {
+        val plot = calculator.plotRequest("calc plot sin(x) for x in -pi..2pi")!!
+        assertEquals("sin(x)", plot.expression)
+        assertEquals(-Math.PI, plot.start, 1e-12)
+        assertEquals(2 * Math.PI, plot.end, 1e-12)
+        assertFalse(plot.radians)
+
+        assertEquals(-10.0, calculator.plotRequest("calc plot x^2")!!.start, 0.0)
+        assertNull(calculator.plotRequest("calc plot sin(x) for x in a..b"))
+        assertNull(calculator.plotRequest("calc table x for x in 0..1"))
+        assertNull(calculator.plotRequest("calc 2+2"))
+    }
+
+    @Test
+    fun parallelTableMatchesSequential() = runBlocking {
+        val program = ExpressionCompiler.compile("sin(x) * x^2 - sqrt(abs(x))")
+        val range = FunctionRange("", start = -500.0, end = 500.0, step = 0.005)
+        val samples = FunctionSampler.table(program, range)
+        assertTrue(samples.size >= FunctionSampler.PARALLEL_THRESHOLD)
+        assertEquals(200_001, samples.size)
+
+        val single = program.bind("x")
+        for (i in 0 until samples.size step 997) {
+            assertEquals(single(samples.xs[i]), samples.ys[i], 0.0)
+        }
+        assertEquals(500.0, samples.xs.last(), 1e-9)
+    }
+
+    @Test
+    fun adaptivePlotRefinesWhereTheCurveBends() = runBlocking {
+        val flat = FunctionSampler.plot(ExpressionCompiler.compile("2x + 1"), FunctionRange("", start = -10.0, end = 10.0))
+        assertEquals(256, flat.size)
+
+        val curved = FunctionSampler.plot(
+            ExpressionCompiler.compile("sin(1/x)"),
+            FunctionRange("", start = -1.0, end = 1.0, radians = true),
+            maxPoints = 2_000
+        )
+        assertTrue(curved.size in 257..2_000)
+        for (i in 1 until curved.size) assertTrue(curved.xs[i] > curved.xs[i - 1])
+
+        // Undefined below zero: the edge of the domain gets extra points
+        val root = FunctionSampler.plot(ExpressionCompiler.compile("sqrt(x)"), FunctionRange("", start = -1.0, end = 1.0))
+        assertTrue(root.ys.first().isNaN())
+        val firstDefined = root.xs[root.ys.indexOfFirst { it.isFinite() }]
+        assertTrue(firstDefined < 0.001)
+
+        val poles = FunctionSampler.plot(ExpressionCompiler.compile("tan(x)"), FunctionRange("", start = 0.0, end = 360.0))
+        val view = poles.viewRange()!!
+        assertTrue(view.toString(), view.endInclusive < 1_000 && view.start > -1_000)
+    }
+
+    @Test
+    fun factorial() {
+        assertEquals(120.0, eval("5!"), 0.0)
+        assertEquals(1.0, eval("0!"), 0.0)
+        assertEquals(720.0, eval("3!!"), 0.0)
+        assertEquals(-6.0, eval("-3!"), 0.0)
+        assertEquals(36.0, eval("3!^2"), 0.0)
+        assertTrue(eval("171!").isInfinite())
+        assertTrue(line("2.5!").contains("non-negative integer"))
+    }
+
+    @Test
+    fun exactMode() = runBlocking {
+        assertEquals("0.1+0.2-0.3 = 5.551115e-17", line("0.1 + 0.2 - 0.3"))
+        assertEquals("0.1+0.2-0.3 = 0", line("exact 0.1 + 0.2 - 0.3"))
+        assertEquals("0.1+0.2 = 0.3", line("exact 0.1 + 0.2"))
+        assertEquals("Calculator mode: exact", calculator.handleCommand("calc mode exact").single().text)
+
+        // Bill split in KSH: exact cents, and the shares add back up
+        assertEquals("bill = 4567.85", line("bill = 4567.85"))
+        assertEquals("share = 913.57", line("share = bill / 5"))
+        assertEquals("share*5-bill = 0", line("share * 5 - bill"))
+        assertEquals("1.1*1.1 = 1.21", line("1.1 * 1.1"))
+
+        assertEquals("30! = 265252859812191058636308480000000", line("30!"))
+        assertEquals("2^100 = 1267650600228229401496703205376", line("2^100"))
+        assertEquals("1/3 = 0.3333333333333333333333333333333333", line("1/3"))
+        assertEquals("round(2.5)+floor(-1.5)+max(1,7) = 7", line("round(2.5) + floor(-1.5) + max(1, 7)"))
+
+        // Transcendental functions and fractional powers fall back to doubles
+        assertEquals("sin(30) ≈ 0.5", line("sin(30)"))
+        assertEquals("2^0.5 ≈ 1.4142135624", line("2^0.5"))
+        assertEquals("ans ≈ 1.4142135624", line("ans"))
+        assertEquals("0.1+0.2-0.3 = 5.551115e-17", line("double 0.1+0.2-0.3"))
+        // So do powers whose exact result would run to millions of digits
+        assertTrue(line("9^9999").startsWith("9^9999 = "))
+        assertTrue(line("(9^9999)^9999").startsWith("(9^9999)^9999 ≈ "))
+        assertTrue(line("((9^9999)^9999)^9999").contains("≈"))
+
+        calculator.handleCommand("calc precision 50")
+        assertEquals("1/7 = 0.14285714285714285714285714285714285714285714285714", line("1/7"))
+        assertTrue(calculator.handleCommand("calc precision 0").single().text.contains("between 1 and"))
+        assertTrue(calculator.handleCommand("calc mode fast").single().text.contains("exact or double"))
+        assertTrue(line("1/0").contains("Division by zero"))
+
+        val vars = calculator.handleCommand("calc vars").joinToString("\n") { it.text }
+        assertTrue(vars, vars.contains("share = 913.57"))
+    }
+
+    @Test
+    fun detection() {
+        listOf("1+1", "sqrt(144)", "2^10", "17 mod 5", "5mod3", "(1+2)*3", "-4 * 2", "x = 3", "log10(1000)")
+            .forEach { assertTrue(it, calculator.isMathExpression(it)) }
+        listOf("hello", "open settings", "call mom", "0712345678", "+254712345678", "apps", "x = y", "sin", "roundtable")
+            .forEach { assertFalse(it, calculator.isMathExpression(it)) }
+
+        assertFalse(calculator.isMathExpression("ans * 2"))
+        calculator.evaluate("2 + 2")
+        assertTrue(calculator.isMathExpression("ans * 2"))
+        assertTrue(calculator.isMathExpression("ans"))
+        assertTrue(calculator.isMathExpression("pi * 2"))
+    }
+
+    @Test
+    fun cacheCompilesEachExpressionOnce() {
+        val expressions = listOf(
+            "2 + 3 * 4", "sqrt(144) + 2^10", "sin(45) * cos(45) / tan(30)",
+            "log(100) + ln(e) - 17 mod 5", "max(1, 2, 3) * min(4, 5) + abs(-7)", "2pi(3 + 4)(5 - 1)"
+        )
+        val cache = ExpressionCache()
+        repeat(100) {
+            expressions.forEach { e -> assertEquals(e, ExpressionCompiler.compile(e).evaluate(), cache.get(e).evaluate(), 0.0) }
+        }
+        assertEquals(expressions.size.toLong(), cache.misses)
+        assertEquals(99L * expressions.size, cache.hits)
+    }
+
+    @Test
+    fun exactProgramsAgreeWithDoubles() {
+        val expressions = listOf(
+            "0.1 + 0.2", "4567.85 / 5", "2^64 - 1", "(1.07^10) * 25000", "17 mod 5 + 3 * (2 - 8)", "20!"
+        )
+        val context = java.math.MathContext(ShellCalculator.DEFAULT_PRECISION)
+        for (program in expressions.map { ExpressionCompiler.compile(it) }) {
+            val exact = program.executeExact(emptyArray(), context)!!.toDouble()
+            // Relative: Math.pow may be off by an ulp or two between runtimes
+            assertEquals(program.source, exact, program.evaluate(), Math.abs(exact) * 1e-12)
+        }
+        assertEquals("0.1+0.2 = 0.3", calculator.evaluate("0.1 + 0.2", NumberMode.EXACT).single().text)
+        assertEquals("20! = 2432902008176640000", calculator.evaluate("20!", NumberMode.EXACT).single().text)
+    }
+
+    @Test
+    fun boundTablesMatchMapEvaluation() = runBlocking {
+        val program = ExpressionCompiler.compile("sin(x) * x^2 - sqrt(abs(x)) + log(abs(x) + 1)")
+        val small = FunctionRange("", start = 0.0, end = 1.0, step = 1.0 / (FunctionSampler.PARALLEL_THRESHOLD - 2))
+        val large = FunctionRange("", start = 0.0, end = 99.0, step = 0.001)
+
+        for (range in listOf(small, large)) {
+            val samples = FunctionSampler.table(program, range)
+            for (i in samples.xs.indices step 97) {
+                assertEquals(program.evaluate(mapOf("x" to samples.xs[i])), samples.ys[i], 1e-9)
+            }
+        }
+    }
+
+    @Test
+    fun detectionOverMixedInputs() {
+        val inputs = listOf("open settings", "call mom", "2+2", "sqrt(144)", "apps", "wifi on", "17 mod 5", "0712345678")
+        assertEquals(listOf("2+2", "sqrt(144)", "17 mod 5"), inputs.filter { calculator.isMathExpression(it) })
+    }
+
+    @Ignore("Benchmark: prints timings, run by hand")
+    @Test
+    fun benchmarkCompileVersusCachedEvaluation() {
+        val expressions = listOf(
+            "2 + 3 * 4", "sqrt(144) + 2^10", "sin(45) * cos(45) / tan(30)",
+            "log(100) + ln(e) - 17 mod 5", "max(1, 2, 3) * min(4, 5) + abs(-7)", "2pi(3 + 4)(5 - 1)"
+        )
+        val rounds = 20_000
+
+        // Warm up the JIT on both paths
+        repeat(2_000) { expressions.forEach { e -> ExpressionCompiler.compile(e).evaluate() } }
+        repeat(2_000) { expressions.forEach { e -> calculator.evaluate(e) } }
+
+        var sink = 0.0
+        val coldStart = System.nanoTime()
+        repeat(rounds) { expressions.forEach { e -> sink += ExpressionCompiler.compile(e).evaluate() } }
+        val coldNanos = (System.nanoTime() - coldStart) / (rounds * expressions.size)
+
+        val cache = ExpressionCache()
+        val warmStart = System.nanoTime()
+        repeat(rounds) { expressions.forEach { e -> sink += cache.get(e).evaluate() } }
+        val warmNanos = (System.nanoTime() - warmStart) / (rounds * expressions.size)
+
+        val compiled = expressions.map { ExpressionCompiler.compile(it) }
+        val runStart = System.nanoTime()
+        repeat(rounds) { compiled.forEach { sink += it.evaluate() } }
+        val runNanos = (System.nanoTime() - runStart) / (rounds * expressions.size)
+
+        println("ShellCalculator: compile+run $coldNanos ns, cached $warmNanos ns, run only $runNanos ns per expression (sink $sink)")
+    }
+
+    @Ignore("Benchmark: prints timings, run by hand")
+    @Test
+    fun benchmarkNumberModes() {
+        val expressions = listOf(
+            "0.1 + 0.2", "4567.85 / 5", "2^64 - 1", "(1.07^10) * 25000", "17 mod 5 + 3 * (2 - 8)", "20!"
+        )
+        val rounds = 20_000
+        repeat(2_000) {
+            expressions.forEach { calculator.evaluate(it, NumberMode.DOUBLE); calculator.evaluate(it, NumberMode.EXACT) }
+        }
+
+        // Printed, so the JIT can't drop the evaluations
+        var printed = 0
+        fun perExpression(mode: NumberMode): Long {
+            val start = System.nanoTime()
+            repeat(rounds) { expressions.forEach { printed += calculator.evaluate(it, mode).single().text.length } }
+            return (System.nanoTime() - start) / (rounds * expressions.size)
+        }
+
+        val doubleNanos = perExpression(NumberMode.DOUBLE)
+        val exactNanos = perExpression(NumberMode.EXACT)
+        val fallbackStart = System.nanoTime()
+        repeat(rounds) { calculator.evaluate("sin(30) + sqrt(2)", NumberMode.EXACT) }
+        val fallbackNanos = (System.nanoTime() - fallbackStart) / rounds
+
+        // The programs alone, without caching, variables or formatting
+        val compiled = expressions.map { ExpressionCompiler.compile(it) }
+        val context = java.math.MathContext(ShellCalculator.DEFAULT_PRECISION)
+        var sink = 0.0
+        repeat(2_000) { compiled.forEach { sink += it.evaluate() + it.executeExact(emptyArray(), context)!!.signum() } }
+        val runDoubleStart = System.nanoTime()
+        repeat(rounds) { compiled.forEach { sink += it.evaluate() } }
+        val runDoubleNanos = (System.nanoTime() - runDoubleStart) / (rounds * expressions.size)
+        val runExactStart = System.nanoTime()
+        repeat(rounds) { compiled.forEach { sink += it.executeExact(emptyArray(), context)!!.signum() } }
+        val runExactNanos = (System.nanoTime() - runExactStart) / (rounds * expressions.size)
+
+        println(
+            "ShellCalculator: double $doubleNanos ns, exact $exactNanos ns, exact with double fallback $fallbackNanos ns " +
+                "per expression; programs alone: double $runDoubleNanos ns, exact $runExactNanos ns (sink $sink, $printed chars)"
+        )
+    }
+
+    @Ignore("Benchmark: prints timings, run by hand")
+    @Test
+    fun benchmarkDetection() {
+        val inputs = listOf("open settings", "call mom", "2+2", "sqrt(144)", "apps", "wifi on", "17 mod 5", "0712345678")
+        val rounds = 20_000
+        repeat(2_000) { inputs.forEach { calculator.isMathExpression(it) } }
+
+        var matched = 0
+        val start = System.nanoTime()
+        repeat(rounds) { inputs.forEach { if (calculator.isMathExpression(it)) matched++ } }
+        val nanos = (System.nanoTime() - start) / (rounds * inputs.size)
+
+        println("ShellCalculator.isMathExpression: $nanos ns per line ($matched matches)")
+    }
+
+    private fun Double.pow(exponent: Double) = Math.pow(this, exponent)
+}
@@ -0,0 +1,80 @@
+package com.example.mentra.shell.completion
+
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.random.Random
+
+class CompletionTrieTest {
+
+    @Test
+    fun topMatchesBruteForce() {
+        val random = Random(7)
+        val trie = CompletionTrie<Int>()
+        val keys = ArrayList<Pair<String, Double>>()
+        repeat(5_000) { i ->
+            val key = (1..random.nextInt(1, 10)).map { 'a' + random.nextInt(4) }.joinToString("")
+            val score = random.nextDouble()
+            trie.insert(key, i, score)
+            keys.add(key to score)
+        }
+
+        for (prefix in listOf("", "a", "ab", "bca", "dddd", "zz")) {
+            val expected = keys.filter { it.first.startsWith(prefix) }.map { it.second }.sortedDescending().take(10)
+            assertEquals(prefix, expected, trie.top(prefix, 10).map { it.score })
+        }
+    }
+
+    @Test
+    fun boostRaisesKeyAndIgnoresLowerScores() {
+        val trie = CompletionTrie<String>()
+            .apply {
+                insert("Chrome", "chrome", 1.0)
+                insert("Calendar", "calendar", 2.0)
+                insert("Camera", "camera", 3.0)
+            }
+
+        assertEquals(listOf("camera", "calendar"), trie.top("ca", 5).map { it.value })
+        assertTrue(trie.boost("CALENDAR", 5.0))
+        assertFalse(trie.boost("cal", 9.0))
+        trie.boost("camera", 0.5)
+
+        assertEquals(listOf("calendar", "camera", "chrome"), trie.top("c", 5).map { it.value })
+        assertEquals(5.0, trie.scoreOf("calendar")!!, 0.0)
+        assertNull(trie.scoreOf("cal"))
+    }
+
+    @Test
+    fun frecencyFavoursRecentUses() {
+        val day = 24 * 60 * 60 * 1000L
+        val now = 1_800_000_000_000L
+        val oftenLastMonth = (1..4).fold(Double.NEGATIVE_INFINITY) { score, _ ->
+            Frecency.combine(score, Frecency.ofUse(now - 30 * day))
+        }
+        val onceToday = Frecency.ofUse(now)
+        val twiceThisWeek = Frecency.combine(Frecency.ofUse(now - 2 * day), Frecency.ofUse(now - 5 * day))
+
+        assertTrue(onceToday > oftenLastMonth)
+        assertTrue(twiceThisWeek > onceToday)
+        assertEquals(Frecency.ofUse(now, 2.0), Frecency.combine(onceToday, onceToday), 1e-9)
+    }
+
+    @Test
+    fun everyKeystrokeRanksWithinItsPrefix() {
+        val random = Random(42)
+        val words = listOf("open", "call", "message", "wifi", "brightness", "google", "maps", "john", "mary", "settings")
+        val trie = CompletionTrie<String>()
+        repeat(50_000) { i ->
+            val key = "${words[random.nextInt(words.size)]} ${words[random.nextInt(words.size)]} $i"
+            trie.insert(key, key, random.nextDouble())
+        }
+
+        val typed = "message john 1"
+        for (end in 1..typed.length) {
+            val prefix = typed.substring(0, end)
+            val top = trie.top(prefix, 8)
+            assertEquals(prefix, 8, top.size)
+            assertTrue(prefix, top.all { it.key.startsWith(prefix) })
+            assertEquals(prefix, top.sortedByDescending { it.score }, top)
+        }
+    }
+}
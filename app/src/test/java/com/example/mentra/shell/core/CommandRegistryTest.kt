@@ -0,0 +1,117 @@
+package com.example.mentra.shell.core
+
+import org.junit.Assert.*
+import org.junit.Ignore
+import org.junit.Test
+
+class CommandRegistryTest {
+
+    private val registry = CommandRegistry<String>()
+        .register(CommandSpec("apps", listOf("app", "list apps")), "apps")
+        .register(CommandSpec("open", listOf("launch"), MatchMode.WITH_ARGS), "open")
+        .register(CommandSpec("dialer", listOf("open dialer", "phone"), MatchMode.EXACT), "dialer")
+        .register(CommandSpec("balance", match = MatchMode.PREFIX), "balance")
+        .register(CommandSpec("calc", match = MatchMode.EXACT, priority = 2), "calc-ui")
+        .register(CommandSpec("calc", listOf("math"), priority = 1), "calc")
+        .registerFallback(CommandSpec("<expr>", priority = 1), "math") { it.contains('+') }
+
+    private fun route(input: String) = registry.resolve(input)?.target
+
+    @Test
+    fun matchModesFollowWordBoundaries() {
+        assertEquals("apps", route("apps"))
+        assertEquals("apps", route("apps --all"))
+        assertNull(route("appstore"))
+        assertEquals("open", route("open Chrome"))
+        assertNull(route("open"))
+        assertEquals("dialer", route("phone"))
+        assertNull(route("phone home"))
+        assertEquals("balance", route("balances"))
+    }
+
+    @Test
+    fun longestPhraseWinsAtEqualPriority() {
+        assertEquals("dialer", route("open dialer"))
+        assertEquals("open", route("open dialer now"))
+        assertEquals("apps", route("list apps chrome"))
+    }
+
+    @Test
+    fun higherPriorityWins() {
+        assertEquals("calc-ui", route("calc"))
+        assertEquals("calc", route("calc 2*3"))
+    }
+
+    @Test
+    fun fallbackOnlyOutranksLowerPriorityPhrases() {
+        assertEquals("math", route("1+1"))
+        assertEquals("math", route("apps+1"))
+        assertEquals("calc", route("calc 1+1"))
+        assertNull(route("hello"))
+    }
+
+    @Test
+    fun argsKeepOriginalCaseAndInputIsCaseInsensitive() {
+        val match = registry.resolve("  LAUNCH Google Maps ")!!
+        assertEquals("open", match.target)
+        assertEquals("launch", match.phrase)
+        assertEquals("Google Maps", match.args)
+    }
+
+    @Test
+    fun completionListsCommandsByPrefix() {
+        assertEquals(listOf("apps", "open"), registry.complete("l").map { it.name }.sorted())
+        assertEquals(listOf("dialer", "open"), registry.complete("open").map { it.name }.sorted())
+        assertTrue(registry.complete("zz").isEmpty())
+    }
+
+    private val dispatchInputs = listOf("apps --all", "open chrome", "check balance", "history 20", "unknown command here")
+
+    // Four real verbs plus [size] filler commands with aliases
+    private fun registryOf(size: Int): CommandRegistry<Int> {
+        val r = CommandRegistry<Int>()
+        listOf("apps", "open", "check balance", "history").forEachIndexed { i, verb ->
+            r.register(CommandSpec(verb), i)
+        }
+        for (i in 0 until size) {
+            r.register(CommandSpec("cmd$i", listOf("verb $i", "x${i}y")), i)
+        }
+        return r
+    }
+
+    @Test
+    fun tenThousandCommandsResolveLikeAFew() {
+
+        val small = registryOf(10)
+        val large = registryOf(10_000)
+        for (input in dispatchInputs) {
+            assertEquals(input, small.resolve(input), large.resolve(input))
+        }
+        assertEquals(9_999, large.resolve("verb 9999 now")?.target)
+        assertEquals("x4321y", large.resolve("X4321Y")?.phrase)
+        assertNull(large.resolve("cmd10000"))
+    }
+
+    /**
+     * Per-lookup cost with 10 and with 10k registered commands; the trie
+     * walk depends on the input, not on how many commands exist. Timing
+     * only, so it is run by hand.
+     */
+    @Ignore("Benchmark: prints timings, run by hand")
+    @Test
+    fun benchmarkDispatchCostIndependentOfCommandCount() {
+        fun medianNanos(r: CommandRegistry<Int>): Double {
+            repeat(20_000) { dispatchInputs.forEach { r.resolve(it) } }
+            val samples = (1..200).map {
+                val start = System.nanoTime()
+                repeat(100) { dispatchInputs.forEach { r.resolve(it) } }
+                (System.nanoTime() - start).toDouble() / (100 * dispatchInputs.size)
+            }.sorted()
+            return samples[samples.size / 2]
+        }
+
+        val small = medianNanos(registryOf(10))
+        val large = medianNanos(registryOf(10_000))
+        println("CommandRegistry: 10 commands ${"%.0f".format(small)} ns, 10k commands ${"%.0f".format(large)} ns per lookup")
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.mentra.shell.core
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.currentTime
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.*
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class FlowBatchingTest {
+
+    private data class Timed<T>(val at: Long, val items: List<T>)
+
+    @Test
+    fun burstTailIsFlushedByTheTimer() = runTest {
+        val upstream = flow {
+            repeat(5) { emit(it) }
+            // Still running, but quiet: the tail must not wait for this
+            delay(10_000)
+            emit(5)
+        }
+
+        val batches = mutableListOf<Timed<Int>>()
+        upstream.batched(maxSize = 100, maxDelayMillis = 100)
+            .onEach { batches.add(Timed(currentTime, it)) }
+            .toList()
+
+        assertEquals(
+            listOf(Timed(0, listOf(0)), Timed(100, listOf(1, 2, 3, 4)), Timed(10_000, listOf(5))),
+            batches
+        )
+    }
+
+    @Test
+    fun fullBatchesGoOutWithoutWaiting() = runTest {
+        val batches = mutableListOf<Timed<Int>>()
+        (0 until 10).asFlow()
+            .batched(maxSize = 4, maxDelayMillis = 100)
+            .onEach { batches.add(Timed(currentTime, it)) }
+            .toList()
+
+        assertEquals(listOf(listOf(0), listOf(1, 2, 3, 4), listOf(5, 6, 7, 8), listOf(9)), batches.map { it.items })
+        assertTrue(batches.all { it.at == 0L })
+    }
+
+    @Test
+    fun slowProducerLinesShowImmediately() = runTest {
+        val upstream = flow {
+            repeat(3) {
+                emit(it)
+                delay(500)
+            }
+        }
+
+        val batches = mutableListOf<Timed<Int>>()
+        upstream.batched(maxSize = 100, maxDelayMillis = 100)
+            .onEach { batches.add(Timed(currentTime, it)) }
+            .toList()
+
+        assertEquals(listOf(Timed(0, listOf(0)), Timed(500, listOf(1)), Timed(1_000, listOf(2))), batches)
+    }
+
+    @Test
+    fun pendingLinesAreEmittedBeforeAnError() = runTest {
+        val upstream = flow {
+            repeat(3) { emit(it) }
+            throw IllegalStateException("exit 1")
+        }
+
+        val batches = mutableListOf<List<Int>>()
+        try {
+            upstream.batched(maxSize = 100, maxDelayMillis = 100).collect { batches.add(it) }
+            fail("Expected the upstream error")
+        } catch (e: IllegalStateException) {
+            assertEquals("exit 1", e.message)
+        }
+        assertEquals(listOf(listOf(0), listOf(1, 2)), batches)
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.mentra.shell.core
+
+import com.example.mentra.shell.models.ResultStatus
+import com.example.mentra.shell.models.ShellResult
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.async
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.*
+import org.junit.Test
+
+class ShellScriptRunnerTest {
+
+    private val ran = mutableListOf<String>()
+
+    // "fail" fails, "boom" throws, "lines n" prints 1..n, anything else echoes itself
+    private suspend fun fake(command: String): ShellResult {
+        ran.add(command)
+        return when {
+            command == "fail" -> ShellResult(ResultStatus.FAILURE, "failed")
+            command == "boom" -> throw IllegalStateException("boom")
+            command.startsWith("lines ") -> ShellResult(
+                ResultStatus.SUCCESS,
+                (1..command.substringAfter(' ').toInt()).joinToString("\n")
+            )
+            else -> ShellResult(ResultStatus.SUCCESS, command)
+        }
+    }
+
+    @Test
+    fun andOrShortCircuits() = runTest {
+        val runner = ShellScriptRunner(backgroundScope, ::fake)
+
+        runner.execute(ShellScriptParser.parse("fail && skipped || recovered; after"))
+        assertEquals(listOf("fail", "recovered", "after"), ran)
+
+        ran.clear()
+        val outputs = runner.execute(ShellScriptParser.parse("ok || skipped"))
+        assertEquals(listOf("ok"), ran)
+        assertEquals(ResultStatus.SUCCESS, outputs.single().result.status)
+    }
+
+    @Test
+    fun exceptionsBecomeFailures() = runTest {
+        val runner = ShellScriptRunner(backgroundScope, ::fake)
+        val outputs = runner.execute(ShellScriptParser.parse("boom || fallback"))
+
+        assertEquals(listOf("boom", "fallback"), outputs.map { it.command })
+        assertEquals(ResultStatus.FAILURE, outputs[0].result.status)
+        assertTrue(outputs[0].result.message.contains("boom"))
+    }
+
+    @Test
+    fun pipelinesStreamThroughFilters() = runTest {
+        val runner = ShellScriptRunner(backgroundScope, ::fake)
+
+        val grep = runner.execute(ShellScriptParser.parse("lines 20 | grep 1 | head 3")).single()
+        assertEquals("1\n10\n11", grep.result.message)
+        assertEquals("lines 20 | grep 1 | head 3", grep.command)
+
+        val counted = runner.execute(ShellScriptParser.parse("lines 5 | sort -r | tail 2 | wc -l")).single()
+        assertEquals("2", counted.result.message)
+
+        // grep without a match fails the pipeline, so || runs
+        val outputs = runner.execute(ShellScriptParser.parse("lines 3 | grep 9 || none"))
+        assertEquals(listOf(ResultStatus.FAILURE, ResultStatus.SUCCESS), outputs.map { it.result.status })
+
+        // A command that doesn't read input still runs, and its own output wins
+        assertEquals("other", runner.execute(ShellScriptParser.parse("lines 3 | other")).single().result.message)
+    }
+
+    @Test
+    fun backgroundJobsReportLater() = runTest {
+        val runner = ShellScriptRunner(backgroundScope, ::fake)
+        val event = async(start = CoroutineStart.UNDISPATCHED) { runner.jobEvents.first() }
+
+        val outputs = runner.execute(ShellScriptParser.parse("slow & now"))
+        assertEquals(listOf("slow &", "now"), outputs.map { it.command })
+        assertEquals("[1] started", outputs[0].result.message)
+
+        val job = event.await()
+        assertEquals(1, job.id)
+        assertEquals("slow", job.command)
+        assertEquals(ResultStatus.SUCCESS, job.status)
+        assertEquals("slow", job.outputs.single().result.message)
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.mentra.shell.core
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ShellScriptTest {
+
+    private fun types(input: String) = ShellLexer(input).tokenize().map { it.type }
+
+    private fun words(input: String) =
+        ShellLexer(input).tokenize().filter { it.type == TokenType.WORD }.map { it.text(input).toString() }
+
+    @Test
+    fun lexerSplitsOperators() {
+        assertEquals(
+            listOf(
+                TokenType.WORD, TokenType.AND_IF, TokenType.WORD, TokenType.OR_IF, TokenType.WORD,
+                TokenType.PIPE, TokenType.WORD, TokenType.SEMI, TokenType.WORD, TokenType.AMP, TokenType.EOF
+            ),
+            types("a&&b||c|d;e&")
+        )
+        assertEquals(listOf("ls", "-la", "grep", "txt"), words("ls -la | grep txt"))
+    }
+
+    @Test
+    fun quotedAndEscapedOperatorsArePlainText() {
+        assertEquals(listOf("sms", "mom", "\"a; b && c\""), words("sms mom \"a; b && c\""))
+        assertEquals(listOf("echo", "'x | y'"), words("echo 'x | y'"))
+        assertEquals(listOf("echo", "rock\\&roll"), words("echo rock\\&roll"))
+        // An unterminated quote runs to the end
+        assertEquals(listOf("echo", "\"a ; b"), words("echo \"a ; b"))
+
+        assertFalse(ShellLexer.hasOperators("sms mom \"rock & roll\""))
+        assertFalse(ShellLexer.hasOperators("echo a\\;b"))
+        assertTrue(ShellLexer.hasOperators("sms mom rock & roll"))
+    }
+
+    @Test
+    fun parserFollowsShellPrecedence() {
+        // && and || bind tighter than ; and &, | tighter than both
+        val script = ShellScriptParser.parse("a | b && c || d; e &")
+        assertTrue(script is ShellNode.Sequence)
+        val items = (script as ShellNode.Sequence).items
+        assertEquals(2, items.size)
+
+        val andOr = items[0] as ShellNode.AndOr
+        assertEquals(TokenType.OR_IF, andOr.op)
+        val inner = andOr.left as ShellNode.AndOr
+        assertEquals(TokenType.AND_IF, inner.op)
+        assertEquals(listOf("a", "b"), (inner.left as ShellNode.Pipeline).stages.map { it.text })
+
+        assertTrue(items[1] is ShellNode.Background)
+        assertEquals("a | b && c || d; e &", script.toString())
+        assertEquals(listOf("a", "b", "c", "d", "e"), script.commands().map { it.text })
+    }
+
+    @Test
+    fun commandsKeepTheirOriginalSpacing() {
+        val script = ShellScriptParser.parse("sms  mom   \"hi; there\"  ;  ls")
+        assertEquals(listOf("sms  mom   \"hi; there\"", "ls"), script.commands().map { it.text })
+    }
+
+    @Test
+    fun misplacedOperatorsAreSyntaxErrors() {
+        for (input in listOf("", "&& ls", "ls &&", "ls | | wc", "ls ;; pwd")) {
+            try {
+                ShellScriptParser.parse(input)
+                fail("Parsed '$input'")
+            } catch (e: ShellSyntaxException) {
+                assertTrue(e.position in 0..input.length)
+            }
+        }
+        // A trailing ; or & ends the list
+        assertEquals("ls", ShellScriptParser.parse("ls;").toString())
+        assertTrue(ShellScriptParser.parse("ls &") is ShellNode.Background)
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.mentra.shell.history
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class HistorySearchIndexTest {
+
+    private val now = 1_700_000_000_000L
+    private val hour = 3_600_000L
+
+    @Test
+    fun deduplicatesAndRanksByFrecency() {
+        val index = HistorySearchIndex()
+        repeat(5) { index.record("open settings", now - 2 * hour) }
+        index.record("open spotify", now - 1 * hour)
+        index.record("settings wifi", now - 40 * 24 * hour)
+        index.record("calc 2+2", now)
+
+        assertEquals(4, index.size)
+        val hits = index.search("set", now = now)
+        assertEquals(listOf("open settings", "settings wifi"), hits.map { it.command })
+        assertEquals(5, hits[0].matchStart)
+
+        // Recent and prefix beat a frequent line that only contains the text
+        assertEquals("open spotify", index.search("open sp", now = now).single().command)
+        assertEquals("calc 2+2", index.search("CALC", now = now).first().command)
+        assertTrue(index.search("missing", now = now).isEmpty())
+    }
+
+    @Test
+    fun sessionNarrowsAndNoticesNewEntries() {
+        val index = HistorySearchIndex()
+        index.addAll(listOf(CommandStats("git status", 3, now), CommandStats("git stash", 1, now), CommandStats("ls", 2, now)))
+        val session = index.newSession()
+
+        assertEquals(2, session.search("g", now = now).size)
+        assertEquals(2, session.search("git st", now = now).size)
+        assertEquals(listOf("git stash"), session.search("git stas", now = now).map { it.command })
+
+        // A new line appears in the next keystroke's results
+        index.record("git stashes", now)
+        assertEquals(setOf("git stash", "git stashes"), session.search("git stash", now = now).map { it.command }.toSet())
+
+        // Deleting characters starts over
+        assertEquals(3, session.search("git s", now = now).size)
+        index.clear()
+        assertTrue(session.search("git s", now = now).isEmpty())
+    }
+
+    @Test
+    fun sessionsMatchOneShotSearchWith100kCommands() {
+        val verbs = listOf("open", "call", "sms", "calc", "git", "ls", "cd", "play", "wifi", "brightness")
+        val index = HistorySearchIndex()
+        // Worst case for the index: every one of the 100k lines is distinct
+        for (i in 0 until 100_000) {
+            index.record("${verbs[i % verbs.size]} item$i --flag=${i % 97}", now - i * 60_000L)
+        }
+        assertEquals(100_000, index.size)
+
+        for (query in listOf("item4242", "calc", "flag=5", "git item1")) {
+            val session = index.newSession()
+            for (n in 1..query.length) {
+                assertEquals(query.take(n), index.search(query.take(n), now = now), session.search(query.take(n), now = now))
+            }
+        }
+        assertEquals("sms item4242 --flag=71", index.search("item4242", now = now).first().command)
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.mentra.shell.history
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class RingBufferTest {
+
+    @Test
+    fun keepsTheNewestItemsInOrder() {
+        val ring = RingBuffer<Int>(3)
+        assertTrue(ring.isEmpty())
+        assertNull(ring.lastOrNull())
+
+        (1..5).forEach(ring::add)
+        assertEquals(3, ring.size)
+        assertEquals(listOf(3, 4, 5), ring.toList())
+        assertEquals(3, ring[0])
+        assertEquals(5, ring.lastOrNull())
+        assertEquals(listOf(4, 5), ring.takeLast(2))
+        assertEquals(listOf(3, 4, 5), ring.takeLast(10))
+        assertThrows(IndexOutOfBoundsException::class.java) { ring[3] }
+    }
+
+    @Test
+    fun prependAllPutsOlderItemsFirst() {
+        val ring = RingBuffer<String>(4)
+        ring.add("typed")
+        ring.prependAll(listOf("a", "b", "c", "d"))
+        assertEquals(listOf("b", "c", "d", "typed"), ring.toList())
+
+        ring.clear()
+        assertEquals(0, ring.size)
+        ring.add("x")
+        assertEquals(listOf("x"), ring.toList())
+    }
+}
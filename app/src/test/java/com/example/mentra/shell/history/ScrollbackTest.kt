@@ -0,0 +1,148 @@
+package com.example.mentra.shell.history
+
+import org.junit.Assert.*
+import org.junit.Ignore
+import org.junit.Test
+
+class ScrollbackTest {
+
+    @Test
+    fun keepsNewestLinesWithStableIds() {
+        val scrollback = Scrollback<String>(600)
+        repeat(1_000) { scrollback.append("line $it") }
+
+        assertEquals(600, scrollback.size)
+        assertEquals(400L, scrollback.firstId)
+        assertEquals("line 400", scrollback[0])
+        assertEquals("line 999", scrollback[599])
+        assertEquals(999L, scrollback.idAt(599))
+        assertEquals(1_000L, scrollback.append("line 1000"))
+        assertEquals("line 401", scrollback[0])
+    }
+
+    @Test
+    fun snapshotsDontSeeLaterChanges() {
+        val scrollback = Scrollback<String>(300)
+        repeat(300) { scrollback.append("a$it") }
+        val before = scrollback.snapshot()
+
+        repeat(700) { scrollback.append("b$it") }
+        scrollback.clear()
+        scrollback.append("after clear")
+
+        assertEquals(300, before.size)
+        assertEquals("a0", before[0])
+        assertEquals("a299", before[299])
+        assertEquals(299L, before.lastId)
+        assertEquals(-1, before.indexOfId(300L))
+
+        val after = scrollback.snapshot()
+        assertEquals(listOf("after clear"), (0 until after.size).map { after[it] })
+        // Ids keep counting after clear, so list keys never repeat
+        assertEquals(1_000L, after.firstId)
+        // Identity equality: a StateFlow never compares lines
+        assertNotEquals(after, scrollback.snapshot())
+    }
+
+    @Test
+    fun searchesBothWays() {
+        val scrollback = Scrollback<String>(1_000)
+        listOf("ls", "error: one", "ok", "ERROR: two", "ok").forEach(scrollback::append)
+        val matches = { line: String -> line.contains("error", ignoreCase = true) }
+
+        assertEquals(3, scrollback.indexOfLast(predicate = matches))
+        assertEquals(1, scrollback.indexOfLast(2, matches))
+        assertEquals(-1, scrollback.indexOfLast(0, matches))
+        assertEquals(3, scrollback.indexOfFirst(2, matches))
+        assertEquals(-1, scrollback.indexOfFirst(4, matches))
+    }
+
+    @Test
+    fun resizeDropsOldestLines() {
+        val scrollback = Scrollback<Int>(10_000)
+        repeat(5_000) { scrollback.append(it) }
+
+        scrollback.resize(100)
+        assertEquals(100, scrollback.size)
+        assertEquals(4_900, scrollback[0])
+
+        scrollback.resize(1_000)
+        repeat(2_000) { scrollback.append(5_000 + it) }
+        assertEquals(1_000, scrollback.size)
+        assertEquals(6_000, scrollback[0])
+        assertEquals(6_999, scrollback[999])
+    }
+
+    /**
+     * A full 100k-line buffer keeps evicting exactly one line per append,
+     * across chunk boundaries, and a snapshot taken mid-way stays intact
+     */
+    @Test
+    fun evictsLineByLineAt100kLines() {
+        val lines = 100_000
+        val scrollback = Scrollback<Int>(lines)
+        repeat(lines) { scrollback.append(it) }
+        val full = scrollback.snapshot()
+
+        for (n in lines until lines + 3 * Scrollback.CHUNK_SIZE + 7) {
+            scrollback.append(n)
+            assertEquals(lines, scrollback.size)
+            assertEquals(n - lines + 1, scrollback[0])
+            assertEquals(n, scrollback[lines - 1])
+        }
+        assertEquals((lines + 3 * Scrollback.CHUNK_SIZE + 7 - lines).toLong(), scrollback.firstId)
+
+        assertEquals(lines, full.size)
+        assertEquals(0, full[0])
+        assertEquals(lines - 1, full[lines - 1])
+        assertEquals(Scrollback.CHUNK_SIZE, full[Scrollback.CHUNK_SIZE])
+    }
+
+    /**
+     * Appending the last 10k of 100k lines costs what the first 10k did,
+     * both while filling up and once every append evicts a line. The list
+     * copy it replaces grows with every line. Timing only, so it is run
+     * by hand rather than on every build.
+     */
+    @Ignore("Benchmark: prints timings, run by hand")
+    @Test
+    fun benchmarkAppendAt100kLines() {
+        val lines = 100_000
+        val block = 10_000
+        val line = "📱 123. Some App\n      └─ com.example.some.app (v1.2.3)"
+
+        fun timeBlocks(scrollback: Scrollback<String>, blocks: Int): LongArray {
+            return LongArray(blocks) {
+                val start = System.nanoTime()
+                repeat(block) { scrollback.append(line) }
+                System.nanoTime() - start
+            }
+        }
+
+        // Warm up
+        timeBlocks(Scrollback(lines), lines / block)
+
+        // Best time per block over a few runs, to filter out GC pauses:
+        // blocks 0-9 fill the buffer, 10-19 evict a line per append
+        val best = LongArray(2 * lines / block) { Long.MAX_VALUE }
+        repeat(5) {
+            val scrollback = Scrollback<String>(lines)
+            val times = timeBlocks(scrollback, lines / block) + timeBlocks(scrollback, lines / block)
+            times.forEachIndexed { i, time -> best[i] = minOf(best[i], time) }
+        }
+
+        println(
+            "Scrollback: ${block / 1_000}k appends, first block ${best.first() / 1_000} us, " +
+                "at 100k ${best[lines / block - 1] / 1_000} us, evicting ${best.last() / 1_000} us, " +
+                "snapshot ${measureSnapshot(lines)} us"
+        )
+    }
+
+    private fun measureSnapshot(lines: Int): Long {
+        val scrollback = Scrollback<Int>(lines)
+        repeat(lines) { scrollback.append(it) }
+        val start = System.nanoTime()
+        repeat(100) { scrollback.snapshot() }
+        return (System.nanoTime() - start) / 100 / 1_000
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.mentra.shell.orchestrator
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class SystemTransactionTest {
+
+    private fun ops(vararg commands: String) = commands.mapIndexed { i, command -> SystemOperation("op$i", command) }
+
+    /** Run the compiled script in a local `sh`, as the privileged shell would */
+    private fun run(script: String): String {
+        val process = ProcessBuilder("sh", "-c", script).redirectErrorStream(true).start()
+        return process.inputStream.bufferedReader().readText().also { process.waitFor() }
+    }
+
+    @Test
+    fun everyOperationGetsItsOwnOutputAndExitCode() {
+        val operations = ops(
+            "echo one; echo two",
+            "echo broken >&2; false",
+            "printf 'no newline'",
+            // Would swallow the rest of the script if stdin weren't redirected
+            "cat",
+            "exit_code() { return 3; }; exit_code"
+        )
+        val token = SystemTransaction.newToken()
+        val results = SystemTransaction.parse(run(SystemTransaction.compile(operations, token)), operations, token)
+
+        assertEquals(listOf("one\ntwo", "broken", "no newline", "", ""), results.map { it.output })
+        assertEquals(listOf(0, 1, 0, 0, 3), results.map { it.exitCode })
+        assertEquals(operations, results.map { it.operation })
+    }
+
+    @Test
+    fun missingMarkersAreReportedAsNotRun() {
+        val operations = ops("echo a", "echo b", "echo c")
+        val token = "t0ken"
+        val marker = "__MENTRA_OP_t0ken__"
+        // The shell died during the second operation
+        val results = SystemTransaction.parse("a\n$marker 0 0\nb\n", operations, token)
+
+        assertEquals(listOf(0, SystemTransaction.NOT_RUN, SystemTransaction.NOT_RUN), results.map { it.exitCode })
+        assertEquals("a", results[0].output)
+        assertFalse(results[1].isSuccess)
+    }
+
+    @Test
+    fun markersFromOtherTokensOrIndicesAreIgnored() {
+        val operations = ops("echo a")
+        val output = "__MENTRA_OP_other__ 0 0\n__MENTRA_OP_t0ken__ 7 0\nreal\n__MENTRA_OP_t0ken__ 0 2"
+        val result = SystemTransaction.parse(output, operations, "t0ken").single()
+
+        assertEquals(2, result.exitCode)
+        assertEquals("real", result.output)
+    }
+
+    @Test
+    fun nightModeOffRestoresCapturedValues() {
+        val capture = SystemTransaction().apply { NightProfile.capture(this) }.operations
+        assertTrue(capture.all { it.command.startsWith("settings get ") })
+
+        val outputs = mapOf(
+            NightProfile.BRIGHTNESS_MODE to "0\n",
+            NightProfile.BRIGHTNESS to "143",
+            NightProfile.ZEN_MODE to "1",
+            NightProfile.LOW_POWER to "null",
+            NightProfile.SCREEN_TIMEOUT to "120000",
+            NightProfile.ANIMATION_SCALE to "0.0"
+        )
+        val results = capture.map { OperationResult(it, if (it.label == NightProfile.ANIMATION_SCALE) 1 else 0, outputs.getValue(it.label)) }
+        val saved = NightProfile.captured(results)
+        assertEquals(
+            mapOf(NightProfile.BRIGHTNESS_MODE to "0", NightProfile.BRIGHTNESS to "143", NightProfile.ZEN_MODE to "1", NightProfile.SCREEN_TIMEOUT to "120000"),
+            saved
+        )
+
+        val restore = SystemTransaction().apply { NightProfile.restore(this, saved) }.operations.map { it.command }
+        assertEquals(
+            listOf(
+                "settings put system screen_brightness 143",
+                "settings put system screen_brightness_mode 0",
+                "cmd notification set_dnd 1",
+                "cmd battery set battery-saver 0",
+                "settings put system screen_off_timeout 120000",
+                // Failed read: back to the default
+                "settings put global animator_duration_scale 1.0"
+            ),
+            restore
+        )
+    }
+
+    @Test
+    fun nightModeOffWithoutCaptureUsesDefaults() {
+        val restore = SystemTransaction().apply { NightProfile.restore(this, emptyMap()) }.operations.map { it.command }
+        assertEquals(
+            listOf(
+                "settings put system screen_brightness_mode 1",
+                "cmd notification set_dnd 0",
+                "cmd battery set battery-saver 0",
+                "settings put system screen_off_timeout 60000",
+                "settings put global animator_duration_scale 1.0"
+            ),
+            restore
+        )
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mentra.timeline
+
+import com.example.mentra.dialer.CallLogEntry
+import com.example.mentra.dialer.CallType
+import com.example.mentra.messaging.MessageType
+import com.example.mentra.messaging.SmsMessage
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.random.Random
+
+class TimelineMergeTest {
+
+    private fun call(id: Long, timestamp: Long): TimelineEvent =
+        TimelineEvent.Call(CallLogEntry(id, "0712345678", null, CallType.INCOMING, timestamp, 0, null, null))
+
+    private fun message(id: Long, timestamp: Long): TimelineEvent =
+        TimelineEvent.Message(SmsMessage(id, "0712345678", "", timestamp, MessageType.RECEIVED, true, 0))
+
+    private fun merge(vararg sources: List<TimelineEvent>) =
+        mergeSorted(sources.map { it.iterator() }, TimelineEvent.ORDER)
+
+    @Test
+    fun mergesKSortedSourcesIntoOneOrder() {
+        val random = Random(7)
+        val sources = (0 until 5).map { s ->
+            (0 until 200).map { i ->
+                val timestamp = random.nextLong(0, 1_000)
+                if (s % 2 == 0) call(s * 1_000L + i, timestamp) else message(s * 1_000L + i, timestamp)
+            }.sortedWith(TimelineEvent.ORDER)
+        }
+
+        val merged = merge(*sources.toTypedArray()).toList()
+
+        assertEquals(sources.flatten().sortedWith(TimelineEvent.ORDER), merged)
+    }
+
+    @Test
+    fun emptySourcesAreSkipped() {
+        assertTrue(mergeSorted(emptyList<Iterator<TimelineEvent>>(), TimelineEvent.ORDER).toList().isEmpty())
+        assertTrue(merge(emptyList(), emptyList()).toList().isEmpty())
+
+        val calls = listOf(call(2, 20), call(1, 10))
+        assertEquals(calls, merge(emptyList(), calls, emptyList()).toList())
+    }
+
+    @Test
+    fun equalTimestampsBreakTiesByKindThenId() {
+        val calls = listOf(call(5, 100), call(4, 100), call(9, 50))
+        val messages = listOf(message(8, 100), message(3, 100), message(7, 50))
+
+        val keys = merge(messages, calls).map { it.key }.toList()
+
+        assertEquals(
+            listOf(
+                TimelineKey(100, TimelineKind.CALL, 5),
+                TimelineKey(100, TimelineKind.CALL, 4),
+                TimelineKey(100, TimelineKind.MESSAGE, 8),
+                TimelineKey(100, TimelineKind.MESSAGE, 3),
+                TimelineKey(50, TimelineKind.CALL, 9),
+                TimelineKey(50, TimelineKind.MESSAGE, 7)
+            ),
+            keys
+        )
+    }
+
+    @Test
+    fun readsOnlyAsManyRowsAsTaken() {
+        var read = 0
+        val source = generateSequence(1_000L) { it - 1 }.map { read++; call(it, it) }.iterator()
+
+        val taken = mergeSorted(listOf(source), TimelineEvent.ORDER).take(10).toList()
+
+        assertEquals(10, taken.size)
+        assertTrue("read $read rows", read <= 11)
+    }
+
+    @Test
+    fun pagesAfterKeyWithoutDuplicatesOrGaps() {
+        // Few distinct timestamps so many events share one across a page boundary
+        val random = Random(11)
+        val calls = (1L..137L).map { call(it, random.nextLong(0, 20)) }.sortedWith(TimelineEvent.ORDER)
+        val messages = (1L..211L).map { message(it, random.nextLong(0, 20)) }.sortedWith(TimelineEvent.ORDER)
+        val all = merge(calls, messages).toList()
+
+        for (limit in listOf(1, 7, 50, all.size, all.size + 1)) {
+            val seen = mutableListOf<TimelineEvent>()
+            var after: TimelineKey? = null
+            do {
+                // Every page re-reads the sources from the start, as a fresh query would
+                val page = pageAfter(merge(calls, messages), after, limit)
+                assertTrue(page.events.size <= limit)
+                seen += page.events
+                after = page.nextKey
+            } while (after != null)
+
+            assertEquals("limit $limit", all, seen)
+        }
+    }
+
+    @Test
+    fun lastPageHasNoNextKey() {
+        val events = listOf(call(3, 30), call(2, 20), call(1, 10))
+
+        val full = pageAfter(events.asSequence(), null, 3)
+        assertEquals(events, full.events)
+        assertNull(full.nextKey)
+
+        val first = pageAfter(events.asSequence(), null, 2)
+        assertEquals(events[1].key, first.nextKey)
+        assertEquals(listOf(events[2]), pageAfter(events.asSequence(), first.nextKey, 2).events)
+    }
+}
@@ -28,6 +28,7 @@ object DatabaseModule {
             MentraDatabase::class.java,
             MentraDatabase.DATABASE_NAME
         )
+            .addMigrations(MentraDatabase.MIGRATION_1_2)
             .fallbackToDestructiveMigration()
             .build()
     }
@@ -114,6 +115,13 @@ object DatabaseModule {
         return database.shellTriggerDao()
     }
 
+    // Call DAOs
+    @Provides
+    @Singleton
+    fun provideCallStatsDao(database: MentraDatabase): CallStatsDao {
+        return database.callStatsDao()
+    }
+
     // User DAO
     @Provides
     @Singleton
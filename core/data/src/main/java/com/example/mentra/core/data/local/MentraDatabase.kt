@@ -3,6 +3,8 @@ package com.example.mentra.core.data.local
 import androidx.room.Database
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
 import com.example.mentra.core.data.local.dao.*
 import com.example.mentra.core.data.local.entity.*
 
@@ -32,10 +34,15 @@ import com.example.mentra.core.data.local.entity.*
         ShellScriptEntity::class,
         ShellTriggerEntity::class,
 
+        // Calls
+        CallContactStatsEntity::class,
+        CallDailyStatsEntity::class,
+        CallStatsStateEntity::class,
+
         // User
         UserProfileEntity::class
     ],
-    version = 1,
+    version = 2,
     exportSchema = true
 )
 @TypeConverters(Converters::class)
@@ -62,11 +69,41 @@ abstract class MentraDatabase : RoomDatabase() {
     abstract fun shellScriptDao(): ShellScriptDao
     abstract fun shellTriggerDao(): ShellTriggerDao
 
+    // Call DAOs
+    abstract fun callStatsDao(): CallStatsDao
+
     // User DAO
     abstract fun userProfileDao(): UserProfileDao
 
     companion object {
         const val DATABASE_NAME = "mentra_database"
+
+        // 2: call statistics, shell history sessions
+        val MIGRATION_1_2 = object : Migration(1, 2) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE `shell_history` ADD COLUMN `sessionId` TEXT NOT NULL DEFAULT ''")
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `call_contact_stats` (" +
+                        "`numberKey` TEXT NOT NULL, `number` TEXT NOT NULL, `contactName` TEXT, " +
+                        "`incoming` INTEGER NOT NULL, `outgoing` INTEGER NOT NULL, `missed` INTEGER NOT NULL, " +
+                        "`rejected` INTEGER NOT NULL, `other` INTEGER NOT NULL, `talkSeconds` INTEGER NOT NULL, " +
+                        "`lastCallTime` INTEGER NOT NULL, `lastCallType` TEXT NOT NULL, " +
+                        "PRIMARY KEY(`numberKey`))"
+                )
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `call_daily_stats` (" +
+                        "`epochDay` INTEGER NOT NULL, " +
+                        "`incoming` INTEGER NOT NULL, `outgoing` INTEGER NOT NULL, `missed` INTEGER NOT NULL, " +
+                        "`rejected` INTEGER NOT NULL, `other` INTEGER NOT NULL, `talkSeconds` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`epochDay`))"
+                )
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `call_stats_state` (" +
+                        "`id` INTEGER NOT NULL, `lastCallId` INTEGER NOT NULL, `aggregatedCount` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`id`))"
+                )
+            }
+        }
     }
 }
 
@@ -0,0 +1,72 @@
+package com.example.mentra.core.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Upsert
+import com.example.mentra.core.data.local.entity.CallContactStatsEntity
+import com.example.mentra.core.data.local.entity.CallDailyStatsEntity
+import com.example.mentra.core.data.local.entity.CallStatsStateEntity
+import com.example.mentra.core.data.local.entity.CallTypeTotals
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * DAO for call statistics aggregated from the call log
+ */
+@Dao
+interface CallStatsDao {
+
+    @Query("SELECT * FROM call_stats_state WHERE id = 0")
+    suspend fun getState(): CallStatsStateEntity?
+
+    @Upsert
+    suspend fun upsertState(state: CallStatsStateEntity)
+
+    @Query("SELECT * FROM call_contact_stats WHERE numberKey IN (:keys)")
+    suspend fun getContacts(keys: List<String>): List<CallContactStatsEntity>
+
+    @Query("SELECT * FROM call_contact_stats WHERE numberKey = :key")
+    suspend fun getContact(key: String): CallContactStatsEntity?
+
+    @Upsert
+    suspend fun upsertContacts(contacts: List<CallContactStatsEntity>)
+
+    @Query("SELECT * FROM call_daily_stats WHERE epochDay IN (:days)")
+    suspend fun getDays(days: List<Long>): List<CallDailyStatsEntity>
+
+    @Upsert
+    suspend fun upsertDays(days: List<CallDailyStatsEntity>)
+
+    @Query(
+        """
+        SELECT COALESCE(SUM(incoming), 0) AS incoming,
+               COALESCE(SUM(outgoing), 0) AS outgoing,
+               COALESCE(SUM(missed), 0) AS missed,
+               COALESCE(SUM(rejected), 0) AS rejected,
+               COALESCE(SUM(other), 0) AS other,
+               COALESCE(SUM(talkSeconds), 0) AS talkSeconds
+        FROM call_daily_stats
+        """
+    )
+    fun observeTotals(): Flow<CallTypeTotals>
+
+    @Query("SELECT COALESCE(SUM(talkSeconds), 0) FROM call_daily_stats WHERE epochDay >= :fromEpochDay")
+    suspend fun getTalkSecondsSince(fromEpochDay: Long): Long
+
+    @Query(
+        """
+        SELECT * FROM call_contact_stats
+        ORDER BY (incoming + outgoing + missed + rejected + other) DESC, lastCallTime DESC
+        LIMIT :limit
+        """
+    )
+    suspend fun getTopContacts(limit: Int): List<CallContactStatsEntity>
+
+    @Query("DELETE FROM call_contact_stats")
+    suspend fun clearContacts()
+
+    @Query("DELETE FROM call_daily_stats")
+    suspend fun clearDays()
+
+    @Query("DELETE FROM call_stats_state")
+    suspend fun clearState()
+}
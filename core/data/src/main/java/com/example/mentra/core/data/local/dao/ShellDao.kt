@@ -13,15 +13,25 @@ interface ShellHistoryDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertHistory(history: ShellHistoryEntity): Long
 
+    @Insert
+    suspend fun insertAll(history: List<ShellHistoryEntity>)
+
     @Query("SELECT * FROM shell_history ORDER BY timestamp DESC LIMIT :limit")
     fun getRecentHistory(limit: Int = 100): Flow<List<ShellHistoryEntity>>
 
-    @Query("SELECT * FROM shell_history WHERE command LIKE '%' || :query || '%' ORDER BY timestamp DESC")
-    fun searchHistory(query: String): Flow<List<ShellHistoryEntity>>
+    @Query("SELECT * FROM shell_history ORDER BY id DESC LIMIT :limit")
+    suspend fun getRecent(limit: Int): List<ShellHistoryEntity>
+
+    @Query("SELECT command, COUNT(*) AS uses, MAX(timestamp) AS lastUsed FROM shell_history GROUP BY command")
+    suspend fun getCommandUsage(): List<ShellCommandUsage>
 
     @Query("DELETE FROM shell_history WHERE timestamp < :beforeTime")
     suspend fun deleteOldHistory(beforeTime: Long)
 
+    // Keeps the newest :keep rows
+    @Query("DELETE FROM shell_history WHERE id <= (SELECT id FROM shell_history ORDER BY id DESC LIMIT 1 OFFSET :keep)")
+    suspend fun trimTo(keep: Int)
+
     @Query("DELETE FROM shell_history")
     suspend fun clearHistory()
 }
@@ -0,0 +1,97 @@
+package com.example.mentra.core.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Call counts and talk time for one number
+ * [numberKey] is the number's trailing digits, so +2547… and 07… share a row
+ */
+@Entity(tableName = "call_contact_stats")
+data class CallContactStatsEntity(
+    @PrimaryKey
+    val numberKey: String,
+    val number: String,
+    val contactName: String?,
+    val incoming: Int = 0,
+    val outgoing: Int = 0,
+    val missed: Int = 0,
+    val rejected: Int = 0,
+    val other: Int = 0,
+    val talkSeconds: Long = 0,
+    val lastCallTime: Long = 0,
+    val lastCallType: String = "UNKNOWN" // CallType name
+) {
+    fun totalCalls(): Int = incoming + outgoing + missed + rejected + other
+
+    /**
+     * Combine two aggregates for the same number; name/number/type follow the newer call
+     */
+    fun merge(other: CallContactStatsEntity): CallContactStatsEntity {
+        val newer = if (other.lastCallTime >= lastCallTime) other else this
+        return copy(
+            number = newer.number,
+            contactName = newer.contactName ?: contactName ?: other.contactName,
+            incoming = incoming + other.incoming,
+            outgoing = outgoing + other.outgoing,
+            missed = missed + other.missed,
+            rejected = rejected + other.rejected,
+            other = this.other + other.other,
+            talkSeconds = talkSeconds + other.talkSeconds,
+            lastCallTime = newer.lastCallTime,
+            lastCallType = newer.lastCallType
+        )
+    }
+}
+
+/**
+ * Call counts and talk time for one local day ([epochDay] = days since 1970-01-01)
+ */
+@Entity(tableName = "call_daily_stats")
+data class CallDailyStatsEntity(
+    @PrimaryKey
+    val epochDay: Long,
+    val incoming: Int = 0,
+    val outgoing: Int = 0,
+    val missed: Int = 0,
+    val rejected: Int = 0,
+    val other: Int = 0,
+    val talkSeconds: Long = 0
+) {
+    fun merge(other: CallDailyStatsEntity) = copy(
+        incoming = incoming + other.incoming,
+        outgoing = outgoing + other.outgoing,
+        missed = missed + other.missed,
+        rejected = rejected + other.rejected,
+        other = this.other + other.other,
+        talkSeconds = talkSeconds + other.talkSeconds
+    )
+}
+
+/**
+ * Which call-log rows have been folded into the aggregates
+ * Call-log ids only grow, so everything up to [lastCallId] is accounted for
+ * as long as [aggregatedCount] of those rows still exist.
+ */
+@Entity(tableName = "call_stats_state")
+data class CallStatsStateEntity(
+    @PrimaryKey
+    val id: Int = 0,
+    val lastCallId: Long,
+    val aggregatedCount: Int
+)
+
+/**
+ * Column sums over [CallDailyStatsEntity]
+ */
+data class CallTypeTotals(
+    val incoming: Int,
+    val outgoing: Int,
+    val missed: Int,
+    val rejected: Int,
+    val other: Int,
+    val talkSeconds: Long
+) {
+    val totalCalls: Int
+        get() = incoming + outgoing + missed + rejected + other
+}
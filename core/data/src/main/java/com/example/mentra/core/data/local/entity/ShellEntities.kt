@@ -1,21 +1,34 @@
 package com.example.mentra.core.data.local.entity
 
+import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.PrimaryKey
 
 /**
  * Shell command history
+ * Rows are append-only, so [id] orders them oldest to newest
  */
 @Entity(tableName = "shell_history")
 data class ShellHistoryEntity(
     @PrimaryKey(autoGenerate = true)
     val id: Long = 0,
     val command: String,
-    val originalLanguage: String?,
-    val translatedCommand: String?,
-    val result: String,
-    val success: Boolean,
-    val timestamp: Long
+    val originalLanguage: String? = null,
+    val translatedCommand: String? = null,
+    val result: String = "",
+    val success: Boolean = true,
+    val timestamp: Long,
+    @ColumnInfo(defaultValue = "")
+    val sessionId: String = ""
+)
+
+/**
+ * A distinct history line and how it has been used
+ */
+data class ShellCommandUsage(
+    val command: String,
+    val uses: Int,
+    val lastUsed: Long
 )
 
 /**